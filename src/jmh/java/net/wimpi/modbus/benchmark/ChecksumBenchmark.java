@@ -0,0 +1,68 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.util.ModbusUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the checksums of the serial framings:
+ * CRC-16 (RTU) and LRC (ASCII).
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChecksumBenchmark {
+
+  /**
+   * Frame length in bytes; 8 is a typical read request,
+   * 256 the maximum RTU frame.
+   */
+  @Param({"8", "64", "256"})
+  public int length;
+
+  private byte[] m_Data;
+
+  @Setup
+  public void setup() {
+    m_Data = new byte[length];
+    new Random(42).nextBytes(m_Data);
+  }//setup
+
+  @Benchmark
+  public int[] crc() {
+    return ModbusUtil.calculateCRC(m_Data, 0, length);
+  }//crc
+
+  @Benchmark
+  public int lrc() {
+    return ModbusUtil.calculateLRC(m_Data, 0, length);
+  }//lrc
+
+}//class ChecksumBenchmark
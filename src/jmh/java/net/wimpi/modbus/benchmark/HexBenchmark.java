@@ -0,0 +1,74 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.io.ASCIIOutputStream;
+import net.wimpi.modbus.io.FastByteArrayOutputStream;
+import net.wimpi.modbus.util.ModbusUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the ASCII hex encoding used for debug output
+ * (<tt>ModbusUtil.toHex</tt>) and for the Modbus/ASCII framing
+ * (<tt>ASCIIOutputStream</tt>).
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+
+  @Param({"8", "64", "256"})
+  public int length;
+
+  private byte[] m_Data;
+  private FastByteArrayOutputStream m_Buffer;
+  private ASCIIOutputStream m_ASCIIOut;
+
+  @Setup
+  public void setup() {
+    m_Data = new byte[length];
+    new Random(42).nextBytes(m_Data);
+    m_Buffer = new FastByteArrayOutputStream(length * 2 + 4);
+    m_ASCIIOut = new ASCIIOutputStream(m_Buffer);
+  }//setup
+
+  @Benchmark
+  public String toHex() {
+    return ModbusUtil.toHex(m_Data);
+  }//toHex
+
+  @Benchmark
+  public int asciiEncode() throws IOException {
+    m_Buffer.reset();
+    m_ASCIIOut.write(m_Data, 0, length);
+    return m_Buffer.size();
+  }//asciiEncode
+
+}//class HexBenchmark
@@ -0,0 +1,539 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.facade.ModbusSerialMaster;
+import net.wimpi.modbus.facade.ModbusTCPMaster;
+import net.wimpi.modbus.facade.ModbusUDPMaster;
+import net.wimpi.modbus.io.ModbusTCPTransaction;
+import net.wimpi.modbus.metrics.AddressHeatmap;
+import net.wimpi.modbus.metrics.InMemorySlaveMetrics;
+import net.wimpi.modbus.metrics.InMemoryTransactionMetrics;
+import net.wimpi.modbus.metrics.LatencyHistogram;
+import net.wimpi.modbus.metrics.SlaveStatistics;
+import net.wimpi.modbus.metrics.TransactionStatistics;
+import net.wimpi.modbus.net.ModbusGateway;
+import net.wimpi.modbus.net.ModbusSerialListener;
+import net.wimpi.modbus.net.ModbusTCPListener;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.net.ModbusUDPListener;
+import net.wimpi.modbus.net.TCPMasterConnection;
+import net.wimpi.modbus.net.UDPMasterMultiplexer;
+import net.wimpi.modbus.procimg.ProcessImageDispatcher;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.util.SerialParameters;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class implementing an end-to-end load harness.
+ * <p>
+ * For each scenario a slave is started on the loopback
+ * interface (TCP, UDP, or serial over a pair of Linux
+ * pseudo-terminals) and driven by a number of concurrent
+ * masters. After a warmup period, the throughput, the
+ * latency percentiles and the allocation rate of the whole
+ * JVM (masters and slave) are measured and reported.
+ * <p>
+ * Usage:
+ * <pre>
+ * LoadHarness [-masters n] [-warmup s] [-duration s] [-count n] [-write]
+ *             [-metrics] [tcp] [udp] [udpmux] [serial] [gateway]
+ * </pre>
+ * With <tt>-metrics</tt>, an <tt>InMemoryTransactionMetrics</tt> and
+ * an <tt>InMemorySlaveMetrics</tt> are installed and their snapshots
+ * printed after each scenario.
+ * In the <tt>udpmux</tt> scenario, all masters share one
+ * <tt>UDPMasterMultiplexer</tt> and thus one socket.
+ * The serial scenario always uses a single master, as
+ * a serial line is a shared, half-duplex medium. In the
+ * <tt>gateway</tt> scenario, the masters share such a line
+ * through a <tt>ModbusGateway</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class LoadHarness {
+
+  private static final int TCP_PORT = 15502;
+  private static final int UDP_PORT = 15503;
+  private static final int GATEWAY_PORT = 15504;
+  private static final int UNIT_ID = 1;
+
+  private static final int WARMUP = 0;
+  private static final int MEASURE = 1;
+  private static final int STOP = 2;
+
+  //instance attributes
+  private int m_Masters = 4;
+  private int m_Warmup = 3;
+  private int m_Duration = 10;
+  private int m_Count = 16;
+  private int m_Units = 1;
+  private boolean m_Write;
+  private InMemoryTransactionMetrics m_Metrics;
+  private InMemorySlaveMetrics m_SlaveMetrics;
+  private volatile int m_Phase;
+  private InetAddress m_Address;
+
+  /**
+   * A master executing one kind of transaction.
+   */
+  interface Client {
+    void execute() throws Exception;
+
+    void close();
+  }//interface Client
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     */
+    public static void main(String[] args) {
+    LoadHarness harness = new LoadHarness();
+    List<String> scenarios = new ArrayList<String>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if ("-masters".equals(args[i])) {
+          harness.m_Masters = Integer.parseInt(args[++i]);
+        } else if ("-warmup".equals(args[i])) {
+          harness.m_Warmup = Integer.parseInt(args[++i]);
+        } else if ("-duration".equals(args[i])) {
+          harness.m_Duration = Integer.parseInt(args[++i]);
+        } else if ("-count".equals(args[i])) {
+          harness.m_Count = Integer.parseInt(args[++i]);
+        } else if ("-units".equals(args[i])) {
+          harness.m_Units = Integer.parseInt(args[++i]);
+        } else if ("-write".equals(args[i])) {
+          harness.m_Write = true;
+        } else if ("-metrics".equals(args[i])) {
+          harness.m_Metrics = new InMemoryTransactionMetrics();
+          harness.m_SlaveMetrics = new InMemorySlaveMetrics();
+        } else {
+          scenarios.add(args[i]);
+        }
+      }
+    } catch (Exception ex) {
+      printUsage();
+      System.exit(1);
+    }
+    if (scenarios.isEmpty()) {
+      scenarios.add("tcp");
+      scenarios.add("udp");
+      scenarios.add("serial");
+    }
+
+    try {
+      harness.m_Address = InetAddress.getByName("127.0.0.1");
+      ModbusCoupler.getReference().setProcessImage(Messages.createProcessImage(256));
+      ModbusCoupler.getReference().setMaster(false);
+      ModbusCoupler.getReference().setUnitID(UNIT_ID);
+      if (harness.m_Units > 1) {
+        //one image per unit; the facades address the default unit
+        ProcessImageDispatcher dispatcher = new ProcessImageDispatcher();
+        dispatcher.setDefaultProcessImage(ModbusCoupler.getReference().getProcessImage());
+        for (int unit = 1; unit <= harness.m_Units; unit++) {
+          dispatcher.setProcessImage(unit, Messages.createProcessImage(256));
+        }
+        ModbusCoupler.getReference().setProcessImageDispatcher(dispatcher);
+      }
+      ModbusCoupler.getReference().setTransactionMetrics(harness.m_Metrics);
+      ModbusCoupler.getReference().setSlaveMetrics(harness.m_SlaveMetrics);
+
+      System.out.println((harness.m_Write ? "Write" : "Read") + " " + harness.m_Count
+          + " registers, warmup " + harness.m_Warmup + " s, duration " + harness.m_Duration + " s");
+      System.out.println(String.format("%-8s %7s %10s %9s %9s %9s %9s %9s %9s %9s %7s",
+          "scenario", "masters", "tx/s", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)",
+          "MB/s", "B/tx", "errors"));
+      for (String s : scenarios) {
+        if ("tcp".equals(s)) {
+          harness.runTCP();
+        } else if ("udp".equals(s)) {
+          harness.runUDP();
+        } else if ("udpmux".equals(s)) {
+          harness.runUDPMultiplexed();
+        } else if ("serial".equals(s)) {
+          harness.runSerial();
+        } else if ("gateway".equals(s)) {
+          harness.runGateway();
+        } else {
+          printUsage();
+          System.exit(1);
+        }
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+    //the serial listener cannot be stopped
+    System.exit(0);
+  }//main
+
+  private void runTCP() throws Exception {
+    ModbusTCPListener listener = new ModbusTCPListener(m_Masters, m_Address);
+    listener.setPort(TCP_PORT);
+    listener.start();
+    Thread.sleep(500);
+    try {
+      Client[] clients = new Client[m_Masters];
+      for (int i = 0; i < clients.length; i++) {
+        final ModbusTCPMaster master = new ModbusTCPMaster(m_Address.getHostAddress(), TCP_PORT);
+        master.connect();
+        final Register[] regs = Messages.createRegisters(m_Count);
+        clients[i] = new Client() {
+          public void execute() throws Exception {
+            if (m_Write) {
+              master.writeMultipleRegisters(0, regs);
+            } else {
+              master.readMultipleRegisters(0, m_Count);
+            }
+          }//execute
+
+          public void close() {
+            master.disconnect();
+          }//close
+        };
+      }
+      run("tcp", clients);
+    } finally {
+      listener.stop();
+    }
+  }//runTCP
+
+  private void runUDP() throws Exception {
+    ModbusUDPListener listener = new ModbusUDPListener(m_Address);
+    listener.setPort(UDP_PORT);
+    listener.start();
+    Thread.sleep(500);
+    try {
+      Client[] clients = new Client[m_Masters];
+      for (int i = 0; i < clients.length; i++) {
+        final ModbusUDPMaster master = new ModbusUDPMaster(m_Address.getHostAddress(), UDP_PORT);
+        master.connect();
+        final Register[] regs = Messages.createRegisters(m_Count);
+        clients[i] = new Client() {
+          public void execute() throws Exception {
+            if (m_Write) {
+              master.writeMultipleRegisters(0, regs);
+            } else {
+              master.readMultipleRegisters(0, m_Count);
+            }
+          }//execute
+
+          public void close() {
+            master.disconnect();
+          }//close
+        };
+      }
+      run("udp", clients);
+    } finally {
+      listener.stop();
+    }
+  }//runUDP
+
+  private void runUDPMultiplexed() throws Exception {
+    ModbusUDPListener listener = new ModbusUDPListener(m_Address);
+    listener.setPort(UDP_PORT);
+    listener.start();
+    Thread.sleep(500);
+    final UDPMasterMultiplexer mux = new UDPMasterMultiplexer(m_Address, UDP_PORT);
+    mux.open();
+    try {
+      Client[] clients = new Client[m_Masters];
+      for (int i = 0; i < clients.length; i++) {
+        //each master owns its request, as the transaction id is set on it
+        final ModbusRequest req = m_Write
+            ? new WriteMultipleRegistersRequest(0, Messages.createRegisters(m_Count))
+            : new ReadMultipleRegistersRequest(0, m_Count);
+        req.setUnitID((m_Units > 1) ? 1 + i % m_Units : UNIT_ID);
+        clients[i] = new Client() {
+          public void execute() throws Exception {
+            mux.execute(req);
+          }//execute
+
+          public void close() {
+          }//close
+        };
+      }
+      run("udpmux", clients);
+    } finally {
+      mux.close();
+      listener.stop();
+    }
+  }//runUDPMultiplexed
+
+  private void runSerial() throws Exception {
+    PtyNullModem modem;
+    try {
+      modem = new PtyNullModem();
+    } catch (Exception ex) {
+      System.out.println("serial   skipped: " + ex.getMessage());
+      return;
+    }
+    //the slave side of the transport supports ASCII only
+    final SerialParameters slaveParams = createSerialParameters(modem.getPortName(1));
+    slaveParams.setReceiveTimeout(60000);
+    Thread slave = new Thread("Modbus serial slave") {
+      public void run() {
+        //does not return
+        new ModbusSerialListener(slaveParams);
+      }//run
+    };
+    slave.setDaemon(true);
+    slave.start();
+    Thread.sleep(500);
+
+    final ModbusSerialMaster master = new ModbusSerialMaster(createSerialParameters(modem.getPortName(0)));
+    master.connect();
+    final Register[] regs = Messages.createRegisters(m_Count);
+    Client client = new Client() {
+      public void execute() throws Exception {
+        if (m_Write) {
+          master.writeMultipleRegisters(UNIT_ID, 0, regs);
+        } else {
+          master.readMultipleRegisters(UNIT_ID, 0, m_Count);
+        }
+      }//execute
+
+      public void close() {
+        master.disconnect();
+      }//close
+    };
+    run("serial", new Client[]{client});
+  }//runSerial
+
+  private void runGateway() throws Exception {
+    PtyNullModem modem;
+    try {
+      modem = new PtyNullModem();
+    } catch (Exception ex) {
+      System.out.println("gateway  skipped: " + ex.getMessage());
+      return;
+    }
+    final SerialParameters slaveParams = createSerialParameters(modem.getPortName(1));
+    slaveParams.setReceiveTimeout(60000);
+    Thread slave = new Thread("Modbus serial slave") {
+      public void run() {
+        //does not return
+        new ModbusSerialListener(slaveParams);
+      }//run
+    };
+    slave.setDaemon(true);
+    slave.start();
+
+    ModbusGateway gateway = new ModbusGateway(createSerialParameters(modem.getPortName(0)));
+    gateway.setAddress(m_Address);
+    gateway.setPort(GATEWAY_PORT);
+    gateway.setPoolSize(m_Masters);
+    gateway.start();
+    Thread.sleep(500);
+    try {
+      Client[] clients = new Client[m_Masters];
+      for (int i = 0; i < clients.length; i++) {
+        final TCPMasterConnection con = new TCPMasterConnection(m_Address);
+        con.setPort(GATEWAY_PORT);
+        con.connect();
+        ModbusRequest req = m_Write
+            ? new WriteMultipleRegistersRequest(0, Messages.createRegisters(m_Count))
+            : new ReadMultipleRegistersRequest(0, m_Count);
+        req.setUnitID(UNIT_ID);
+        final ModbusTCPTransaction trans = new ModbusTCPTransaction(con);
+        trans.setRequest(req);
+        clients[i] = new Client() {
+          public void execute() throws Exception {
+            trans.execute();
+          }//execute
+
+          public void close() {
+            con.close();
+          }//close
+        };
+      }
+      run("gateway", clients);
+      System.out.println("         executed " + gateway.getExecutedCount()
+          + ", coalesced " + gateway.getCoalescedCount()
+          + ", rejected " + gateway.getRejectedCount());
+    } finally {
+      gateway.stop();
+    }
+  }//runGateway
+
+  private static SerialParameters createSerialParameters(String port) {
+    SerialParameters params = new SerialParameters();
+    params.setPortName(port);
+    params.setBaudRate(115200);
+    params.setDatabits(8);
+    params.setParity("None");
+    params.setStopbits(1);
+    params.setEncoding(Modbus.SERIAL_ENCODING_ASCII);
+    params.setEcho(false);
+    return params;
+  }//createSerialParameters
+
+  /**
+   * Drives the given clients, each from its own thread,
+   * through the warmup and the measurement period and
+   * prints the results.
+   *
+   * @param scenario the name of the scenario.
+   * @param clients  the clients to be driven.
+   * @throws InterruptedException if the calling thread is interrupted.
+   */
+  private void run(String scenario, final Client[] clients)
+      throws InterruptedException {
+    final LatencyHistogram[] histograms = new LatencyHistogram[clients.length];
+    final long[] errors = new long[clients.length];
+    Thread[] threads = new Thread[clients.length];
+    m_Phase = WARMUP;
+    for (int i = 0; i < clients.length; i++) {
+      final int idx = i;
+      histograms[i] = new LatencyHistogram();
+      threads[i] = new Thread(scenario + " master " + i) {
+        public void run() {
+          Client client = clients[idx];
+          LatencyHistogram h = histograms[idx];
+          int phase;
+          while ((phase = m_Phase) != STOP) {
+            long start = System.nanoTime();
+            try {
+              client.execute();
+            } catch (Exception ex) {
+              if (phase == MEASURE) {
+                errors[idx]++;
+              }
+              continue;
+            }
+            if (phase == MEASURE) {
+              h.record(System.nanoTime() - start);
+            }
+          }
+        }//run
+      };
+      threads[i].start();
+    }
+
+    Thread.sleep(m_Warmup * 1000L);
+    Map<Long, Long> allocated = getAllocatedBytes();
+    if (m_Metrics != null) {
+      m_Metrics.reset();
+      m_SlaveMetrics.reset();
+    }
+    long start = System.nanoTime();
+    m_Phase = MEASURE;
+    Thread.sleep(m_Duration * 1000L);
+    m_Phase = STOP;
+    long elapsed = System.nanoTime() - start;
+    long bytes = getAllocatedBytesSince(allocated);
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      clients[i].close();
+    }
+
+    LatencyHistogram total = new LatencyHistogram();
+    long errorCount = 0;
+    for (int i = 0; i < histograms.length; i++) {
+      total.add(histograms[i]);
+      errorCount += errors[i];
+    }
+    double seconds = elapsed / 1e9;
+    long count = total.getCount();
+    System.out.println(String.format("%-8s %7d %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f %9s %9s %7d",
+        scenario, clients.length, count / seconds,
+        total.getMean() / 1e3,
+        total.getValueAtPercentile(50) / 1e3,
+        total.getValueAtPercentile(99) / 1e3,
+        total.getValueAtPercentile(99.9) / 1e3,
+        total.getMax() / 1e3,
+        (bytes < 0) ? "n/a" : String.format("%.1f", bytes / seconds / (1024 * 1024)),
+        (bytes < 0 || count == 0) ? "n/a" : String.valueOf(bytes / count),
+        errorCount));
+    if (m_Metrics != null) {
+      for (TransactionStatistics stats : m_Metrics.getSnapshot()) {
+        System.out.println("  " + stats);
+      }
+      for (SlaveStatistics stats : m_SlaveMetrics.getFunctionCodeSnapshot()) {
+        System.out.println("  slave fc " + stats);
+      }
+      for (SlaveStatistics stats : m_SlaveMetrics.getPeerSnapshot()) {
+        System.out.println("  slave peer " + stats);
+      }
+      System.out.println("  slave " + m_SlaveMetrics.getHeatmap(AddressHeatmap.HOLDING_REGISTERS));
+    }
+  }//run
+
+  /**
+   * Returns the number of bytes allocated so far by each
+   * live thread, or null if the JVM does not support
+   * measuring it.
+   *
+   * @return a <tt>Map</tt> from thread id to allocated bytes.
+   */
+  private static Map<Long, Long> getAllocatedBytes() {
+    java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean smx = (com.sun.management.ThreadMXBean) mx;
+    if (!smx.isThreadAllocatedMemorySupported() || !smx.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    long[] ids = smx.getAllThreadIds();
+    long[] bytes = smx.getThreadAllocatedBytes(ids);
+    Map<Long, Long> result = new HashMap<Long, Long>();
+    for (int i = 0; i < ids.length; i++) {
+      if (bytes[i] >= 0) {
+        result.put(ids[i], bytes[i]);
+      }
+    }
+    return result;
+  }//getAllocatedBytes
+
+  /**
+   * Returns the number of bytes allocated by all threads
+   * since the given snapshot was taken. Threads that
+   * terminated in between are not accounted for.
+   *
+   * @param before a snapshot taken with {@link #getAllocatedBytes()}.
+   * @return the number of bytes, or -1 if not supported.
+   */
+  private static long getAllocatedBytesSince(Map<Long, Long> before) {
+    Map<Long, Long> after = getAllocatedBytes();
+    if (before == null || after == null) {
+      return -1;
+    }
+    long sum = 0;
+    for (Map.Entry<Long, Long> e : after.entrySet()) {
+      Long b = before.get(e.getKey());
+      sum += e.getValue() - ((b == null) ? 0 : b);
+    }
+    return sum;
+  }//getAllocatedBytesSince
+
+  private static void printUsage() {
+    System.out.println("Usage: LoadHarness [-masters n] [-warmup s] [-duration s] [-count n] [-units n] [-write] [-metrics] [tcp] [udp] [udpmux] [serial] [gateway]");
+  }//printUsage
+
+}//class LoadHarness
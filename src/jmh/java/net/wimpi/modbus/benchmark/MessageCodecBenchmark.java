@@ -0,0 +1,104 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.io.BytesInputStream;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding of Modbus/TCP framed
+ * messages per function code, through the same
+ * <tt>BytesInputStream</tt>/<tt>BytesOutputStream</tt>
+ * path the IP transports use.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageCodecBenchmark {
+
+  @Param({"1", "2", "3", "4", "5", "6", "15", "16", "22", "23"})
+  public int functionCode;
+
+  private ModbusRequest m_Request;
+  private ModbusResponse m_Response;
+  private byte[] m_RequestBytes;
+  private byte[] m_ResponseBytes;
+  private BytesOutputStream m_Out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+  private BytesInputStream m_In = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+
+  @Setup
+  public void setup() throws IOException {
+    m_Request = Messages.createRequest(functionCode);
+    m_Response = Messages.createResponse(functionCode);
+    m_RequestBytes = encode(m_Request);
+    m_ResponseBytes = encode(m_Response);
+  }//setup
+
+  @Benchmark
+  public int encodeRequest() throws IOException {
+    m_Out.reset();
+    m_Request.writeTo(m_Out);
+    return m_Out.size();
+  }//encodeRequest
+
+  @Benchmark
+  public ModbusRequest decodeRequest() throws IOException {
+    m_In.reset(m_RequestBytes);
+    ModbusRequest req = ModbusRequest.createModbusRequest(functionCode);
+    req.readFrom(m_In);
+    return req;
+  }//decodeRequest
+
+  @Benchmark
+  public int encodeResponse() throws IOException {
+    m_Out.reset();
+    m_Response.writeTo(m_Out);
+    return m_Out.size();
+  }//encodeResponse
+
+  @Benchmark
+  public ModbusResponse decodeResponse() throws IOException {
+    m_In.reset(m_ResponseBytes);
+    ModbusResponse res = ModbusResponse.createModbusResponse(functionCode);
+    res.readFrom(m_In);
+    return res;
+  }//decodeResponse
+
+  private byte[] encode(ModbusMessage msg) throws IOException {
+    m_Out.reset();
+    msg.writeTo(m_Out);
+    return m_Out.toByteArray();
+  }//encode
+
+}//class MessageCodecBenchmark
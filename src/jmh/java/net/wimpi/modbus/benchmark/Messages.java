@@ -0,0 +1,161 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.*;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleDigitalIn;
+import net.wimpi.modbus.procimg.SimpleDigitalOut;
+import net.wimpi.modbus.procimg.SimpleInputRegister;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Provides the messages and process images used by
+ * the benchmarks.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class Messages {
+
+  /**
+   * The number of registers or bits carried by the
+   * multiple read and write messages.
+   */
+  static final int COUNT = 64;
+
+  private Messages() {
+  }//constructor
+
+  /**
+   * Creates a request for the given function code,
+   * carrying {@link #COUNT} registers or bits where applicable.
+   *
+   * @param fc the function code.
+   * @return the request.
+   */
+  static ModbusRequest createRequest(int fc) {
+    switch (fc) {
+      case Modbus.READ_COILS:
+        return new ReadCoilsRequest(0, COUNT);
+      case Modbus.READ_INPUT_DISCRETES:
+        return new ReadInputDiscretesRequest(0, COUNT);
+      case Modbus.READ_MULTIPLE_REGISTERS:
+        return new ReadMultipleRegistersRequest(0, COUNT);
+      case Modbus.READ_INPUT_REGISTERS:
+        return new ReadInputRegistersRequest(0, COUNT);
+      case Modbus.WRITE_COIL:
+        return new WriteCoilRequest(1, true);
+      case Modbus.WRITE_SINGLE_REGISTER:
+        return new WriteSingleRegisterRequest(1, new SimpleRegister(4711));
+      case Modbus.WRITE_MULTIPLE_COILS:
+        return new WriteMultipleCoilsRequest(0, createBits(COUNT));
+      case Modbus.WRITE_MULTIPLE_REGISTERS:
+        return new WriteMultipleRegistersRequest(0, createRegisters(COUNT));
+      case Modbus.MASK_WRITE_REGISTER:
+        return new MaskWriteRegisterRequest(1, 0xf0f0, 0x0505);
+      case Modbus.READ_WRITE_MULTIPLE:
+        return new ReadWriteMultipleRequest(0, COUNT / 2, COUNT / 2, createRegisters(COUNT / 2));
+      default:
+        throw new IllegalArgumentException("Unsupported function code " + fc);
+    }
+  }//createRequest
+
+  /**
+   * Creates a response for the given function code,
+   * carrying {@link #COUNT} registers or bits where applicable.
+   *
+   * @param fc the function code.
+   * @return the response.
+   */
+  static ModbusResponse createResponse(int fc) {
+    switch (fc) {
+      case Modbus.READ_COILS:
+        ReadCoilsResponse rc = new ReadCoilsResponse(COUNT);
+        for (int i = 0; i < COUNT; i += 3) {
+          rc.setCoilStatus(i, true);
+        }
+        return rc;
+      case Modbus.READ_INPUT_DISCRETES:
+        ReadInputDiscretesResponse rd = new ReadInputDiscretesResponse(COUNT);
+        for (int i = 0; i < COUNT; i += 3) {
+          rd.setDiscreteStatus(i, true);
+        }
+        return rd;
+      case Modbus.READ_MULTIPLE_REGISTERS:
+        return new ReadMultipleRegistersResponse(createRegisters(COUNT));
+      case Modbus.READ_INPUT_REGISTERS:
+        InputRegister[] inregs = new InputRegister[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+          inregs[i] = new SimpleInputRegister(i * 3);
+        }
+        return new ReadInputRegistersResponse(inregs);
+      case Modbus.WRITE_COIL:
+        return new WriteCoilResponse(1, true);
+      case Modbus.WRITE_SINGLE_REGISTER:
+        return new WriteSingleRegisterResponse(1, 4711);
+      case Modbus.WRITE_MULTIPLE_COILS:
+        return new WriteMultipleCoilsResponse(0, COUNT);
+      case Modbus.WRITE_MULTIPLE_REGISTERS:
+        return new WriteMultipleRegistersResponse(0, COUNT);
+      case Modbus.MASK_WRITE_REGISTER:
+        return new MaskWriteRegisterResponse(1, 0xf0f0, 0x0505);
+      case Modbus.READ_WRITE_MULTIPLE:
+        return new ReadWriteMultipleResponse(createRegisters(COUNT / 2));
+      default:
+        throw new IllegalArgumentException("Unsupported function code " + fc);
+    }
+  }//createResponse
+
+  /**
+   * Creates a process image holding the given number of
+   * each kind of process data.
+   *
+   * @param size the number of elements per kind.
+   * @return the process image.
+   */
+  static SimpleProcessImage createProcessImage(int size) {
+    SimpleProcessImage spi = new SimpleProcessImage();
+    for (int i = 0; i < size; i++) {
+      spi.addDigitalOut(new SimpleDigitalOut(i % 3 == 0));
+      spi.addDigitalIn(new SimpleDigitalIn(i % 2 == 0));
+      spi.addRegister(new SimpleRegister(i));
+      spi.addInputRegister(new SimpleInputRegister(i * 3));
+    }
+    return spi;
+  }//createProcessImage
+
+  static Register[] createRegisters(int count) {
+    Register[] regs = new Register[count];
+    for (int i = 0; i < count; i++) {
+      regs[i] = new SimpleRegister(i * 7);
+    }
+    return regs;
+  }//createRegisters
+
+  static BitVector createBits(int count) {
+    BitVector bv = new BitVector(count);
+    for (int i = 0; i < count; i += 2) {
+      bv.setBit(i, true);
+    }
+    return bv;
+  }//createBits
+
+}//class Messages
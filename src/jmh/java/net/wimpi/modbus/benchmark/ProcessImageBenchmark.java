@@ -0,0 +1,74 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.procimg.DigitalOut;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the range accessors of <tt>SimpleProcessImage</tt>
+ * that back the read and write request handlers of a slave.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProcessImageBenchmark {
+
+  /**
+   * Number of elements per range; 125 registers and 2000 bits
+   * are the protocol maxima for a single read.
+   */
+  @Param({"1", "16", "125"})
+  public int count;
+
+  private SimpleProcessImage m_ProcessImage;
+
+  @Setup
+  public void setup() {
+    m_ProcessImage = Messages.createProcessImage(2000);
+  }//setup
+
+  @Benchmark
+  public Register[] registerRange() {
+    return m_ProcessImage.getRegisterRange(100, count);
+  }//registerRange
+
+  @Benchmark
+  public InputRegister[] inputRegisterRange() {
+    return m_ProcessImage.getInputRegisterRange(100, count);
+  }//inputRegisterRange
+
+  @Benchmark
+  public DigitalOut[] coilRange() {
+    return m_ProcessImage.getDigitalOutRange(100, count * 16);
+  }//coilRange
+
+}//class ProcessImageBenchmark
@@ -0,0 +1,155 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import com.sparetimelabs.serial.termios.JTermios;
+import com.sparetimelabs.serial.termios.Termios;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+
+import java.io.IOException;
+
+/**
+ * Class implementing a null modem cable between two
+ * Linux pseudo-terminals.
+ * <p>
+ * Two pseudo-terminal pairs are allocated and their master
+ * sides are bridged by two copying threads, so that the
+ * slave devices (<tt>/dev/pts/N</tt>) behave like two serial
+ * ports connected by a cable and can be opened through a
+ * <tt>SerialConnection</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class PtyNullModem {
+
+  //native access to the pseudo-terminal functions
+  interface CLib extends Library {
+    int posix_openpt(int flags);
+
+    int grantpt(int fd);
+
+    int unlockpt(int fd);
+
+    String ptsname(int fd);
+
+    int read(int fd, byte[] buf, int len);
+
+    int write(int fd, byte[] buf, int len);
+
+    int close(int fd);
+  }//interface CLib
+
+  private static CLib c_Lib;
+
+  //instance attributes
+  private int[] m_Masters = new int[2];
+  private int[] m_Slaves = new int[2];
+  private String[] m_PortNames = new String[2];
+  private volatile boolean m_Open;
+
+    /**
+     * Constructs a new <tt>PtyNullModem</tt> instance,
+     * allocating the pseudo-terminals and starting the
+     * bridge.
+     *
+     * @throws IOException if the pseudo-terminals cannot be allocated.
+     */
+    PtyNullModem() throws IOException {
+    if (!Platform.isLinux()) {
+      throw new IOException("Pseudo-terminals are only supported on Linux.");
+    }
+    synchronized (PtyNullModem.class) {
+      if (c_Lib == null) {
+        c_Lib = (CLib) Native.loadLibrary(Platform.C_LIBRARY_NAME, CLib.class);
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      m_Masters[i] = c_Lib.posix_openpt(JTermios.O_RDWR | JTermios.O_NOCTTY);
+      if (m_Masters[i] < 0
+          || c_Lib.grantpt(m_Masters[i]) != 0
+          || c_Lib.unlockpt(m_Masters[i]) != 0) {
+        throw new IOException("Allocating pseudo-terminal failed (errno " + Native.getLastError() + ").");
+      }
+      m_PortNames[i] = c_Lib.ptsname(m_Masters[i]);
+      //hold the slave side open, so the master does not see a hangup
+      //before the port is opened, and make it raw (no echo, no line editing)
+      m_Slaves[i] = JTermios.open(m_PortNames[i], JTermios.O_RDWR | JTermios.O_NOCTTY);
+      Termios t = new Termios();
+      JTermios.tcgetattr(m_Slaves[i], t);
+      JTermios.cfmakeraw(m_Slaves[i], t);
+      JTermios.tcsetattr(m_Slaves[i], JTermios.TCSANOW, t);
+    }
+    m_Open = true;
+    startBridge(m_Masters[0], m_Masters[1]);
+    startBridge(m_Masters[1], m_Masters[0]);
+  }//constructor
+
+    /**
+     * Returns the device name of one end of the cable.
+     *
+     * @param end the end of the cable (0 or 1).
+     * @return the device name, e.g. <tt>/dev/pts/3</tt>.
+     */
+    String getPortName(int end) {
+    return m_PortNames[end];
+  }//getPortName
+
+    /**
+     * Closes this <tt>PtyNullModem</tt>, releasing the
+     * pseudo-terminals. The bridge threads terminate once
+     * the ports have been closed by their users.
+     */
+    void close() {
+    m_Open = false;
+    for (int i = 0; i < 2; i++) {
+      JTermios.close(m_Slaves[i]);
+      c_Lib.close(m_Masters[i]);
+    }
+  }//close
+
+  private void startBridge(final int from, final int to) {
+    Thread t = new Thread("pty bridge " + from + "->" + to) {
+      public void run() {
+        byte[] buf = new byte[512];
+        while (m_Open) {
+          int n = c_Lib.read(from, buf, buf.length);
+          if (n <= 0) {
+            return;
+          }
+          for (int off = 0; off < n; ) {
+            //write() has no offset, shift the remainder down
+            if (off > 0) {
+              System.arraycopy(buf, off, buf, 0, n - off);
+              n -= off;
+              off = 0;
+            }
+            int w = c_Lib.write(to, buf, n);
+            if (w < 0) {
+              return;
+            }
+            off = w;
+          }
+        }
+      }//run
+    };
+    t.setDaemon(true);
+    t.start();
+  }//startBridge
+
+}//class PtyNullModem
@@ -0,0 +1,106 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.benchmark;
+
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.facade.ModbusTCPMaster;
+import net.wimpi.modbus.facade.ModbusUDPMaster;
+import net.wimpi.modbus.net.ModbusTCPListener;
+import net.wimpi.modbus.net.ModbusUDPListener;
+import net.wimpi.modbus.procimg.Register;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks complete transactions (master encode, loopback
+ * network, slave handling, master decode) against a TCP and
+ * a UDP slave running in the same JVM.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransportBenchmark {
+
+  @Param({"1", "64"})
+  public int count;
+
+  private ModbusTCPListener m_TCPListener;
+  private ModbusUDPListener m_UDPListener;
+  private ModbusTCPMaster m_TCPMaster;
+  private ModbusUDPMaster m_UDPMaster;
+  private Register[] m_Registers;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    InetAddress lo = InetAddress.getByName("127.0.0.1");
+    ModbusCoupler.getReference().setProcessImage(Messages.createProcessImage(256));
+    ModbusCoupler.getReference().setUnitID(0);
+
+    m_TCPListener = new ModbusTCPListener(2, lo);
+    m_TCPListener.setPort(15020);
+    m_TCPListener.start();
+    m_UDPListener = new ModbusUDPListener(lo);
+    m_UDPListener.setPort(15021);
+    m_UDPListener.start();
+    //give the listeners time to bind
+    Thread.sleep(500);
+
+    m_TCPMaster = new ModbusTCPMaster("127.0.0.1", 15020);
+    m_TCPMaster.connect();
+    m_UDPMaster = new ModbusUDPMaster("127.0.0.1", 15021);
+    m_UDPMaster.connect();
+    m_Registers = Messages.createRegisters(count);
+  }//setup
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    m_TCPMaster.disconnect();
+    m_UDPMaster.disconnect();
+    m_TCPListener.stop();
+    m_UDPListener.stop();
+  }//teardown
+
+  @Benchmark
+  public Register[] tcpReadRegisters() throws ModbusException {
+    return m_TCPMaster.readMultipleRegisters(0, count);
+  }//tcpReadRegisters
+
+  @Benchmark
+  public void tcpWriteRegisters() throws ModbusException {
+    m_TCPMaster.writeMultipleRegisters(0, m_Registers);
+  }//tcpWriteRegisters
+
+  @Benchmark
+  public Register[] udpReadRegisters() throws ModbusException {
+    return m_UDPMaster.readMultipleRegisters(0, count);
+  }//udpReadRegisters
+
+}//class TransportBenchmark
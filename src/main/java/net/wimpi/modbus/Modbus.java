@@ -80,6 +80,18 @@ public interface Modbus {
      */
     public static final int WRITE_SINGLE_REGISTER = 6;
 
+    /**
+     * Defines a standard function code
+     * for <tt>read/write multiple registers</tt>.
+     */
+    public static final int READ_WRITE_MULTIPLE = 23;
+
+    /**
+     * Defines a standard function code
+     * for <tt>mask write register</tt>.
+     */
+    public static final int MASK_WRITE_REGISTER = 22;
+
     /**
      * Defines the byte representation of the coil state <b>on</b>.
      */
@@ -106,6 +118,12 @@ public interface Modbus {
      */
     public static final int MAX_BITS = 2000;
 
+    /**
+     * Defines the maximum number of registers in multiple
+     * reads of input or holding registers (<b>125</b>).
+     */
+    public static final int MAX_REGISTERS = 125;
+
     /**
      * Defines the Modbus slave exception offset that is added to the
      * function code, to flag an exception.
@@ -143,6 +161,22 @@ public interface Modbus {
      */
     public static final int ILLEGAL_VALUE_EXCEPTION = 3;
 
+    /**
+     * Defines the Modbus slave exception type <tt>gateway path unavailable</tt>.
+     * This exception code is returned by a gateway that cannot
+     * allocate a path to the addressed unit, usually because
+     * it is misconfigured or overloaded.
+     */
+    public static final int GATEWAY_PATH_UNAVAILABLE_EXCEPTION = 10;
+
+    /**
+     * Defines the Modbus slave exception type <tt>gateway target device
+     * failed to respond</tt>.
+     * This exception code is returned by a gateway if the addressed
+     * unit does not exist or did not answer.
+     */
+    public static final int GATEWAY_TARGET_NO_RESPONSE_EXCEPTION = 11;
+
 
     /**
      * Defines the default port number of Modbus
@@ -183,6 +217,31 @@ public interface Modbus {
      */
     public static final int DEFAULT_TIMEOUT = 3000;
 
+    /**
+     * Defines the default timeout for establishing a
+     * connection in milliseconds (=<tt>3000</tt>).
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+    /**
+     * Defines the default initial delay in milliseconds
+     * before a failed connection is attempted again (=<tt>250</tt>).
+     */
+    public static final int DEFAULT_RECONNECT_DELAY = 250;
+
+    /**
+     * Defines the default upper bound in milliseconds for the
+     * delay between reconnection attempts (=<tt>30000</tt>).
+     */
+    public static final int DEFAULT_MAX_RECONNECT_DELAY = 30000;
+
+    /**
+     * Defines the default size in bytes requested for the
+     * receive and send buffers of a UDP slave socket
+     * (=<tt>262144</tt>).
+     */
+    public static final int DEFAULT_UDP_BUFFER_SIZE = 262144;
+
     /**
      * Defines the default reconnecting setting for
      * transactions (=<tt>false</tt>).
@@ -16,16 +16,28 @@
 
 package net.wimpi.modbus;
 
+import net.wimpi.modbus.io.FrameTrace;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.NoOpEventRecorder;
+import net.wimpi.modbus.metrics.NoOpSlaveMetrics;
+import net.wimpi.modbus.metrics.NoOpTransactionMetrics;
+import net.wimpi.modbus.metrics.SlaveMetrics;
+import net.wimpi.modbus.metrics.TransactionMetrics;
 import net.wimpi.modbus.procimg.DefaultProcessImageFactory;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.ProcessImageDispatcher;
 import net.wimpi.modbus.procimg.ProcessImageFactory;
 
 /**
- * Class implemented following a Singleton pattern,
- * to couple the slave side with a master side or
+ * Class coupling the slave side with a master side or
  * with a device.<p>
- * At the moment  it only provides a reference to the
- * OO model of the process image.
+ * It provides the OO model of the process image(s), the
+ * factory for process image instances and the metrics and
+ * tracing hooks. A shared default instance is available
+ * through {@link #getReference()}; independent instances can
+ * be created and handed to listeners, transports and facades
+ * (<tt>setCoupler(ModbusCoupler)</tt>) to run several masters
+ * and slaves with different settings in one JVM.
  *
  * @author Dieter Wimberger
  * @version 1.2
@@ -36,28 +48,42 @@ public class ModbusCoupler {
   private static ModbusCoupler c_Self;  //Singleton reference
 
   //instance attributes
-  private ProcessImage m_ProcessImage;
-  private int m_UnitID = Modbus.DEFAULT_UNIT_ID;
+  private volatile ProcessImage m_ProcessImage;
+  private volatile ProcessImageDispatcher m_Dispatcher;
+  private volatile int m_UnitID = Modbus.DEFAULT_UNIT_ID;
   private boolean m_Master = true;
   private ProcessImageFactory m_PIFactory;
+  private volatile TransactionMetrics m_TransactionMetrics;
+  private volatile SlaveMetrics m_SlaveMetrics;
+  private volatile EventRecorder m_EventRecorder;
+  private volatile FrameTrace m_FrameTrace;
 
   static {
     c_Self = new ModbusCoupler();
   }//initializer
 
-  private ModbusCoupler() {
+    /**
+     * Constructs a new <tt>ModbusCoupler</tt> instance
+     * without a process image, independent of the default
+     * one returned by {@link #getReference()}.
+     */
+    public ModbusCoupler() {
     m_PIFactory = new DefaultProcessImageFactory();
+    m_TransactionMetrics = new NoOpTransactionMetrics();
+    m_SlaveMetrics = new NoOpSlaveMetrics();
+    m_EventRecorder = createEventRecorder();
   }//constructor
 
-  /**
-   * Private constructor to prevent multiple
-   * instantiation.
-   *
-   * @param procimg a <tt>ProcessImage</tt>.
-   */
-  private ModbusCoupler(ProcessImage procimg) {
+    /**
+     * Constructs a new <tt>ModbusCoupler</tt> instance
+     * with the given process image, independent of the
+     * default one returned by {@link #getReference()}.
+     *
+     * @param procimg a <tt>ProcessImage</tt>.
+     */
+    public ModbusCoupler(ProcessImage procimg) {
+    this();
     setProcessImage(procimg);
-    c_Self = this;
   }//contructor(ProcessImage)
 
     /**
@@ -78,16 +104,135 @@ public class ModbusCoupler {
     m_PIFactory = factory;
   }//setProcessImageFactory
 
+    /**
+     * Returns the <tt>TransactionMetrics</tt> master side
+     * transactions report to, unless they have been given
+     * their own.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getTransactionMetrics() {
+    return m_TransactionMetrics;
+  }//getTransactionMetrics
+
+    /**
+     * Sets the <tt>TransactionMetrics</tt> master side
+     * transactions report to. The default discards all
+     * metrics.
+     *
+     * @param metrics the <tt>TransactionMetrics</tt> to be used.
+     */
+    public void setTransactionMetrics(TransactionMetrics metrics) {
+    m_TransactionMetrics = (metrics == null) ? new NoOpTransactionMetrics() : metrics;
+  }//setTransactionMetrics
+
+    /**
+     * Returns the <tt>SlaveMetrics</tt> the slave side
+     * listeners report served requests to.
+     *
+     * @return a <tt>SlaveMetrics</tt> instance.
+     */
+    public SlaveMetrics getSlaveMetrics() {
+    return m_SlaveMetrics;
+  }//getSlaveMetrics
+
+    /**
+     * Sets the <tt>SlaveMetrics</tt> the slave side
+     * listeners report served requests to. The default
+     * discards all metrics.
+     *
+     * @param metrics the <tt>SlaveMetrics</tt> to be used.
+     */
+    public void setSlaveMetrics(SlaveMetrics metrics) {
+    m_SlaveMetrics = (metrics == null) ? new NoOpSlaveMetrics() : metrics;
+  }//setSlaveMetrics
+
+    /**
+     * Returns the <tt>EventRecorder</tt> the I/O hot paths
+     * emit timed events to.
+     *
+     * @return an <tt>EventRecorder</tt> instance.
+     */
+    public EventRecorder getEventRecorder() {
+    return m_EventRecorder;
+  }//getEventRecorder
+
+    /**
+     * Sets the <tt>EventRecorder</tt> the I/O hot paths
+     * emit timed events to. The default emits JDK Flight
+     * Recorder events if the running JVM supports them.
+     *
+     * @param recorder the <tt>EventRecorder</tt> to be used.
+     */
+    public void setEventRecorder(EventRecorder recorder) {
+    m_EventRecorder = (recorder == null) ? new NoOpEventRecorder() : recorder;
+  }//setEventRecorder
+
+    /**
+     * Returns the <tt>FrameTrace</tt> the transports
+     * record sent and received frames to.
+     *
+     * @return the <tt>FrameTrace</tt>, or null if frames are not traced.
+     */
+    public FrameTrace getFrameTrace() {
+    return m_FrameTrace;
+  }//getFrameTrace
+
+    /**
+     * Sets the <tt>FrameTrace</tt> the transports
+     * record sent and received frames to. Frames are
+     * not traced by default.
+     *
+     * @param trace the <tt>FrameTrace</tt> to be used, or null to disable tracing.
+     */
+    public void setFrameTrace(FrameTrace trace) {
+    m_FrameTrace = trace;
+  }//setFrameTrace
+
+  /**
+   * Creates the Flight Recorder based <tt>EventRecorder</tt>
+   * if the JVM provides <tt>jdk.jfr</tt>, and a no-op one
+   * otherwise. The class is loaded reflectively, so it is
+   * never touched on older JVMs.
+   *
+   * @return an <tt>EventRecorder</tt> instance.
+   */
+  private static EventRecorder createEventRecorder() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (EventRecorder) Class.forName(
+          "net.wimpi.modbus.metrics.jfr.FlightRecorderEventRecorder").getDeclaredConstructor().newInstance();
+    } catch (Throwable t) {
+      return new NoOpEventRecorder();
+    }
+  }//createEventRecorder
+
     /**
      * Returns a reference to the <tt>ProcessImage</tt>
      * of this <tt>ModbusCoupler</tt>.
      *
      * @return the <tt>ProcessImage</tt>.
      */
-    public synchronized ProcessImage getProcessImage() {
+    public ProcessImage getProcessImage() {
     return m_ProcessImage;
   }//getProcessImage
 
+    /**
+     * Returns a reference to the <tt>ProcessImage</tt>
+     * serving the given unit.
+     * <p>
+     * If a <tt>ProcessImageDispatcher</tt> is set, the unit
+     * is looked up there; otherwise the single process image
+     * of this <tt>ModbusCoupler</tt> is returned.
+     *
+     * @param unitid the unit identifier of a request.
+     * @return the <tt>ProcessImage</tt>, or null if the unit is not served.
+     */
+    public ProcessImage getProcessImage(int unitid) {
+    ProcessImageDispatcher dispatcher = m_Dispatcher;
+    return (dispatcher == null) ? m_ProcessImage : dispatcher.getProcessImage(unitid);
+  }//getProcessImage
+
     /**
      * Sets the reference to the <tt>ProcessImage</tt>
      * of this <tt>ModbusCoupler</tt>.
@@ -95,10 +240,49 @@ public class ModbusCoupler {
      *
      * @param procimg the <tt>ProcessImage</tt> to be set.
      */
-    public synchronized void setProcessImage(ProcessImage procimg) {
+    public void setProcessImage(ProcessImage procimg) {
     m_ProcessImage = procimg;
   }//setProcessImage
 
+    /**
+     * Returns the <tt>ProcessImageDispatcher</tt> mapping
+     * unit identifiers to process images.
+     *
+     * @return the <tt>ProcessImageDispatcher</tt>, or null if a single
+     *         process image is served.
+     */
+    public ProcessImageDispatcher getProcessImageDispatcher() {
+    return m_Dispatcher;
+  }//getProcessImageDispatcher
+
+    /**
+     * Sets the <tt>ProcessImageDispatcher</tt> mapping
+     * unit identifiers to process images.
+     * <p>
+     * While a dispatcher is set, the slave listeners serve
+     * every unit it maps and the single process image and
+     * unit identifier of this <tt>ModbusCoupler</tt> are not used
+     * on the slave side.
+     *
+     * @param dispatcher the <tt>ProcessImageDispatcher</tt>, or null to
+     *                   serve the single process image again.
+     */
+    public void setProcessImageDispatcher(ProcessImageDispatcher dispatcher) {
+    m_Dispatcher = dispatcher;
+  }//setProcessImageDispatcher
+
+    /**
+     * Tests if a slave should answer requests addressed
+     * to the given unit.
+     *
+     * @param unitid the unit identifier of a request.
+     * @return true if the unit is served, false otherwise.
+     */
+    public boolean isServing(int unitid) {
+    ProcessImageDispatcher dispatcher = m_Dispatcher;
+    return (dispatcher == null) ? unitid == m_UnitID : dispatcher.isServing(unitid);
+  }//isServing
+
     /**
      * Returns the identifier of this unit.
      * This identifier is required to be set
@@ -149,7 +333,9 @@ public class ModbusCoupler {
   }//setMaster
 
     /**
-     * Returns a reference to the singleton instance.
+     * Returns a reference to the default instance, which is
+     * used by all listeners, transports and facades that have
+     * not been given a <tt>ModbusCoupler</tt> of their own.
      *
      * @return the <tt>ModbusCoupler</tt> instance reference.
      */
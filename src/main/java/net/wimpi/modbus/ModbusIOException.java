@@ -30,6 +30,8 @@ public class ModbusIOException extends ModbusException {
 	 */
 	private static final long serialVersionUID = 5673322140119572831L;
 	private boolean m_EOF = false;
+	private boolean m_Timeout = false;
+	private boolean m_ChecksumError = false;
 
     /**
      * Constructs a new <tt>ModbusIOException</tt> instance.
@@ -92,4 +94,48 @@ public class ModbusIOException extends ModbusException {
 		m_EOF = b;
 	}// setEOF
 
+    /**
+     * Tests if this <tt>ModbusIOException</tt> is caused by a response
+     * that did not arrive (completely) in time.
+     * <p>
+     *
+     * @return true if timed out, false otherwise.
+     */
+    public boolean isTimeout() {
+		return m_Timeout;
+	}// isTimeout
+
+    /**
+     * Sets the flag that determines whether this <tt>ModbusIOException</tt> was
+     * caused by a timeout.
+     * <p>
+     *
+     * @param b true if timed out, false otherwise.
+     */
+    public void setTimeout(boolean b) {
+		m_Timeout = b;
+	}// setTimeout
+
+    /**
+     * Tests if this <tt>ModbusIOException</tt> is caused by a frame
+     * with a wrong CRC or LRC.
+     * <p>
+     *
+     * @return true if the checksum was wrong, false otherwise.
+     */
+    public boolean isChecksumError() {
+		return m_ChecksumError;
+	}// isChecksumError
+
+    /**
+     * Sets the flag that determines whether this <tt>ModbusIOException</tt> was
+     * caused by a frame with a wrong CRC or LRC.
+     * <p>
+     *
+     * @param b true if the checksum was wrong, false otherwise.
+     */
+    public void setChecksumError(boolean b) {
+		m_ChecksumError = b;
+	}// setChecksumError
+
 }// ModbusIOException
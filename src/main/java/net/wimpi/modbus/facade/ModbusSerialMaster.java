@@ -46,6 +46,8 @@ public class ModbusSerialMaster {
   private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
   private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
   private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+  private ReadWriteMultipleRequest m_ReadWriteMultipleRequest;
+  private MaskWriteRegisterRequest m_MaskWriteRegisterRequest;
 
     /**
      * Constructs a new master facade instance for communication
@@ -65,6 +67,8 @@ public class ModbusSerialMaster {
       m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
       m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
       m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+      m_ReadWriteMultipleRequest = new ReadWriteMultipleRequest();
+      m_MaskWriteRegisterRequest = new MaskWriteRegisterRequest();
     } catch (Exception e) {
       throw new RuntimeException(e.getMessage());
     }
@@ -76,7 +80,7 @@ public class ModbusSerialMaster {
      * @param unitid the unit identifier.
      */
     public void setUnitIdentifier(int unitid) {
-    ModbusCoupler.getReference().setUnitID(unitid);
+    m_Connection.getCoupler().setUnitID(unitid);
   }//setUnitIdentifier
 
     /**
@@ -85,9 +89,30 @@ public class ModbusSerialMaster {
      * @return the unit identifier.
      */
     public int getUnitIdentifier() {
-    return ModbusCoupler.getReference().getUnitID();
+    return m_Connection.getCoupler().getUnitID();
   }//setUnitIdentifier
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>ModbusSerialMaster</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return m_Connection.getCoupler();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>ModbusSerialMaster</tt>
+     * is used in. It provides the process image factory for the
+     * responses read and the metrics and tracing hooks.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Connection.setCoupler(coupler);
+  }//setCoupler
+
     /**
      * Connects this <tt>ModbusSerialMaster</tt> with the slave.
      *
@@ -277,4 +302,53 @@ public class ModbusSerialMaster {
     m_Transaction.execute();
   }//writeMultipleRegisters
 
+    /**
+     * Writes a number of registers to the slave and reads a
+     * given number of registers back within one transaction.
+     * <p>
+     * The slave performs the write before the read.
+     *
+     * @param unitid    the slave unit id.
+     * @param readref   the offset of the register to start reading from.
+     * @param count     the number of registers to be read.
+     * @param writeref  the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of                  the registers to be written.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized Register[] readWriteMultipleRegisters(int unitid, int readref, int count, int writeref, Register[] registers)
+      throws ModbusException {
+    m_ReadWriteMultipleRequest.setUnitID(unitid);
+    m_ReadWriteMultipleRequest.setReadReference(readref);
+    m_ReadWriteMultipleRequest.setReadWordCount(count);
+    m_ReadWriteMultipleRequest.setWriteReference(writeref);
+    m_ReadWriteMultipleRequest.setRegisters(registers);
+    m_Transaction.setRequest(m_ReadWriteMultipleRequest);
+    m_Transaction.execute();
+    return ((ReadWriteMultipleResponse) m_Transaction.getResponse()).getRegisters();
+  }//readWriteMultipleRegisters
+
+    /**
+     * Modifies single bits of a register in the slave, without
+     * a separate read.
+     * <p>
+     * The slave sets the register to
+     * <tt>(current &amp; andmask) | (ormask &amp; ~andmask)</tt>.
+     *
+     * @param unitid  the slave unit id.
+     * @param ref     the offset of the register to be modified.
+     * @param andmask the AND mask; bits set are kept from the current value.
+     * @param ormask  the OR mask; supplies the bits cleared in the AND mask.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized void maskWriteRegister(int unitid, int ref, int andmask, int ormask)
+      throws ModbusException {
+    m_MaskWriteRegisterRequest.setUnitID(unitid);
+    m_MaskWriteRegisterRequest.setReference(ref);
+    m_MaskWriteRegisterRequest.setAndMask(andmask);
+    m_MaskWriteRegisterRequest.setOrMask(ormask);
+    m_Transaction.setRequest(m_MaskWriteRegisterRequest);
+    m_Transaction.execute();
+  }//maskWriteRegister
+
 }//class ModbusSerialMaster
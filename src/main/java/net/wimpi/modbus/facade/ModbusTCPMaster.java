@@ -16,9 +16,12 @@
 
 package net.wimpi.modbus.facade;
 
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.io.ModbusTCPTransaction;
+import net.wimpi.modbus.io.ModbusWriteCoalescer;
 import net.wimpi.modbus.msg.*;
+import net.wimpi.modbus.net.TCPConnectionManager;
 import net.wimpi.modbus.net.TCPMasterConnection;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.Register;
@@ -26,6 +29,7 @@ import net.wimpi.modbus.util.BitVector;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.Future;
 
 /**
  * Modbus/TCP Master facade.
@@ -36,6 +40,7 @@ import java.net.UnknownHostException;
 public class ModbusTCPMaster {
 
   private TCPMasterConnection m_Connection;
+  private TCPConnectionManager m_ConnectionManager;
   private InetAddress m_SlaveAddress;
   private ModbusTCPTransaction m_Transaction;
   private ReadCoilsRequest m_ReadCoilsRequest;
@@ -46,7 +51,12 @@ public class ModbusTCPMaster {
   private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
   private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
   private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+  private ReadWriteMultipleRequest m_ReadWriteMultipleRequest;
+  private MaskWriteRegisterRequest m_MaskWriteRegisterRequest;
   private boolean m_Reconnecting = false;
+  private boolean m_AutoReconnecting = false;
+  private volatile ModbusWriteCoalescer m_WriteCoalescer;
+  private int m_CoalescingWindow = 0;
 
     /**
      * Constructs a new master facade instance for communication
@@ -66,6 +76,8 @@ public class ModbusTCPMaster {
       m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
       m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
       m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+      m_ReadWriteMultipleRequest = new ReadWriteMultipleRequest();
+      m_MaskWriteRegisterRequest = new MaskWriteRegisterRequest();
 
     } catch (UnknownHostException e) {
       throw new RuntimeException(e.getMessage());
@@ -84,30 +96,128 @@ public class ModbusTCPMaster {
     m_Connection.setPort(port);
   }//constructor
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>ModbusTCPMaster</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return m_Connection.getCoupler();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>ModbusTCPMaster</tt>
+     * is used in. It provides the process image factory for the
+     * responses read and the metrics and tracing hooks.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Connection.setCoupler(coupler);
+  }//setCoupler
+
     /**
      * Connects this <tt>ModbusTCPMaster</tt> with the slave.
+     * <p>
+     * If auto reconnecting is enabled, this method will not fail
+     * when the slave is unreachable; the connection is established
+     * in the background and transactions fail fast meanwhile.
      *
      * @throws Exception if the connection cannot be established.
      */
     public void connect()
       throws Exception {
-    if (m_Connection != null && !m_Connection.isConnected()) {
+    if (m_AutoReconnecting) {
+      if (m_ConnectionManager == null) {
+        m_ConnectionManager = new TCPConnectionManager(m_Connection);
+        m_ConnectionManager.start();
+        m_Transaction = new ModbusTCPTransaction(m_ConnectionManager);
+      }
+    } else if (m_Connection != null && !m_Connection.isConnected()) {
       m_Connection.connect();
       m_Transaction = new ModbusTCPTransaction(m_Connection);
       m_Transaction.setReconnecting(m_Reconnecting);
     }
+    if (m_CoalescingWindow > 0 && m_WriteCoalescer == null && m_Transaction != null) {
+      m_WriteCoalescer = new ModbusWriteCoalescer(m_Transaction, this, m_CoalescingWindow);
+      m_WriteCoalescer.start();
+    }
   }//connect
 
     /**
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
     public void disconnect() {
-    if (m_Connection != null && m_Connection.isConnected()) {
+    if (m_WriteCoalescer != null) {
+      m_WriteCoalescer.stop();
+      m_WriteCoalescer = null;
+    }
+    if (m_ConnectionManager != null) {
+      m_ConnectionManager.stop();
+      m_ConnectionManager = null;
+      m_Transaction = null;
+    } else if (m_Connection != null && m_Connection.isConnected()) {
       m_Connection.close();
       m_Transaction = null;
     }
   }//disconnect
 
+    /**
+     * Sets the timeout for establishing the connection
+     * to the slave.
+     *
+     * @param timeout the connect timeout in milliseconds.
+     */
+    public void setConnectTimeout(int timeout) {
+    m_Connection.setConnectTimeout(timeout);
+  }//setConnectTimeout
+
+    /**
+     * Sets the flag that specifies whether a lost or unavailable
+     * connection is reestablished in the background, using an
+     * exponential backoff between attempts.
+     * Has to be set before connecting.
+     *
+     * @param b true if reconnecting in the background, false otherwise.
+     */
+    public void setAutoReconnecting(boolean b) {
+    m_AutoReconnecting = b;
+  }//setAutoReconnecting
+
+    /**
+     * Tests if a lost or unavailable connection is reestablished
+     * in the background.
+     *
+     * @return true if reconnecting in the background, false otherwise.
+     */
+    public boolean isAutoReconnecting() {
+    return m_AutoReconnecting;
+  }//isAutoReconnecting
+
+    /**
+     * Sets the time window in which single writes queued through
+     * {@link #writeSingleRegisterAsync(int, Register)} and
+     * {@link #writeCoilAsync(int, int, boolean)} are collected and
+     * merged into multiple writes. A window of 0 disables coalescing.
+     * Has to be set before connecting.
+     *
+     * @param window the coalescing window in milliseconds.
+     */
+    public void setWriteCoalescing(int window) {
+    m_CoalescingWindow = window;
+  }//setWriteCoalescing
+
+    /**
+     * Returns the time window in which single writes are
+     * coalesced.
+     *
+     * @return the coalescing window in milliseconds, 0 if disabled.
+     */
+    public int getWriteCoalescing() {
+    return m_CoalescingWindow;
+  }//getWriteCoalescing
+
     /**
      * Sets the flag that specifies whether to maintain a
      * constant connection or reconnect for every transaction.
@@ -283,4 +393,87 @@ public class ModbusTCPMaster {
     m_Transaction.execute();
   }//writeMultipleRegisters
 
+    /**
+     * Writes a number of registers to the slave and reads a
+     * given number of registers back within one transaction.
+     * <p>
+     * The slave performs the write before the read.
+     *
+     * @param readref   the offset of the register to start reading from.
+     * @param count     the number of registers to be read.
+     * @param writeref  the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of                  the registers to be written.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized Register[] readWriteMultipleRegisters(int readref, int count, int writeref, Register[] registers)
+      throws ModbusException {
+    m_ReadWriteMultipleRequest.setReadReference(readref);
+    m_ReadWriteMultipleRequest.setReadWordCount(count);
+    m_ReadWriteMultipleRequest.setWriteReference(writeref);
+    m_ReadWriteMultipleRequest.setRegisters(registers);
+    m_Transaction.setRequest(m_ReadWriteMultipleRequest);
+    m_Transaction.execute();
+    return ((ReadWriteMultipleResponse) m_Transaction.getResponse()).getRegisters();
+  }//readWriteMultipleRegisters
+
+    /**
+     * Modifies single bits of a register in the slave, without
+     * a separate read.
+     * <p>
+     * The slave sets the register to
+     * <tt>(current &amp; andmask) | (ormask &amp; ~andmask)</tt>.
+     *
+     * @param ref     the offset of the register to be modified.
+     * @param andmask the AND mask; bits set are kept from the current value.
+     * @param ormask  the OR mask; supplies the bits cleared in the AND mask.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized void maskWriteRegister(int ref, int andmask, int ormask)
+      throws ModbusException {
+    m_MaskWriteRegisterRequest.setReference(ref);
+    m_MaskWriteRegisterRequest.setAndMask(andmask);
+    m_MaskWriteRegisterRequest.setOrMask(ormask);
+    m_Transaction.setRequest(m_MaskWriteRegisterRequest);
+    m_Transaction.execute();
+  }//maskWriteRegister
+
+    /**
+     * Queues a single register write for coalescing with
+     * adjacent writes.
+     *
+     * @param ref      the offset of the register to be written.
+     * @param register a <tt>Register</tt> holding the value of the register                 to be written.
+     * @return a <tt>Future</tt> completing when the write has been executed;
+     *         failures are reported as cause of an <tt>ExecutionException</tt>.
+     * @throws IllegalStateException if write coalescing is not enabled or
+     *                               the master is not connected.
+     */
+    public Future<Void> writeSingleRegisterAsync(int ref, Register register) {
+    return getWriteCoalescer().writeRegister(m_WriteSingleRegisterRequest.getUnitID(), ref, register.getValue());
+  }//writeSingleRegisterAsync
+
+    /**
+     * Queues a coil write for coalescing with adjacent writes.
+     *
+     * @param unitid the slave unit id.
+     * @param ref    the offset of the coil to be written.
+     * @param state  the coil state to be written.
+     * @return a <tt>Future</tt> completing when the write has been executed;
+     *         failures are reported as cause of an <tt>ExecutionException</tt>.
+     * @throws IllegalStateException if write coalescing is not enabled or
+     *                               the master is not connected.
+     */
+    public Future<Void> writeCoilAsync(int unitid, int ref, boolean state) {
+    return getWriteCoalescer().writeCoil(unitid, ref, state);
+  }//writeCoilAsync
+
+  private ModbusWriteCoalescer getWriteCoalescer() {
+    ModbusWriteCoalescer wc = m_WriteCoalescer;
+    if (wc == null) {
+      throw new IllegalStateException("Write coalescing not enabled or not connected.");
+    }
+    return wc;
+  }//getWriteCoalescer
+
 }//class ModbusTCPMaster
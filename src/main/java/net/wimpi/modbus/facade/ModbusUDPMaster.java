@@ -16,6 +16,7 @@
 
 package net.wimpi.modbus.facade;
 
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.io.ModbusUDPTransaction;
 import net.wimpi.modbus.msg.*;
@@ -46,6 +47,8 @@ public class ModbusUDPMaster {
   private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
   private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
   private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+  private ReadWriteMultipleRequest m_ReadWriteMultipleRequest;
+  private MaskWriteRegisterRequest m_MaskWriteRegisterRequest;
 
     /**
      * Constructs a new master facade instance for communication
@@ -65,6 +68,8 @@ public class ModbusUDPMaster {
       m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
       m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
       m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+      m_ReadWriteMultipleRequest = new ReadWriteMultipleRequest();
+      m_MaskWriteRegisterRequest = new MaskWriteRegisterRequest();
 
     } catch (UnknownHostException e) {
       throw new RuntimeException(e.getMessage());
@@ -83,6 +88,27 @@ public class ModbusUDPMaster {
     m_Connection.setPort(port);
   }//constructor
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>ModbusUDPMaster</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return m_Connection.getCoupler();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>ModbusUDPMaster</tt>
+     * is used in. It provides the process image factory for the
+     * responses read and the metrics and tracing hooks.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Connection.setCoupler(coupler);
+  }//setCoupler
+
     /**
      * Connects this <tt>ModbusUDPMaster</tt> with the slave.
      *
@@ -258,4 +284,49 @@ public class ModbusUDPMaster {
     m_Transaction.execute();
   }//writeMultipleRegisters
 
+    /**
+     * Writes a number of registers to the slave and reads a
+     * given number of registers back within one transaction.
+     * <p>
+     * The slave performs the write before the read.
+     *
+     * @param readref   the offset of the register to start reading from.
+     * @param count     the number of registers to be read.
+     * @param writeref  the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of                  the registers to be written.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized Register[] readWriteMultipleRegisters(int readref, int count, int writeref, Register[] registers)
+      throws ModbusException {
+    m_ReadWriteMultipleRequest.setReadReference(readref);
+    m_ReadWriteMultipleRequest.setReadWordCount(count);
+    m_ReadWriteMultipleRequest.setWriteReference(writeref);
+    m_ReadWriteMultipleRequest.setRegisters(registers);
+    m_Transaction.setRequest(m_ReadWriteMultipleRequest);
+    m_Transaction.execute();
+    return ((ReadWriteMultipleResponse) m_Transaction.getResponse()).getRegisters();
+  }//readWriteMultipleRegisters
+
+    /**
+     * Modifies single bits of a register in the slave, without
+     * a separate read.
+     * <p>
+     * The slave sets the register to
+     * <tt>(current &amp; andmask) | (ormask &amp; ~andmask)</tt>.
+     *
+     * @param ref     the offset of the register to be modified.
+     * @param andmask the AND mask; bits set are kept from the current value.
+     * @param ormask  the OR mask; supplies the bits cleared in the AND mask.
+     * @throws ModbusException if an I/O error, a slave exception or                         a transaction error occurs.
+     */
+    public synchronized void maskWriteRegister(int ref, int andmask, int ormask)
+      throws ModbusException {
+    m_MaskWriteRegisterRequest.setReference(ref);
+    m_MaskWriteRegisterRequest.setAndMask(andmask);
+    m_MaskWriteRegisterRequest.setOrMask(ormask);
+    m_Transaction.setRequest(m_MaskWriteRegisterRequest);
+    m_Transaction.execute();
+  }//maskWriteRegister
+
 }//class ModbusUDPMaster
@@ -0,0 +1,61 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+/**
+ * Class implementing the reading side of a {@link BitOutput}.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class BitInput {
+
+  private final byte[] m_Buffer;
+  private int m_Position;
+
+  BitInput(byte[] buffer, int off) {
+    m_Buffer = buffer;
+    m_Position = off * 8;
+  }//constructor
+
+  /**
+   * Reads the given number of bits.
+   *
+   * @param count the number of bits (1 to 64).
+   * @return the bits read, right aligned.
+   */
+  long readBits(int count) {
+    long v = 0;
+    while (count > 0) {
+      int avail = 8 - (m_Position & 7);
+      int n = Math.min(avail, count);
+      int bits = ((m_Buffer[m_Position >>> 3] & 0xff) >>> (avail - n)) & ((1 << n) - 1);
+      v = (v << n) | bits;
+      m_Position += n;
+      count -= n;
+    }
+    return v;
+  }//readBits
+
+  boolean readBit() {
+    int avail = 8 - (m_Position & 7);
+    boolean bit = ((m_Buffer[m_Position >>> 3] >>> (avail - 1)) & 1) != 0;
+    m_Position++;
+    return bit;
+  }//readBit
+
+}//class BitInput
@@ -0,0 +1,79 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a growable buffer that is
+ * written bit by bit, most significant bit first.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class BitOutput {
+
+  private byte[] m_Buffer;
+  private int m_Position;
+
+  BitOutput(int size) {
+    m_Buffer = new byte[Math.max(8, size)];
+  }//constructor
+
+  /**
+   * Writes the given number of low order bits of the value.
+   *
+   * @param value the bits to be written.
+   * @param count the number of bits (1 to 64).
+   */
+  void writeBits(long value, int count) {
+    ensureCapacity(m_Position + count);
+    while (count > 0) {
+      int free = 8 - (m_Position & 7);
+      int n = Math.min(free, count);
+      int bits = (int) (value >>> (count - n)) & ((1 << n) - 1);
+      m_Buffer[m_Position >>> 3] |= (byte) (bits << (free - n));
+      m_Position += n;
+      count -= n;
+    }
+  }//writeBits
+
+  void writeBit(boolean bit) {
+    writeBits(bit ? 1 : 0, 1);
+  }//writeBit
+
+  int getByteLength() {
+    return (m_Position + 7) >>> 3;
+  }//getByteLength
+
+  byte[] getBuffer() {
+    return m_Buffer;
+  }//getBuffer
+
+  void reset() {
+    Arrays.fill(m_Buffer, 0, getByteLength(), (byte) 0);
+    m_Position = 0;
+  }//reset
+
+  private void ensureCapacity(int bits) {
+    int bytes = (bits + 7) >>> 3;
+    if (bytes > m_Buffer.length) {
+      m_Buffer = Arrays.copyOf(m_Buffer, Math.max(bytes, m_Buffer.length * 2));
+    }
+  }//ensureCapacity
+
+}//class BitOutput
@@ -0,0 +1,216 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+/**
+ * Class implementing the compression of a block of
+ * samples of one point.
+ * <p>
+ * Timestamps and values are kept in separate columns.
+ * Timestamps are encoded as the difference of consecutive
+ * deltas, which is zero for regular polling and then takes a
+ * single bit. Values are encoded as the XOR with the previous
+ * value, which is zero for an unchanged value (one bit), and
+ * otherwise only its meaningful bits are written.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class BlockEncoder {
+
+  private final BitOutput m_Times = new BitOutput(64);
+  private final BitOutput m_Values = new BitOutput(64);
+  private int m_Count;
+  private long m_FirstTime;
+  private long m_LastTime;
+  private long m_LastDelta;
+  private long m_LastValue;
+  private int m_LastLeading;
+  private int m_LastTrailing;
+  private boolean m_Window;
+
+  /**
+   * Appends a sample; its time must not be before
+   * the time of the last sample.
+   *
+   * @param time  the time of the sample.
+   * @param value the value of the sample.
+   */
+  void append(long time, double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    if (m_Count == 0) {
+      m_FirstTime = time;
+      m_Values.writeBits(bits, 64);
+    } else {
+      long delta = time - m_LastTime;
+      writeDeltaOfDelta(delta - m_LastDelta);
+      m_LastDelta = delta;
+      writeValue(bits ^ m_LastValue);
+    }
+    m_LastTime = time;
+    m_LastValue = bits;
+    m_Count++;
+  }//append
+
+  private void writeDeltaOfDelta(long dod) {
+    if (dod == 0) {
+      m_Times.writeBits(0, 1);
+    } else if (dod >= -63 && dod <= 64) {
+      m_Times.writeBits(0x2, 2);
+      m_Times.writeBits(dod + 63, 7);
+    } else if (dod >= -255 && dod <= 256) {
+      m_Times.writeBits(0x6, 3);
+      m_Times.writeBits(dod + 255, 9);
+    } else if (dod >= -2047 && dod <= 2048) {
+      m_Times.writeBits(0xE, 4);
+      m_Times.writeBits(dod + 2047, 12);
+    } else {
+      m_Times.writeBits(0xF, 4);
+      m_Times.writeBits(dod, 64);
+    }
+  }//writeDeltaOfDelta
+
+  private void writeValue(long xor) {
+    if (xor == 0) {
+      m_Values.writeBits(0, 1);
+      return;
+    }
+    int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+    int trailing = Long.numberOfTrailingZeros(xor);
+    if (m_Window && leading >= m_LastLeading && trailing >= m_LastTrailing) {
+      //fits the meaningful bits of the previous value
+      m_Values.writeBits(0x2, 2);
+      m_Values.writeBits(xor >>> m_LastTrailing, 64 - m_LastLeading - m_LastTrailing);
+    } else {
+      int meaningful = 64 - leading - trailing;
+      m_Values.writeBits(0x3, 2);
+      m_Values.writeBits(leading, 5);
+      m_Values.writeBits(meaningful - 1, 6);
+      m_Values.writeBits(xor >>> trailing, meaningful);
+      m_LastLeading = leading;
+      m_LastTrailing = trailing;
+      m_Window = true;
+    }
+  }//writeValue
+
+  int getCount() {
+    return m_Count;
+  }//getCount
+
+  long getFirstTime() {
+    return m_FirstTime;
+  }//getFirstTime
+
+  long getLastTime() {
+    return m_LastTime;
+  }//getLastTime
+
+  byte[] getTimes() {
+    return m_Times.getBuffer();
+  }//getTimes
+
+  int getTimesLength() {
+    return m_Times.getByteLength();
+  }//getTimesLength
+
+  byte[] getValues() {
+    return m_Values.getBuffer();
+  }//getValues
+
+  int getValuesLength() {
+    return m_Values.getByteLength();
+  }//getValuesLength
+
+  /**
+   * Discards the samples, to start a new block.
+   */
+  void reset() {
+    m_Times.reset();
+    m_Values.reset();
+    m_Count = 0;
+    m_LastDelta = 0;
+    m_Window = false;
+  }//reset
+
+  /**
+   * Decodes the samples of a block that lie within the given
+   * time range, and passes them to the visitor.
+   *
+   * @param times     the buffer holding the time column.
+   * @param timesoff  the offset of the time column.
+   * @param values    the buffer holding the value column.
+   * @param valuesoff the offset of the value column.
+   * @param first     the time of the first sample.
+   * @param count     the number of samples in the block.
+   * @param from      the start of the range (inclusive).
+   * @param to        the end of the range (inclusive).
+   * @param visitor   the <tt>SampleVisitor</tt>.
+   * @return the number of samples passed to the visitor.
+   */
+  static int decode(byte[] times, int timesoff, byte[] values, int valuesoff,
+                    long first, int count, long from, long to, SampleVisitor visitor) {
+    BitInput tin = new BitInput(times, timesoff);
+    BitInput vin = new BitInput(values, valuesoff);
+    long time = first;
+    long delta = 0;
+    long bits = vin.readBits(64);
+    int leading = 0;
+    int trailing = 0;
+    int visited = 0;
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        delta += readDeltaOfDelta(tin);
+        time += delta;
+        if (time > to) {
+          break;
+        }
+        if (vin.readBit()) {
+          if (vin.readBit()) {
+            leading = (int) vin.readBits(5);
+            int meaningful = (int) vin.readBits(6) + 1;
+            trailing = 64 - leading - meaningful;
+          }
+          bits ^= vin.readBits(64 - leading - trailing) << trailing;
+        }
+      } else if (time > to) {
+        break;
+      }
+      if (time >= from) {
+        visitor.sample(time, Double.longBitsToDouble(bits));
+        visited++;
+      }
+    }
+    return visited;
+  }//decode
+
+  private static long readDeltaOfDelta(BitInput in) {
+    if (!in.readBit()) {
+      return 0;
+    }
+    if (!in.readBit()) {
+      return in.readBits(7) - 63;
+    }
+    if (!in.readBit()) {
+      return in.readBits(9) - 255;
+    }
+    if (!in.readBit()) {
+      return in.readBits(12) - 2047;
+    }
+    return in.readBits(64);
+  }//readDeltaOfDelta
+
+}//class BlockEncoder
@@ -0,0 +1,445 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.util.BitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class implementing an embedded, append-only
+ * time-series store for polled register data.
+ * <p>
+ * Samples are collected per point into blocks of
+ * {@link #setBlockSize(int) block size} samples, which are
+ * compressed column by column (delta of delta for the times,
+ * XOR with the previous value for the values) and appended to
+ * memory-mapped segment files in the given directory. A point
+ * polled regularly with a slowly changing value takes about
+ * two bits per sample.
+ * <p>
+ * The index of the blocks is kept in memory and rebuilt from
+ * the segment files when the directory is opened again. Samples
+ * of blocks not yet sealed are lost on a crash; use
+ * {@link #flush()} to seal and persist them.
+ * <p>
+ * A master feeds the historian with the results of its reads:
+ * <pre>
+ * InputRegister[] regs = master.readInputRegisters(unit, ref, count);
+ * historian.recordRegisters("pump1/", ref, regs, System.currentTimeMillis());
+ * </pre>
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class Historian {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(Historian.class);
+
+  /**
+   * Defines the default size of a segment file (64 MB).
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Defines the default number of samples in a block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  private final File m_Directory;
+  private final ConcurrentHashMap<String, Point> m_Points = new ConcurrentHashMap<String, Point>();
+  private final List<Segment> m_Segments = new ArrayList<Segment>();
+  private Segment m_Segment;
+  private int m_SegmentSize = DEFAULT_SEGMENT_SIZE;
+  private volatile int m_BlockSize = DEFAULT_BLOCK_SIZE;
+  private boolean m_Closed;
+
+    /**
+     * Constructs a new <tt>Historian</tt> storing its
+     * segment files in the given directory. Existing segment
+     * files are opened and their blocks indexed.
+     *
+     * @param dir the directory of the segment files.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    public Historian(File dir) throws IOException {
+    m_Directory = dir;
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create directory " + dir);
+    }
+    String[] names = dir.list();
+    Arrays.sort(names);
+    try {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].endsWith(".seg")) {
+          int index = Integer.parseInt(names[i].substring(0, names[i].length() - 4));
+          Segment seg = new Segment(dir, index, m_SegmentSize);
+          m_Segments.add(seg);
+          seg.scan(this);
+          m_Segment = seg;
+        }
+      }
+    } catch (NumberFormatException ex) {
+      close();
+      throw new IOException("Invalid segment file name in " + dir);
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+    c_Log.debug("Opened {} with {} segments and {} points",
+        dir, m_Segments.size(), m_Points.size());
+  }//constructor
+
+    /**
+     * Sets the size of new segment files.
+     *
+     * @param size the size in bytes.
+     */
+    public synchronized void setSegmentSize(int size) {
+    m_SegmentSize = Math.max(64 * 1024, size);
+  }//setSegmentSize
+
+    /**
+     * Returns the size of new segment files.
+     *
+     * @return the size in bytes.
+     */
+    public synchronized int getSegmentSize() {
+    return m_SegmentSize;
+  }//getSegmentSize
+
+    /**
+     * Sets the number of samples collected per point
+     * before the block is compressed and written.
+     * Larger blocks compress slightly better, but more
+     * samples are held in memory.
+     *
+     * @param size the number of samples in a block.
+     */
+    public void setBlockSize(int size) {
+    m_BlockSize = Math.max(2, size);
+  }//setBlockSize
+
+    /**
+     * Returns the number of samples in a block.
+     *
+     * @return the number of samples in a block.
+     */
+    public int getBlockSize() {
+    return m_BlockSize;
+  }//getBlockSize
+
+    /**
+     * Records a sample of a point.
+     *
+     * @param point the name of the point.
+     * @param time  the time of the sample in milliseconds since the epoch.
+     * @param value the value of the sample.
+     * @throws IOException if a block cannot be written.
+     * @throws IllegalArgumentException if the time is before the last
+     *                                  time recorded for the point.
+     */
+    public void record(String point, long time, double value)
+      throws IOException {
+    Point p = getPoint(point);
+    synchronized (p) {
+      if (time < p.m_LastTime) {
+        throw new IllegalArgumentException("Sample of " + point + " out of order");
+      }
+      p.m_Open.append(time, value);
+      p.m_LastTime = time;
+      if (p.m_Open.getCount() >= m_BlockSize) {
+        seal(p);
+      }
+    }
+  }//record
+
+    /**
+     * Records the values of registers read by a master, as
+     * unsigned 16 bit values. The point of each register is
+     * named by the prefix followed by its reference.
+     *
+     * @param prefix the prefix of the point names.
+     * @param ref    the reference of the first register.
+     * @param regs   the registers read.
+     * @param time   the time of the read in milliseconds since the epoch.
+     * @throws IOException if a block cannot be written.
+     */
+    public void recordRegisters(String prefix, int ref, InputRegister[] regs, long time)
+      throws IOException {
+    for (int i = 0; i < regs.length; i++) {
+      record(prefix + (ref + i), time, regs[i].toUnsignedShort());
+    }
+  }//recordRegisters
+
+    /**
+     * Records the states of coils or discrete inputs read by a
+     * master, as 0 or 1. The point of each bit is named by the
+     * prefix followed by its reference.
+     *
+     * @param prefix the prefix of the point names.
+     * @param ref    the reference of the first bit.
+     * @param bits   the bits read.
+     * @param time   the time of the read in milliseconds since the epoch.
+     * @throws IOException if a block cannot be written.
+     */
+    public void recordBits(String prefix, int ref, BitVector bits, long time)
+      throws IOException {
+    for (int i = 0; i < bits.size(); i++) {
+      record(prefix + (ref + i), time, bits.getBit(i) ? 1 : 0);
+    }
+  }//recordBits
+
+    /**
+     * Queries the samples of a point within a time range.
+     * The samples are passed to the visitor in the order of their
+     * time, while the point is locked for recording.
+     *
+     * @param point   the name of the point.
+     * @param from    the start of the range (inclusive).
+     * @param to      the end of the range (inclusive).
+     * @param visitor the <tt>SampleVisitor</tt> receiving the samples.
+     * @return the number of samples passed to the visitor.
+     */
+    public int query(String point, long from, long to, SampleVisitor visitor) {
+    Point p = m_Points.get(point);
+    if (p == null || from > to) {
+      return 0;
+    }
+    int visited = 0;
+    synchronized (p) {
+      byte[] data = p.m_Buffer;
+      for (int i = findBlock(p, from); i < p.m_Blocks && p.m_First[i] <= to; i++) {
+        int tlen = p.m_TimesLength[i];
+        int len = tlen + p.m_ValuesLength[i];
+        if (data.length < len) {
+          data = new byte[len];
+          p.m_Buffer = data;
+        }
+        p.m_Segment[i].read(p.m_Offset[i], data, len);
+        visited += BlockEncoder.decode(data, 0, data, tlen,
+            p.m_First[i], p.m_Count[i], from, to, visitor);
+      }
+      BlockEncoder open = p.m_Open;
+      if (open.getCount() > 0 && open.getLastTime() >= from && open.getFirstTime() <= to) {
+        visited += BlockEncoder.decode(open.getTimes(), 0, open.getValues(), 0,
+            open.getFirstTime(), open.getCount(), from, to, visitor);
+      }
+    }
+    return visited;
+  }//query
+
+    /**
+     * Queries the samples of a point within a time range.
+     *
+     * @param point the name of the point.
+     * @param from  the start of the range (inclusive).
+     * @param to    the end of the range (inclusive).
+     * @return the samples as <tt>TimeSeries</tt>.
+     */
+    public TimeSeries query(String point, long from, long to) {
+    TimeSeries series = new TimeSeries();
+    query(point, from, to, series);
+    return series;
+  }//query
+
+    /**
+     * Returns the names of all points of this historian.
+     *
+     * @return the point names, sorted.
+     */
+    public Set<String> getPointNames() {
+    return new TreeSet<String>(m_Points.keySet());
+  }//getPointNames
+
+    /**
+     * Seals the blocks of all points and writes the
+     * segment files to the storage device.
+     *
+     * @throws IOException if a block cannot be written.
+     */
+    public void flush() throws IOException {
+    for (Point p : m_Points.values()) {
+      synchronized (p) {
+        if (p.m_Open.getCount() > 0) {
+          seal(p);
+        }
+      }
+    }
+    synchronized (this) {
+      for (Segment seg : m_Segments) {
+        seg.force();
+      }
+    }
+  }//flush
+
+    /**
+     * Flushes and closes this historian.
+     */
+    public void close() {
+    try {
+      if (!isClosed()) {
+        flush();
+      }
+    } catch (IOException ex) {
+      c_Log.error("Flushing {} failed", m_Directory, ex);
+    }
+    synchronized (this) {
+      for (Segment seg : m_Segments) {
+        seg.close();
+      }
+      m_Closed = true;
+    }
+  }//close
+
+  private synchronized boolean isClosed() {
+    return m_Closed;
+  }//isClosed
+
+  /**
+   * Returns the point with the given name, creating it
+   * if it does not exist.
+   */
+  private Point getPoint(String name) {
+    Point p = m_Points.get(name);
+    if (p == null) {
+      p = new Point(name);
+      Point other = m_Points.putIfAbsent(name, p);
+      if (other != null) {
+        p = other;
+      }
+    }
+    return p;
+  }//getPoint
+
+  /**
+   * Writes the open block of the given point to the segment
+   * and starts a new block. Must be called holding the lock
+   * of the point.
+   */
+  private void seal(Point p) throws IOException {
+    BlockEncoder enc = p.m_Open;
+    int len = Segment.recordLength(p.m_UTF8, enc.getTimesLength(), enc.getValuesLength());
+    Segment seg;
+    int off;
+    synchronized (this) {
+      if (m_Closed) {
+        throw new IOException("Historian closed");
+      }
+      if (m_Segment == null || m_Segment.getFree() < len) {
+        int index = (m_Segment == null) ? 0 : m_Segment.getIndex() + 1;
+        m_Segment = new Segment(m_Directory, index,
+            Math.max(m_SegmentSize, Segment.HEADER_LENGTH + len));
+        m_Segments.add(m_Segment);
+      }
+      seg = m_Segment;
+      off = seg.append(p.m_UTF8, enc);
+    }
+    p.addBlock(seg, off, enc.getTimesLength(), enc.getValuesLength(),
+        enc.getFirstTime(), enc.getLastTime(), enc.getCount());
+    enc.reset();
+  }//seal
+
+  /**
+   * Adds a block found scanning a segment to the index.
+   */
+  void addBlock(String name, Segment seg, int off, int timeslen, int valueslen,
+                long first, long last, int count) {
+    Point p = getPoint(name);
+    synchronized (p) {
+      p.addBlock(seg, off, timeslen, valueslen, first, last, count);
+      p.m_LastTime = Math.max(p.m_LastTime, last);
+    }
+  }//addBlock
+
+  /**
+   * Returns the index of the first block of the point
+   * with a last time not before the given time.
+   */
+  private static int findBlock(Point p, long from) {
+    int lo = 0;
+    int hi = p.m_Blocks;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (p.m_Last[mid] < from) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }//findBlock
+
+  /**
+   * Class holding the open block and the block index of
+   * a point. The index is kept in primitive arrays, which
+   * are accessed holding the lock of the point.
+   */
+  private static final class Point {
+
+    final byte[] m_UTF8;
+    final BlockEncoder m_Open = new BlockEncoder();
+    long m_LastTime = Long.MIN_VALUE;
+    byte[] m_Buffer = new byte[0];
+    int m_Blocks;
+    Segment[] m_Segment = new Segment[8];
+    int[] m_Offset = new int[8];
+    int[] m_TimesLength = new int[8];
+    int[] m_ValuesLength = new int[8];
+    long[] m_First = new long[8];
+    long[] m_Last = new long[8];
+    int[] m_Count = new int[8];
+
+    Point(String name) {
+      m_UTF8 = name.getBytes(Segment.UTF8);
+    }//constructor
+
+    void addBlock(Segment segment, int off, int timeslen, int valueslen,
+                  long first, long last, int count) {
+      if (m_Blocks == m_Segment.length) {
+        int size = m_Blocks * 2;
+        m_Segment = Arrays.copyOf(m_Segment, size);
+        m_Offset = Arrays.copyOf(m_Offset, size);
+        m_TimesLength = Arrays.copyOf(m_TimesLength, size);
+        m_ValuesLength = Arrays.copyOf(m_ValuesLength, size);
+        m_First = Arrays.copyOf(m_First, size);
+        m_Last = Arrays.copyOf(m_Last, size);
+        m_Count = Arrays.copyOf(m_Count, size);
+      }
+      m_Segment[m_Blocks] = segment;
+      m_Offset[m_Blocks] = off;
+      m_TimesLength[m_Blocks] = timeslen;
+      m_ValuesLength[m_Blocks] = valueslen;
+      m_First[m_Blocks] = first;
+      m_Last[m_Blocks] = last;
+      m_Count[m_Blocks] = count;
+      m_Blocks++;
+    }//addBlock
+
+  }//class Point
+
+}//class Historian
@@ -0,0 +1,37 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+/**
+ * Interface defining a receiver of the samples
+ * returned by a query of the {@link Historian}.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public interface SampleVisitor {
+
+    /**
+     * Receives a sample. Samples are passed in the
+     * order of their time.
+     *
+     * @param time  the time of the sample in milliseconds since the epoch.
+     * @param value the value of the sample.
+     */
+    public void sample(long time, double value);
+
+}//interface SampleVisitor
@@ -0,0 +1,216 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Class implementing a memory-mapped segment file
+ * the blocks of the {@link Historian} are appended to.
+ * <p>
+ * A segment starts with a header (magic and version) followed
+ * by block records. The length of a record is written after its
+ * content, so a record cut short by a crash reads as the end
+ * of the segment.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+final class Segment {
+
+  static final int MAGIC = 0x4D425453; //"MBTS"
+  static final int VERSION = 1;
+  static final int HEADER_LENGTH = 8;
+  //length, name length, first, last, count, times and values length
+  static final int RECORD_OVERHEAD = 4 + 2 + 8 + 8 + 4 + 4 + 4;
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int m_Index;
+  private final File m_File;
+  private final RandomAccessFile m_RandomAccessFile;
+  private final MappedByteBuffer m_Buffer;
+  private int m_Position;
+
+  /**
+   * Opens or creates the segment with the given index.
+   *
+   * @param dir   the directory of the segment files.
+   * @param index the index of the segment.
+   * @param size  the size of a new segment in bytes.
+   * @throws IOException if the segment cannot be mapped or is not valid.
+   */
+  Segment(File dir, int index, int size) throws IOException {
+    m_Index = index;
+    m_File = new File(dir, toFileName(index));
+    boolean exists = m_File.exists() && m_File.length() > 0;
+    m_RandomAccessFile = new RandomAccessFile(m_File, "rw");
+    try {
+      long length = exists ? m_RandomAccessFile.length() : size;
+      m_Buffer = m_RandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    } catch (IOException ex) {
+      m_RandomAccessFile.close();
+      throw ex;
+    }
+    if (exists) {
+      if (m_Buffer.getInt(0) != MAGIC || m_Buffer.getInt(4) != VERSION) {
+        close();
+        throw new IOException("Not a historian segment: " + m_File);
+      }
+    } else {
+      m_Buffer.putInt(0, MAGIC);
+      m_Buffer.putInt(4, VERSION);
+    }
+    m_Position = HEADER_LENGTH;
+  }//constructor
+
+  int getIndex() {
+    return m_Index;
+  }//getIndex
+
+  /**
+   * Returns the free space of this segment.
+   *
+   * @return the number of bytes that can still be appended.
+   */
+  int getFree() {
+    return m_Buffer.capacity() - m_Position;
+  }//getFree
+
+  /**
+   * Returns the length of the record for a block with
+   * the given point name and column lengths.
+   */
+  static int recordLength(byte[] name, int timeslen, int valueslen) {
+    return RECORD_OVERHEAD + name.length + timeslen + valueslen;
+  }//recordLength
+
+  /**
+   * Appends a block record. The caller has to ensure
+   * there is enough free space.
+   *
+   * @param name      the UTF-8 encoded point name.
+   * @param enc       the <tt>BlockEncoder</tt> holding the block.
+   * @return the offset of the time column of the record.
+   */
+  int append(byte[] name, BlockEncoder enc) {
+    int timeslen = enc.getTimesLength();
+    int valueslen = enc.getValuesLength();
+    int start = m_Position;
+    ByteBuffer buf = m_Buffer.duplicate();
+    buf.position(start + 4);
+    buf.putShort((short) name.length);
+    buf.put(name);
+    buf.putLong(enc.getFirstTime());
+    buf.putLong(enc.getLastTime());
+    buf.putInt(enc.getCount());
+    buf.putInt(timeslen);
+    buf.putInt(valueslen);
+    int off = buf.position();
+    buf.put(enc.getTimes(), 0, timeslen);
+    buf.put(enc.getValues(), 0, valueslen);
+    //end the records after this one, in case bytes of a record
+    //cut short by a crash follow, then commit by writing the length
+    if (buf.position() + 4 <= buf.capacity()) {
+      m_Buffer.putInt(buf.position(), 0);
+    }
+    m_Buffer.putInt(start, buf.position() - start);
+    m_Position = buf.position();
+    return off;
+  }//append
+
+  /**
+   * Copies bytes of this segment.
+   *
+   * @param off  the offset in the segment.
+   * @param data the buffer to copy to.
+   * @param len  the number of bytes to copy.
+   */
+  void read(int off, byte[] data, int len) {
+    ByteBuffer buf = m_Buffer.duplicate();
+    buf.position(off);
+    buf.get(data, 0, len);
+  }//read
+
+  /**
+   * Scans the records of this segment, passing each to
+   * the given <tt>Historian</tt>, and positions this segment
+   * after the last complete record. Scanning stops at the
+   * first record whose lengths do not add up.
+   *
+   * @param historian the <tt>Historian</tt> rebuilding its index.
+   */
+  void scan(Historian historian) {
+    ByteBuffer buf = m_Buffer.duplicate();
+    int pos = HEADER_LENGTH;
+    while (pos + 4 <= buf.capacity()) {
+      int length = buf.getInt(pos);
+      if (length < RECORD_OVERHEAD || length > buf.capacity() - pos) {
+        break;
+      }
+      buf.position(pos + 4);
+      int namelen = buf.getShort() & 0xffff;
+      if (namelen > length - RECORD_OVERHEAD) {
+        break;
+      }
+      byte[] name = new byte[namelen];
+      buf.get(name);
+      long first = buf.getLong();
+      long last = buf.getLong();
+      int count = buf.getInt();
+      int timeslen = buf.getInt();
+      int valueslen = buf.getInt();
+      if (timeslen < 0 || valueslen < 0 || count <= 0 || first > last
+          || (long) RECORD_OVERHEAD + namelen + timeslen + valueslen != length) {
+        break;
+      }
+      historian.addBlock(new String(name, UTF8), this, buf.position(),
+          timeslen, valueslen, first, last, count);
+      pos += length;
+    }
+    m_Position = pos;
+  }//scan
+
+  /**
+   * Writes the content of this segment to the storage device.
+   */
+  void force() {
+    m_Buffer.force();
+  }//force
+
+  /**
+   * Closes this segment. The mapping is released when
+   * the buffer is garbage collected.
+   */
+  void close() {
+    try {
+      m_RandomAccessFile.close();
+    } catch (IOException ex) {
+      //ignore
+    }
+  }//close
+
+  static String toFileName(int index) {
+    return String.format("%08d.seg", index);
+  }//toFileName
+
+}//class Segment
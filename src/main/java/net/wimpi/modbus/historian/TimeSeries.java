@@ -0,0 +1,90 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a <tt>SampleVisitor</tt> that
+ * collects the samples of a query into primitive arrays.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class TimeSeries
+    implements SampleVisitor {
+
+  private long[] m_Times;
+  private double[] m_Values;
+  private int m_Size;
+
+    /**
+     * Constructs a new, empty <tt>TimeSeries</tt>.
+     */
+    public TimeSeries() {
+    m_Times = new long[64];
+    m_Values = new double[64];
+  }//constructor
+
+  public void sample(long time, double value) {
+    if (m_Size == m_Times.length) {
+      m_Times = Arrays.copyOf(m_Times, m_Size * 2);
+      m_Values = Arrays.copyOf(m_Values, m_Size * 2);
+    }
+    m_Times[m_Size] = time;
+    m_Values[m_Size] = value;
+    m_Size++;
+  }//sample
+
+    /**
+     * Returns the number of samples of this series.
+     *
+     * @return the number of samples as <tt>int</tt>.
+     */
+    public int getSize() {
+    return m_Size;
+  }//getSize
+
+    /**
+     * Returns the time of the sample at the given index.
+     *
+     * @param index the index of the sample.
+     * @return the time in milliseconds since the epoch.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long getTime(int index) {
+    if (index >= m_Size) {
+      throw new IndexOutOfBoundsException();
+    }
+    return m_Times[index];
+  }//getTime
+
+    /**
+     * Returns the value of the sample at the given index.
+     *
+     * @param index the index of the sample.
+     * @return the value as <tt>double</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public double getValue(int index) {
+    if (index >= m_Size) {
+      throw new IndexOutOfBoundsException();
+    }
+    return m_Values[index];
+  }//getValue
+
+}//class TimeSeries
@@ -16,7 +16,8 @@
 
 package net.wimpi.modbus.io;
 
-import net.wimpi.modbus.Modbus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -38,6 +39,8 @@ import java.io.InputStream;
 public class ASCIIInputStream
     extends FilterInputStream {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ASCIIInputStream.class);
+
     /**
      * Constructs a new <tt>ASCIIInputStream</tt> instance
      * reading from the given <tt>InputStream</tt>.
@@ -81,7 +84,7 @@ public class ASCIIInputStream
           return Integer.parseInt(sbuf.toString().toLowerCase(), 16);
         } catch (NumberFormatException ex) {
           //malformed stream
-          if(Modbus.debug) System.out.println(sbuf.toString());
+          c_Log.debug("Malformed characters: {}", sbuf);
           throw new IOException("Malformed Stream - Wrong Characters");
         }
       }
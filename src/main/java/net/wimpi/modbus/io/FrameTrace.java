@@ -0,0 +1,339 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.util.ModbusUtil;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a ring buffer that keeps the raw
+ * bytes of the most recent frames sent and received by
+ * the transports.
+ * <p>
+ * The buffer is allocated once; recording a frame copies
+ * its bytes into the next slot, overwriting the oldest
+ * frame, and neither locks nor allocates. Frames longer
+ * than the slot size are truncated. Use {@link #getFrames()}
+ * to obtain the recorded frames, oldest first, e.g. after
+ * a communication problem has been detected.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see net.wimpi.modbus.ModbusCoupler#setFrameTrace(FrameTrace)
+ */
+public class FrameTrace {
+
+  //instance attributes
+  private final int m_Capacity;
+  private final int m_SlotSize;
+  private final byte[] m_Data;
+  private final int[] m_Lengths;
+  private final long[] m_Timestamps;
+  private final long[] m_NanoTimes;
+  private final String[] m_Transports;
+  private final boolean[] m_Outgoing;
+  private final AtomicLongArray m_Stamps;
+  private final AtomicLong m_Next = new AtomicLong();
+  private final ThreadLocal<BytesOutputStream> m_Scratch =
+      new ThreadLocal<BytesOutputStream>() {
+        protected BytesOutputStream initialValue() {
+          return new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        }//initialValue
+      };
+
+    /**
+     * Constructs a new <tt>FrameTrace</tt> instance
+     * keeping the given number of frames of up to
+     * <tt>Modbus.MAX_MESSAGE_LENGTH</tt> bytes.
+     *
+     * @param capacity the number of frames to keep.
+     */
+    public FrameTrace(int capacity) {
+    this(capacity, Modbus.MAX_MESSAGE_LENGTH);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>FrameTrace</tt> instance
+     * keeping the given number of frames of up to the
+     * given number of bytes.
+     *
+     * @param capacity the number of frames to keep.
+     * @param slotsize the maximum number of bytes kept per frame.
+     * @throws IllegalArgumentException if capacity or slot size are not positive.
+     */
+    public FrameTrace(int capacity, int slotsize) {
+    if (capacity < 1 || slotsize < 1) {
+      throw new IllegalArgumentException("Capacity and slot size must be positive.");
+    }
+    m_Capacity = capacity;
+    m_SlotSize = slotsize;
+    m_Data = new byte[capacity * slotsize];
+    m_Lengths = new int[capacity];
+    m_Timestamps = new long[capacity];
+    m_NanoTimes = new long[capacity];
+    m_Transports = new String[capacity];
+    m_Outgoing = new boolean[capacity];
+    m_Stamps = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      m_Stamps.set(i, -1);
+    }
+  }//constructor
+
+    /**
+     * Records a frame.
+     *
+     * @param transport the kind of transport (e.g. <tt>tcp</tt> or <tt>rtu</tt>).
+     * @param outgoing  true if the frame was sent, false if it was received.
+     * @param data      the buffer holding the frame.
+     * @param off       the offset of the frame in the buffer.
+     * @param length    the length of the frame.
+     */
+    public void record(String transport, boolean outgoing, byte[] data, int off, int length) {
+    long seq = m_Next.getAndIncrement();
+    int slot = (int) (seq % m_Capacity);
+    //mark the slot as being written with this sequence number
+    m_Stamps.set(slot, writing(seq));
+    System.arraycopy(data, off, m_Data, slot * m_SlotSize, Math.min(length, m_SlotSize));
+    m_Lengths[slot] = length;
+    m_Timestamps[slot] = System.currentTimeMillis();
+    m_NanoTimes[slot] = System.nanoTime();
+    m_Transports[slot] = transport;
+    m_Outgoing[slot] = outgoing;
+    m_Stamps.set(slot, seq);
+  }//record
+
+    /**
+     * Records the frame of the given message, as it is
+     * written by <tt>ModbusMessage.writeTo</tt>.
+     *
+     * @param transport the kind of transport (e.g. <tt>tcp</tt> or <tt>rtu</tt>).
+     * @param outgoing  true if the frame was sent, false if it was received.
+     * @param msg       the <tt>ModbusMessage</tt>.
+     */
+    public void record(String transport, boolean outgoing, ModbusMessage msg) {
+    BytesOutputStream out = m_Scratch.get();
+    out.reset();
+    try {
+      msg.writeTo(out);
+    } catch (IOException ex) {
+      return;
+    }
+    record(transport, outgoing, out.getBuffer(), 0, out.size());
+  }//record
+
+    /**
+     * Returns the number of frames recorded since this
+     * trace was created or cleared, including the ones
+     * that have been overwritten.
+     *
+     * @return the number of frames as <tt>long</tt>.
+     */
+    public long getCount() {
+    return m_Next.get();
+  }//getCount
+
+    /**
+     * Returns copies of the frames in this trace,
+     * oldest first. Frames being overwritten while
+     * copying are left out, and copying stops at the
+     * first frame still being recorded.
+     *
+     * @return a <tt>List</tt> of <tt>Frame</tt> instances.
+     */
+    public List<Frame> getFrames() {
+    List<Frame> frames = new ArrayList<Frame>(m_Capacity);
+    getFrames(0, frames);
+    return frames;
+  }//getFrames
+
+    /**
+     * Adds copies of the frames recorded from the given
+     * sequence number on to the given list, oldest first.
+     * Frames that have been overwritten already, or are being
+     * overwritten while copying, are left out. Copying stops
+     * at the first frame that is still being recorded.
+     * <p>
+     * This allows to follow the trace, passing the returned
+     * sequence number to the next call.
+     *
+     * @param from   the sequence number of the first frame.
+     * @param frames the <tt>List</tt> to add the <tt>Frame</tt> instances to.
+     * @return the sequence number of the first frame not yet added and not
+     *         overwritten, so that frames still being recorded are added by
+     *         the next call.
+     */
+    public long getFrames(long from, List<Frame> frames) {
+    long next = m_Next.get();
+    long seq = Math.max(from, next - m_Capacity);
+    for (; seq < next; seq++) {
+      int slot = (int) (seq % m_Capacity);
+      long stamp = m_Stamps.get(slot);
+      if (stamp != seq) {
+        if (sequenceOf(stamp) > seq) {
+          //overwritten by a later frame
+          continue;
+        }
+        //not yet completely recorded
+        break;
+      }
+      int length = m_Lengths[slot];
+      byte[] data = new byte[Math.min(length, m_SlotSize)];
+      System.arraycopy(m_Data, slot * m_SlotSize, data, 0, data.length);
+      Frame frame = new Frame(seq, m_Timestamps[slot], m_NanoTimes[slot],
+          m_Transports[slot], m_Outgoing[slot], length, data);
+      if (m_Stamps.get(slot) == seq) {
+        frames.add(frame);
+      }
+    }
+    return seq;
+  }//getFrames
+
+  /**
+   * Returns the stamp of a slot being written with the given
+   * sequence number; completed slots are stamped with their
+   * sequence number, empty ones with -1.
+   */
+  private static long writing(long seq) {
+    return -seq - 2;
+  }//writing
+
+  /**
+   * Returns the sequence number of the frame in a slot with
+   * the given stamp, complete or not.
+   */
+  private static long sequenceOf(long stamp) {
+    return (stamp >= 0) ? stamp : -stamp - 2;
+  }//sequenceOf
+
+    /**
+     * Discards all recorded frames.
+     */
+    public void clear() {
+    for (int i = 0; i < m_Capacity; i++) {
+      m_Stamps.set(i, -1);
+    }
+    m_Next.set(0);
+  }//clear
+
+    /**
+     * Class holding a copy of a recorded frame.
+     */
+    public static final class Frame {
+
+    private long m_Sequence;
+    private long m_Timestamp;
+    private long m_NanoTime;
+    private String m_Transport;
+    private boolean m_Outgoing;
+    private int m_Length;
+    private byte[] m_Data;
+
+    Frame(long seq, long timestamp, long nanotime, String transport, boolean outgoing, int length, byte[] data) {
+      m_Sequence = seq;
+      m_Timestamp = timestamp;
+      m_NanoTime = nanotime;
+      m_Transport = transport;
+      m_Outgoing = outgoing;
+      m_Length = length;
+      m_Data = data;
+    }//constructor
+
+        /**
+         * Returns the sequence number of this frame.
+         *
+         * @return the sequence number as <tt>long</tt>.
+         */
+        public long getSequence() {
+      return m_Sequence;
+    }//getSequence
+
+        /**
+         * Returns the time this frame was recorded.
+         *
+         * @return the time in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+      return m_Timestamp;
+    }//getTimestamp
+
+        /**
+         * Returns the value of <tt>System.nanoTime()</tt> when this
+         * frame was recorded. Only the difference to the time of
+         * other frames of the same trace is meaningful.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getNanoTime() {
+      return m_NanoTime;
+    }//getNanoTime
+
+        /**
+         * Returns the kind of transport of this frame.
+         *
+         * @return the transport as <tt>String</tt>.
+         */
+        public String getTransport() {
+      return m_Transport;
+    }//getTransport
+
+        /**
+         * Tests if this frame was sent or received.
+         *
+         * @return true if sent, false if received.
+         */
+        public boolean isOutgoing() {
+      return m_Outgoing;
+    }//isOutgoing
+
+        /**
+         * Returns the length of this frame, which may exceed
+         * the number of bytes kept.
+         *
+         * @return the length as <tt>int</tt>.
+         */
+        public int getLength() {
+      return m_Length;
+    }//getLength
+
+        /**
+         * Returns the bytes kept of this frame.
+         *
+         * @return the bytes as <tt>byte[]</tt>.
+         */
+        public byte[] getData() {
+      return m_Data;
+    }//getData
+
+    public String toString() {
+      return new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(m_Timestamp))
+          + " " + m_Transport + (m_Outgoing ? " > " : " < ")
+          + ModbusUtil.toHex(m_Data)
+          + ((m_Data.length < m_Length) ? " ..." : "");
+    }//toString
+
+  }//class Frame
+
+}//class FrameTrace
@@ -17,16 +17,19 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 
 /**
@@ -40,6 +43,8 @@ import java.io.OutputStream;
 public class ModbusASCIITransport
   extends ModbusSerialTransport {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusASCIITransport.class);
+
   private DataInputStream m_InputStream;     //used to read from
   private ASCIIOutputStream m_OutputStream;   //used to write to
 
@@ -61,6 +66,8 @@ public class ModbusASCIITransport
 
   public void writeMessage(ModbusMessage msg)
       throws ModbusIOException {
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportWrite();
 
     try {
       synchronized (m_ByteOut) {
@@ -70,12 +77,12 @@ public class ModbusASCIITransport
         byte[] buf = m_ByteOut.getBuffer();
         int len = m_ByteOut.size();
 
+        m_ByteOut.writeByte(ModbusUtil.calculateLRC(buf, 0, len));
+        traceFrame(c_Log, Modbus.SERIAL_ENCODING_ASCII, true, buf, 0, len + 1);
+
         //write message
         m_OutputStream.write(FRAME_START);               //FRAMESTART
-        m_OutputStream.write(buf, 0, len);                 //PDU
-        if(Modbus.debug)
-          System.out.println("Writing: " + ModbusUtil.toHex(buf, 0, len));
-        m_OutputStream.write(ModbusUtil.calculateLRC(buf, 0, len)); //LRC
+        m_OutputStream.write(buf, 0, len + 1);             //PDU + LRC
         m_OutputStream.write(FRAME_END);                 //FRAMEEND
         m_OutputStream.flush();
         m_ByteOut.reset();
@@ -88,6 +95,8 @@ public class ModbusASCIITransport
       }
     } catch (Exception ex) {
       throw new ModbusIOException("I/O failed to write" + ex);
+    } finally {
+      recorder.endTransportWrite(event, Modbus.SERIAL_ENCODING_ASCII, msg.getFunctionCode(), msg.getOutputLength());
     }
   }//writeMessage
 
@@ -112,6 +121,7 @@ public class ModbusASCIITransport
             }
             m_ByteInOut.writeByte(in);
           }
+          traceFrame(c_Log, Modbus.SERIAL_ENCODING_ASCII, false, m_InBuffer, 0, m_ByteInOut.size());
           //check LRC
           if (((int)m_InBuffer[m_ByteInOut.size()-1] & 0xff)  !=
               ModbusUtil.calculateLRC(m_InBuffer, 0, m_ByteInOut.size()-1)) {
@@ -121,7 +131,7 @@ public class ModbusASCIITransport
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
           in = m_ByteIn.readUnsignedByte();
           //check message with this slave unit identifier
-          if (in != ModbusCoupler.getReference().getUnitID()) {
+          if (!getCoupler().isServing(in)) {
             continue;
           }
           in = m_ByteIn.readUnsignedByte();
@@ -130,13 +140,14 @@ public class ModbusASCIITransport
           request.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
+          request.setCoupler(getCoupler());
           request.readFrom(m_ByteIn);
         }
         done = true;
       } while (!done);
       return request;
     } catch (Exception ex) {
-      if(Modbus.debug) System.out.println(ex.getMessage());
+      c_Log.debug("Failed to read request: {}", ex.getMessage());
       throw new ModbusIOException("readRequest: I/O exception - failed to read.");
     }
 
@@ -148,7 +159,10 @@ public class ModbusASCIITransport
     boolean done = false;
     ModbusResponse response = null;
     int in = -1;
+    boolean lrcError = false;
 
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportRead();
     try {
       do {
         //1. Skip to FRAME_START
@@ -167,15 +181,14 @@ public class ModbusASCIITransport
             m_ByteInOut.writeByte(in);
           }
           int len = m_ByteInOut.size();
-          if (Modbus.debug)
-            System.out.println("Received: " +
-                               ModbusUtil.toHex(m_InBuffer, 0, len));
+          traceFrame(c_Log, Modbus.SERIAL_ENCODING_ASCII, false, m_InBuffer, 0, len);
           //check LRC
           if (((int)m_InBuffer[len-1] & 0xff) != ModbusUtil.calculateLRC(m_InBuffer, 0, len - 1)) {
-            if (Modbus.debug)
-             System.out.println("LRC is wrong: received=" +
-                 ((int)m_InBuffer[len-1] & 0xff) +
-                 " calculated=" + ModbusUtil.calculateLRC(m_InBuffer, 0, len - 1));
+            if (c_Log.isDebugEnabled()) {
+              c_Log.debug("LRC is wrong: received={} calculated={}",
+                  (int) m_InBuffer[len - 1] & 0xff, ModbusUtil.calculateLRC(m_InBuffer, 0, len - 1));
+            }
+            lrcError = true;
             continue;
           }
 
@@ -186,7 +199,7 @@ public class ModbusASCIITransport
           // only respond when a master request is made and there is only one
           // master.  We are the only master, so we can assume that this
           // response message is from the slave responding to the last request.
-//           if (in != ModbusCoupler.getReference().getUnitID()) {
+//           if (in != getCoupler().getUnitID()) {
 //             continue;
 //           }
           in = m_ByteIn.readUnsignedByte();
@@ -195,14 +208,22 @@ public class ModbusASCIITransport
           response.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
+          response.setCoupler(getCoupler());
           response.readFrom(m_ByteIn);
         }
         done = true;
       } while (!done);
       return response;
     } catch (Exception ex) {
-      if(Modbus.debug) System.out.println(ex.getMessage());
-      throw new ModbusIOException("readResponse I/O exception - failed to read.");
+      c_Log.debug("Failed to read response: {}", ex.getMessage());
+      ModbusIOException mex = new ModbusIOException("readResponse I/O exception - failed to read.");
+      mex.setTimeout(in == -1 || ex instanceof InterruptedIOException);
+      mex.setChecksumError(lrcError);
+      throw mex;
+    } finally {
+      recorder.endTransportRead(event, Modbus.SERIAL_ENCODING_ASCII,
+          (response == null) ? -1 : response.getFunctionCode(),
+          (response == null) ? 0 : response.getOutputLength());
     }
   }//readResponse
 
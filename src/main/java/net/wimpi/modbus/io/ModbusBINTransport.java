@@ -17,12 +17,14 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -39,6 +41,8 @@ import java.io.OutputStream;
 public class ModbusBINTransport
     extends ModbusSerialTransport {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusBINTransport.class);
+
   private DataInputStream m_InputStream;     //used to read from
   private ASCIIOutputStream m_OutputStream;   //used to write to
 
@@ -60,6 +64,8 @@ public class ModbusBINTransport
 
   public void writeMessage(ModbusMessage msg)
       throws ModbusIOException {
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportWrite();
 
     try {
       int len;
@@ -70,12 +76,14 @@ public class ModbusBINTransport
         byte[] buf = m_ByteOut.getBuffer();
         len = m_ByteOut.size();
 
+        int[] crc = ModbusUtil.calculateCRC(buf, 0, len); //CRC
+        m_ByteOut.writeByte(crc[0]);
+        m_ByteOut.writeByte(crc[1]);
+        traceFrame(c_Log, Modbus.SERIAL_ENCODING_BIN, true, buf, 0, len + 2);
+
         //write message
         m_OutputStream.write(FRAME_START);               //FRAMESTART
-        m_OutputStream.write(buf, 0, len);                 //PDU
-        int[] crc = ModbusUtil.calculateCRC(buf, 0, len); //CRC
-        m_OutputStream.write(crc[0]);
-        m_OutputStream.write(crc[1]);
+        m_OutputStream.write(buf, 0, len + 2);             //PDU + CRC
         m_OutputStream.write(FRAME_END);                 //FRAMEEND
         m_OutputStream.flush();
         m_ByteOut.reset();
@@ -88,6 +96,8 @@ public class ModbusBINTransport
       }
     } catch (Exception ex) {
       throw new ModbusIOException("I/O failed to write");
+    } finally {
+      recorder.endTransportWrite(event, Modbus.SERIAL_ENCODING_BIN, msg.getFunctionCode(), msg.getOutputLength());
     }
   }//writeMessage
 
@@ -109,6 +119,7 @@ public class ModbusBINTransport
           while ((in = m_InputStream.read()) != FRAME_END) {
             m_ByteInOut.writeByte(in);
           }
+          traceFrame(c_Log, Modbus.SERIAL_ENCODING_BIN, false, m_InBuffer, 0, m_ByteInOut.size());
           //check CRC
           int[] crc = ModbusUtil.calculateCRC(m_InBuffer,0,m_ByteInOut.size()-2);
 
@@ -121,7 +132,7 @@ public class ModbusBINTransport
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
           in = m_ByteIn.readUnsignedByte();
           //check unit identifier
-          if (in != ModbusCoupler.getReference().getUnitID()) {
+          if (!getCoupler().isServing(in)) {
             continue;
           }
           in = m_ByteIn.readUnsignedByte();
@@ -130,13 +141,14 @@ public class ModbusBINTransport
           request.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
+          request.setCoupler(getCoupler());
           request.readFrom(m_ByteIn);
         }
         done = true;
       } while (!done);
       return request;
     } catch (Exception ex) {
-      if(Modbus.debug) System.out.println(ex.getMessage());
+      c_Log.debug("Failed to read request: {}", ex.getMessage());
       throw new ModbusIOException("I/O exception - failed to read.");
     }
 
@@ -149,6 +161,8 @@ public class ModbusBINTransport
     ModbusResponse response = null;
     int in = -1;
 
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportRead();
     try {
       do {
         //1. Skip to FRAME_START
@@ -159,6 +173,7 @@ public class ModbusBINTransport
           while ((in = m_InputStream.read()) != FRAME_END) {
             m_ByteInOut.writeByte(in);
           }
+          traceFrame(c_Log, Modbus.SERIAL_ENCODING_BIN, false, m_InBuffer, 0, m_ByteInOut.size());
           //check CRC
           int[] crc = ModbusUtil.calculateCRC(m_InBuffer,0,m_ByteInOut.size()-2);
           if (!(
@@ -170,13 +185,13 @@ public class ModbusBINTransport
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
           in = m_ByteIn.readUnsignedByte();
           //check unit identifier
-          if (in != ModbusCoupler.getReference().getUnitID()) {
+          if (in != getCoupler().getUnitID()) {
             continue;
           }
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
           in = m_ByteIn.readUnsignedByte();
           //check unit identifier
-          if (in != ModbusCoupler.getReference().getUnitID()) {
+          if (in != getCoupler().getUnitID()) {
             continue;
           }
           in = m_ByteIn.readUnsignedByte();
@@ -185,14 +200,19 @@ public class ModbusBINTransport
           response.setHeadless();
           //read message
           m_ByteIn.reset(m_InBuffer, m_ByteInOut.size());
+          response.setCoupler(getCoupler());
           response.readFrom(m_ByteIn);
         }
         done = true;
       } while (!done);
       return response;
     } catch (Exception ex) {
-      if(Modbus.debug) System.out.println(ex.getMessage());
+      c_Log.debug("Failed to read response: {}", ex.getMessage());
       throw new ModbusIOException("I/O exception - failed to read.");
+    } finally {
+      recorder.endTransportRead(event, Modbus.SERIAL_ENCODING_BIN,
+          (response == null) ? -1 : response.getFunctionCode(),
+          (response == null) ? 0 : response.getOutputLength());
     }
   }//readResponse
 
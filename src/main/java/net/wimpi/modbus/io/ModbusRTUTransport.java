@@ -18,13 +18,17 @@ package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 
 /**
@@ -38,6 +42,8 @@ import java.io.OutputStream;
 public class ModbusRTUTransport
     extends ModbusSerialTransport {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusRTUTransport.class);
+
   private InputStream m_InputStream;    //wrap into filter input
   private OutputStream m_OutputStream;      //wrap into filter output
 
@@ -45,9 +51,12 @@ public class ModbusRTUTransport
   private BytesInputStream m_ByteIn;         //to read message from
   private BytesOutputStream m_ByteInOut;     //to buffer message to
   private BytesOutputStream m_ByteOut;      //write frames
-  private byte[] lastRequest = null;
+  private byte[] m_LastRequest;             //kept for diagnostics
+  private int m_LastRequestLength;
 
   public void writeMessage(ModbusMessage msg) throws ModbusIOException {
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportWrite();
     try {
       int len;
       synchronized (m_ByteOut) {
@@ -67,18 +76,20 @@ public class ModbusRTUTransport
         byte buf[] = m_ByteOut.getBuffer();
         m_OutputStream.write(buf, 0, len);     //PDU + CRC
         m_OutputStream.flush();
-        if(Modbus.debug) System.out.println("Sent: " + ModbusUtil.toHex(buf, 0, len));
+        traceFrame(c_Log, Modbus.SERIAL_ENCODING_RTU, true, buf, 0, len);
         // clears out the echoed message
         // for RS485
         if (m_Echo) {
           readEcho(len);
         }
-        lastRequest = new byte[len];
-        System.arraycopy(buf, 0, lastRequest, 0, len);
+        System.arraycopy(buf, 0, m_LastRequest, 0, len);
+        m_LastRequestLength = len;
       }
 
     } catch (Exception ex) {
       throw new ModbusIOException("I/O failed to write");
+    } finally {
+      recorder.endTransportWrite(event, Modbus.SERIAL_ENCODING_RTU, msg.getFunctionCode(), msg.getOutputLength());
     }
 
   }//writeMessage
@@ -98,8 +109,7 @@ public class ModbusRTUTransport
       int len = m_InputStream.available();
       byte buf[] = new byte[len];
       m_InputStream.read(buf, 0, len);
-      if(Modbus.debug) System.out.println("Clear input: " +
-                  ModbusUtil.toHex(buf, 0, len));
+      if (c_Log.isDebugEnabled()) c_Log.debug("Cleared input: {}", ModbusUtil.toHex(buf, 0, len));
     }
   }//cleanInput
 
@@ -110,6 +120,8 @@ public class ModbusRTUTransport
     ModbusResponse response = null;
     int dlength = 0;
 
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportRead();
     try {
       do {
         //1. read to function code, create request and read function specific bytes
@@ -132,8 +144,7 @@ public class ModbusRTUTransport
             // timeout and to message specific parsing to read a response.
             getResponse(fc, m_ByteInOut);
             dlength = m_ByteInOut.size() - 2; // less the crc
-            if (Modbus.debug) System.out.println("Response: " +
-               ModbusUtil.toHex(m_ByteInOut.getBuffer(), 0, dlength + 2));
+            traceFrame(c_Log, Modbus.SERIAL_ENCODING_RTU, false, m_InBuffer, 0, dlength + 2);
 
             m_ByteIn.reset(m_InBuffer, dlength);
 
@@ -141,25 +152,45 @@ public class ModbusRTUTransport
             int[] crc = ModbusUtil.calculateCRC(m_InBuffer, 0, dlength); //does not include CRC
             if (ModbusUtil.unsignedByteToInt(m_InBuffer[dlength]) != crc[0]
                 || ModbusUtil.unsignedByteToInt(m_InBuffer[dlength + 1]) != crc[1]) {
-              throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(m_ByteIn.getBuffer(), 0, dlength));
+              ModbusIOException ex = new ModbusIOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(m_ByteIn.getBuffer(), 0, dlength));
+              ex.setChecksumError(true);
+              throw ex;
             }
           } else {
-            throw new IOException("Error reading response");
+            ModbusIOException ex = new ModbusIOException("Error reading response");
+            ex.setTimeout(true);
+            throw ex;
           }
 
           //read response
           m_ByteIn.reset(m_InBuffer, dlength);
           if (response != null) {
+            response.setCoupler(getCoupler());
             response.readFrom(m_ByteIn);
           }
           done = true;
         }//synchronized
       } while (!done);
       return response;
+    } catch (ModbusIOException ex) {
+      c_Log.debug("Failed to read response to {}: {}",
+          ModbusUtil.hexOf(m_LastRequest, 0, m_LastRequestLength), ex.getMessage());
+      throw ex;
+    } catch (InterruptedIOException ex) {
+      //socket timeout, when bound to the streams of a socket
+      c_Log.debug("Failed to read response to {}: {}",
+          ModbusUtil.hexOf(m_LastRequest, 0, m_LastRequestLength), ex.getMessage());
+      ModbusIOException mex = new ModbusIOException("Error reading response");
+      mex.setTimeout(true);
+      throw mex;
     } catch (Exception ex) {
-      System.err.println("Last request: " + ModbusUtil.toHex(lastRequest));
-      System.err.println(ex.getMessage());
+      c_Log.debug("Failed to read response to {}: {}",
+          ModbusUtil.hexOf(m_LastRequest, 0, m_LastRequestLength), ex.getMessage());
       throw new ModbusIOException("I/O exception - failed to read");
+    } finally {
+      recorder.endTransportRead(event, Modbus.SERIAL_ENCODING_RTU,
+          (response == null) ? -1 : response.getFunctionCode(),
+          (response == null) ? 0 : response.getOutputLength());
     }
   }//readResponse
 
@@ -180,6 +211,7 @@ public class ModbusRTUTransport
     m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
     m_ByteIn = new BytesInputStream(m_InBuffer);
     m_ByteInOut = new BytesOutputStream(m_InBuffer);
+    m_LastRequest = new byte[Modbus.MAX_MESSAGE_LENGTH];
   } //prepareStreams
 
   public void close() throws IOException {
@@ -194,6 +226,14 @@ public class ModbusRTUTransport
     byte inpBuf[] = new byte[256];
 
     try {
+      if ((fn & 0x80) != 0) {
+        // exception response: the exception code and the CRC
+        setReceiveThreshold(3);
+        inpBytes = readBytes(m_InputStream, inpBuf, 0, 3);
+        out.write(inpBuf, 0, inpBytes);
+        disableReceiveThreshold();
+        return;
+      }
       switch (fn) {
         case 0x01:
         case 0x02:
@@ -209,12 +249,11 @@ public class ModbusRTUTransport
           out.write(bc);
           // now get the specified number of bytes and the 2 CRC bytes
           setReceiveThreshold(bc+2);
-          inpBytes = m_InputStream.read(inpBuf, 0, bc+2);
+          inpBytes = readBytes(m_InputStream, inpBuf, 0, bc+2);
           out.write(inpBuf, 0, inpBytes);
-          m_CommPort.disableReceiveThreshold();
+          disableReceiveThreshold();
           if (inpBytes != bc+2) {
-            System.out.println("Error: looking for " + (bc+2) +
-                               " bytes, received " + inpBytes);
+            c_Log.debug("Looking for {} bytes, received {}", bc + 2, inpBytes);
           }
           break;
         case 0x05:
@@ -224,24 +263,24 @@ public class ModbusRTUTransport
         case 0x10:
           // read status: only the CRC remains after address and function code
           setReceiveThreshold(6);
-          inpBytes = m_InputStream.read(inpBuf, 0, 6);
+          inpBytes = readBytes(m_InputStream, inpBuf, 0, 6);
           out.write(inpBuf, 0, inpBytes);
-          m_CommPort.disableReceiveThreshold();
+          disableReceiveThreshold();
           break;
         case 0x07:
         case 0x08:
           // read status: only the CRC remains after address and function code
           setReceiveThreshold(3);
-          inpBytes = m_InputStream.read(inpBuf, 0, 3);
+          inpBytes = readBytes(m_InputStream, inpBuf, 0, 3);
           out.write(inpBuf, 0, inpBytes);
-          m_CommPort.disableReceiveThreshold();
+          disableReceiveThreshold();
           break;
         case 0x16:
           // eight bytes in addition to the address and function codes
           setReceiveThreshold(8);
-          inpBytes = m_InputStream.read(inpBuf, 0, 8);
+          inpBytes = readBytes(m_InputStream, inpBuf, 0, 8);
           out.write(inpBuf, 0, inpBytes);
-          m_CommPort.disableReceiveThreshold();
+          disableReceiveThreshold();
           break;
         case 0x18:
           // read the byte count word
@@ -252,13 +291,13 @@ public class ModbusRTUTransport
           bcw = ModbusUtil.makeWord(bc, bc2);
           // now get the specified number of bytes and the 2 CRC bytes
           setReceiveThreshold(bcw+2);
-          inpBytes = m_InputStream.read(inpBuf, 0, bcw + 2);
+          inpBytes = readBytes(m_InputStream, inpBuf, 0, bcw + 2);
           out.write(inpBuf, 0, inpBytes);
-          m_CommPort.disableReceiveThreshold();
+          disableReceiveThreshold();
           break;
       }
     } catch (IOException e) {
-      m_CommPort.disableReceiveThreshold();
+      disableReceiveThreshold();
       throw new IOException("getResponse serial port exception");
     }
   }//getResponse
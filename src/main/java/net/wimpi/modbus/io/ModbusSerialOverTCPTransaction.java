@@ -0,0 +1,344 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.TransactionMetrics;
+import net.wimpi.modbus.msg.ExceptionResponse;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.net.SerialOverTCPConnection;
+import net.wimpi.modbus.util.Mutex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing the <tt>ModbusTransaction</tt>
+ * interface for serial frames over a TCP connection.
+ * <p>
+ * Serial frames carry no transaction identifier, so a
+ * response arriving after its request timed out cannot
+ * be told apart from the response to the next request.
+ * The connection is therefore closed after a failed try,
+ * and reopened for the next one.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusSerialOverTCPTransaction
+    implements ModbusTransaction {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusSerialOverTCPTransaction.class);
+
+  //instance attributes and associations
+  private SerialOverTCPConnection m_Connection;
+  private ModbusTransport m_IO;
+  private ModbusRequest m_Request;
+  private ModbusResponse m_Response;
+  private boolean m_ValidityCheck =
+      Modbus.DEFAULT_VALIDITYCHECK;
+  private boolean m_Reconnecting = Modbus.DEFAULT_RECONNECTING;
+  private int m_Retries = Modbus.DEFAULT_RETRIES;
+  private TransactionMetrics m_Metrics;
+  private String m_Endpoint;
+  private int m_TransactionID = Modbus.DEFAULT_TRANSACTION_ID;
+
+  private Mutex m_TransactionLock = new Mutex();
+
+    /**
+     * Constructs a new <tt>ModbusSerialOverTCPTransaction</tt>
+     * instance.
+     */
+    public ModbusSerialOverTCPTransaction() {
+  }//constructor
+
+    /**
+     * Constructs a new <tt>ModbusSerialOverTCPTransaction</tt>
+     * instance with a given <tt>ModbusRequest</tt> to
+     * be send when the transaction is executed.
+     *
+     * @param request a <tt>ModbusRequest</tt> instance.
+     */
+    public ModbusSerialOverTCPTransaction(ModbusRequest request) {
+    setRequest(request);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>ModbusSerialOverTCPTransaction</tt>
+     * instance with a given <tt>SerialOverTCPConnection</tt> to
+     * be used for transactions.
+     *
+     * @param con a <tt>SerialOverTCPConnection</tt> instance.
+     */
+    public ModbusSerialOverTCPTransaction(SerialOverTCPConnection con) {
+    setConnection(con);
+  }//constructor
+
+    /**
+     * Sets the connection on which this <tt>ModbusTransaction</tt>
+     * should be executed. The connection may be open or closed.
+     *
+     * @param con a <tt>SerialOverTCPConnection</tt>.
+     */
+    public void setConnection(SerialOverTCPConnection con) {
+    m_Connection = con;
+    m_IO = con.getModbusTransport();
+    m_Endpoint = con.getEncoding().toLowerCase() + "+tcp://"
+        + ((con.getAddress() == null) ? "unknown" : con.getAddress().getHostAddress())
+        + ":" + con.getPort();
+  }//setConnection
+
+    /**
+     * Sets the <tt>TransactionMetrics</tt> this transaction
+     * reports to. If not set, the metrics of the
+     * <tt>ModbusCoupler</tt> of the connection are used.
+     *
+     * @param metrics a <tt>TransactionMetrics</tt> instance.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+    m_Metrics = metrics;
+  }//setMetrics
+
+    /**
+     * Returns the <tt>TransactionMetrics</tt> this transaction
+     * reports to.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getMetrics() {
+    return (m_Metrics != null) ? m_Metrics : getCoupler().getTransactionMetrics();
+  }//getMetrics
+
+  /**
+   * Returns the <tt>ModbusCoupler</tt> of the connection
+   * this transaction is executed on.
+   *
+   * @return a <tt>ModbusCoupler</tt> instance.
+   */
+  private ModbusCoupler getCoupler() {
+    return (m_Connection != null) ? m_Connection.getCoupler() : ModbusCoupler.getReference();
+  }//getCoupler
+
+  public void setRequest(ModbusRequest req) {
+    m_Request = req;
+  }//setRequest
+
+  public ModbusRequest getRequest() {
+    return m_Request;
+  }//getRequest
+
+  public ModbusResponse getResponse() {
+    return m_Response;
+  }//getResponse
+
+  public int getTransactionID() {
+    return m_TransactionID;
+  }//getTransactionID
+
+  public void setCheckingValidity(boolean b) {
+    m_ValidityCheck = b;
+  }//setCheckingValidity
+
+  public boolean isCheckingValidity() {
+    return m_ValidityCheck;
+  }//isCheckingValidity
+
+    /**
+     * Sets the flag that controls whether a
+     * connection is openend and closed for
+     * <b>each</b> execution or not.
+     *
+     * @param b true if reconnecting, false otherwise.
+     */
+    public void setReconnecting(boolean b) {
+    m_Reconnecting = b;
+  }//setReconnecting
+
+    /**
+     * Tests if the connection will be openend
+     * and closed for <b>each</b> execution.
+     *
+     * @return true if reconnecting, false otherwise.
+     */
+    public boolean isReconnecting() {
+    return m_Reconnecting;
+  }//isReconnecting
+
+  public int getRetries() {
+    return m_Retries;
+  }//getRetries
+
+  public void setRetries(int num) {
+    m_Retries = num;
+  }//setRetries
+
+  public void execute() throws ModbusIOException,
+      ModbusSlaveException,
+      ModbusException {
+
+    //1. check that the transaction can be executed
+    assertExecutable();
+
+    TransactionMetrics metrics = getMetrics();
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = null;
+    String endpoint = m_Endpoint;
+    int unitid = m_Request.getUnitID();
+    int fc = m_Request.getFunctionCode();
+    boolean success = false;
+    long start = 0;
+    int retryCounter = 0;
+
+    try {
+      //2. Lock transaction
+      m_TransactionLock.acquire();
+      start = System.nanoTime();
+      event = recorder.beginTransaction();
+
+      //the id is not sent, so nothing is kept in flight
+      m_TransactionID = m_Connection.getTransactionIDAllocator().next();
+      m_Request.setTransactionID(m_TransactionID);
+
+      //3. Retry transaction m_Retries times, with a fresh
+      //connection after each failure; the connection is held
+      //for the whole exchange, as responses carry no id
+      synchronized (m_Connection.getTransactionLock()) {
+        while (retryCounter <= m_Retries) {
+          try {
+            connect();
+            m_IO.writeMessage(m_Request);
+            metrics.recordBytes(endpoint, unitid, getWireLength(m_Request), 0);
+            m_Response = m_IO.readResponse();
+            metrics.recordBytes(endpoint, unitid, 0, getWireLength(m_Response));
+            break;
+          } catch (ModbusIOException ex) {
+            if (ex.isTimeout()) {
+              metrics.recordTimeout(endpoint, unitid, fc);
+            }
+            if (ex.isChecksumError()) {
+              metrics.recordChecksumError(endpoint, unitid, fc);
+            }
+            //drop whatever is still on the way
+            m_Connection.close();
+            if (retryCounter == m_Retries) {
+              throw new ModbusIOException("Executing transaction failed (tried " + m_Retries + " times)");
+            }
+            metrics.recordRetry(endpoint, unitid, fc);
+            c_Log.debug("Try {} failed: {}", retryCounter, ex.getMessage());
+            retryCounter++;
+          }
+        }
+        //close connection if reconnecting
+        if (isReconnecting()) {
+          m_Connection.close();
+        }
+      }
+
+      success = true;
+
+      //4. deal with "application level" exceptions
+      if (m_Response instanceof ExceptionResponse) {
+        int code = ((ExceptionResponse) m_Response).getExceptionCode();
+        metrics.recordExceptionResponse(endpoint, unitid, fc, code);
+        throw new ModbusSlaveException(code);
+      }
+
+      //5. Check transaction validity
+      if (isCheckingValidity()) {
+        checkValidity();
+      }
+
+    } catch (InterruptedException ex) {
+      throw new ModbusIOException("Thread acquiring lock was interrupted.");
+    } finally {
+      if (start != 0) {
+        metrics.recordTransaction(endpoint, unitid, fc, System.nanoTime() - start, success);
+        recorder.endTransaction(event, endpoint, unitid, fc, retryCounter, success);
+      }
+      m_TransactionLock.release();
+    }
+  }//execute
+
+  /**
+   * Opens the connection if it is not connected, and
+   * takes the transport of the connection.
+   *
+   * @throws ModbusIOException if connecting fails.
+   */
+  private void connect() throws ModbusIOException {
+    if (!m_Connection.isConnected()) {
+      try {
+        m_Connection.connect();
+      } catch (Exception ex) {
+        throw new ModbusIOException("Connecting failed.");
+      }
+    }
+    m_IO = m_Connection.getModbusTransport();
+  }//connect
+
+  /**
+   * Returns the number of bytes the given message
+   * occupies on the line, including the framing
+   * of the transport.
+   *
+   * @param msg the <tt>ModbusMessage</tt>.
+   * @return the number of bytes.
+   */
+  private int getWireLength(ModbusMessage msg) {
+    int len = msg.getOutputLength();
+    if (m_IO instanceof ModbusASCIITransport) {
+      //':', hex encoded message and LRC, CR LF
+      return 1 + 2 * (len + 1) + 2;
+    }
+    //CRC
+    return len + 2;
+  }//getWireLength
+
+  /**
+   * Asserts if this <tt>ModbusSerialOverTCPTransaction</tt> is
+   * executable.
+   *
+   * @throws ModbusException if the transaction cannot be asserted
+   *                         as executable.
+   */
+  private void assertExecutable()
+      throws ModbusException {
+    if (m_Request == null || m_Connection == null) {
+      throw new ModbusException(
+          "Assertion failed, transaction not executable"
+      );
+    }
+  }//assertExecuteable
+
+    /**
+     * Checks the validity of the transaction, by
+     * checking if the values of the response correspond
+     * to the values of the request.
+     * Use an override to provide some checks, this method will only return.
+     *
+     * @throws ModbusException if this transaction has not been valid.
+     */
+    protected void checkValidity() throws ModbusException {
+  }//checkValidity
+
+}//class ModbusSerialOverTCPTransaction
@@ -17,15 +17,20 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.TransactionMetrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
+import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.net.SerialConnection;
-import net.wimpi.modbus.util.AtomicCounter;
 import net.wimpi.modbus.util.Mutex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Class implementing the <tt>ModbusTransaction</tt>
@@ -38,8 +43,7 @@ public class ModbusSerialTransaction
         implements ModbusTransaction {
 
     //class attributes
-    private static AtomicCounter c_TransactionID =
-            new AtomicCounter(Modbus.DEFAULT_TRANSACTION_ID);
+    private static final Logger c_Log = LoggerFactory.getLogger(ModbusSerialTransaction.class);
 
     //instance attributes and associations
     private ModbusTransport m_IO;
@@ -50,6 +54,9 @@ public class ModbusSerialTransaction
     private int m_Retries = Modbus.DEFAULT_RETRIES;
     private int m_TransDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
     private SerialConnection m_SerialCon;
+    private TransactionMetrics m_Metrics;
+    private String m_Endpoint;
+    private int m_TransactionID = Modbus.DEFAULT_TRANSACTION_ID;
 
     private Mutex m_TransactionLock = new Mutex();
 
@@ -93,10 +100,42 @@ public class ModbusSerialTransaction
     public void setSerialConnection(SerialConnection con) {
         m_SerialCon = con;
         m_IO = con.getModbusTransport();
+        m_Endpoint = null;
     }//setConnection
 
+    /**
+     * Sets the <tt>TransactionMetrics</tt> this transaction
+     * reports to. If not set, the metrics of the
+     * <tt>ModbusCoupler</tt> of the transport are used.
+     *
+     * @param metrics a <tt>TransactionMetrics</tt> instance.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+        m_Metrics = metrics;
+    }//setMetrics
+
+    /**
+     * Returns the <tt>TransactionMetrics</tt> this transaction
+     * reports to.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getMetrics() {
+        return (m_Metrics != null) ? m_Metrics : getCoupler().getTransactionMetrics();
+    }//getMetrics
+
+    /**
+     * Returns the <tt>ModbusCoupler</tt> of the transport
+     * this transaction is executed on.
+     *
+     * @return a <tt>ModbusCoupler</tt> instance.
+     */
+    private ModbusCoupler getCoupler() {
+        return (m_IO != null) ? m_IO.getCoupler() : ModbusCoupler.getReference();
+    }//getCoupler
+
     public int getTransactionID() {
-        return c_TransactionID.get();
+        return m_TransactionID;
     }//getTransactionID
 
 
@@ -153,6 +192,16 @@ public class ModbusSerialTransaction
         //1. assert executeability
         assertExecutable();
 
+        TransactionMetrics metrics = getMetrics();
+        EventRecorder recorder = getCoupler().getEventRecorder();
+        Object event = null;
+        String endpoint = getEndpoint();
+        int unitid = m_Request.getUnitID();
+        int fc = m_Request.getFunctionCode();
+        boolean success = false;
+        long start = 0;
+        int tries = 0;
+
         try {
             //2. Lock transaction
             /**
@@ -161,15 +210,18 @@ public class ModbusSerialTransaction
              * and the JVM will handle the rest.
              */
             m_TransactionLock.acquire();
+            start = System.nanoTime();
+            event = recorder.beginTransaction();
 
             //3. write request, and read response,
             //   while holding the lock on the IO object
             synchronized (m_IO) {
-                int tries = 0;
                 boolean finished = false;
 
-                //toggle the id
-                m_Request.setTransactionID(c_TransactionID.increment());
+                //take the next id of the connection; the id is not
+                //sent on the line, so nothing is kept in flight
+                m_TransactionID = m_SerialCon.getTransactionIDAllocator().next();
+                m_Request.setTransactionID(m_TransactionID);
 
                 do {
                     try {
@@ -177,29 +229,39 @@ public class ModbusSerialTransaction
                             try {
                                 Thread.sleep(m_TransDelayMS);
                             } catch (InterruptedException ex) {
-                                System.err.println("InterruptedException: " + ex.getMessage());
+                                c_Log.debug("Interrupted during transaction delay.");
                             }
                         }
                         //write request message
                         m_IO.writeMessage(m_Request);
+                        metrics.recordBytes(endpoint, unitid, getWireLength(m_Request), 0);
                         //read response message
                         m_Response = m_IO.readResponse();
+                        metrics.recordBytes(endpoint, unitid, 0, getWireLength(m_Response));
                         finished = true;
                     } catch (ModbusIOException e) {
+                        if (e.isTimeout()) {
+                            metrics.recordTimeout(endpoint, unitid, fc);
+                        }
+                        if (e.isChecksumError()) {
+                            metrics.recordChecksumError(endpoint, unitid, fc);
+                        }
                         if (++tries >= m_Retries) {
                             throw e;
                         }
-                        System.err.println("execute try " + tries + " error: " +
-                                e.getMessage());
+                        metrics.recordRetry(endpoint, unitid, fc);
+                        c_Log.debug("Try {} failed: {}", tries, e.getMessage());
                     }
                 } while (!finished);
             }
 
+            success = true;
+
             //4. deal with exceptions
             if (m_Response instanceof ExceptionResponse) {
-                throw new ModbusSlaveException(
-                        ((ExceptionResponse) m_Response).getExceptionCode()
-                );
+                int code = ((ExceptionResponse) m_Response).getExceptionCode();
+                metrics.recordExceptionResponse(endpoint, unitid, fc, code);
+                throw new ModbusSlaveException(code);
             }
 
             if (isCheckingValidity()) {
@@ -208,10 +270,49 @@ public class ModbusSerialTransaction
         } catch (InterruptedException ex) {
             throw new ModbusIOException("Thread acquiring lock was interrupted.");
         } finally {
+            if (start != 0) {
+                metrics.recordTransaction(endpoint, unitid, fc, System.nanoTime() - start, success);
+                recorder.endTransaction(event, endpoint, unitid, fc, tries, success);
+            }
             m_TransactionLock.release();
         }
     }//execute
 
+    /**
+     * Returns the endpoint name used for tagging metrics.
+     *
+     * @return the endpoint as <tt>String</tt>.
+     */
+    private String getEndpoint() {
+        if (m_Endpoint == null) {
+            if (m_SerialCon.getSerialPort() == null) {
+                return "serial:unknown";
+            }
+            m_Endpoint = "serial:" + m_SerialCon.getSerialPort().getName();
+        }
+        return m_Endpoint;
+    }//getEndpoint
+
+    /**
+     * Returns the number of bytes the given message
+     * occupies on the line, including the framing
+     * of the transport.
+     *
+     * @param msg the <tt>ModbusMessage</tt>.
+     * @return the number of bytes.
+     */
+    private int getWireLength(ModbusMessage msg) {
+        int len = msg.getOutputLength();
+        if (m_IO instanceof ModbusRTUTransport) {
+            //CRC
+            return len + 2;
+        } else if (m_IO instanceof ModbusASCIITransport) {
+            //':', hex encoded message and LRC, CR LF
+            return 1 + 2 * (len + 1) + 2;
+        }
+        return len;
+    }//getWireLength
+
     /**
      * Asserts if this <tt>ModbusTCPTransaction</tt> is
      * executable.
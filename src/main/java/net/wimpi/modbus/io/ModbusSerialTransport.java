@@ -16,14 +16,18 @@
 
 package net.wimpi.modbus.io;
 
-import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.NoOpEventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.ModbusUtil;
 import com.sparetimelabs.serial.CommPort;
 import com.sparetimelabs.serial.UnsupportedCommOperationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +36,11 @@ import java.io.OutputStream;
 /**
  * Abstract base class for serial <tt>ModbusTransport</tt>
  * implementations.
+ * <p>
+ * A transport is usually bound to a <tt>CommPort</tt>. It may also
+ * be bound to plain streams through {@link #prepareStreams(InputStream, OutputStream)},
+ * for instance those of a socket to a serial device server; the
+ * receive threshold and timeout are then left to the streams.
  *
  * @author Dieter Wimberger
  * @author John Charlton
@@ -39,6 +48,9 @@ import java.io.OutputStream;
  */
 abstract public class ModbusSerialTransport
     implements ModbusTransport {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusSerialTransport.class);
+
     /**
      * The M comm port.
      */
@@ -48,6 +60,8 @@ abstract public class ModbusSerialTransport
      */
     protected boolean   m_Echo = false;     // require RS-485 echo processing
 
+  private ModbusCoupler m_Coupler;
+
     /**
      * <code>prepareStreams</code> prepares the input and output streams of this
      * <tt>ModbusSerialTransport</tt> instance.
@@ -72,7 +86,7 @@ abstract public class ModbusSerialTransport
   /**
    * The <code>readRequest</code> method listens continuously on the serial
    * input stream for master request messages and replies if the request slave
-   * ID matches its own set in ModbusCoupler.getUnitID().
+   * ID is served according to ModbusCoupler.isServing(int).
    *
    * @return a <code>ModbusRequest</code> value
    * @exception ModbusIOException if an error occurs
@@ -98,6 +112,14 @@ abstract public class ModbusSerialTransport
    */
   abstract public void close() throws IOException;
 
+  public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+  public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
     /**
      * <code>setCommPort</code> sets the comm port member and prepares the input
      * and output streams to be used for reading from and writing to.
@@ -108,7 +130,15 @@ abstract public class ModbusSerialTransport
     public void setCommPort(CommPort cp) throws IOException {
     m_CommPort = cp;
     if (cp != null) {
-      prepareStreams(cp.getInputStream(), cp.getOutputStream());
+      InputStream in = cp.getInputStream();
+      OutputStream out = cp.getOutputStream();
+      //trace the port at its stream boundary, only if events are recorded
+      EventRecorder recorder = getCoupler().getEventRecorder();
+      if (!(recorder instanceof NoOpEventRecorder)) {
+        in = new TracingSerialInputStream(in, recorder, cp.getName());
+        out = new TracingSerialOutputStream(out, recorder, cp.getName());
+      }
+      prepareStreams(in, out);
     }
   }
 
@@ -137,10 +167,13 @@ abstract public class ModbusSerialTransport
      * @param th an <code>int</code> value
      */
     public void setReceiveThreshold(int th) {
+    if (m_CommPort == null) {
+      return;
+    }
     try {
       m_CommPort.enableReceiveThreshold(th); /* chars */
     } catch (UnsupportedCommOperationException e) {
-      System.out.println(e.getMessage());
+      c_Log.warn("Receive threshold not supported: {}", e.getMessage());
     }
   }
 
@@ -150,13 +183,55 @@ abstract public class ModbusSerialTransport
      * @param ms an <code>int</code> value
      */
     public void setReceiveTimeout(int ms) {
+    if (m_CommPort == null) {
+      return;
+    }
     try {
       m_CommPort.enableReceiveTimeout(ms); /* milliseconds */
     } catch (UnsupportedCommOperationException e) {
-      System.out.println(e.getMessage());
+      c_Log.warn("Receive timeout not supported: {}", e.getMessage());
     }
   }
 
+    /**
+     * Disables the receive threshold of the comm port, if any.
+     */
+    public void disableReceiveThreshold() {
+    if (m_CommPort != null) {
+      m_CommPort.disableReceiveThreshold();
+    }
+  }//disableReceiveThreshold
+
+  /**
+   * Reads up to <tt>len</tt> bytes from the given stream.
+   * <p>
+   * A comm port delivers the bytes of the receive threshold
+   * in one read, unless it times out. Plain streams may deliver
+   * them in pieces, so they are read until <tt>len</tt> bytes
+   * have been received, or the stream ends.
+   *
+   * @param in  the stream to read from.
+   * @param buf the buffer to read into.
+   * @param off the offset in the buffer.
+   * @param len the number of bytes to be read.
+   * @return the number of bytes read.
+   * @throws IOException if an I/O error occurs, including a socket timeout.
+   */
+  protected int readBytes(InputStream in, byte[] buf, int off, int len)
+      throws IOException {
+    int count = in.read(buf, off, len);
+    if (m_CommPort == null) {
+      while (count >= 0 && count < len) {
+        int n = in.read(buf, off + count, len - count);
+        if (n < 0) {
+          break;
+        }
+        count += n;
+      }
+    }
+    return count;
+  }//readBytes
+
     /**
      * Reads the own message echo produced in RS485 Echo Mode
      * within the given time frame.
@@ -169,16 +244,35 @@ abstract public class ModbusSerialTransport
     byte echoBuf[] = new byte[len];
     setReceiveThreshold(len);
     int echoLen = m_CommPort.getInputStream().read(echoBuf, 0, len);
-    if (Modbus.debug)
-      System.out.println("Echo: " +
-                         ModbusUtil.toHex(echoBuf, 0, echoLen));
+    if (c_Log.isTraceEnabled()) c_Log.trace("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
     m_CommPort.disableReceiveThreshold();
     if (echoLen != len) {
-      if (Modbus.debug)
-        System.err.println("Error: Transmit echo not received.");
+      c_Log.debug("Transmit echo not received.");
       throw new IOException("Echo not received.");
     }
   }//readEcho
 
+  /**
+   * Records a frame to the <tt>FrameTrace</tt> and,
+   * if enabled, to the trace log of the given logger.
+   *
+   * @param log      the <tt>Logger</tt> of the transport.
+   * @param encoding the serial encoding of the transport.
+   * @param outgoing true if the frame is sent, false if received.
+   * @param buffer   the buffer holding the frame.
+   * @param off      the offset of the frame in the buffer.
+   * @param length   the length of the frame.
+   */
+  protected void traceFrame(Logger log, String encoding, boolean outgoing,
+                                   byte[] buffer, int off, int length) {
+    FrameTrace trace = getCoupler().getFrameTrace();
+    if (trace != null) {
+      trace.record(encoding, outgoing, buffer, off, length);
+    }
+    if (log.isTraceEnabled()) {
+      log.trace(outgoing ? "Sent: {}" : "Received: {}", ModbusUtil.toHex(buffer, off, length));
+    }
+  }//traceFrame
+
   
 }//interface ModbusSerialTransport
@@ -17,15 +17,21 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.TransactionMetrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.net.TCPConnectionManager;
 import net.wimpi.modbus.net.TCPMasterConnection;
-import net.wimpi.modbus.util.AtomicCounter;
 import net.wimpi.modbus.util.Mutex;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+
+import java.net.InetAddress;
 
 /**
  * Class implementing the <tt>ModbusTransaction</tt>
@@ -37,12 +43,9 @@ import net.wimpi.modbus.util.Mutex;
 public class ModbusTCPTransaction
     implements ModbusTransaction {
 
-  //class attributes
-  private static AtomicCounter c_TransactionID =
-      new AtomicCounter(Modbus.DEFAULT_TRANSACTION_ID);
-
   //instance attributes and associations
   private TCPMasterConnection m_Connection;
+  private TCPConnectionManager m_ConnectionManager;
   private ModbusTransport m_IO;
   private ModbusRequest m_Request;
   private ModbusResponse m_Response;
@@ -50,6 +53,9 @@ public class ModbusTCPTransaction
       Modbus.DEFAULT_VALIDITYCHECK;
   private boolean m_Reconnecting = Modbus.DEFAULT_RECONNECTING;
   private int m_Retries = Modbus.DEFAULT_RETRIES;
+  private TransactionMetrics m_Metrics;
+  private String m_Endpoint;
+  private int m_TransactionID = Modbus.DEFAULT_TRANSACTION_ID;
 
   private Mutex m_TransactionLock = new Mutex();
 
@@ -84,6 +90,18 @@ public class ModbusTCPTransaction
     setConnection(con);
   }//constructor
 
+    /**
+     * Constructs a new <tt>ModbusTCPTransaction</tt>
+     * instance with a given <tt>TCPConnectionManager</tt>
+     * providing the connection to be used for transactions.
+     * <p>
+     *
+     * @param mgr a <tt>TCPConnectionManager</tt> instance.
+     */
+    public ModbusTCPTransaction(TCPConnectionManager mgr) {
+    setConnectionManager(mgr);
+  }//constructor
+
     /**
      * Sets the connection on which this <tt>ModbusTransaction</tt>
      * should be executed.<p>
@@ -96,8 +114,57 @@ public class ModbusTCPTransaction
     public void setConnection(TCPMasterConnection con) {
     m_Connection = con;
     m_IO = con.getModbusTransport();
+    m_Endpoint = toEndpoint(con.getAddress(), con.getPort());
   }//setConnection
 
+    /**
+     * Sets the <tt>TCPConnectionManager</tt> providing the
+     * connection on which this <tt>ModbusTransaction</tt>
+     * should be executed.<p>
+     * If the managed connection is down, executing fails
+     * immediately, and a connection that fails during the
+     * transaction is handed back to the manager for reconnecting
+     * in the background. The reconnecting flag is not used
+     * in this case.
+     *
+     * @param mgr a <tt>TCPConnectionManager</tt>.
+     */
+    public void setConnectionManager(TCPConnectionManager mgr) {
+    m_ConnectionManager = mgr;
+    m_Endpoint = toEndpoint(mgr.getAddress(), mgr.getPort());
+  }//setConnectionManager
+
+    /**
+     * Sets the <tt>TransactionMetrics</tt> this transaction
+     * reports to. If not set, the metrics of the
+     * <tt>ModbusCoupler</tt> of the transport are used.
+     *
+     * @param metrics a <tt>TransactionMetrics</tt> instance.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+    m_Metrics = metrics;
+  }//setMetrics
+
+    /**
+     * Returns the <tt>TransactionMetrics</tt> this transaction
+     * reports to.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getMetrics() {
+    return (m_Metrics != null) ? m_Metrics : getCoupler().getTransactionMetrics();
+  }//getMetrics
+
+  /**
+   * Returns the <tt>ModbusCoupler</tt> of the transport
+   * this transaction is executed on.
+   *
+   * @return a <tt>ModbusCoupler</tt> instance.
+   */
+  private ModbusCoupler getCoupler() {
+    return (m_IO != null) ? m_IO.getCoupler() : ModbusCoupler.getReference();
+  }//getCoupler
+
   public void setRequest(ModbusRequest req) {
     m_Request = req;
   }//setRequest
@@ -111,7 +178,7 @@ public class ModbusTCPTransaction
   }//getResponse
 
   public int getTransactionID() {
-    return c_TransactionID.get();
+    return m_TransactionID;
   }//getTransactionID
 
   public void setCheckingValidity(boolean b) {
@@ -160,6 +227,16 @@ public class ModbusTCPTransaction
     //1. check that the transaction can be executed
     assertExecutable();
 
+    TransactionMetrics metrics = getMetrics();
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = null;
+    String endpoint = m_Endpoint;
+    int unitid = m_Request.getUnitID();
+    int fc = m_Request.getFunctionCode();
+    boolean success = false;
+    long start = 0;
+    int retryCounter = 0;
+
     try {
       //2. Lock transaction
       /**
@@ -168,9 +245,15 @@ public class ModbusTCPTransaction
        * and the JVM will handle the rest.
        */
       m_TransactionLock.acquire();
+      start = System.nanoTime();
+      event = recorder.beginTransaction();
 
       //3. open the connection if not connected
-      if (!m_Connection.isConnected()) {
+      if (m_ConnectionManager != null) {
+        //fails fast while the manager is reconnecting
+        m_Connection = m_ConnectionManager.getConnection();
+        m_IO = m_Connection.getModbusTransport();
+      } else if (!m_Connection.isConnected()) {
         try {
           m_Connection.connect();
           m_IO = m_Connection.getModbusTransport();
@@ -181,36 +264,59 @@ public class ModbusTCPTransaction
 
       //4. Retry transaction m_Retries times, in case of
       //I/O Exception problems.
-      int retryCounter = 0;
 
+      TransactionIDAllocator ids = m_Connection.getTransactionIDAllocator();
       while (retryCounter <= m_Retries) {
+        //take the next free id of the connection
+        int tid;
+        try {
+          tid = ids.allocate();
+        } catch (IllegalStateException ex) {
+          throw new ModbusIOException(ex.getMessage());
+        }
         try {
-          //toggle and set the id
-          m_Request.setTransactionID(c_TransactionID.increment());
+          m_TransactionID = tid;
+          m_Request.setTransactionID(tid);
           //3. write request, and read response
           m_IO.writeMessage(m_Request);
+          metrics.recordBytes(endpoint, unitid, m_Request.getOutputLength(), 0);
           //read response message
           m_Response = m_IO.readResponse();
+          metrics.recordBytes(endpoint, unitid, 0, m_Response.getOutputLength());
           break;
         } catch (ModbusIOException ex) {
+          if (ex.isTimeout()) {
+            metrics.recordTimeout(endpoint, unitid, fc);
+          }
+          if (ex.isChecksumError()) {
+            metrics.recordChecksumError(endpoint, unitid, fc);
+          }
           if (retryCounter == m_Retries) {
+            if (m_ConnectionManager != null) {
+              m_ConnectionManager.connectionFailed();
+            }
             throw new ModbusIOException("Executing transaction failed (tried " + m_Retries + " times)");
           } else {
+            metrics.recordRetry(endpoint, unitid, fc);
             retryCounter++;
             continue;
           }
+        } finally {
+          ids.release(tid);
         }
       }
 
+      success = true;
+
       //5. deal with "application level" exceptions
       if (m_Response instanceof ExceptionResponse) {
-        throw new ModbusSlaveException(
-            ((ExceptionResponse) m_Response).getExceptionCode()
-        );
+        int code = ((ExceptionResponse) m_Response).getExceptionCode();
+        metrics.recordExceptionResponse(endpoint, unitid, fc, code);
+        throw new ModbusSlaveException(code);
       }
 
       //6. close connection if reconnecting
-      if (isReconnecting()) {
+      if (isReconnecting() && m_ConnectionManager == null) {
         m_Connection.close();
       }
 
@@ -222,6 +328,10 @@ public class ModbusTCPTransaction
     } catch (InterruptedException ex) {
       throw new ModbusIOException("Thread acquiring lock was interrupted.");
     } finally {
+      if (start != 0) {
+        metrics.recordTransaction(endpoint, unitid, fc, System.nanoTime() - start, success);
+        recorder.endTransaction(event, endpoint, unitid, fc, retryCounter, success);
+      }
       m_TransactionLock.release();
     }
   }//execute
@@ -236,13 +346,24 @@ public class ModbusTCPTransaction
   private void assertExecutable()
       throws ModbusException {
     if (m_Request == null ||
-        m_Connection == null) {
+        (m_Connection == null && m_ConnectionManager == null)) {
       throw new ModbusException(
           "Assertion failed, transaction not executable"
       );
     }
   }//assertExecuteable
 
+  /**
+   * Returns the endpoint name used for tagging metrics.
+   *
+   * @param addr the address of the slave.
+   * @param port the port of the slave.
+   * @return the endpoint as <tt>String</tt>.
+   */
+  private static String toEndpoint(InetAddress addr, int port) {
+    return "tcp://" + ((addr == null) ? "unknown" : addr.getHostAddress()) + ":" + port;
+  }//toEndpoint
+
     /**
      * Checks the validity of the transaction, by
      * checking if the values of the response correspond
@@ -17,11 +17,16 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusRequestPool;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -30,6 +35,7 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.net.SocketException;
 
@@ -43,10 +49,15 @@ import java.net.SocketException;
 public class ModbusTCPTransport
     implements ModbusTransport {
 
+  //class attributes
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusTCPTransport.class);
+
   //instance attributes
   private DataInputStream m_Input;	  //input stream
   private DataOutputStream m_Output;	 //output stream
   private BytesInputStream m_ByteIn;
+  private ModbusRequestPool m_RequestPool;
+  private ModbusCoupler m_Coupler;
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -59,7 +70,7 @@ public class ModbusTCPTransport
     try {
       setSocket(socket);
     } catch (IOException ex) {
-      if(Modbus.debug) System.out.println("ModbusTCPTransport::Socket invalid.");
+      c_Log.debug("Socket invalid.", ex);
       //@commentstart@
       throw new IllegalStateException("Socket invalid.");
       //@commentend@
@@ -77,6 +88,25 @@ public class ModbusTCPTransport
     prepareStreams(socket);
   }//setSocket
 
+    /**
+     * Sets the <tt>ModbusRequestPool</tt> used by
+     * {@link #readRequest()}. If set, requests and their responses
+     * are reused instead of being created for every message.
+     *
+     * @param pool the <tt>ModbusRequestPool</tt> of this connection, or null.
+     */
+    public void setRequestPool(ModbusRequestPool pool) {
+    m_RequestPool = pool;
+  }//setRequestPool
+
+  public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+  public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
   public void close() throws IOException {
     m_Input.close();
     m_Output.close();
@@ -84,12 +114,21 @@ public class ModbusTCPTransport
 
   public void writeMessage(ModbusMessage msg)
       throws ModbusIOException {
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportWrite();
     try {
       msg.writeTo((DataOutput) m_Output);
       m_Output.flush();
+      FrameTrace trace = getCoupler().getFrameTrace();
+      if (trace != null) {
+        trace.record("tcp", true, msg);
+      }
+      if (c_Log.isTraceEnabled()) c_Log.trace("Sent: {}", ModbusUtil.toHex(msg));
       //write more sophisticated exception handling
     } catch (Exception ex) {
       throw new ModbusIOException("I/O exception - failed to write.");
+    } finally {
+      recorder.endTransportWrite(event, "tcp", msg.getFunctionCode(), msg.getOutputLength());
     }
   }//write
 
@@ -114,11 +153,17 @@ public class ModbusTCPTransport
         if (m_Input.read(buffer, 6, bf) == -1) {
           throw new ModbusIOException("Premature end of stream (Message truncated).");
         }
+        traceReceived(buffer, 6 + bf);
         m_ByteIn.reset(buffer, (6 + bf));
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
-        req = ModbusRequest.createModbusRequest(functionCode);
+        if (m_RequestPool == null) {
+          req = ModbusRequest.createModbusRequest(functionCode);
+        } else {
+          req = m_RequestPool.getRequest(functionCode);
+        }
+        req.setCoupler(m_Coupler);
         req.readFrom(m_ByteIn);
       }
       return req;
@@ -152,7 +197,7 @@ public class ModbusTCPTransport
       //connection reset by peer, also EOF
       throw new ModbusIOException(true);
     } catch (Exception ex) {
-      ex.printStackTrace();
+      c_Log.debug("Failed to read request.", ex);
       throw new ModbusIOException("I/O exception - failed to read.");
     }
   }//readRequest
@@ -161,9 +206,11 @@ public class ModbusTCPTransport
       throws ModbusIOException {
     //System.out.println("readResponse()");
 
+    ModbusResponse res = null;
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportRead();
     try {
 
-      ModbusResponse res = null;
       synchronized (m_ByteIn) {
         //use same buffer
         byte[] buffer = m_ByteIn.getBuffer();
@@ -178,11 +225,13 @@ public class ModbusTCPTransport
         if (m_Input.read(buffer, 6, bf) == -1) {
           throw new ModbusIOException("Premature end of stream (Message truncated).");
         }
+        traceReceived(buffer, 6 + bf);
         m_ByteIn.reset(buffer, (6 + bf));
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
         res = ModbusResponse.createModbusResponse(functionCode);
+        res.setCoupler(m_Coupler);
         res.readFrom(m_ByteIn);
       }
       return res;
@@ -212,12 +261,35 @@ public class ModbusTCPTransport
          response.setUnitID(unitID);
          return response;
          */
+    } catch (InterruptedIOException ioex) {
+      ModbusIOException ex = new ModbusIOException("Socket timed out.");
+      ex.setTimeout(true);
+      throw ex;
     } catch (Exception ex) {
-      ex.printStackTrace();
+      c_Log.debug("Failed to read response.", ex);
       throw new ModbusIOException("I/O exception - failed to read.");
+    } finally {
+      recorder.endTransportRead(event, "tcp",
+          (res == null) ? -1 : res.getFunctionCode(),
+          (res == null) ? 0 : res.getOutputLength());
     }
   }//readResponse
 
+  /**
+   * Records a received frame to the <tt>FrameTrace</tt>
+   * and the trace log, if enabled.
+   *
+   * @param buffer the buffer holding the frame.
+   * @param length the length of the frame.
+   */
+  private void traceReceived(byte[] buffer, int length) {
+    FrameTrace trace = getCoupler().getFrameTrace();
+    if (trace != null) {
+      trace.record("tcp", false, buffer, 0, length);
+    }
+    if (c_Log.isTraceEnabled()) c_Log.trace("Received: {}", ModbusUtil.toHex(buffer, 0, length));
+  }//traceReceived
+
   /**
    * Prepares the input and output streams of this
    * <tt>ModbusTCPTransport</tt> instance based on the given
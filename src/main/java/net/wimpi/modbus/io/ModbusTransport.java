@@ -16,6 +16,7 @@
 
 package net.wimpi.modbus.io;
 
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
@@ -67,4 +68,21 @@ public interface ModbusTransport {
      */
     public ModbusResponse readResponse() throws ModbusIOException;
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>ModbusTransport</tt>
+     * is used in. It provides the process image factory for the
+     * messages read, and the metrics and tracing hooks.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler();
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>ModbusTransport</tt>
+     * is used in. Every message read is handed this coupler.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler);
+
 }//class ModbusTransport
@@ -17,16 +17,21 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.metrics.TransactionMetrics;
 import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.net.UDPMasterConnection;
 import net.wimpi.modbus.net.UDPTerminal;
-import net.wimpi.modbus.util.AtomicCounter;
 import net.wimpi.modbus.util.Mutex;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+
+import java.net.InetAddress;
 
 /**
  * Class implementing the <tt>ModbusTransaction</tt>
@@ -38,13 +43,12 @@ import net.wimpi.modbus.util.Mutex;
 public class ModbusUDPTransaction
     implements ModbusTransaction {
 
-  //class attributes
-  private static AtomicCounter c_TransactionID =
-      new AtomicCounter(Modbus.DEFAULT_TRANSACTION_ID);
-
+  //shared by the transactions on terminals without a connection
+  private static final TransactionIDAllocator c_TransactionIDs = new TransactionIDAllocator();
 
   //instance attributes and associations
   private UDPTerminal m_Terminal;
+  private UDPMasterConnection m_Connection;
   private ModbusTransport m_IO;
   private ModbusRequest m_Request;
   private ModbusResponse m_Response;
@@ -52,6 +56,10 @@ public class ModbusUDPTransaction
       Modbus.DEFAULT_VALIDITYCHECK;
   private int m_Retries = Modbus.DEFAULT_RETRIES;
   private int m_RetryCounter = 0;
+  private TransactionMetrics m_Metrics;
+  private String m_Endpoint;
+  private TransactionIDAllocator m_TransactionIDs;
+  private int m_TransactionID = Modbus.DEFAULT_TRANSACTION_ID;
 
   private Mutex m_TransactionLock = new Mutex();
 
@@ -96,6 +104,10 @@ public class ModbusUDPTransaction
      */
     public ModbusUDPTransaction(UDPMasterConnection con) {
     setTerminal(con.getTerminal());
+    m_Connection = con;
+    m_Endpoint = toEndpoint(con.getAddress(), con.getPort());
+    //share the id space of the connection
+    m_TransactionIDs = con.getTransactionIDAllocator();
   }//constructor
 
     /**
@@ -106,11 +118,45 @@ public class ModbusUDPTransaction
      */
     public void setTerminal(UDPTerminal terminal) {
     m_Terminal = terminal;
+    m_Connection = null;
+    m_Endpoint = null;
+    m_TransactionIDs = c_TransactionIDs;
     if (terminal.isActive()) {
       m_IO = terminal.getModbusTransport();
     }
   }//setConnection
 
+    /**
+     * Sets the <tt>TransactionMetrics</tt> this transaction
+     * reports to. If not set, the metrics of the
+     * <tt>ModbusCoupler</tt> of the transport are used.
+     *
+     * @param metrics a <tt>TransactionMetrics</tt> instance.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+    m_Metrics = metrics;
+  }//setMetrics
+
+    /**
+     * Returns the <tt>TransactionMetrics</tt> this transaction
+     * reports to.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getMetrics() {
+    return (m_Metrics != null) ? m_Metrics : getCoupler().getTransactionMetrics();
+  }//getMetrics
+
+  /**
+   * Returns the <tt>ModbusCoupler</tt> of the transport
+   * this transaction is executed on.
+   *
+   * @return a <tt>ModbusCoupler</tt> instance.
+   */
+  private ModbusCoupler getCoupler() {
+    return (m_IO != null) ? m_IO.getCoupler() : ModbusCoupler.getReference();
+  }//getCoupler
+
   public void setRequest(ModbusRequest req) {
     m_Request = req;
     //m_Response = req.getResponse();
@@ -125,7 +171,7 @@ public class ModbusUDPTransaction
   }//getResponse
 
   public int getTransactionID() {
-    return c_TransactionID.get();
+    return m_TransactionID;
   }//getTransactionID
 
   public void setCheckingValidity(boolean b) {
@@ -152,6 +198,18 @@ public class ModbusUDPTransaction
     //1. assert executeability
     assertExecutable();
 
+    TransactionMetrics metrics = getMetrics();
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = null;
+    if (m_Endpoint == null) {
+      m_Endpoint = toEndpoint(null, 0);
+    }
+    String endpoint = m_Endpoint;
+    int unitid = m_Request.getUnitID();
+    int fc = m_Request.getFunctionCode();
+    boolean success = false;
+    long start = 0;
+
     try {
       //2. Lock transaction
       /**
@@ -160,6 +218,8 @@ public class ModbusUDPTransaction
        * and the JVM will handle the rest.
        */
       m_TransactionLock.acquire();
+      start = System.nanoTime();
+      event = recorder.beginTransaction();
 
       //3. open the connection if not connected
       if (!m_Terminal.isActive()) {
@@ -177,29 +237,63 @@ public class ModbusUDPTransaction
       m_RetryCounter = 0;
 
       while (m_RetryCounter <= m_Retries) {
+        //take the next free id
+        int tid;
+        try {
+          tid = m_TransactionIDs.allocate();
+        } catch (IllegalStateException ex) {
+          throw new ModbusIOException(ex.getMessage());
+        }
         try {
-          //toggle the id
-          m_Request.setTransactionID(c_TransactionID.increment());
+          m_TransactionID = tid;
+          m_Request.setTransactionID(tid);
           //3. write request, and read response,
           //   while holding the lock on the IO object
           synchronized (m_IO) {
             //write request message
             m_IO.writeMessage(m_Request);
-            //read response message
+            metrics.recordBytes(endpoint, unitid, m_Request.getOutputLength(), 0);
+            //read response message, dropping late replies
+            //to earlier requests within the timeout
+            int timeout = (m_Connection != null) ? m_Connection.getTimeout() : 0;
+            long deadline = System.currentTimeMillis()
+                + ((timeout > 0) ? timeout : Modbus.DEFAULT_TIMEOUT);
             m_Response = m_IO.readResponse();
+            while (m_Response.getTransactionID() != tid) {
+              if (System.currentTimeMillis() >= deadline) {
+                ModbusIOException ex = new ModbusIOException("No response to transaction " + tid);
+                ex.setTimeout(true);
+                throw ex;
+              }
+              m_Response = m_IO.readResponse();
+            }
+            metrics.recordBytes(endpoint, unitid, 0, m_Response.getOutputLength());
             break;
           }
         } catch (ModbusIOException ex) {
+          if (ex.isTimeout()) {
+            metrics.recordTimeout(endpoint, unitid, fc);
+          }
+          if (ex.isChecksumError()) {
+            metrics.recordChecksumError(endpoint, unitid, fc);
+          }
+          if (m_RetryCounter == m_Retries) {
+            throw new ModbusIOException("Executing transaction failed (tried " + m_Retries + " times)");
+          }
+          metrics.recordRetry(endpoint, unitid, fc);
           m_RetryCounter++;
           continue;
+        } finally {
+          m_TransactionIDs.release(tid);
         }
       }
+      success = true;
 
       //4. deal with "application level" exceptions
       if (m_Response instanceof ExceptionResponse) {
-        throw new ModbusSlaveException(
-            ((ExceptionResponse) m_Response).getExceptionCode()
-        );
+        int code = ((ExceptionResponse) m_Response).getExceptionCode();
+        metrics.recordExceptionResponse(endpoint, unitid, fc, code);
+        throw new ModbusSlaveException(code);
       }
 
       if (isCheckingValidity()) {
@@ -208,6 +302,10 @@ public class ModbusUDPTransaction
     } catch (InterruptedException ex) {
       throw new ModbusIOException("Thread acquiring lock was interrupted.");
     } finally {
+      if (start != 0) {
+        metrics.recordTransaction(endpoint, unitid, fc, System.nanoTime() - start, success);
+        recorder.endTransaction(event, endpoint, unitid, fc, m_RetryCounter, success);
+      }
       m_TransactionLock.release();
     }
 
@@ -241,4 +339,18 @@ public class ModbusUDPTransaction
     protected void checkValidity() throws ModbusException {
   }//checkValidity
 
+  /**
+   * Returns the endpoint name used for tagging metrics.
+   *
+   * @param addr the address of the slave, or null if unknown.
+   * @param port the port of the slave.
+   * @return the endpoint as <tt>String</tt>.
+   */
+  private static String toEndpoint(InetAddress addr, int port) {
+    if (addr == null) {
+      return "udp://unknown";
+    }
+    return "udp://" + addr.getHostAddress() + ":" + port;
+  }//toEndpoint
+
 }//class ModbusUDPTransaction
@@ -17,11 +17,17 @@
 package net.wimpi.modbus.io;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.metrics.EventRecorder;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusRequestPool;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.net.UDPTerminal;
+import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.DataOutput;
 import java.io.IOException;
@@ -37,10 +43,15 @@ import java.io.InterruptedIOException;
 public class ModbusUDPTransport
     implements ModbusTransport {
 
+  //class attributes
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusUDPTransport.class);
+
   //instance attributes
   private UDPTerminal m_Terminal;
   private BytesOutputStream m_ByteOut;
   private BytesInputStream m_ByteIn;
+  private ModbusRequestPool m_RequestPool;
+  private ModbusCoupler m_Coupler;
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -56,6 +67,25 @@ public class ModbusUDPTransport
   }//constructor
 
 
+    /**
+     * Sets the <tt>ModbusRequestPool</tt> used by
+     * {@link #readRequest()}. If set, requests and their responses
+     * are reused instead of being created for every message.
+     *
+     * @param pool the <tt>ModbusRequestPool</tt> of this terminal, or null.
+     */
+    public void setRequestPool(ModbusRequestPool pool) {
+    m_RequestPool = pool;
+  }//setRequestPool
+
+  public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+  public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
   public void close()
       throws IOException {
     //?
@@ -63,14 +93,19 @@ public class ModbusUDPTransport
 
   public void writeMessage(ModbusMessage msg)
       throws ModbusIOException {
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportWrite();
     try {
       synchronized (m_ByteOut) {
         m_ByteOut.reset();
         msg.writeTo((DataOutput) m_ByteOut);
+        traceFrame(true, m_ByteOut.getBuffer(), m_ByteOut.size());
         m_Terminal.sendMessage(m_ByteOut.toByteArray());
       }
     } catch (Exception ex) {
       throw new ModbusIOException("I/O exception - failed to write.");
+    } finally {
+      recorder.endTransportWrite(event, "udp", msg.getFunctionCode(), msg.getOutputLength());
     }
   }//write
 
@@ -79,11 +114,18 @@ public class ModbusUDPTransport
     try {
       ModbusRequest req = null;
       synchronized (m_ByteIn) {
-        m_ByteIn.reset(m_Terminal.receiveMessage());
+        byte[] message = m_Terminal.receiveMessage();
+        traceFrame(false, message, Math.min(message.length, 6 + ModbusUtil.registerToShort(message, 4)));
+        m_ByteIn.reset(message);
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
-        req = ModbusRequest.createModbusRequest(functionCode);
+        if (m_RequestPool == null) {
+          req = ModbusRequest.createModbusRequest(functionCode);
+        } else {
+          req = m_RequestPool.getRequest(functionCode);
+        }
+        req.setCoupler(m_Coupler);
         req.readFrom(m_ByteIn);
       }
       return req;
@@ -95,23 +137,52 @@ public class ModbusUDPTransport
   public ModbusResponse readResponse()
       throws ModbusIOException {
 
+    ModbusResponse res = null;
+    EventRecorder recorder = getCoupler().getEventRecorder();
+    Object event = recorder.beginTransportRead();
     try {
-      ModbusResponse res = null;
       synchronized (m_ByteIn) {
-        m_ByteIn.reset(m_Terminal.receiveMessage());
+        byte[] message = m_Terminal.receiveMessage();
+        traceFrame(false, message, Math.min(message.length, 6 + ModbusUtil.registerToShort(message, 4)));
+        m_ByteIn.reset(message);
         m_ByteIn.skip(7);
         int functionCode = m_ByteIn.readUnsignedByte();
         m_ByteIn.reset();
         res = ModbusResponse.createModbusResponse(functionCode);
+        res.setCoupler(m_Coupler);
         res.readFrom(m_ByteIn);
       }
       return res;
     } catch (InterruptedIOException ioex) {
-      throw new ModbusIOException("Socket timed out.");
+      ModbusIOException ex = new ModbusIOException("Socket timed out.");
+      ex.setTimeout(true);
+      throw ex;
     } catch (Exception ex) {
-      ex.printStackTrace();
+      c_Log.debug("Failed to read response.", ex);
       throw new ModbusIOException("I/O exception - failed to read.");
+    } finally {
+      recorder.endTransportRead(event, "udp",
+          (res == null) ? -1 : res.getFunctionCode(),
+          (res == null) ? 0 : res.getOutputLength());
     }
   }//readResponse
 
+  /**
+   * Records a frame to the <tt>FrameTrace</tt>
+   * and the trace log, if enabled.
+   *
+   * @param outgoing true if the frame is sent, false if received.
+   * @param buffer   the buffer holding the frame.
+   * @param length   the length of the frame.
+   */
+  private void traceFrame(boolean outgoing, byte[] buffer, int length) {
+    FrameTrace trace = getCoupler().getFrameTrace();
+    if (trace != null) {
+      trace.record("udp", outgoing, buffer, 0, length);
+    }
+    if (c_Log.isTraceEnabled()) {
+      c_Log.trace(outgoing ? "Sent: {}" : "Received: {}", ModbusUtil.toHex(buffer, 0, length));
+    }
+  }//traceFrame
+
 }//class ModbusUDPTransport
@@ -0,0 +1,384 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.WriteCoilRequest;
+import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteSingleRegisterRequest;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.LinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class implementing a write coalescing stage in front
+ * of a <tt>ModbusTransaction</tt>.
+ * <p>
+ * Single register and coil writes are queued and collected
+ * for a small time window. Consecutive writes of the same kind
+ * to the same unit, each to the reference following the previous
+ * one, are then merged into one <i>write multiple registers (FC 16)</i>
+ * or <i>write multiple coils (FC 15)</i> request; a run of length
+ * one is sent as single write.
+ * <p>
+ * Writes are executed in the order they have been queued, so
+ * e.g. a setpoint written before a command register always reaches
+ * the slave first. Writes to descending or scattered references
+ * are therefore not merged.
+ * Each queued write returns its own <tt>Future</tt>, which
+ * completes when the request carrying it has been executed.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusWriteCoalescer
+    implements Runnable {
+
+  //class attributes
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusWriteCoalescer.class);
+  private static final int MAX_REGISTERS = 123;
+  private static final int MAX_COILS = 1968;
+  private static final int MAX_BATCH = 1024;
+
+  //instance attributes
+  private ModbusTransaction m_Transaction;
+  private Object m_Lock;
+  private int m_Window;
+  private LinkedQueue m_Queue = new LinkedQueue();
+  private volatile boolean m_Active;
+  private Thread m_Worker;
+
+    /**
+     * Constructs a new <tt>ModbusWriteCoalescer</tt> instance.
+     * <p>
+     * The transaction is only used while holding the given lock,
+     * so it can be shared with code that synchronizes on the same
+     * object (e.g. a master facade).
+     *
+     * @param trans  the <tt>ModbusTransaction</tt> used to execute the writes.
+     * @param lock   the object to synchronize on while executing.
+     * @param window the time window for collecting writes in milliseconds.
+     */
+    public ModbusWriteCoalescer(ModbusTransaction trans, Object lock, int window) {
+    m_Transaction = trans;
+    m_Lock = (lock == null) ? this : lock;
+    m_Window = Math.max(0, window);
+  }//constructor
+
+    /**
+     * Starts the thread executing the queued writes.
+     */
+    public synchronized void start() {
+    if (m_Worker == null) {
+      m_Active = true;
+      m_Worker = new Thread(this, "Modbus write coalescer");
+      m_Worker.setDaemon(true);
+      m_Worker.start();
+    }
+  }//start
+
+    /**
+     * Stops the thread executing the queued writes.
+     * Writes still pending fail with a <tt>ModbusException</tt>.
+     */
+    public void stop() {
+    Thread worker;
+    synchronized (this) {
+      m_Active = false;
+      worker = m_Worker;
+      m_Worker = null;
+    }
+    if (worker != null) {
+      worker.interrupt();
+      try {
+        worker.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    drain();
+  }//stop
+
+    /**
+     * Returns the time window for collecting writes.
+     *
+     * @return the window in milliseconds.
+     */
+    public int getWindow() {
+    return m_Window;
+  }//getWindow
+
+    /**
+     * Queues a write of a single register.
+     *
+     * @param unitid the slave unit id.
+     * @param ref    the reference of the register to be written.
+     * @param value  the value to be written.
+     * @return a <tt>Future</tt> completing when the write has been executed.
+     */
+    public Future<Void> writeRegister(int unitid, int ref, int value) {
+    return enqueue(new PendingWrite(false, unitid, ref, value & 0xffff));
+  }//writeRegister
+
+    /**
+     * Queues a write of a single coil.
+     *
+     * @param unitid the slave unit id.
+     * @param ref    the reference of the coil to be written.
+     * @param state  the state to be written.
+     * @return a <tt>Future</tt> completing when the write has been executed.
+     */
+    public Future<Void> writeCoil(int unitid, int ref, boolean state) {
+    return enqueue(new PendingWrite(true, unitid, ref, state ? 1 : 0));
+  }//writeCoil
+
+  public void run() {
+    List<PendingWrite> batch = new ArrayList<PendingWrite>();
+    try {
+      while (m_Active) {
+        //1. block for the first write, then collect for the window
+        batch.add((PendingWrite) m_Queue.take());
+        long deadline = System.currentTimeMillis() + m_Window;
+        while (batch.size() < MAX_BATCH) {
+          long wait = deadline - System.currentTimeMillis();
+          PendingWrite w = (PendingWrite) m_Queue.poll(Math.max(0, wait));
+          if (w == null) {
+            break;
+          }
+          batch.add(w);
+        }
+        //2. merge and execute
+        flush(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException ex) {
+      //stopped
+    } catch (RuntimeException ex) {
+      c_Log.error("Write coalescer failed", ex);
+    } finally {
+      //do not leave writes behind that would never be executed
+      synchronized (this) {
+        m_Active = false;
+        if (m_Worker == Thread.currentThread()) {
+          m_Worker = null;
+        }
+      }
+      for (PendingWrite w : batch) {
+        w.fail(new ModbusException("Write coalescer stopped."));
+      }
+      drain();
+    }
+  }//run
+
+  private Future<Void> enqueue(PendingWrite w) {
+    if (!m_Active) {
+      w.fail(new ModbusException("Write coalescer not active."));
+      return w;
+    }
+    try {
+      m_Queue.put(w);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      w.fail(new ModbusException("Interrupted while queueing write."));
+    }
+    if (!m_Active) {
+      //stopped concurrently, do not leave the write behind
+      drain();
+    }
+    return w;
+  }//enqueue
+
+  /**
+   * Fails all writes remaining in the queue.
+   */
+  private void drain() {
+    try {
+      PendingWrite w;
+      while ((w = (PendingWrite) m_Queue.poll(0)) != null) {
+        w.fail(new ModbusException("Write coalescer stopped."));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }//drain
+
+  /**
+   * Executes the batch as runs of consecutive writes to
+   * adjacent references, keeping the order of arrival.
+   *
+   * @param batch the queued writes in arrival order.
+   */
+  private void flush(List<PendingWrite> batch) {
+    PendingWrite[] writes = batch.toArray(new PendingWrite[batch.size()]);
+    int start = 0;
+    for (int i = 1; i <= writes.length; i++) {
+      if (i == writes.length || !adjacent(writes[i - 1], writes[i])
+          || i - start == (writes[start].m_Coil ? MAX_COILS : MAX_REGISTERS)) {
+        execute(writes, start, i);
+        start = i;
+      }
+    }
+  }//flush
+
+  private static boolean adjacent(PendingWrite a, PendingWrite b) {
+    return a.m_Coil == b.m_Coil && a.m_UnitID == b.m_UnitID
+        && a.m_Reference + 1 == b.m_Reference;
+  }//adjacent
+
+  /**
+   * Executes the run of writes <tt>[from, to)</tt> as one
+   * request and completes their futures.
+   */
+  private void execute(PendingWrite[] writes, int from, int to) {
+    PendingWrite first = writes[from];
+    int count = to - from;
+    ModbusRequest req;
+    if (first.m_Coil) {
+      if (count == 1) {
+        req = new WriteCoilRequest(first.m_Reference, first.m_Value != 0);
+      } else {
+        BitVector bv = new BitVector(count);
+        for (int i = 0; i < count; i++) {
+          bv.setBit(i, writes[from + i].m_Value != 0);
+        }
+        req = new WriteMultipleCoilsRequest(first.m_Reference, bv);
+      }
+    } else {
+      if (count == 1) {
+        req = new WriteSingleRegisterRequest(first.m_Reference, new SimpleRegister(first.m_Value));
+      } else {
+        Register[] regs = new Register[count];
+        for (int i = 0; i < count; i++) {
+          regs[i] = new SimpleRegister(writes[from + i].m_Value);
+        }
+        req = new WriteMultipleRegistersRequest(first.m_Reference, regs);
+      }
+    }
+    req.setUnitID(first.m_UnitID);
+    c_Log.debug("Executing {} write(s) at {}", count, first.m_Reference);
+
+    ModbusException failure = null;
+    synchronized (m_Lock) {
+      try {
+        m_Transaction.setRequest(req);
+        m_Transaction.execute();
+      } catch (ModbusException ex) {
+        failure = ex;
+      } catch (RuntimeException ex) {
+        c_Log.error("Executing write at {} failed", first.m_Reference, ex);
+        failure = new ModbusException(ex.toString());
+        failure.initCause(ex);
+      }
+    }
+    for (int i = from; i < to; i++) {
+      if (failure == null) {
+        writes[i].complete();
+      } else {
+        writes[i].fail(failure);
+      }
+    }
+  }//execute
+
+  /**
+   * A queued write, doubling as the <tt>Future</tt>
+   * handed to the caller.
+   */
+  private static final class PendingWrite
+      implements Future<Void> {
+
+    private final boolean m_Coil;
+    private final int m_UnitID;
+    private final int m_Reference;
+    private final int m_Value;
+    private boolean m_Done;
+    private ModbusException m_Failure;
+
+    PendingWrite(boolean coil, int unitid, int ref, int value) {
+      m_Coil = coil;
+      m_UnitID = unitid;
+      m_Reference = ref;
+      m_Value = value;
+    }//constructor
+
+    synchronized void complete() {
+      m_Done = true;
+      notifyAll();
+    }//complete
+
+    synchronized void fail(ModbusException ex) {
+      if (m_Done) {
+        return;
+      }
+      m_Failure = ex;
+      m_Done = true;
+      notifyAll();
+    }//fail
+
+    public boolean cancel(boolean mayInterrupt) {
+      return false;
+    }//cancel
+
+    public boolean isCancelled() {
+      return false;
+    }//isCancelled
+
+    public synchronized boolean isDone() {
+      return m_Done;
+    }//isDone
+
+    public synchronized Void get()
+        throws InterruptedException, ExecutionException {
+      while (!m_Done) {
+        wait();
+      }
+      return result();
+    }//get
+
+    public synchronized Void get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      while (!m_Done) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          throw new TimeoutException();
+        }
+        wait(wait);
+      }
+      return result();
+    }//get
+
+    private Void result() throws ExecutionException {
+      if (m_Failure != null) {
+        throw new ExecutionException(m_Failure);
+      }
+      return null;
+    }//result
+
+  }//class PendingWrite
+
+}//class ModbusWriteCoalescer
@@ -0,0 +1,74 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.metrics.EventRecorder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class implementing an input stream that emits
+ * serial read events for each read from the wrapped
+ * serial port stream.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+class TracingSerialInputStream
+    extends FilterInputStream {
+
+  private final EventRecorder m_Recorder;
+  private final String m_Port;
+
+    /**
+     * Constructs a new <tt>TracingSerialInputStream</tt>.
+     *
+     * @param in       the input stream of the serial port.
+     * @param recorder the <tt>EventRecorder</tt> to emit events to.
+     * @param port     the name of the serial port.
+     */
+    TracingSerialInputStream(InputStream in, EventRecorder recorder, String port) {
+    super(in);
+    m_Recorder = recorder;
+    m_Port = port;
+  }//constructor
+
+  public int read() throws IOException {
+    Object event = m_Recorder.beginSerialRead();
+    int b = -1;
+    try {
+      b = in.read();
+      return b;
+    } finally {
+      m_Recorder.endSerialRead(event, m_Port, 1, (b == -1) ? -1 : 1);
+    }
+  }//read
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    Object event = m_Recorder.beginSerialRead();
+    int read = -1;
+    try {
+      read = in.read(b, off, len);
+      return read;
+    } finally {
+      m_Recorder.endSerialRead(event, m_Port, len, read);
+    }
+  }//read
+
+}//class TracingSerialInputStream
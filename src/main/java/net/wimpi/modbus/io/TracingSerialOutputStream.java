@@ -0,0 +1,70 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.metrics.EventRecorder;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class implementing an output stream that emits
+ * serial write events for each write to the wrapped
+ * serial port stream.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+class TracingSerialOutputStream
+    extends FilterOutputStream {
+
+  private final EventRecorder m_Recorder;
+  private final String m_Port;
+
+    /**
+     * Constructs a new <tt>TracingSerialOutputStream</tt>.
+     *
+     * @param out      the output stream of the serial port.
+     * @param recorder the <tt>EventRecorder</tt> to emit events to.
+     * @param port     the name of the serial port.
+     */
+    TracingSerialOutputStream(OutputStream out, EventRecorder recorder, String port) {
+    super(out);
+    m_Recorder = recorder;
+    m_Port = port;
+  }//constructor
+
+  public void write(int b) throws IOException {
+    Object event = m_Recorder.beginSerialWrite();
+    try {
+      out.write(b);
+    } finally {
+      m_Recorder.endSerialWrite(event, m_Port, 1);
+    }
+  }//write
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    Object event = m_Recorder.beginSerialWrite();
+    try {
+      out.write(b, off, len);
+    } finally {
+      m_Recorder.endSerialWrite(event, m_Port, len);
+    }
+  }//write
+
+}//class TracingSerialOutputStream
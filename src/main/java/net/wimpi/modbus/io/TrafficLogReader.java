@@ -0,0 +1,148 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that reads the frames of a traffic log
+ * written by a {@link TrafficLogWriter}.
+ * <p>
+ * The frames read carry consecutive sequence numbers starting
+ * at zero; their nano time is the time since the first frame.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class TrafficLogReader {
+
+  //instance attributes
+  private DataInputStream m_Input;
+  private boolean m_HeaderRead;
+  private long m_StartTime;
+  private long m_Micros;
+  private long m_Count;
+
+    /**
+     * Constructs a new <tt>TrafficLogReader</tt> instance
+     * reading from the given stream.
+     *
+     * @param in the <tt>InputStream</tt> to read the log from.
+     */
+    public TrafficLogReader(InputStream in) {
+    m_Input = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+  }//constructor
+
+    /**
+     * Reads the next frame of the log.
+     *
+     * @return the next <tt>FrameTrace.Frame</tt>, or null at the end of the log.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public FrameTrace.Frame readFrame() throws IOException {
+    if (!m_HeaderRead) {
+      int magic;
+      try {
+        magic = m_Input.readInt();
+      } catch (EOFException ex) {
+        //empty log
+        return null;
+      }
+      if (magic != TrafficLogWriter.MAGIC) {
+        throw new IOException("Not a traffic log.");
+      }
+      int version = m_Input.readUnsignedByte();
+      if (version != TrafficLogWriter.VERSION) {
+        throw new IOException("Unsupported traffic log version " + version);
+      }
+      m_StartTime = m_Input.readLong();
+      m_HeaderRead = true;
+    }
+    long delta;
+    try {
+      delta = readVarLong(m_Input.readUnsignedByte());
+    } catch (EOFException ex) {
+      return null;
+    }
+    m_Micros += delta;
+
+    int type = m_Input.readUnsignedByte();
+    int index = type & 0x7F;
+    String transport;
+    if (index == TrafficLogWriter.OTHER_TRANSPORT) {
+      transport = m_Input.readUTF();
+    } else if (index < TrafficLogWriter.TRANSPORTS.length) {
+      transport = TrafficLogWriter.TRANSPORTS[index];
+    } else {
+      throw new IOException("Unknown transport " + index);
+    }
+    int length = (int) readVarLong(m_Input.readUnsignedByte());
+    int kept = (int) readVarLong(m_Input.readUnsignedByte());
+    if (kept > length) {
+      throw new IOException("Corrupt frame record.");
+    }
+    byte[] data = new byte[kept];
+    m_Input.readFully(data);
+    return new FrameTrace.Frame(m_Count++, m_StartTime + m_Micros / 1000, m_Micros * 1000,
+        transport, (type & 0x80) != 0, length, data);
+  }//readFrame
+
+    /**
+     * Reads all remaining frames of the log.
+     *
+     * @return a <tt>List</tt> of <tt>FrameTrace.Frame</tt> instances.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public List<FrameTrace.Frame> readFrames() throws IOException {
+    List<FrameTrace.Frame> frames = new ArrayList<FrameTrace.Frame>();
+    FrameTrace.Frame frame;
+    while ((frame = readFrame()) != null) {
+      frames.add(frame);
+    }
+    return frames;
+  }//readFrames
+
+    /**
+     * Closes the log.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+    m_Input.close();
+  }//close
+
+  private long readVarLong(int b) throws IOException {
+    long v = b & 0x7F;
+    int shift = 7;
+    while ((b & 0x80) != 0) {
+      if (shift > 63) {
+        throw new IOException("Corrupt varint.");
+      }
+      b = m_Input.readUnsignedByte();
+      v |= ((long) (b & 0x7F)) << shift;
+      shift += 7;
+    }
+    return v;
+  }//readVarLong
+
+}//class TrafficLogReader
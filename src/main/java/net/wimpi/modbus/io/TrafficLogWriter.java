@@ -0,0 +1,141 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class that writes frames to a compact binary traffic log.
+ * <p>
+ * The log starts with a header (magic <tt>MBTR</tt>, version,
+ * time of the first frame in milliseconds since the epoch), followed
+ * by one record per frame:
+ * <ul>
+ * <li>the time since the previous frame in microseconds (varint)</li>
+ * <li>a type byte: bit 7 set for sent frames, bits 0-6 the transport
+ *     (<tt>tcp</tt>, <tt>udp</tt>, <tt>rtu</tt>, <tt>ascii</tt>, <tt>bin</tt>,
+ *     or 127 followed by the name of another transport)</li>
+ * <li>the length of the frame and the number of bytes kept (varints)</li>
+ * <li>the bytes kept</li>
+ * </ul>
+ * The frames are the raw frames as recorded by a {@link FrameTrace},
+ * including the header or checksum of their transport.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see TrafficLogReader
+ */
+public class TrafficLogWriter {
+
+  static final int MAGIC = 0x4D425452;
+  static final int VERSION = 1;
+  static final int OTHER_TRANSPORT = 0x7F;
+  static final String[] TRANSPORTS = {"tcp", "udp", "rtu", "ascii", "bin"};
+
+  //instance attributes
+  private DataOutputStream m_Output;
+  private boolean m_HeaderWritten;
+  private long m_LastNanoTime;
+  private long m_Count;
+
+    /**
+     * Constructs a new <tt>TrafficLogWriter</tt> instance
+     * writing to the given stream.
+     *
+     * @param out the <tt>OutputStream</tt> to write the log to.
+     */
+    public TrafficLogWriter(OutputStream out) {
+    m_Output = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+  }//constructor
+
+    /**
+     * Appends the given frame to the log.
+     *
+     * @param frame the <tt>FrameTrace.Frame</tt> to be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeFrame(FrameTrace.Frame frame) throws IOException {
+    if (!m_HeaderWritten) {
+      m_Output.writeInt(MAGIC);
+      m_Output.writeByte(VERSION);
+      m_Output.writeLong(frame.getTimestamp());
+      m_LastNanoTime = frame.getNanoTime();
+      m_HeaderWritten = true;
+    }
+    writeVarLong(Math.max(0, (frame.getNanoTime() - m_LastNanoTime) / 1000));
+    m_LastNanoTime = frame.getNanoTime();
+
+    int transport = indexOf(frame.getTransport());
+    m_Output.writeByte(transport | (frame.isOutgoing() ? 0x80 : 0));
+    if (transport == OTHER_TRANSPORT) {
+      m_Output.writeUTF(String.valueOf(frame.getTransport()));
+    }
+    byte[] data = frame.getData();
+    writeVarLong(frame.getLength());
+    writeVarLong(data.length);
+    m_Output.write(data);
+    m_Count++;
+  }//writeFrame
+
+    /**
+     * Returns the number of frames written.
+     *
+     * @return the number of frames as <tt>long</tt>.
+     */
+    public long getCount() {
+    return m_Count;
+  }//getCount
+
+    /**
+     * Flushes the buffered records to the underlying stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void flush() throws IOException {
+    m_Output.flush();
+  }//flush
+
+    /**
+     * Flushes and closes the log.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+    m_Output.close();
+  }//close
+
+  private void writeVarLong(long v) throws IOException {
+    while ((v & ~0x7FL) != 0) {
+      m_Output.writeByte((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    m_Output.writeByte((int) v);
+  }//writeVarLong
+
+  private static int indexOf(String transport) {
+    for (int i = 0; i < TRANSPORTS.length; i++) {
+      if (TRANSPORTS[i].equals(transport)) {
+        return i;
+      }
+    }
+    return OTHER_TRANSPORT;
+  }//indexOf
+
+}//class TrafficLogWriter
@@ -0,0 +1,192 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class implementing a <tt>FrameTrace</tt> that appends
+ * every frame to a traffic log.
+ * <p>
+ * The transports record into the ring buffer of the trace as
+ * usual, without locking; a background thread follows the buffer
+ * and writes the frames with a {@link TrafficLogWriter}. Frames
+ * overwritten before the writer reached them are counted as lost,
+ * so the capacity should cover the frames of one write interval
+ * at peak rate.
+ * <p>
+ * All transports of a <tt>ModbusCoupler</tt> are recorded once the
+ * recorder is set as its frame trace:
+ * <pre>
+ * TrafficRecorder recorder = new TrafficRecorder(new FileOutputStream("modbus.mbtr"));
+ * recorder.start();
+ * coupler.setFrameTrace(recorder);
+ * </pre>
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see TrafficReplay
+ */
+public class TrafficRecorder
+    extends FrameTrace
+    implements Runnable {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(TrafficRecorder.class);
+
+  //instance attributes
+  private final TrafficLogWriter m_Writer;
+  private int m_Interval = 10;
+  private volatile boolean m_Active;
+  private Thread m_Thread;
+  private long m_Next;
+  private volatile long m_Written;
+  private volatile long m_Lost;
+
+    /**
+     * Constructs a new <tt>TrafficRecorder</tt> instance
+     * buffering up to 8192 frames.
+     *
+     * @param out the <tt>OutputStream</tt> to write the log to.
+     */
+    public TrafficRecorder(OutputStream out) {
+    this(out, 8192);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>TrafficRecorder</tt> instance
+     * buffering up to the given number of frames.
+     *
+     * @param out      the <tt>OutputStream</tt> to write the log to.
+     * @param capacity the number of frames buffered.
+     */
+    public TrafficRecorder(OutputStream out, int capacity) {
+    super(capacity);
+    m_Writer = new TrafficLogWriter(out);
+  }//constructor
+
+    /**
+     * Sets the interval at which the background thread
+     * writes the buffered frames.
+     *
+     * @param ms the interval in milliseconds as <tt>int</tt>.
+     */
+    public void setInterval(int ms) {
+    m_Interval = Math.max(1, ms);
+  }//setInterval
+
+    /**
+     * Starts the background writer.
+     */
+    public synchronized void start() {
+    if (m_Thread == null) {
+      m_Active = true;
+      m_Thread = new Thread(this, "Modbus traffic recorder");
+      m_Thread.setDaemon(true);
+      m_Thread.start();
+    }
+  }//start
+
+    /**
+     * Stops the background writer, writes the frames
+     * still buffered and closes the log.
+     */
+    public synchronized void stop() {
+    m_Active = false;
+    if (m_Thread != null) {
+      try {
+        m_Thread.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      m_Thread = null;
+    }
+    try {
+      m_Writer.close();
+    } catch (IOException ex) {
+      c_Log.warn("Failed to close traffic log: {}", ex.getMessage());
+    }
+  }//stop
+
+    /**
+     * Returns the number of frames written to the log.
+     *
+     * @return the number of frames as <tt>long</tt>.
+     */
+    public long getWrittenCount() {
+    return m_Written;
+  }//getWrittenCount
+
+    /**
+     * Returns the number of frames overwritten in the buffer
+     * before they could be written to the log.
+     *
+     * @return the number of frames as <tt>long</tt>.
+     */
+    public long getLostCount() {
+    return m_Lost;
+  }//getLostCount
+
+  public void run() {
+    List<Frame> frames = new ArrayList<Frame>();
+    try {
+      boolean active;
+      do {
+        active = m_Active;
+        drain(frames);
+        if (active) {
+          Thread.sleep(m_Interval);
+        }
+      } while (active);
+    } catch (InterruptedException ex) {
+      c_Log.debug("Traffic recorder interrupted.");
+    } catch (IOException ex) {
+      c_Log.warn("Failed to write traffic log: {}", ex.getMessage());
+      m_Active = false;
+    }
+  }//run
+
+  /**
+   * Writes the frames recorded since the last call.
+   *
+   * @param frames a scratch list.
+   * @throws IOException if writing fails.
+   */
+  private void drain(List<Frame> frames) throws IOException {
+    frames.clear();
+    long next = getFrames(m_Next, frames);
+    if (frames.isEmpty() && next == m_Next) {
+      return;
+    }
+    long lost = (next - m_Next) - frames.size();
+    for (int i = 0; i < frames.size(); i++) {
+      m_Writer.writeFrame(frames.get(i));
+    }
+    m_Writer.flush();
+    m_Next = next;
+    m_Written += frames.size();
+    if (lost > 0) {
+      m_Lost += lost;
+    }
+  }//drain
+
+}//class TrafficRecorder
@@ -0,0 +1,434 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.msg.ModbusMessageImpl;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.net.RequestHandler;
+import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that replays recorded traffic.
+ * <p>
+ * The recorded frames are paired into exchanges of a request
+ * and its response (if one was recorded). The frames of any
+ * transport can be replayed on any other, as the requests are
+ * decoded and sent as messages.
+ * <ul>
+ * <li>{@link #replay(ModbusTransaction)} drives a slave: the recorded
+ *     requests are executed, at their original pace or as fast as
+ *     possible, and each response is compared to the recorded one.</li>
+ * <li>As a {@link RequestHandler}, e.g. of a <tt>ModbusTCPListener</tt>,
+ *     it drives a master: each request is answered with a recorded
+ *     response to an identical request, after the recorded latency.</li>
+ * </ul>
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see TrafficRecorder
+ */
+public class TrafficReplay
+    implements RequestHandler {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(TrafficReplay.class);
+
+  //maximum number of frames between a request and its response
+  private static final int MAX_DISTANCE = 64;
+
+  //instance attributes
+  private final List<Exchange> m_Exchanges = new ArrayList<Exchange>();
+  private final Map<String, ArrayDeque<Exchange>> m_Responses = new HashMap<String, ArrayDeque<Exchange>>();
+  private volatile double m_Speed = 1.0;
+
+  private volatile long m_Executed;
+  private volatile long m_Failed;
+  private volatile long m_Mismatched;
+  private final AtomicLong m_Served = new AtomicLong();
+  private final AtomicLong m_Unmatched = new AtomicLong();
+
+    /**
+     * Constructs a new <tt>TrafficReplay</tt> instance
+     * from the given frames.
+     *
+     * @param frames           the recorded frames, oldest first.
+     * @param requestsOutgoing true if the frames were recorded at the master,
+     *                         false if they were recorded at the slave.
+     */
+    public TrafficReplay(List<FrameTrace.Frame> frames, boolean requestsOutgoing) {
+    boolean[] used = new boolean[frames.size()];
+    for (int i = 0; i < frames.size(); i++) {
+      FrameTrace.Frame frame = frames.get(i);
+      if (frame.isOutgoing() != requestsOutgoing) {
+        continue;
+      }
+      int end = getPDUEnd(frame);
+      if (end < 0) {
+        continue;
+      }
+      Exchange exchange = createExchange(frame, end);
+      if (exchange == null) {
+        continue;
+      }
+      findResponse(frames, i, used, exchange);
+      m_Exchanges.add(exchange);
+      if (exchange.m_Response != null) {
+        ArrayDeque<Exchange> responses = m_Responses.get(exchange.m_Key);
+        if (responses == null) {
+          responses = new ArrayDeque<Exchange>();
+          m_Responses.put(exchange.m_Key, responses);
+        }
+        responses.addLast(exchange);
+      }
+    }
+  }//constructor
+
+    /**
+     * Loads the traffic log from the given stream.
+     *
+     * @param in               the <tt>InputStream</tt> to read the log from.
+     * @param requestsOutgoing true if the log was recorded at the master,
+     *                         false if it was recorded at the slave.
+     * @return a new <tt>TrafficReplay</tt> instance.
+     * @throws IOException if the log cannot be read.
+     */
+    public static TrafficReplay load(InputStream in, boolean requestsOutgoing)
+      throws IOException {
+    return new TrafficReplay(new TrafficLogReader(in).readFrames(), requestsOutgoing);
+  }//load
+
+    /**
+     * Sets the speed of the replay relative to the recording.
+     * A speed of 2.0 replays twice as fast, a speed of zero
+     * as fast as possible. The default is 1.0.
+     *
+     * @param speed the speed as <tt>double</tt>.
+     */
+    public void setSpeed(double speed) {
+    m_Speed = Math.max(0, speed);
+  }//setSpeed
+
+    /**
+     * Returns the number of recorded requests.
+     *
+     * @return the number of requests as <tt>int</tt>.
+     */
+    public int getExchangeCount() {
+    return m_Exchanges.size();
+  }//getExchangeCount
+
+    /**
+     * Executes the recorded requests with the given transaction,
+     * and compares the responses with the recorded ones.
+     *
+     * @param transaction the <tt>ModbusTransaction</tt> to be used.
+     * @throws InterruptedException if the thread is interrupted while pacing.
+     */
+    public void replay(ModbusTransaction transaction)
+      throws InterruptedException {
+    if (m_Exchanges.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    long first = m_Exchanges.get(0).m_NanoTime;
+    for (int i = 0; i < m_Exchanges.size(); i++) {
+      Exchange exchange = m_Exchanges.get(i);
+      double speed = m_Speed;
+      if (speed > 0) {
+        long wait = start + (long) ((exchange.m_NanoTime - first) / speed) - System.nanoTime();
+        if (wait > 0) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+      }
+      transaction.setRequest(exchange.m_Request);
+      ModbusResponse response;
+      try {
+        transaction.execute();
+        response = transaction.getResponse();
+      } catch (ModbusSlaveException ex) {
+        response = transaction.getResponse();
+      } catch (ModbusException ex) {
+        c_Log.debug("Request {} failed: {}", exchange.m_Key, ex.getMessage());
+        m_Failed++;
+        continue;
+      }
+      m_Executed++;
+      if (exchange.m_Response != null) {
+        byte[] pdu = toPDU(response);
+        if (!Arrays.equals(exchange.m_Response, pdu)) {
+          m_Mismatched++;
+          if (c_Log.isDebugEnabled()) {
+            c_Log.debug("Response to {} differs: recorded {}, received {}", exchange.m_Key,
+                ModbusUtil.toHex(exchange.m_Response), (pdu == null) ? null : ModbusUtil.toHex(pdu));
+          }
+        }
+      }
+    }
+  }//replay
+
+    /**
+     * Returns the number of requests executed by {@link #replay(ModbusTransaction)}.
+     *
+     * @return the number of requests as <tt>long</tt>.
+     */
+    public long getExecutedCount() {
+    return m_Executed;
+  }//getExecutedCount
+
+    /**
+     * Returns the number of requests that failed to execute.
+     *
+     * @return the number of requests as <tt>long</tt>.
+     */
+    public long getFailedCount() {
+    return m_Failed;
+  }//getFailedCount
+
+    /**
+     * Returns the number of responses that differ from
+     * the recorded ones.
+     *
+     * @return the number of responses as <tt>long</tt>.
+     */
+    public long getMismatchCount() {
+    return m_Mismatched;
+  }//getMismatchCount
+
+    /**
+     * Returns the number of requests answered with
+     * a recorded response.
+     *
+     * @return the number of requests as <tt>long</tt>.
+     */
+    public long getServedCount() {
+    return m_Served.get();
+  }//getServedCount
+
+    /**
+     * Returns the number of requests for which no response
+     * was recorded. They are answered with exception <tt>0x0B</tt>
+     * (gateway target failed to respond).
+     *
+     * @return the number of requests as <tt>long</tt>.
+     */
+    public long getUnmatchedCount() {
+    return m_Unmatched.get();
+  }//getUnmatchedCount
+
+  public ModbusResponse handleRequest(ModbusRequest request) {
+    byte[] pdu = toPDU(request);
+    Exchange exchange = null;
+    if (pdu != null) {
+      String key = toKey(request.getUnitID(), pdu, 0, pdu.length);
+      synchronized (m_Responses) {
+        ArrayDeque<Exchange> responses = m_Responses.get(key);
+        if (responses != null) {
+          //cycle through the responses recorded for this request
+          exchange = responses.pollFirst();
+          responses.addLast(exchange);
+        }
+      }
+    }
+    if (exchange == null) {
+      m_Unmatched.incrementAndGet();
+      return request.createExceptionResponse(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+    }
+    double speed = m_Speed;
+    if (speed > 0 && exchange.m_Latency > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep((long) (exchange.m_Latency / speed));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      byte[] response = exchange.m_Response;
+      BytesOutputStream out = new BytesOutputStream(response.length + 7);
+      out.writeShort(request.getTransactionID());
+      out.writeShort(request.getProtocolID());
+      out.writeShort(response.length + 1);
+      out.writeByte(request.getUnitID());
+      out.write(response);
+      ModbusResponse res = ModbusResponse.createModbusResponse(response[0] & 0xff);
+      res.setCoupler(request.getCoupler());
+      res.readFrom(new BytesInputStream(out.toByteArray()));
+      if (request.isHeadless()) {
+        res.setHeadless();
+      }
+      m_Served.incrementAndGet();
+      return res;
+    } catch (IOException ex) {
+      m_Unmatched.incrementAndGet();
+      return request.createExceptionResponse(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+    }
+  }//handleRequest
+
+  /**
+   * Decodes the request of the given frame.
+   *
+   * @param frame the frame holding the request.
+   * @param end   the end of the PDU in the frame.
+   * @return a new exchange, or null if the frame does not hold a request.
+   */
+  private static Exchange createExchange(FrameTrace.Frame frame, int end) {
+    byte[] data = frame.getData();
+    int off = getHeaderLength(frame.getTransport());
+    int fc = data[off + 1] & 0xff;
+    if (fc >= 0x80) {
+      return null;
+    }
+    ModbusRequest request = ModbusRequest.createModbusRequest(fc);
+    request.setUnitID(data[off] & 0xff);
+    try {
+      request.readData(new BytesInputStream(Arrays.copyOfRange(data, off + 2, end)));
+    } catch (IOException ex) {
+      return null;
+    }
+    Exchange exchange = new Exchange();
+    exchange.m_Request = request;
+    exchange.m_Key = toKey(data[off] & 0xff, data, off + 1, end - off - 1);
+    exchange.m_NanoTime = frame.getNanoTime();
+    return exchange;
+  }//createExchange
+
+  /**
+   * Finds the response to the request at the given index, and
+   * marks it as used. TCP and UDP responses are matched by their
+   * transaction identifier; a serial response is the next frame in
+   * the other direction before the next request.
+   */
+  private static void findResponse(List<FrameTrace.Frame> frames, int index,
+                                   boolean[] used, Exchange exchange) {
+    FrameTrace.Frame request = frames.get(index);
+    String transport = request.getTransport();
+    int off = getHeaderLength(transport);
+    byte[] req = request.getData();
+    int last = Math.min(frames.size(), index + 1 + MAX_DISTANCE);
+    for (int j = index + 1; j < last; j++) {
+      FrameTrace.Frame frame = frames.get(j);
+      if (used[j] || !transport.equals(frame.getTransport())) {
+        continue;
+      }
+      if (frame.isOutgoing() == request.isOutgoing()) {
+        if (off == 0) {
+          //the next serial request; this one was not answered
+          return;
+        }
+        continue;
+      }
+      byte[] data = frame.getData();
+      int end = getPDUEnd(frame);
+      if (end < 0 || data[off] != req[off]) {
+        continue;
+      }
+      if (off > 0 && (data[0] != req[0] || data[1] != req[1])) {
+        continue;
+      }
+      used[j] = true;
+      exchange.m_Response = Arrays.copyOfRange(data, off + 1, end);
+      exchange.m_Latency = frame.getNanoTime() - request.getNanoTime();
+      return;
+    }
+  }//findResponse
+
+  /**
+   * Returns the end of the PDU (function code and data) in the
+   * given frame, or -1 if the frame is truncated or malformed.
+   */
+  private static int getPDUEnd(FrameTrace.Frame frame) {
+    byte[] data = frame.getData();
+    if (data.length < frame.getLength()) {
+      return -1;
+    }
+    int off = getHeaderLength(frame.getTransport());
+    int end;
+    if (off > 0) {
+      if (data.length < off + 2) {
+        return -1;
+      }
+      end = off + ((data[4] & 0xff) << 8 | (data[5] & 0xff));
+    } else {
+      end = data.length - getChecksumLength(frame.getTransport());
+    }
+    return (end >= off + 2 && end <= data.length) ? end : -1;
+  }//getPDUEnd
+
+  private static int getHeaderLength(String transport) {
+    return ("tcp".equals(transport) || "udp".equals(transport)) ? 6 : 0;
+  }//getHeaderLength
+
+  private static int getChecksumLength(String transport) {
+    if (Modbus.SERIAL_ENCODING_ASCII.equals(transport)) {
+      return 1;
+    }
+    if (Modbus.SERIAL_ENCODING_RTU.equals(transport) || Modbus.SERIAL_ENCODING_BIN.equals(transport)) {
+      return 2;
+    }
+    return 0;
+  }//getChecksumLength
+
+  private static String toKey(int unitid, byte[] pdu, int off, int length) {
+    return unitid + ":" + ModbusUtil.toHex(pdu, off, length);
+  }//toKey
+
+  /**
+   * Returns the function code and data of the given message.
+   *
+   * @return the PDU as <tt>byte[]</tt>, or null if it cannot be encoded.
+   */
+  private static byte[] toPDU(ModbusMessageImpl msg) {
+    if (msg == null) {
+      return null;
+    }
+    try {
+      BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+      out.writeByte(msg.getFunctionCode());
+      msg.writeData(out);
+      return out.toByteArray();
+    } catch (IOException ex) {
+      return null;
+    }
+  }//toPDU
+
+  /**
+   * A recorded request and its response.
+   */
+  private static final class Exchange {
+    private ModbusRequest m_Request;
+    private String m_Key;
+    private long m_NanoTime;
+    private byte[] m_Response;
+    private long m_Latency;
+  }//class Exchange
+
+}//class TrafficReplay
@@ -0,0 +1,161 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+/**
+ * Class holding a snapshot of the access counts recorded
+ * by an {@link InMemorySlaveMetrics} for one table of the
+ * process image.
+ * <p>
+ * The address space of the table (0 to 65535) is divided
+ * into buckets of equal size. The count of a bucket is the
+ * number of accesses to any address within the bucket, so
+ * a request for 10 registers adds 10 to the buckets it spans.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class AddressHeatmap {
+
+  /**
+   * Defines the table of coils.
+   */
+  public static final int COILS = 0;
+
+  /**
+   * Defines the table of discrete inputs.
+   */
+  public static final int DISCRETE_INPUTS = 1;
+
+  /**
+   * Defines the table of input registers.
+   */
+  public static final int INPUT_REGISTERS = 2;
+
+  /**
+   * Defines the table of holding registers.
+   */
+  public static final int HOLDING_REGISTERS = 3;
+
+  private static final String[] c_TableNames = {
+      "coils", "discrete inputs", "input registers", "holding registers"
+  };
+
+  //instance attributes
+  private int m_Table;
+  private int m_BucketSize;
+  private long[] m_Counts;
+
+  AddressHeatmap(int table, int bucketsize, long[] counts) {
+    m_Table = table;
+    m_BucketSize = bucketsize;
+    m_Counts = counts;
+  }//constructor
+
+    /**
+     * Returns the table of this heatmap.
+     *
+     * @return one of the table constants of this class.
+     */
+    public int getTable() {
+    return m_Table;
+  }//getTable
+
+    /**
+     * Returns the number of addresses per bucket.
+     *
+     * @return the bucket size as <tt>int</tt>.
+     */
+    public int getBucketSize() {
+    return m_BucketSize;
+  }//getBucketSize
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return the number of buckets as <tt>int</tt>.
+     */
+    public int getBucketCount() {
+    return m_Counts.length;
+  }//getBucketCount
+
+    /**
+     * Returns the number of accesses to the addresses
+     * of the given bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the access count as <tt>long</tt>.
+     */
+    public long getCount(int bucket) {
+    return m_Counts[bucket];
+  }//getCount
+
+    /**
+     * Returns the first address of the given bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the address as <tt>int</tt>.
+     */
+    public int getStartAddress(int bucket) {
+    return bucket * m_BucketSize;
+  }//getStartAddress
+
+    /**
+     * Returns the indexes of the buckets with the
+     * highest access counts, hottest first. Buckets that
+     * have not been accessed are not returned.
+     *
+     * @param n the maximum number of buckets to return.
+     * @return the bucket indexes as <tt>int[]</tt>.
+     */
+    public int[] getHottest(int n) {
+    int[] hot = new int[Math.min(n, m_Counts.length)];
+    int size = 0;
+    for (int i = 0; i < m_Counts.length; i++) {
+      if (m_Counts[i] == 0) {
+        continue;
+      }
+      //insert into the sorted top list
+      int pos = size;
+      while (pos > 0 && m_Counts[hot[pos - 1]] < m_Counts[i]) {
+        pos--;
+      }
+      if (pos < hot.length) {
+        int last = Math.min(size, hot.length - 1);
+        System.arraycopy(hot, pos, hot, pos + 1, last - pos);
+        hot[pos] = i;
+        size = Math.min(size + 1, hot.length);
+      }
+    }
+    int[] result = new int[size];
+    System.arraycopy(hot, 0, result, 0, size);
+    return result;
+  }//getHottest
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder(c_TableNames[m_Table]);
+    int[] hot = getHottest(10);
+    for (int i = 0; i < hot.length; i++) {
+      int start = getStartAddress(hot[i]);
+      sb.append(i == 0 ? " " : ", ").append(start).append('-')
+          .append(Math.min(start + m_BucketSize, 65536) - 1)
+          .append('=').append(m_Counts[hot[i]]);
+    }
+    return sb.toString();
+  }//toString
+
+}//class AddressHeatmap
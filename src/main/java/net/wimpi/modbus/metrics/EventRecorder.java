@@ -0,0 +1,141 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+/**
+ * Interface defining timed events emitted from the I/O
+ * hot paths, for profiling a live system.
+ * <p>
+ * Each event is started with a <tt>begin</tt> method, which
+ * returns an opaque event object, or null if events of that
+ * kind are not being recorded. The matching <tt>end</tt>
+ * method completes the event and ignores null, so that a
+ * disabled recorder costs little more than a method call.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see net.wimpi.modbus.ModbusCoupler#setEventRecorder(EventRecorder)
+ */
+public interface EventRecorder {
+
+    /**
+     * Begins the event covering a master transaction.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginTransaction();
+
+    /**
+     * Ends the event covering a master transaction.
+     *
+     * @param event        the event object returned by {@link #beginTransaction()}.
+     * @param endpoint     the endpoint the transaction was executed on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     * @param retries      the number of retries.
+     * @param success      true if a response was received, false otherwise.
+     */
+    public void endTransaction(Object event, String endpoint, int unitid, int functioncode,
+                               int retries, boolean success);
+
+    /**
+     * Begins the event covering the transport writing a message.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginTransportWrite();
+
+    /**
+     * Ends the event covering the transport writing a message.
+     *
+     * @param event        the event object returned by {@link #beginTransportWrite()}.
+     * @param transport    the kind of transport (e.g. <tt>tcp</tt> or <tt>rtu</tt>).
+     * @param functioncode the function code of the message.
+     * @param length       the length of the message.
+     */
+    public void endTransportWrite(Object event, String transport, int functioncode, int length);
+
+    /**
+     * Begins the event covering the transport reading a response.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginTransportRead();
+
+    /**
+     * Ends the event covering the transport reading a response.
+     *
+     * @param event        the event object returned by {@link #beginTransportRead()}.
+     * @param transport    the kind of transport (e.g. <tt>tcp</tt> or <tt>rtu</tt>).
+     * @param functioncode the function code of the response, or -1 if none was read.
+     * @param length       the length of the response, or 0 if none was read.
+     */
+    public void endTransportRead(Object event, String transport, int functioncode, int length);
+
+    /**
+     * Begins the event covering a read from a serial port.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginSerialRead();
+
+    /**
+     * Ends the event covering a read from a serial port.
+     *
+     * @param event     the event object returned by {@link #beginSerialRead()}.
+     * @param port      the name of the port.
+     * @param requested the number of bytes requested.
+     * @param read      the number of bytes read, or -1 on timeout.
+     */
+    public void endSerialRead(Object event, String port, int requested, int read);
+
+    /**
+     * Begins the event covering a write to a serial port.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginSerialWrite();
+
+    /**
+     * Ends the event covering a write to a serial port.
+     *
+     * @param event   the event object returned by {@link #beginSerialWrite()}.
+     * @param port    the name of the port.
+     * @param written the number of bytes written.
+     */
+    public void endSerialWrite(Object event, String port, int written);
+
+    /**
+     * Begins the event covering a slave handling a request,
+     * i.e. creating the response from the process image.
+     *
+     * @return the event object, or null if not recorded.
+     */
+    public Object beginSlaveRequest();
+
+    /**
+     * Ends the event covering a slave handling a request.
+     *
+     * @param event        the event object returned by {@link #beginSlaveRequest()}.
+     * @param transport    the kind of transport the request was received on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     * @param exception    true if an exception response was created.
+     */
+    public void endSlaveRequest(Object event, String transport, int unitid, int functioncode,
+                                boolean exception);
+
+}//interface EventRecorder
@@ -0,0 +1,302 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import net.wimpi.modbus.msg.MaskWriteRegisterRequest;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ReadCoilsRequest;
+import net.wimpi.modbus.msg.ReadInputDiscretesRequest;
+import net.wimpi.modbus.msg.ReadInputRegistersRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.msg.ReadWriteMultipleRequest;
+import net.wimpi.modbus.msg.WriteCoilRequest;
+import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteSingleRegisterRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a <tt>SlaveMetrics</tt> that keeps
+ * request counters and a service time histogram per function
+ * code, per unit identifier and per peer, and an access
+ * heatmap of each table of the process image, in memory.
+ * <p>
+ * Recording is lock free and, once a function code, unit
+ * and peer have been seen, does not allocate. The snapshot
+ * methods return copies suitable for reporting, e.g. to
+ * find out which address ranges dominate the load.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class InMemorySlaveMetrics
+    implements SlaveMetrics {
+
+  /**
+   * Defines the default number of addresses per heatmap bucket.
+   */
+  public static final int DEFAULT_BUCKET_SIZE = 100;
+
+  //instance attributes
+  private final int m_BucketSize;
+  private final AtomicReferenceArray<Counters> m_FunctionCodes =
+      new AtomicReferenceArray<Counters>(128);
+  private final AtomicReferenceArray<Counters> m_Units =
+      new AtomicReferenceArray<Counters>(256);
+  private final ConcurrentHashMap<String, Counters> m_Peers =
+      new ConcurrentHashMap<String, Counters>();
+  private final AtomicLongArray[] m_Heatmaps = new AtomicLongArray[4];
+
+    /**
+     * Constructs a new <tt>InMemorySlaveMetrics</tt>
+     * instance with the default bucket size.
+     */
+    public InMemorySlaveMetrics() {
+    this(DEFAULT_BUCKET_SIZE);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>InMemorySlaveMetrics</tt>
+     * instance with the given bucket size.
+     *
+     * @param bucketsize the number of addresses per heatmap bucket.
+     * @throws IllegalArgumentException if the bucket size is not positive.
+     */
+    public InMemorySlaveMetrics(int bucketsize) {
+    if (bucketsize < 1) {
+      throw new IllegalArgumentException("Bucket size must be positive.");
+    }
+    m_BucketSize = bucketsize;
+    int buckets = (65536 + bucketsize - 1) / bucketsize;
+    for (int i = 0; i < m_Heatmaps.length; i++) {
+      m_Heatmaps[i] = new AtomicLongArray(buckets);
+    }
+  }//constructor
+
+  public void recordRequest(String peer, ModbusRequest request, boolean exception, long nanos) {
+    int items = recordAccess(request);
+    getCounters(m_FunctionCodes, request.getFunctionCode() & 0x7f).record(items, exception, nanos);
+    getCounters(m_Units, request.getUnitID() & 0xff).record(items, exception, nanos);
+    Counters c = m_Peers.get(peer);
+    if (c == null) {
+      c = new Counters();
+      Counters other = m_Peers.putIfAbsent(peer, c);
+      if (other != null) {
+        c = other;
+      }
+    }
+    c.record(items, exception, nanos);
+  }//recordRequest
+
+    /**
+     * Returns the number of addresses per heatmap bucket.
+     *
+     * @return the bucket size as <tt>int</tt>.
+     */
+    public int getBucketSize() {
+    return m_BucketSize;
+  }//getBucketSize
+
+    /**
+     * Returns a snapshot of the statistics of all function
+     * codes seen so far, keyed by the function code.
+     *
+     * @return a <tt>List</tt> of <tt>SlaveStatistics</tt>.
+     */
+    public List<SlaveStatistics> getFunctionCodeSnapshot() {
+    return snapshot(m_FunctionCodes);
+  }//getFunctionCodeSnapshot
+
+    /**
+     * Returns a snapshot of the statistics of all unit
+     * identifiers seen so far, keyed by the unit identifier.
+     *
+     * @return a <tt>List</tt> of <tt>SlaveStatistics</tt>.
+     */
+    public List<SlaveStatistics> getUnitSnapshot() {
+    return snapshot(m_Units);
+  }//getUnitSnapshot
+
+    /**
+     * Returns a snapshot of the statistics of all peers
+     * seen so far, keyed by the peer.
+     *
+     * @return a <tt>List</tt> of <tt>SlaveStatistics</tt>.
+     */
+    public List<SlaveStatistics> getPeerSnapshot() {
+    List<SlaveStatistics> result = new ArrayList<SlaveStatistics>();
+    for (Map.Entry<String, Counters> e : m_Peers.entrySet()) {
+      result.add(e.getValue().snapshot(e.getKey()));
+    }
+    return result;
+  }//getPeerSnapshot
+
+    /**
+     * Returns a snapshot of the access heatmap of the
+     * given table.
+     *
+     * @param table one of the table constants of <tt>AddressHeatmap</tt>.
+     * @return the <tt>AddressHeatmap</tt>.
+     */
+    public AddressHeatmap getHeatmap(int table) {
+    AtomicLongArray live = m_Heatmaps[table];
+    long[] counts = new long[live.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = live.get(i);
+    }
+    return new AddressHeatmap(table, m_BucketSize, counts);
+  }//getHeatmap
+
+    /**
+     * Discards all recorded metrics.
+     */
+    public void reset() {
+    for (int i = 0; i < m_FunctionCodes.length(); i++) {
+      m_FunctionCodes.set(i, null);
+    }
+    for (int i = 0; i < m_Units.length(); i++) {
+      m_Units.set(i, null);
+    }
+    m_Peers.clear();
+    for (int i = 0; i < m_Heatmaps.length; i++) {
+      for (int j = 0; j < m_Heatmaps[i].length(); j++) {
+        m_Heatmaps[i].set(j, 0);
+      }
+    }
+  }//reset
+
+  /**
+   * Adds the addresses accessed by the given request
+   * to the heatmaps.
+   *
+   * @param request the <tt>ModbusRequest</tt>.
+   * @return the number of items accessed.
+   */
+  private int recordAccess(ModbusRequest request) {
+    if (request instanceof ReadMultipleRegistersRequest) {
+      ReadMultipleRegistersRequest r = (ReadMultipleRegistersRequest) request;
+      return addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getReference(), r.getWordCount());
+    } else if (request instanceof ReadInputRegistersRequest) {
+      ReadInputRegistersRequest r = (ReadInputRegistersRequest) request;
+      return addAccess(AddressHeatmap.INPUT_REGISTERS, r.getReference(), r.getWordCount());
+    } else if (request instanceof WriteMultipleRegistersRequest) {
+      WriteMultipleRegistersRequest r = (WriteMultipleRegistersRequest) request;
+      return addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getReference(), r.getWordCount());
+    } else if (request instanceof WriteSingleRegisterRequest) {
+      WriteSingleRegisterRequest r = (WriteSingleRegisterRequest) request;
+      return addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getReference(), 1);
+    } else if (request instanceof ReadCoilsRequest) {
+      ReadCoilsRequest r = (ReadCoilsRequest) request;
+      return addAccess(AddressHeatmap.COILS, r.getReference(), r.getBitCount());
+    } else if (request instanceof ReadInputDiscretesRequest) {
+      ReadInputDiscretesRequest r = (ReadInputDiscretesRequest) request;
+      return addAccess(AddressHeatmap.DISCRETE_INPUTS, r.getReference(), r.getBitCount());
+    } else if (request instanceof WriteCoilRequest) {
+      WriteCoilRequest r = (WriteCoilRequest) request;
+      return addAccess(AddressHeatmap.COILS, r.getReference(), 1);
+    } else if (request instanceof WriteMultipleCoilsRequest) {
+      WriteMultipleCoilsRequest r = (WriteMultipleCoilsRequest) request;
+      return addAccess(AddressHeatmap.COILS, r.getReference(), r.getBitCount());
+    } else if (request instanceof ReadWriteMultipleRequest) {
+      ReadWriteMultipleRequest r = (ReadWriteMultipleRequest) request;
+      return addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getWriteReference(), r.getWriteWordCount())
+          + addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getReadReference(), r.getReadWordCount());
+    } else if (request instanceof MaskWriteRegisterRequest) {
+      MaskWriteRegisterRequest r = (MaskWriteRegisterRequest) request;
+      return addAccess(AddressHeatmap.HOLDING_REGISTERS, r.getReference(), 1);
+    }
+    return 0;
+  }//recordAccess
+
+  /**
+   * Adds an access to the given range of addresses
+   * to the heatmap of the given table.
+   *
+   * @param table the table.
+   * @param ref   the first address.
+   * @param count the number of addresses.
+   * @return the number of addresses.
+   */
+  private int addAccess(int table, int ref, int count) {
+    AtomicLongArray heatmap = m_Heatmaps[table];
+    int end = Math.min(ref + count, 65536);
+    int addr = ref;
+    while (addr < end) {
+      int bucket = addr / m_BucketSize;
+      int next = Math.min((bucket + 1) * m_BucketSize, end);
+      heatmap.addAndGet(bucket, next - addr);
+      addr = next;
+    }
+    return count;
+  }//addAccess
+
+  private static Counters getCounters(AtomicReferenceArray<Counters> table, int idx) {
+    Counters c = table.get(idx);
+    if (c == null) {
+      c = new Counters();
+      if (!table.compareAndSet(idx, null, c)) {
+        c = table.get(idx);
+      }
+    }
+    return c;
+  }//getCounters
+
+  private static List<SlaveStatistics> snapshot(AtomicReferenceArray<Counters> table) {
+    List<SlaveStatistics> result = new ArrayList<SlaveStatistics>();
+    for (int i = 0; i < table.length(); i++) {
+      Counters c = table.get(i);
+      if (c != null) {
+        result.add(c.snapshot(Integer.toString(i)));
+      }
+    }
+    return result;
+  }//snapshot
+
+  /**
+   * The live counters of one function code, unit or peer.
+   */
+  private static final class Counters {
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong exceptions = new AtomicLong();
+    final AtomicLong items = new AtomicLong();
+    final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    void record(int n, boolean exception, long nanos) {
+      count.incrementAndGet();
+      if (exception) {
+        exceptions.incrementAndGet();
+      }
+      if (n != 0) {
+        items.addAndGet(n);
+      }
+      serviceTime.record(nanos);
+    }//record
+
+    SlaveStatistics snapshot(String key) {
+      return new SlaveStatistics(key, count.get(), exceptions.get(), items.get(),
+          serviceTime.copy());
+    }//snapshot
+  }//class Counters
+
+}//class InMemorySlaveMetrics
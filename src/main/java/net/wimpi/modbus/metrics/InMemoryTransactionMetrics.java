@@ -0,0 +1,165 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a <tt>TransactionMetrics</tt> that
+ * keeps counters and a latency histogram per endpoint and
+ * unit identifier in memory.
+ * <p>
+ * Recording is lock free and, once an endpoint and unit
+ * have been seen, does not allocate. Use {@link #getSnapshot()}
+ * to obtain a consistent-enough copy for reporting.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class InMemoryTransactionMetrics
+    implements TransactionMetrics {
+
+  //instance attributes
+  private final ConcurrentHashMap<String, AtomicReferenceArray<Counters>> m_Endpoints =
+      new ConcurrentHashMap<String, AtomicReferenceArray<Counters>>();
+
+  public void recordTransaction(String endpoint, int unitid, int functioncode, long nanos, boolean success) {
+    Counters c = getCounters(endpoint, unitid);
+    c.count.incrementAndGet();
+    if (success) {
+      c.latency.record(nanos);
+    } else {
+      c.failures.incrementAndGet();
+    }
+  }//recordTransaction
+
+  public void recordRetry(String endpoint, int unitid, int functioncode) {
+    getCounters(endpoint, unitid).retries.incrementAndGet();
+  }//recordRetry
+
+  public void recordTimeout(String endpoint, int unitid, int functioncode) {
+    getCounters(endpoint, unitid).timeouts.incrementAndGet();
+  }//recordTimeout
+
+  public void recordChecksumError(String endpoint, int unitid, int functioncode) {
+    getCounters(endpoint, unitid).checksumErrors.incrementAndGet();
+  }//recordChecksumError
+
+  public void recordExceptionResponse(String endpoint, int unitid, int functioncode, int exceptioncode) {
+    getCounters(endpoint, unitid).exceptionResponses.incrementAndGet();
+  }//recordExceptionResponse
+
+  public void recordBytes(String endpoint, int unitid, int out, int in) {
+    Counters c = getCounters(endpoint, unitid);
+    if (out != 0) {
+      c.bytesOut.addAndGet(out);
+    }
+    if (in != 0) {
+      c.bytesIn.addAndGet(in);
+    }
+  }//recordBytes
+
+    /**
+     * Returns a snapshot of the statistics of all
+     * endpoints and unit identifiers seen so far.
+     *
+     * @return a <tt>List</tt> of <tt>TransactionStatistics</tt>.
+     */
+    public List<TransactionStatistics> getSnapshot() {
+    List<TransactionStatistics> result = new ArrayList<TransactionStatistics>();
+    for (Map.Entry<String, AtomicReferenceArray<Counters>> e : m_Endpoints.entrySet()) {
+      AtomicReferenceArray<Counters> units = e.getValue();
+      for (int i = 0; i < units.length(); i++) {
+        Counters c = units.get(i);
+        if (c != null) {
+          result.add(c.snapshot(e.getKey(), i));
+        }
+      }
+    }
+    return result;
+  }//getSnapshot
+
+    /**
+     * Returns a snapshot of the statistics of the given
+     * endpoint and unit identifier.
+     *
+     * @param endpoint the endpoint.
+     * @param unitid   the unit identifier.
+     * @return the <tt>TransactionStatistics</tt>, or null if nothing was recorded.
+     */
+    public TransactionStatistics getSnapshot(String endpoint, int unitid) {
+    AtomicReferenceArray<Counters> units = m_Endpoints.get(endpoint);
+    if (units == null) {
+      return null;
+    }
+    Counters c = units.get(unitid & 0xff);
+    return (c == null) ? null : c.snapshot(endpoint, unitid & 0xff);
+  }//getSnapshot
+
+    /**
+     * Discards all recorded metrics.
+     */
+    public void reset() {
+    m_Endpoints.clear();
+  }//reset
+
+  private Counters getCounters(String endpoint, int unitid) {
+    AtomicReferenceArray<Counters> units = m_Endpoints.get(endpoint);
+    if (units == null) {
+      units = new AtomicReferenceArray<Counters>(256);
+      AtomicReferenceArray<Counters> other = m_Endpoints.putIfAbsent(endpoint, units);
+      if (other != null) {
+        units = other;
+      }
+    }
+    int idx = unitid & 0xff;
+    Counters c = units.get(idx);
+    if (c == null) {
+      c = new Counters();
+      if (!units.compareAndSet(idx, null, c)) {
+        c = units.get(idx);
+      }
+    }
+    return c;
+  }//getCounters
+
+  /**
+   * The live counters of one endpoint and unit.
+   */
+  private static final class Counters {
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    final AtomicLong checksumErrors = new AtomicLong();
+    final AtomicLong exceptionResponses = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+    final AtomicLong bytesIn = new AtomicLong();
+    final LatencyHistogram latency = new LatencyHistogram();
+
+    TransactionStatistics snapshot(String endpoint, int unitid) {
+      return new TransactionStatistics(endpoint, unitid, count.get(), failures.get(),
+          retries.get(), timeouts.get(), checksumErrors.get(), exceptionResponses.get(),
+          bytesOut.get(), bytesIn.get(), latency.copy());
+    }//snapshot
+  }//class Counters
+
+}//class InMemoryTransactionMetrics
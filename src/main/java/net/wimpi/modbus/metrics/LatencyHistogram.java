@@ -0,0 +1,180 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a fixed size, log-linear histogram
+ * of latencies in nanoseconds.
+ * <p>
+ * Values are counted in 64 sub-buckets per power of two
+ * (in the manner of an HDR histogram), which bounds the
+ * relative error of the reported percentiles to about 1.5%,
+ * independent of the number and range of recorded values.
+ * Recording is thread safe, lock free and does not allocate.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BITS = 6;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+  //instance attributes
+  private final AtomicLongArray m_Counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong m_Count = new AtomicLong();
+  private final AtomicLong m_Sum = new AtomicLong();
+  private final AtomicLong m_Max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    m_Counts.incrementAndGet(indexOf(nanos));
+    m_Count.incrementAndGet();
+    m_Sum.addAndGet(nanos);
+    long max = m_Max.get();
+    while (nanos > max && !m_Max.compareAndSet(max, nanos)) {
+      max = m_Max.get();
+    }
+  }//record
+
+    /**
+     * Adds the values recorded by another histogram.
+     *
+     * @param h the <tt>LatencyHistogram</tt> to be added.
+     */
+    public void add(LatencyHistogram h) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long c = h.m_Counts.get(i);
+      if (c != 0) {
+        m_Counts.addAndGet(i, c);
+      }
+    }
+    m_Count.addAndGet(h.m_Count.get());
+    m_Sum.addAndGet(h.m_Sum.get());
+    long max = m_Max.get();
+    long hmax = h.m_Max.get();
+    while (hmax > max && !m_Max.compareAndSet(max, hmax)) {
+      max = m_Max.get();
+    }
+  }//add
+
+    /**
+     * Returns a copy of this histogram.
+     * The copy is not atomic with respect to concurrent
+     * recording, which is accurate enough for reporting.
+     *
+     * @return a new <tt>LatencyHistogram</tt>.
+     */
+    public LatencyHistogram copy() {
+    LatencyHistogram h = new LatencyHistogram();
+    h.add(this);
+    return h;
+  }//copy
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      m_Counts.set(i, 0);
+    }
+    m_Count.set(0);
+    m_Sum.set(0);
+    m_Max.set(0);
+  }//reset
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the count as <tt>long</tt>.
+     */
+    public long getCount() {
+    return m_Count.get();
+  }//getCount
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds.
+     */
+    public double getMean() {
+    long count = m_Count.get();
+    return (count == 0) ? 0 : (double) m_Sum.get() / count;
+  }//getMean
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum in nanoseconds.
+     */
+    public long getMax() {
+    return m_Max.get();
+  }//getMax
+
+    /**
+     * Returns the value below which the given percentage
+     * of the recorded values fall.
+     *
+     * @param percentile the percentile (0.0 to 100.0).
+     * @return the value in nanoseconds.
+     */
+    public long getValueAtPercentile(double percentile) {
+    long count = m_Count.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100.0 * count);
+    rank = Math.max(1, Math.min(rank, count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += m_Counts.get(i);
+      if (seen >= rank) {
+        return Math.min(valueOf(i), getMax());
+      }
+    }
+    return getMax();
+  }//getValueAtPercentile
+
+  private static int indexOf(long v) {
+    if (v < 2 * SUB_COUNT) {
+      return (int) v;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+    return shift * SUB_COUNT + (int) (v >>> shift);
+  }//indexOf
+
+  //returns the upper bound of the bucket
+  private static long valueOf(int idx) {
+    if (idx < 2 * SUB_COUNT) {
+      return idx;
+    }
+    int shift = idx / SUB_COUNT - 1;
+    long m = idx - shift * SUB_COUNT;
+    return ((m + 1) << shift) - 1;
+  }//valueOf
+
+}//class LatencyHistogram
@@ -0,0 +1,73 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+/**
+ * Class implementing an <tt>EventRecorder</tt> that
+ * records nothing. It is the default where the JDK Flight
+ * Recorder is not available.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class NoOpEventRecorder
+    implements EventRecorder {
+
+  public Object beginTransaction() {
+    return null;
+  }//beginTransaction
+
+  public void endTransaction(Object event, String endpoint, int unitid, int functioncode,
+                             int retries, boolean success) {
+  }//endTransaction
+
+  public Object beginTransportWrite() {
+    return null;
+  }//beginTransportWrite
+
+  public void endTransportWrite(Object event, String transport, int functioncode, int length) {
+  }//endTransportWrite
+
+  public Object beginTransportRead() {
+    return null;
+  }//beginTransportRead
+
+  public void endTransportRead(Object event, String transport, int functioncode, int length) {
+  }//endTransportRead
+
+  public Object beginSerialRead() {
+    return null;
+  }//beginSerialRead
+
+  public void endSerialRead(Object event, String port, int requested, int read) {
+  }//endSerialRead
+
+  public Object beginSerialWrite() {
+    return null;
+  }//beginSerialWrite
+
+  public void endSerialWrite(Object event, String port, int written) {
+  }//endSerialWrite
+
+  public Object beginSlaveRequest() {
+    return null;
+  }//beginSlaveRequest
+
+  public void endSlaveRequest(Object event, String transport, int unitid, int functioncode,
+                              boolean exception) {
+  }//endSlaveRequest
+
+}//class NoOpEventRecorder
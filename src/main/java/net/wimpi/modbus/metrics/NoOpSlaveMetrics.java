@@ -0,0 +1,34 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import net.wimpi.modbus.msg.ModbusRequest;
+
+/**
+ * Class implementing a <tt>SlaveMetrics</tt>
+ * that discards everything. This is the default.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class NoOpSlaveMetrics
+    implements SlaveMetrics {
+
+  public void recordRequest(String peer, ModbusRequest request, boolean exception, long nanos) {
+  }//recordRequest
+
+}//class NoOpSlaveMetrics
@@ -0,0 +1,46 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+/**
+ * Class implementing a <tt>TransactionMetrics</tt>
+ * that discards everything. This is the default.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class NoOpTransactionMetrics
+    implements TransactionMetrics {
+
+  public void recordTransaction(String endpoint, int unitid, int functioncode, long nanos, boolean success) {
+  }//recordTransaction
+
+  public void recordRetry(String endpoint, int unitid, int functioncode) {
+  }//recordRetry
+
+  public void recordTimeout(String endpoint, int unitid, int functioncode) {
+  }//recordTimeout
+
+  public void recordChecksumError(String endpoint, int unitid, int functioncode) {
+  }//recordChecksumError
+
+  public void recordExceptionResponse(String endpoint, int unitid, int functioncode, int exceptioncode) {
+  }//recordExceptionResponse
+
+  public void recordBytes(String endpoint, int unitid, int out, int in) {
+  }//recordBytes
+
+}//class NoOpTransactionMetrics
@@ -0,0 +1,49 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+import net.wimpi.modbus.msg.ModbusRequest;
+
+/**
+ * Interface defining the callback a slave (listener)
+ * reports each served request to.
+ * <p>
+ * The peer identifies the master the request was received
+ * from (for example <tt>tcp://10.0.0.7</tt>, or
+ * <tt>serial:/dev/ttyS0</tt> for a serial line).
+ * Implementations are called on the thread serving the
+ * request and should neither block nor allocate.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see net.wimpi.modbus.ModbusCoupler#setSlaveMetrics(SlaveMetrics)
+ */
+public interface SlaveMetrics {
+
+    /**
+     * Records that a request has been served.
+     * The service time spans from the request having been
+     * read to the response having been written.
+     *
+     * @param peer      the master the request was received from.
+     * @param request   the <tt>ModbusRequest</tt> served.
+     * @param exception true if an exception response was sent.
+     * @param nanos     the service time in nanoseconds.
+     */
+    public void recordRequest(String peer, ModbusRequest request, boolean exception, long nanos);
+
+}//interface SlaveMetrics
@@ -0,0 +1,104 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.metrics;
+
+/**
+ * Class holding a snapshot of the metrics recorded by an
+ * {@link InMemorySlaveMetrics} for one function code,
+ * unit identifier or peer.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class SlaveStatistics {
+
+  //instance attributes
+  private String m_Key;
+  private long m_Count;
+  private long m_Exceptions;
+  private long m_Items;
+  private LatencyHistogram m_ServiceTime;
+
+  SlaveStatistics(String key, long count, long exceptions, long items,
+                  LatencyHistogram servicetime) {
+    m_Key = key;
+    m_Count = count;
+    m_Exceptions = exceptions;
+    m_Items = items;
+    m_ServiceTime = servicetime;
+  }//constructor
+
+    /**
+     * Returns the key these statistics belong to, i.e.
+     * the function code or unit identifier as decimal
+     * number, or the peer.
+     *
+     * @return the key as <tt>String</tt>.
+     */
+    public String getKey() {
+    return m_Key;
+  }//getKey
+
+    /**
+     * Returns the number of requests served.
+     *
+     * @return the number of requests as <tt>long</tt>.
+     */
+    public long getCount() {
+    return m_Count;
+  }//getCount
+
+    /**
+     * Returns the number of requests answered with
+     * an exception response.
+     *
+     * @return the number of exception responses as <tt>long</tt>.
+     */
+    public long getExceptions() {
+    return m_Exceptions;
+  }//getExceptions
+
+    /**
+     * Returns the number of coils, discretes or registers
+     * read or written by the requests.
+     *
+     * @return the number of items as <tt>long</tt>.
+     */
+    public long getItems() {
+    return m_Items;
+  }//getItems
+
+    /**
+     * Returns the service times of the requests.
+     *
+     * @return a <tt>LatencyHistogram</tt> owned by this snapshot.
+     */
+    public LatencyHistogram getServiceTime() {
+    return m_ServiceTime;
+  }//getServiceTime
+
+  public String toString() {
+    return m_Key
+        + " count=" + m_Count
+        + " exceptions=" + m_Exceptions
+        + " items=" + m_Items
+        + " p50=" + m_ServiceTime.getValueAtPercentile(50) / 1000 + "us"
+        + " p99=" + m_ServiceTime.getValueAtPercentile(99) / 1000 + "us"
+        + " max=" + m_ServiceTime.getMax() / 1000 + "us";
+  }//toString
+
+}//class SlaveStatistics
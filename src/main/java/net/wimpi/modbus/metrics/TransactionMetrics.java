@@ -0,0 +1,95 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+/**
+ * Interface defining the callbacks a master side
+ * <tt>ModbusTransaction</tt> reports its execution to.
+ * <p>
+ * Each callback is tagged with the endpoint (for example
+ * <tt>tcp://10.0.0.5:502</tt> or <tt>serial:/dev/ttyS0</tt>)
+ * and the unit identifier addressed by the request.
+ * Implementations are called on the thread executing the
+ * transaction and should neither block nor allocate.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see net.wimpi.modbus.ModbusCoupler#setTransactionMetrics(TransactionMetrics)
+ */
+public interface TransactionMetrics {
+
+    /**
+     * Records the completion of a transaction, successful
+     * or not. The latency covers all retries.
+     *
+     * @param endpoint     the endpoint the transaction was executed on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     * @param nanos        the latency in nanoseconds.
+     * @param success      true if a response was received, false otherwise.
+     */
+    public void recordTransaction(String endpoint, int unitid, int functioncode, long nanos, boolean success);
+
+    /**
+     * Records that an attempt failed and is repeated.
+     *
+     * @param endpoint     the endpoint the transaction was executed on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     */
+    public void recordRetry(String endpoint, int unitid, int functioncode);
+
+    /**
+     * Records that an attempt failed, because no (complete)
+     * response was received in time.
+     *
+     * @param endpoint     the endpoint the transaction was executed on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     */
+    public void recordTimeout(String endpoint, int unitid, int functioncode);
+
+    /**
+     * Records that a frame with a wrong CRC or LRC was received.
+     *
+     * @param endpoint     the endpoint the transaction was executed on.
+     * @param unitid       the unit identifier of the request.
+     * @param functioncode the function code of the request.
+     */
+    public void recordChecksumError(String endpoint, int unitid, int functioncode);
+
+    /**
+     * Records that the slave answered with an exception response.
+     *
+     * @param endpoint      the endpoint the transaction was executed on.
+     * @param unitid        the unit identifier of the request.
+     * @param functioncode  the function code of the request.
+     * @param exceptioncode the exception code of the response.
+     */
+    public void recordExceptionResponse(String endpoint, int unitid, int functioncode, int exceptioncode);
+
+    /**
+     * Records bytes written to or read from the endpoint,
+     * including the framing of the transport.
+     *
+     * @param endpoint the endpoint the transaction was executed on.
+     * @param unitid   the unit identifier of the request.
+     * @param out      the number of bytes written.
+     * @param in       the number of bytes read.
+     */
+    public void recordBytes(String endpoint, int unitid, int out, int in);
+
+}//interface TransactionMetrics
@@ -0,0 +1,174 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics;
+
+/**
+ * Class holding a snapshot of the metrics recorded by an
+ * {@link InMemoryTransactionMetrics} for one endpoint and
+ * unit identifier.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class TransactionStatistics {
+
+  //instance attributes
+  private String m_Endpoint;
+  private int m_UnitID;
+  private long m_Count;
+  private long m_Failures;
+  private long m_Retries;
+  private long m_Timeouts;
+  private long m_ChecksumErrors;
+  private long m_ExceptionResponses;
+  private long m_BytesOut;
+  private long m_BytesIn;
+  private LatencyHistogram m_Latency;
+
+  TransactionStatistics(String endpoint, int unitid, long count, long failures,
+                        long retries, long timeouts, long checksumerrors,
+                        long exceptionresponses, long bytesout, long bytesin,
+                        LatencyHistogram latency) {
+    m_Endpoint = endpoint;
+    m_UnitID = unitid;
+    m_Count = count;
+    m_Failures = failures;
+    m_Retries = retries;
+    m_Timeouts = timeouts;
+    m_ChecksumErrors = checksumerrors;
+    m_ExceptionResponses = exceptionresponses;
+    m_BytesOut = bytesout;
+    m_BytesIn = bytesin;
+    m_Latency = latency;
+  }//constructor
+
+    /**
+     * Returns the endpoint these statistics belong to.
+     *
+     * @return the endpoint as <tt>String</tt>.
+     */
+    public String getEndpoint() {
+    return m_Endpoint;
+  }//getEndpoint
+
+    /**
+     * Returns the unit identifier these statistics belong to.
+     *
+     * @return the unit identifier as <tt>int</tt>.
+     */
+    public int getUnitID() {
+    return m_UnitID;
+  }//getUnitID
+
+    /**
+     * Returns the number of executed transactions.
+     *
+     * @return the number of transactions as <tt>long</tt>.
+     */
+    public long getCount() {
+    return m_Count;
+  }//getCount
+
+    /**
+     * Returns the number of transactions that failed
+     * without receiving a response.
+     *
+     * @return the number of failures as <tt>long</tt>.
+     */
+    public long getFailures() {
+    return m_Failures;
+  }//getFailures
+
+    /**
+     * Returns the number of repeated attempts.
+     *
+     * @return the number of retries as <tt>long</tt>.
+     */
+    public long getRetries() {
+    return m_Retries;
+  }//getRetries
+
+    /**
+     * Returns the number of attempts that timed out.
+     *
+     * @return the number of timeouts as <tt>long</tt>.
+     */
+    public long getTimeouts() {
+    return m_Timeouts;
+  }//getTimeouts
+
+    /**
+     * Returns the number of frames received with a wrong checksum.
+     *
+     * @return the number of CRC or LRC errors as <tt>long</tt>.
+     */
+    public long getChecksumErrors() {
+    return m_ChecksumErrors;
+  }//getChecksumErrors
+
+    /**
+     * Returns the number of exception responses received.
+     *
+     * @return the number of exception responses as <tt>long</tt>.
+     */
+    public long getExceptionResponses() {
+    return m_ExceptionResponses;
+  }//getExceptionResponses
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the number of bytes as <tt>long</tt>.
+     */
+    public long getBytesOut() {
+    return m_BytesOut;
+  }//getBytesOut
+
+    /**
+     * Returns the number of bytes read.
+     *
+     * @return the number of bytes as <tt>long</tt>.
+     */
+    public long getBytesIn() {
+    return m_BytesIn;
+  }//getBytesIn
+
+    /**
+     * Returns the latencies of the transactions that
+     * received a response.
+     *
+     * @return a <tt>LatencyHistogram</tt> owned by this snapshot.
+     */
+    public LatencyHistogram getLatency() {
+    return m_Latency;
+  }//getLatency
+
+  public String toString() {
+    return m_Endpoint + " unit=" + m_UnitID
+        + " count=" + m_Count
+        + " failures=" + m_Failures
+        + " retries=" + m_Retries
+        + " timeouts=" + m_Timeouts
+        + " checksumErrors=" + m_ChecksumErrors
+        + " exceptions=" + m_ExceptionResponses
+        + " bytesOut=" + m_BytesOut
+        + " bytesIn=" + m_BytesIn
+        + " p50=" + m_Latency.getValueAtPercentile(50) / 1000 + "us"
+        + " p99=" + m_Latency.getValueAtPercentile(99) / 1000 + "us"
+        + " max=" + m_Latency.getMax() / 1000 + "us";
+  }//toString
+
+}//class TransactionStatistics
@@ -0,0 +1,274 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import net.wimpi.modbus.metrics.EventRecorder;
+
+/**
+ * Class implementing an <tt>EventRecorder</tt> that emits
+ * JDK Flight Recorder events.
+ * <p>
+ * The events are only committed while a recording with
+ * the respective event enabled is running; otherwise the
+ * cost is a check of the enabled state. This class requires
+ * the <tt>jdk.jfr</tt> module at runtime and is only loaded
+ * reflectively by the <tt>ModbusCoupler</tt> if present.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class FlightRecorderEventRecorder
+    implements EventRecorder {
+
+  public Object beginTransaction() {
+    TransactionEvent e = new TransactionEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginTransaction
+
+  public void endTransaction(Object event, String endpoint, int unitid, int functioncode,
+                             int retries, boolean success) {
+    if (event == null) {
+      return;
+    }
+    TransactionEvent e = (TransactionEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.endpoint = endpoint;
+      e.unitID = unitid;
+      e.functionCode = functioncode;
+      e.retries = retries;
+      e.success = success;
+      e.commit();
+    }
+  }//endTransaction
+
+  public Object beginTransportWrite() {
+    TransportWriteEvent e = new TransportWriteEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginTransportWrite
+
+  public void endTransportWrite(Object event, String transport, int functioncode, int length) {
+    if (event == null) {
+      return;
+    }
+    TransportWriteEvent e = (TransportWriteEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.transport = transport;
+      e.functionCode = functioncode;
+      e.length = length;
+      e.commit();
+    }
+  }//endTransportWrite
+
+  public Object beginTransportRead() {
+    TransportReadEvent e = new TransportReadEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginTransportRead
+
+  public void endTransportRead(Object event, String transport, int functioncode, int length) {
+    if (event == null) {
+      return;
+    }
+    TransportReadEvent e = (TransportReadEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.transport = transport;
+      e.functionCode = functioncode;
+      e.length = length;
+      e.commit();
+    }
+  }//endTransportRead
+
+  public Object beginSerialRead() {
+    SerialReadEvent e = new SerialReadEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginSerialRead
+
+  public void endSerialRead(Object event, String port, int requested, int read) {
+    if (event == null) {
+      return;
+    }
+    SerialReadEvent e = (SerialReadEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.port = port;
+      e.requested = requested;
+      e.read = read;
+      e.commit();
+    }
+  }//endSerialRead
+
+  public Object beginSerialWrite() {
+    SerialWriteEvent e = new SerialWriteEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginSerialWrite
+
+  public void endSerialWrite(Object event, String port, int written) {
+    if (event == null) {
+      return;
+    }
+    SerialWriteEvent e = (SerialWriteEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.port = port;
+      e.written = written;
+      e.commit();
+    }
+  }//endSerialWrite
+
+  public Object beginSlaveRequest() {
+    SlaveRequestEvent e = new SlaveRequestEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }//beginSlaveRequest
+
+  public void endSlaveRequest(Object event, String transport, int unitid, int functioncode,
+                              boolean exception) {
+    if (event == null) {
+      return;
+    }
+    SlaveRequestEvent e = (SlaveRequestEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.transport = transport;
+      e.unitID = unitid;
+      e.functionCode = functioncode;
+      e.exception = exception;
+      e.commit();
+    }
+  }//endSlaveRequest
+
+  @Name("net.wimpi.modbus.Transaction")
+  @Label("Modbus Transaction")
+  @Description("Execution of a master transaction, including retries")
+  @Category({"Modbus", "Master"})
+  static final class TransactionEvent extends Event {
+    @Label("Endpoint")
+    String endpoint;
+    @Label("Unit ID")
+    int unitID;
+    @Label("Function Code")
+    int functionCode;
+    @Label("Retries")
+    int retries;
+    @Label("Success")
+    boolean success;
+  }//class TransactionEvent
+
+  @Name("net.wimpi.modbus.TransportWrite")
+  @Label("Modbus Transport Write")
+  @Description("Encoding and writing a message to the transport")
+  @Category({"Modbus", "Transport"})
+  @StackTrace(false)
+  static final class TransportWriteEvent extends Event {
+    @Label("Transport")
+    String transport;
+    @Label("Function Code")
+    int functionCode;
+    @Label("Length")
+    int length;
+  }//class TransportWriteEvent
+
+  @Name("net.wimpi.modbus.TransportRead")
+  @Label("Modbus Transport Read")
+  @Description("Waiting for, reading, checking and decoding a response")
+  @Category({"Modbus", "Transport"})
+  @StackTrace(false)
+  static final class TransportReadEvent extends Event {
+    @Label("Transport")
+    String transport;
+    @Label("Function Code")
+    int functionCode;
+    @Label("Length")
+    int length;
+  }//class TransportReadEvent
+
+  @Name("net.wimpi.modbus.SerialRead")
+  @Label("Modbus Serial Read")
+  @Description("A read from a serial port, including the poll() wait")
+  @Category({"Modbus", "Serial"})
+  @StackTrace(false)
+  @Threshold("1 ms")
+  static final class SerialReadEvent extends Event {
+    @Label("Port")
+    String port;
+    @Label("Requested")
+    int requested;
+    @Label("Read")
+    int read;
+  }//class SerialReadEvent
+
+  @Name("net.wimpi.modbus.SerialWrite")
+  @Label("Modbus Serial Write")
+  @Description("A write to a serial port")
+  @Category({"Modbus", "Serial"})
+  @StackTrace(false)
+  @Threshold("1 ms")
+  static final class SerialWriteEvent extends Event {
+    @Label("Port")
+    String port;
+    @Label("Written")
+    int written;
+  }//class SerialWriteEvent
+
+  @Name("net.wimpi.modbus.SlaveRequest")
+  @Label("Modbus Slave Request")
+  @Description("Creating the response to a request from the process image")
+  @Category({"Modbus", "Slave"})
+  @StackTrace(false)
+  static final class SlaveRequestEvent extends Event {
+    @Label("Transport")
+    String transport;
+    @Label("Unit ID")
+    int unitID;
+    @Label("Function Code")
+    int functionCode;
+    @Label("Exception")
+    boolean exception;
+  }//class SlaveRequestEvent
+
+}//class FlightRecorderEventRecorder
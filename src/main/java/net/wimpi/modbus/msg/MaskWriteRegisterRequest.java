@@ -0,0 +1,186 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.Register;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Class implementing a <tt>MaskWriteRegisterRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>mask write register (FC 22)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * The register content is modified as
+ * <tt>(current &amp; and_mask) | (or_mask &amp; ~and_mask)</tt>,
+ * which allows to set or clear single bits without a
+ * separate read.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class MaskWriteRegisterRequest
+    extends ModbusRequest {
+
+  //instance attributes
+  private int m_Reference;
+  private int m_AndMask;
+  private int m_OrMask;
+
+    /**
+     * Constructs a new <tt>MaskWriteRegisterRequest</tt>
+     * instance.
+     */
+    public MaskWriteRegisterRequest() {
+    super();
+    setFunctionCode(Modbus.MASK_WRITE_REGISTER);
+    //6 bytes (unit id and function code is excluded)
+    setDataLength(6);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>MaskWriteRegisterRequest</tt>
+     * instance with a given reference and masks.
+     *
+     * @param ref     the reference of the register to be modified.
+     * @param andmask the AND mask.
+     * @param ormask  the OR mask.
+     */
+    public MaskWriteRegisterRequest(int ref, int andmask, int ormask) {
+    this();
+    setReference(ref);
+    setAndMask(andmask);
+    setOrMask(ormask);
+  }//constructor
+
+  public ModbusResponse createResponse() {
+    MaskWriteRegisterResponse response = null;
+    Register reg = null;
+
+    //1. get process image
+    ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
+    //2. get register
+    try {
+      reg = procimg.getRegister(m_Reference);
+    } catch (IllegalAddressException iaex) {
+      return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+    }
+    //3. apply masks; the register implementations synchronize
+    //   their setters on the instance, so holding its lock makes
+    //   the read-modify-write atomic
+    synchronized (reg) {
+      reg.setValue((reg.getValue() & m_AndMask) | (m_OrMask & ~m_AndMask));
+    }
+    response = (MaskWriteRegisterResponse) getRecycledResponse();
+    if (response == null) {
+      response = new MaskWriteRegisterResponse(m_Reference, m_AndMask, m_OrMask);
+      setRecycledResponse(response);
+    } else {
+      response.setReference(m_Reference);
+      response.setAndMask(m_AndMask);
+      response.setOrMask(m_OrMask);
+    }
+    //transfer header data
+    if (!isHeadless()) {
+      response.setTransactionID(this.getTransactionID());
+      response.setProtocolID(this.getProtocolID());
+    } else {
+      response.setHeadless();
+    }
+    response.setUnitID(this.getUnitID());
+    response.setFunctionCode(this.getFunctionCode());
+    return response;
+  }//createResponse
+
+    /**
+     * Sets the reference of the register to be modified
+     * with this <tt>MaskWriteRegisterRequest</tt>.
+     *
+     * @param ref the reference of the register.
+     */
+    public void setReference(int ref) {
+    m_Reference = ref;
+  }//setReference
+
+    /**
+     * Returns the reference of the register to be modified
+     * with this <tt>MaskWriteRegisterRequest</tt>.
+     *
+     * @return the reference of the register.
+     */
+    public int getReference() {
+    return m_Reference;
+  }//getReference
+
+    /**
+     * Sets the AND mask of this <tt>MaskWriteRegisterRequest</tt>.
+     * Bits cleared in this mask are taken from the OR mask,
+     * bits set are kept from the current register content.
+     *
+     * @param mask the AND mask as <tt>int</tt> (16 bit).
+     */
+    public void setAndMask(int mask) {
+    m_AndMask = mask & 0xffff;
+  }//setAndMask
+
+    /**
+     * Returns the AND mask of this <tt>MaskWriteRegisterRequest</tt>.
+     *
+     * @return the AND mask as <tt>int</tt>.
+     */
+    public int getAndMask() {
+    return m_AndMask;
+  }//getAndMask
+
+    /**
+     * Sets the OR mask of this <tt>MaskWriteRegisterRequest</tt>.
+     *
+     * @param mask the OR mask as <tt>int</tt> (16 bit).
+     */
+    public void setOrMask(int mask) {
+    m_OrMask = mask & 0xffff;
+  }//setOrMask
+
+    /**
+     * Returns the OR mask of this <tt>MaskWriteRegisterRequest</tt>.
+     *
+     * @return the OR mask as <tt>int</tt>.
+     */
+    public int getOrMask() {
+    return m_OrMask;
+  }//getOrMask
+
+  public void writeData(DataOutput dout)
+      throws IOException {
+    dout.writeShort(m_Reference);
+    dout.writeShort(m_AndMask);
+    dout.writeShort(m_OrMask);
+  }//writeData
+
+  public void readData(DataInput din)
+      throws IOException {
+    m_Reference = din.readUnsignedShort();
+    m_AndMask = din.readUnsignedShort();
+    m_OrMask = din.readUnsignedShort();
+  }//readData
+
+}//class MaskWriteRegisterRequest
@@ -17,6 +17,7 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.util.ModbusUtil;
 
 import java.io.DataInput;
@@ -41,6 +42,29 @@ public abstract class ModbusMessageImpl
   private int m_UnitID = Modbus.DEFAULT_UNIT_ID;
   private int m_FunctionCode;
   private boolean m_Headless = false;       //flag for headerless (serial) transport
+  private ModbusCoupler m_Coupler;          //context, null for the default
+
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this message is
+     * handled in, i.e. the one providing the process image
+     * and the process image factory.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this message is
+     * handled in. Transports set the coupler they have been
+     * given on every message they read.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
 
   /*** Header ******************************************/
 
@@ -29,6 +29,10 @@ import net.wimpi.modbus.Modbus;
 public abstract class ModbusRequest
     extends ModbusMessageImpl {
 
+  //instance attributes
+  private boolean m_Recycling = false;
+  private ModbusResponse m_RecycledResponse;
+
   /**
    * Returns the <tt>ModbusResponse</tt> that
    * correlates with this <tt>ModbusRequest</tt>.
@@ -50,6 +54,57 @@ public abstract class ModbusRequest
      */
     public abstract ModbusResponse createResponse();
 
+    /**
+     * Sets the flag that controls whether this
+     * <tt>ModbusRequest</tt> is recycled.
+     * <p>
+     * A recycling request reuses the data structures of the
+     * previous message when reading data, and returns the same
+     * response instance from every call of {@link #createResponse()}.
+     * The request and its response must therefore not be used
+     * after the next request has been read into it.
+     *
+     * @param b true if recycling, false otherwise.
+     */
+    public void setRecycling(boolean b) {
+    m_Recycling = b;
+    if (!b) {
+      m_RecycledResponse = null;
+    }
+  }//setRecycling
+
+    /**
+     * Tests if this <tt>ModbusRequest</tt> is recycled.
+     *
+     * @return true if recycling, false otherwise.
+     */
+    public boolean isRecycling() {
+    return m_Recycling;
+  }//isRecycling
+
+    /**
+     * Returns the response kept from a previous call of
+     * {@link #createResponse()} for reuse.
+     *
+     * @return the kept <tt>ModbusResponse</tt>, or null if not recycling
+     *         or no response has been kept yet.
+     */
+    protected ModbusResponse getRecycledResponse() {
+    return m_RecycledResponse;
+  }//getRecycledResponse
+
+    /**
+     * Keeps the given response for reuse if this request is
+     * recycling.
+     *
+     * @param response the <tt>ModbusResponse</tt> to be kept.
+     */
+    protected void setRecycledResponse(ModbusResponse response) {
+    if (m_Recycling) {
+      m_RecycledResponse = response;
+    }
+  }//setRecycledResponse
+
     /**
      * Factory method for creating exception responses with the
      * given exception code.
@@ -105,6 +160,12 @@ public abstract class ModbusRequest
       case Modbus.WRITE_MULTIPLE_COILS:
         request = new WriteMultipleCoilsRequest();
         break;
+      case Modbus.READ_WRITE_MULTIPLE:
+        request = new ReadWriteMultipleRequest();
+        break;
+      case Modbus.MASK_WRITE_REGISTER:
+        request = new MaskWriteRegisterRequest();
+        break;
       default:
         request = new IllegalFunctionRequest(functionCode);
         break;
@@ -0,0 +1,54 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.msg;
+
+/**
+ * Class holding one recycling <tt>ModbusRequest</tt>
+ * instance per function code.
+ * <p>
+ * A pool belongs to a single connection and is not
+ * thread safe; a request obtained from it (and the response
+ * it creates) is only valid until the next request with the
+ * same function code has been obtained.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see ModbusRequest#setRecycling(boolean)
+ */
+public final class ModbusRequestPool {
+
+  //instance attributes
+  private ModbusRequest[] m_Requests = new ModbusRequest[256];
+
+    /**
+     * Returns the recycling <tt>ModbusRequest</tt> for the
+     * given function code, creating it on first use.
+     *
+     * @param functionCode the function code of the request as <tt>int</tt>.
+     * @return a ModbusRequest instance specific for the given function type.
+     */
+    public ModbusRequest getRequest(int functionCode) {
+    int idx = functionCode & 0xff;
+    ModbusRequest req = m_Requests[idx];
+    if (req == null) {
+      req = ModbusRequest.createModbusRequest(functionCode);
+      req.setRecycling(true);
+      m_Requests[idx] = req;
+    }
+    return req;
+  }//getRequest
+
+}//class ModbusRequestPool
@@ -88,6 +88,12 @@ public abstract class ModbusResponse
       case Modbus.WRITE_MULTIPLE_COILS:
         response = new WriteMultipleCoilsResponse();
         break;
+      case Modbus.READ_WRITE_MULTIPLE:
+        response = new ReadWriteMultipleResponse();
+        break;
+      case Modbus.MASK_WRITE_REGISTER:
+        response = new MaskWriteRegisterResponse();
+        break;
       default:
         response = new ExceptionResponse();
         break;
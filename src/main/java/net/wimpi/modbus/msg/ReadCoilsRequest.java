@@ -17,8 +17,8 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
+import net.wimpi.modbus.procimg.DigitalRangeAccess;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
 
@@ -79,14 +79,26 @@ public final class ReadCoilsRequest
     DigitalOut[] douts = null;
 
     //1. get process image
-    ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
-    //2. get coil range
-    try {
-      douts = procimg.getDigitalOutRange(this.getReference(), this.getBitCount());
-    } catch (IllegalAddressException iaex) {
-      return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+    ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
+    //2. get coil range, unless the image transfers it word-wise
+    DigitalRangeAccess range =
+        (procimg instanceof DigitalRangeAccess) ? (DigitalRangeAccess) procimg : null;
+    int count = this.getBitCount();
+    if (range == null) {
+      try {
+        douts = procimg.getDigitalOutRange(this.getReference(), count);
+        count = douts.length;
+      } catch (IllegalAddressException iaex) {
+        return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+      }
+    }
+    response = (ReadCoilsResponse) getRecycledResponse();
+    if (response == null) {
+      response = new ReadCoilsResponse(count);
+      setRecycledResponse(response);
+    } else {
+      response.setBitCount(count);
     }
-    response = new ReadCoilsResponse(douts.length);
 
     //transfer header data
     if (!isHeadless()) {
@@ -98,8 +110,16 @@ public final class ReadCoilsRequest
     response.setUnitID(this.getUnitID());
     response.setFunctionCode(this.getFunctionCode());
 
-    for (int i = 0; i < douts.length; i++) {
-      response.setCoilStatus(i, douts[i].isSet());
+    if (range != null) {
+      try {
+        range.readDigitalOuts(this.getReference(), count, response.getCoils());
+      } catch (IllegalAddressException iaex) {
+        return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+      }
+    } else {
+      for (int i = 0; i < douts.length; i++) {
+        response.setCoilStatus(i, douts[i].isSet());
+      }
     }
     return response;
   }//createResponse
@@ -22,6 +22,7 @@ import net.wimpi.modbus.util.BitVector;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Class implementing a <tt>ReadCoilsResponse</tt>.
@@ -63,6 +64,24 @@ public final class ReadCoilsResponse extends ModbusResponse {
         setDataLength(m_Coils.byteSize() + 1);
     }//constructor(int)
 
+    /**
+     * Sets the number of bits in this response.
+     * <p>
+     * If the byte size does not change, the existing
+     * <tt>BitVector</tt> is cleared and reused.
+     *
+     * @param count the number of response bits as int.
+     */
+    public void setBitCount(int count) {
+        if (m_Coils != null && m_Coils.byteSize() == (count + 7) / 8) {
+            Arrays.fill(m_Coils.getBytes(), (byte) 0);
+            m_Coils.forceSize(count);
+        } else {
+            m_Coils = new BitVector(count);
+        }
+        setDataLength(m_Coils.byteSize() + 1);
+    }//setBitCount
+
     /**
      * Returns the number of bits (i.e. coils)
      * read with the request.
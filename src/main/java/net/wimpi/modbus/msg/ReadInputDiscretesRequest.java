@@ -17,8 +17,8 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalIn;
+import net.wimpi.modbus.procimg.DigitalRangeAccess;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
 
@@ -88,14 +88,26 @@ public final class ReadInputDiscretesRequest
         DigitalIn[] dins = null;
 
         //1. get process image
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
-        //2. get inputdiscretes range
-        try {
-            dins = procimg.getDigitalInRange(this.getReference(), this.getBitCount());
-        } catch (IllegalAddressException iaex) {
-            return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+        ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
+        //2. get inputdiscretes range, unless the image transfers it word-wise
+        DigitalRangeAccess range =
+            (procimg instanceof DigitalRangeAccess) ? (DigitalRangeAccess) procimg : null;
+        int count = this.getBitCount();
+        if (range == null) {
+            try {
+                dins = procimg.getDigitalInRange(this.getReference(), count);
+                count = dins.length;
+            } catch (IllegalAddressException iaex) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+        }
+        response = (ReadInputDiscretesResponse) getRecycledResponse();
+        if (response == null) {
+            response = new ReadInputDiscretesResponse(count);
+            setRecycledResponse(response);
+        } else {
+            response.setBitCount(count);
         }
-        response = new ReadInputDiscretesResponse(dins.length);
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -106,8 +118,16 @@ public final class ReadInputDiscretesRequest
         response.setUnitID(this.getUnitID());
         response.setFunctionCode(this.getFunctionCode());
 
-        for (int i = 0; i < dins.length; i++) {
-            response.setDiscreteStatus(i, dins[i].isSet());
+        if (range != null) {
+            try {
+                range.readDigitalIns(this.getReference(), count, response.getDiscretes());
+            } catch (IllegalAddressException iaex) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+        } else {
+            for (int i = 0; i < dins.length; i++) {
+                response.setDiscreteStatus(i, dins[i].isSet());
+            }
         }
         return response;
     }//createResponse
@@ -22,6 +22,7 @@ import net.wimpi.modbus.util.BitVector;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Class implementing a <tt>ReadInputDiscretesResponse</tt>.
@@ -76,12 +77,20 @@ public final class ReadInputDiscretesResponse
 
     /**
      * Sets the number of bits in this response.
+     * <p>
+     * If the byte size does not change, the existing
+     * <tt>BitVector</tt> is cleared and reused.
      *
      * @param count the number of response bits as int.
      */
     public void setBitCount(int count) {
     m_BitCount = count;
-    m_Discretes = new BitVector(count);
+    if (m_Discretes != null && m_Discretes.byteSize() == (count + 7) / 8) {
+      Arrays.fill(m_Discretes.getBytes(), (byte) 0);
+      m_Discretes.forceSize(count);
+    } else {
+      m_Discretes = new BitVector(count);
+    }
     //set correct length, without counting unitid and fc
     setDataLength(m_Discretes.byteSize() + 1);
   }//setBitCount
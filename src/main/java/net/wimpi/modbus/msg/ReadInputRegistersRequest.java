@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.ProcessImage;
@@ -76,14 +75,20 @@ public final class ReadInputRegistersRequest
         InputRegister[] inpregs = null;
 
         //1. get process image
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
         //2. get input registers range
         try {
             inpregs = procimg.getInputRegisterRange(this.getReference(), this.getWordCount());
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadInputRegistersResponse(inpregs);
+        response = (ReadInputRegistersResponse) getRecycledResponse();
+        if (response == null) {
+            response = new ReadInputRegistersResponse(inpregs);
+            setRecycledResponse(response);
+        } else {
+            response.setRegisters(inpregs);
+        }
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
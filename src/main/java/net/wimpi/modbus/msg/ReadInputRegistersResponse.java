@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.ProcessImageFactory;
 
@@ -67,6 +66,18 @@ public final class ReadInputRegistersResponse
     setDataLength(m_ByteCount + 1);
   }//constructor
 
+    /**
+     * Sets the input registers of this response.
+     *
+     * @param registers the InputRegister[] holding response input registers.
+     */
+    public void setRegisters(InputRegister[] registers) {
+    m_ByteCount = registers.length * 2;
+    m_Registers = registers;
+    //set correct data length excluding unit id and fc
+    setDataLength(m_ByteCount + 1);
+  }//setRegisters
+
 
     /**
      * Returns the number of bytes that have been read.
@@ -164,7 +175,7 @@ public final class ReadInputRegistersResponse
     setByteCount(din.readUnsignedByte());
 
     InputRegister[] registers = new InputRegister[getWordCount()];
-    ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+    ProcessImageFactory pimf = getCoupler().getProcessImageFactory();
     for (int k = 0; k < getWordCount(); k++) {
       registers[k] = pimf.createInputRegister(din.readByte(), din.readByte());
     }
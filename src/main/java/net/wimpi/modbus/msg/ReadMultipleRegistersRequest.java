@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
 import net.wimpi.modbus.procimg.Register;
@@ -76,14 +75,20 @@ public final class ReadMultipleRegistersRequest
     Register[] regs = null;
 
     //1. get process image
-    ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+    ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
     //2. get input registers range
     try {
       regs = procimg.getRegisterRange(this.getReference(), this.getWordCount());
     } catch (IllegalAddressException iaex) {
       return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
     }
-    response = new ReadMultipleRegistersResponse(regs);
+    response = (ReadMultipleRegistersResponse) getRecycledResponse();
+    if (response == null) {
+      response = new ReadMultipleRegistersResponse(regs);
+      setRecycledResponse(response);
+    } else {
+      response.setRegisters(regs);
+    }
     //transfer header data
     if (!isHeadless()) {
       response.setTransactionID(this.getTransactionID());
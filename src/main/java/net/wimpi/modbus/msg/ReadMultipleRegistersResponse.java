@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.ProcessImageFactory;
 import net.wimpi.modbus.procimg.Register;
 
@@ -61,6 +60,18 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
 		setDataLength(m_ByteCount + 1);
 	}// constructor
 
+    /**
+     * Sets the registers of this response.
+     *
+     * @param registers the Register[] holding response registers.
+     */
+    public void setRegisters(Register[] registers) {
+		m_Registers = registers;
+		m_ByteCount = registers.length * 2;
+		// set correct data length excluding unit id and fc
+		setDataLength(m_ByteCount + 1);
+	}// setRegisters
+
     /**
      * Returns the number of bytes that have been read.
      * <p>
@@ -145,7 +156,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
 		setByteCount(din.readUnsignedByte());
 
 		m_Registers = new Register[getWordCount()];
-		ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+		ProcessImageFactory pimf = getCoupler().getProcessImageFactory();
 
 		for (int k = 0; k < getWordCount(); k++) {
 			m_Registers[k] = pimf.createRegister(din.readByte(), din.readByte());
@@ -0,0 +1,267 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.ProcessImageFactory;
+import net.wimpi.modbus.procimg.Register;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Class implementing a <tt>ReadWriteMultipleRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>read/write multiple registers (FC 23)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * The write operation is performed before the read
+ * operation, so the response can be used to read back
+ * the registers that have been written.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class ReadWriteMultipleRequest
+    extends ModbusRequest {
+
+  //the most registers that fit a request with its read count
+  private static final int MAX_WRITE_REGISTERS = 121;
+
+  //instance attributes
+  private int m_ReadReference;
+  private int m_ReadCount;
+  private int m_WriteReference;
+  private Register[] m_Registers;
+  private boolean m_IllegalValue;
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRequest</tt>
+     * instance.
+     */
+    public ReadWriteMultipleRequest() {
+    super();
+    setFunctionCode(Modbus.READ_WRITE_MULTIPLE);
+    //9 bytes (unit id and function code is excluded)
+    setDataLength(9);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRequest</tt>
+     * instance with the given references, count of words
+     * to be read and registers to be written.
+     *
+     * @param readref   the reference of the register to start reading from.
+     * @param count     the number of words to be read.
+     * @param writeref  the reference of the register to start writing to.
+     * @param registers the registers to be written.
+     */
+    public ReadWriteMultipleRequest(int readref, int count, int writeref, Register[] registers) {
+    this();
+    setReadReference(readref);
+    setReadWordCount(count);
+    setWriteReference(writeref);
+    setRegisters(registers);
+  }//constructor
+
+  public ModbusResponse createResponse() {
+    ReadWriteMultipleResponse response = null;
+    Register[] regs = null;
+    Register[] wregs = null;
+
+    if (m_IllegalValue) {
+      return createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
+    }
+    //1. get process image
+    ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
+    //2. look up both ranges, so nothing is written if either is illegal
+    try {
+      wregs = procimg.getRegisterRange(m_WriteReference, getWriteWordCount());
+      regs = procimg.getRegisterRange(m_ReadReference, m_ReadCount);
+    } catch (IllegalAddressException iaex) {
+      return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+    }
+    //3. write the registers before they are read
+    for (int i = 0; i < wregs.length; i++) {
+      wregs[i].setValue(m_Registers[i].toBytes());
+    }
+    response = (ReadWriteMultipleResponse) getRecycledResponse();
+    if (response == null) {
+      response = new ReadWriteMultipleResponse(regs);
+      setRecycledResponse(response);
+    } else {
+      response.setRegisters(regs);
+    }
+    //transfer header data
+    if (!isHeadless()) {
+      response.setTransactionID(this.getTransactionID());
+      response.setProtocolID(this.getProtocolID());
+    } else {
+      response.setHeadless();
+    }
+    response.setUnitID(this.getUnitID());
+    response.setFunctionCode(this.getFunctionCode());
+    return response;
+  }//createResponse
+
+    /**
+     * Sets the reference of the register to start reading
+     * from with this <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @param ref the reference of the register to start reading from.
+     */
+    public void setReadReference(int ref) {
+    m_ReadReference = ref;
+  }//setReadReference
+
+    /**
+     * Returns the reference of the register to start reading
+     * from with this <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @return the reference of the register to start reading from.
+     */
+    public int getReadReference() {
+    return m_ReadReference;
+  }//getReadReference
+
+    /**
+     * Sets the number of words to be read with this
+     * <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @param count the number of words to be read.
+     */
+    public void setReadWordCount(int count) {
+    m_ReadCount = count;
+  }//setReadWordCount
+
+    /**
+     * Returns the number of words to be read with this
+     * <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @return the number of words to be read.
+     */
+    public int getReadWordCount() {
+    return m_ReadCount;
+  }//getReadWordCount
+
+    /**
+     * Sets the reference of the register to start writing
+     * to with this <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @param ref the reference of the register to start writing to.
+     */
+    public void setWriteReference(int ref) {
+    m_WriteReference = ref;
+  }//setWriteReference
+
+    /**
+     * Returns the reference of the register to start writing
+     * to with this <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @return the reference of the register to start writing to.
+     */
+    public int getWriteReference() {
+    return m_WriteReference;
+  }//getWriteReference
+
+    /**
+     * Sets the registers to be written with this
+     * <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @param registers the registers to be written as <tt>Register[]</tt>.
+     */
+    public void setRegisters(Register[] registers) {
+    m_Registers = registers;
+    setDataLength(9 + getWriteByteCount()); //update message length in header
+  }//setRegisters
+
+    /**
+     * Returns the registers to be written with this
+     * <tt>ReadWriteMultipleRequest</tt>.
+     *
+     * @return the registers to be written as <tt>Register[]</tt>.
+     */
+    public Register[] getRegisters() {
+    return m_Registers;
+  }//getRegisters
+
+    /**
+     * Returns the number of words to be written.
+     *
+     * @return the number of words to be written as <tt>int</tt>.
+     */
+    public int getWriteWordCount() {
+    return (m_Registers == null) ? 0 : m_Registers.length;
+  }//getWriteWordCount
+
+    /**
+     * Returns the number of bytes representing the values
+     * to be written.
+     *
+     * @return the number of bytes to be written as <tt>int</tt>.
+     */
+    public int getWriteByteCount() {
+    return getWriteWordCount() * 2;
+  }//getWriteByteCount
+
+  public void writeData(DataOutput dout)
+      throws IOException {
+    dout.writeShort(m_ReadReference);
+    dout.writeShort(m_ReadCount);
+    dout.writeShort(m_WriteReference);
+    dout.writeShort(getWriteWordCount());
+    dout.writeByte(getWriteByteCount());
+    for (int n = 0; n < getWriteWordCount(); n++) {
+      dout.write(m_Registers[n].toBytes(), 0, 2);
+    }
+  }//writeData
+
+  public void readData(DataInput din)
+      throws IOException {
+    m_ReadReference = din.readUnsignedShort();
+    m_ReadCount = din.readUnsignedShort();
+    m_WriteReference = din.readUnsignedShort();
+    int wc = din.readUnsignedShort();
+    int bc = din.readUnsignedByte();
+
+    //quantities out of range are answered with an illegal value exception
+    m_IllegalValue = m_ReadCount < 1 || m_ReadCount > Modbus.MAX_REGISTERS
+        || wc < 1 || wc > MAX_WRITE_REGISTERS || bc != wc * 2;
+    if (m_IllegalValue) {
+      m_Registers = null;
+      setDataLength(9);
+      return;
+    }
+    if (isRecycling() && m_Registers != null && m_Registers.length == wc) {
+      //overwrite the registers of the previous request
+      for (int i = 0; i < wc; i++) {
+        m_Registers[i].setValue(din.readShort());
+      }
+    } else {
+      m_Registers = new Register[wc];
+      ProcessImageFactory pimf = getCoupler().getProcessImageFactory();
+      for (int i = 0; i < wc; i++) {
+        m_Registers[i] = pimf.createRegister(din.readByte(), din.readByte());
+      }
+    }
+    setDataLength(9 + getWriteByteCount());
+  }//readData
+
+}//class ReadWriteMultipleRequest
@@ -0,0 +1,155 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.ProcessImageFactory;
+import net.wimpi.modbus.procimg.Register;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Class implementing a <tt>ReadWriteMultipleResponse</tt>.
+ * The implementation directly correlates with the
+ * function <i>read/write multiple registers (FC 23)</i>. It
+ * encapsulates the corresponding response message, which
+ * carries the registers read after the write has been applied.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class ReadWriteMultipleResponse
+    extends ModbusResponse {
+
+  //instance attributes
+  private int m_ByteCount;
+  private Register[] m_Registers;
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleResponse</tt>
+     * instance.
+     */
+    public ReadWriteMultipleResponse() {
+    super();
+    setFunctionCode(Modbus.READ_WRITE_MULTIPLE);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleResponse</tt>
+     * instance.
+     *
+     * @param registers the <tt>Register[]</tt> holding the registers read.
+     */
+    public ReadWriteMultipleResponse(Register[] registers) {
+    super();
+    m_Registers = registers;
+    m_ByteCount = registers.length * 2;
+    setFunctionCode(Modbus.READ_WRITE_MULTIPLE);
+    //set correct data length excluding unit id and fc
+    setDataLength(m_ByteCount + 1);
+  }//constructor
+
+    /**
+     * Sets the registers of this response.
+     *
+     * @param registers the <tt>Register[]</tt> holding the registers read.
+     */
+    public void setRegisters(Register[] registers) {
+    m_Registers = registers;
+    m_ByteCount = registers.length * 2;
+    setDataLength(m_ByteCount + 1);
+  }//setRegisters
+
+    /**
+     * Returns the number of bytes that have been read.
+     *
+     * @return the number of bytes that have been read as <tt>int</tt>.
+     */
+    public int getByteCount() {
+    return m_ByteCount;
+  }//getByteCount
+
+    /**
+     * Returns the number of words that have been read.
+     *
+     * @return the number of words that have been read as <tt>int</tt>.
+     */
+    public int getWordCount() {
+    return m_ByteCount / 2;
+  }//getWordCount
+
+    /**
+     * Returns the value of the register at the given position
+     * (relative to the read reference used in the request)
+     * interpreted as unsigned short.
+     *
+     * @param index the relative index of the register.
+     * @return the value as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+    return getRegister(index).toUnsignedShort();
+  }//getRegisterValue
+
+    /**
+     * Returns the <tt>Register</tt> at the given position
+     * (relative to the read reference used in the request).
+     *
+     * @param index the relative index of the <tt>Register</tt>.
+     * @return the register as <tt>Register</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public Register getRegister(int index) throws IndexOutOfBoundsException {
+    if (index >= getWordCount()) {
+      throw new IndexOutOfBoundsException();
+    }
+    return m_Registers[index];
+  }//getRegister
+
+    /**
+     * Returns a reference to the array of registers read.
+     *
+     * @return a <tt>Register[]</tt> instance.
+     */
+    public Register[] getRegisters() {
+    return m_Registers;
+  }//getRegisters
+
+  public void writeData(DataOutput dout)
+      throws IOException {
+    dout.writeByte(m_ByteCount);
+    for (int k = 0; k < getWordCount(); k++) {
+      dout.write(m_Registers[k].toBytes(), 0, 2);
+    }
+  }//writeData
+
+  public void readData(DataInput din)
+      throws IOException {
+    m_ByteCount = din.readUnsignedByte();
+
+    m_Registers = new Register[getWordCount()];
+    ProcessImageFactory pimf = getCoupler().getProcessImageFactory();
+    for (int k = 0; k < getWordCount(); k++) {
+      m_Registers[k] = pimf.createRegister(din.readByte(), din.readByte());
+    }
+    //update data length
+    setDataLength(m_ByteCount + 1);
+  }//readData
+
+}//class ReadWriteMultipleResponse
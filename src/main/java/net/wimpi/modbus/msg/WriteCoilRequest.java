@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
@@ -76,7 +75,7 @@ public final class WriteCoilRequest
     DigitalOut dout = null;
 
     //1. get process image
-    ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+    ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
     //2. get coil
     try {
       dout = procimg.getDigitalOut(this.getReference());
@@ -86,7 +85,14 @@ public final class WriteCoilRequest
     } catch (IllegalAddressException iaex) {
       return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
     }
-    response = new WriteCoilResponse(this.getReference(), dout.isSet());
+    response = (WriteCoilResponse) getRecycledResponse();
+    if (response == null) {
+      response = new WriteCoilResponse(this.getReference(), dout.isSet());
+      setRecycledResponse(response);
+    } else {
+      response.setReference(this.getReference());
+      response.setCoil(dout.isSet());
+    }
     //transfer header data
     if (!isHeadless()) {
       response.setTransactionID(this.getTransactionID());
@@ -70,7 +70,7 @@ public final class WriteCoilResponse
    * @param b true if the coil should be set of
    *        false if it should be unset.
    */
-  private void setCoil(boolean b) {
+  void setCoil(boolean b) {
     m_Coil = b;
   }//setCoil
 
@@ -102,7 +102,7 @@ public final class WriteCoilResponse
    * <p>
    * @param ref the reference of the coil's register.
    */
-  private void setReference(int ref) {
+  void setReference(int ref) {
     m_Reference = ref;
     //setChanged(true);
   }//setReference
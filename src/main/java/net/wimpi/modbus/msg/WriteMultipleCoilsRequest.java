@@ -17,8 +17,8 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
+import net.wimpi.modbus.procimg.DigitalRangeAccess;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
 import net.wimpi.modbus.util.BitVector;
@@ -91,18 +91,30 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
         DigitalOut douts[] = null;
 
         //1. get process image
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
         //2. get coil range
         try {
-            douts = procimg.getDigitalOutRange(m_Reference, m_Coils.size());
-            //3. set coils
-            for (int i = 0; i < douts.length; i++) {
-                douts[i].set(m_Coils.getBit(i));
+            if (procimg instanceof DigitalRangeAccess) {
+                //set coils word-wise
+                ((DigitalRangeAccess) procimg).writeDigitalOuts(m_Reference, m_Coils.size(), m_Coils);
+            } else {
+                douts = procimg.getDigitalOutRange(m_Reference, m_Coils.size());
+                //3. set coils
+                for (int i = 0; i < douts.length; i++) {
+                    douts[i].set(m_Coils.getBit(i));
+                }
             }
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new WriteMultipleCoilsResponse(m_Reference, m_Coils.size());
+        response = (WriteMultipleCoilsResponse) getRecycledResponse();
+        if (response == null) {
+            response = new WriteMultipleCoilsResponse(m_Reference, m_Coils.size());
+            setRecycledResponse(response);
+        } else {
+            response.setReference(m_Reference);
+            response.setBitCount(m_Coils.size());
+        }
 
         //transfer header data
         if (!isHeadless()) {
@@ -216,12 +228,18 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
         m_Reference = din.readUnsignedShort();
         int bitcount = din.readUnsignedShort();
         int count = din.readUnsignedByte();
-        byte[] data = new byte[count];
-        for (int k = 0; k < count; k++) {
-            data[k] = din.readByte();
+        if (isRecycling() && m_Coils != null && m_Coils.byteSize() == count) {
+            //read into the existing bitvector
+            din.readFully(m_Coils.getBytes(), 0, count);
+            m_Coils.forceSize(bitcount);
+        } else {
+            byte[] data = new byte[count];
+            for (int k = 0; k < count; k++) {
+                data[k] = din.readByte();
+            }
+            //decode bytes into bitvector, sets data and bitcount
+            m_Coils = BitVector.createBitVector(data, bitcount);
         }
-        //decode bytes into bitvector, sets data and bitcount
-        m_Coils = BitVector.createBitVector(data, bitcount);
 
         //update data length
         setDataLength(count + 5);
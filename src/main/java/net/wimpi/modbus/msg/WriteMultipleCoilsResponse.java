@@ -77,6 +77,16 @@ public final class WriteMultipleCoilsResponse
     return m_Reference;
   }//getReference
 
+  /**
+   * Sets the reference of the coil to start
+   * writing to with this <tt>WriteMultipleCoilsResponse</tt>.
+   *
+   * @param ref the reference of the coil.
+   */
+  void setReference(int ref) {
+    m_Reference = ref;
+  }//setReference
+
     /**
      * Returns the number of bits (i.e. coils)
      * read with the request.
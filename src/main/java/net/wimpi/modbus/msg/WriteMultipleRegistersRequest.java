@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.io.NonWordDataHandler;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
@@ -73,7 +72,7 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
 		if (m_NonWordDataHandler == null) {
 			Register[] regs = null;
 			// 1. get process image
-			ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+			ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
 			// 2. get registers
 			try {
 				// TODO: realize a setRegisterRange()?
@@ -85,13 +84,27 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
 			} catch (IllegalAddressException iaex) {
 				return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
 			}
-			response = new WriteMultipleRegistersResponse(this.getReference(), regs.length);
+			response = (WriteMultipleRegistersResponse) getRecycledResponse();
+			if (response == null) {
+				response = new WriteMultipleRegistersResponse(this.getReference(), regs.length);
+				setRecycledResponse(response);
+			} else {
+				response.setReference(this.getReference());
+				response.setWordCount(regs.length);
+			}
 		} else {
 			int result = m_NonWordDataHandler.commitUpdate();
 			if (result > 0) {
 				return createExceptionResponse(result);
 			}
-			response = new WriteMultipleRegistersResponse(this.getReference(), m_NonWordDataHandler.getWordCount());
+			response = (WriteMultipleRegistersResponse) getRecycledResponse();
+			if (response == null) {
+				response = new WriteMultipleRegistersResponse(this.getReference(), m_NonWordDataHandler.getWordCount());
+				setRecycledResponse(response);
+			} else {
+				response.setReference(this.getReference());
+				response.setWordCount(m_NonWordDataHandler.getWordCount());
+			}
 		}
 		// transfer header data
 		if (!isHeadless()) {
@@ -248,14 +261,23 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
 
 		// read values
 		if (m_NonWordDataHandler == null) {
-			m_Registers = new Register[wc];
-			ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
-			for (int i = 0; i < wc; i++) {
-				m_Registers[i] = pimf.createRegister(din.readByte(), din.readByte());
+			if (isRecycling() && m_Registers != null && m_Registers.length == wc) {
+				// overwrite the registers of the previous request
+				for (int i = 0; i < wc; i++) {
+					m_Registers[i].setValue(din.readShort());
+				}
+			} else {
+				m_Registers = new Register[wc];
+				ProcessImageFactory pimf = getCoupler().getProcessImageFactory();
+				for (int i = 0; i < wc; i++) {
+					m_Registers[i] = pimf.createRegister(din.readByte(), din.readByte());
+				}
 			}
 		} else {
 			m_NonWordDataHandler.readData(din, m_Reference, wc);
 		}
+		// update message length in header
+		setDataLength(5 + wc * 2);
 	}// readData
 
 }// class WriteMultipleRegistersRequest
@@ -65,7 +65,7 @@ public final class WriteMultipleRegistersResponse
    * @param ref the reference of the register
    *        to start writing to as <tt>int</tt>.
    */
-  private void setReference(int ref) {
+  void setReference(int ref) {
     m_Reference = ref;
   }//setReference
 
@@ -108,7 +108,7 @@ public final class WriteMultipleRegistersResponse
    * <p>
    * @param count the number of words as <tt>int</tt>.
    */
-  private void setWordCount(int count) {
+  void setWordCount(int count) {
     m_WordCount = count;
   }//setWordCount
 
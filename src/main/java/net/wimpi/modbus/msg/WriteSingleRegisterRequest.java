@@ -17,7 +17,6 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
-import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.ProcessImage;
 import net.wimpi.modbus.procimg.Register;
@@ -73,7 +72,7 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
         Register reg = null;
 
         //1. get process image
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        ProcessImage procimg = getCoupler().getProcessImage(getUnitID());
         //2. get register
         try {
             reg = procimg.getRegister(m_Reference);
@@ -82,7 +81,14 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new WriteSingleRegisterResponse(this.getReference(), reg.getValue());
+        response = (WriteSingleRegisterResponse) getRecycledResponse();
+        if (response == null) {
+            response = new WriteSingleRegisterResponse(this.getReference(), reg.getValue());
+            setRecycledResponse(response);
+        } else {
+            response.setReference(this.getReference());
+            response.setRegisterValue(reg.getValue());
+        }
         //transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -145,7 +151,11 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
 
     public void readData(DataInput din) throws IOException {
         m_Reference = din.readUnsignedShort();
-        m_Register = ModbusCoupler.getReference().getProcessImageFactory().createRegister(din.readByte(), din.readByte());
+        if (isRecycling() && m_Register != null) {
+            m_Register.setValue(din.readShort());
+        } else {
+            m_Register = getCoupler().getProcessImageFactory().createRegister(din.readByte(), din.readByte());
+        }
     }//readData
 
 }//class WriteSingleRegisterRequest
@@ -77,7 +77,7 @@ public final class WriteSingleRegisterResponse
    * <p>
    * @param value the returned register value.
    */
-  private void setRegisterValue(int value) {
+  void setRegisterValue(int value) {
     m_RegisterValue = value;
   }//setRegisterValue
 
@@ -98,7 +98,7 @@ public final class WriteSingleRegisterResponse
    * <p>
    * @param ref the reference of the written register.
    */
-  private void setReference(int ref) {
+  void setReference(int ref) {
     m_Reference = ref;
     //setChanged(true);
   }//setReference
@@ -0,0 +1,559 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.io.BytesInputStream;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.io.ModbusSerialTransaction;
+import net.wimpi.modbus.msg.IllegalFunctionRequest;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.SerialParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class implementing a Modbus/TCP to serial (RTU, ASCII or BIN)
+ * gateway.
+ * <p>
+ * Requests received by a <tt>ModbusTCPListener</tt> are queued
+ * by unit identifier and executed back-to-back on the serial line
+ * by a single thread, taking the units in turn so that a busy unit
+ * cannot starve the others. Each response is sent back on the TCP
+ * connection of its request, with the transaction identifier of that
+ * request.
+ * <p>
+ * Reads (FC 1 to 4) that are identical to a read already queued or
+ * on the line are answered from that single serial transaction,
+ * unless coalescing is switched off. A full queue is answered with
+ * exception <tt>0x0A</tt> (gateway path unavailable), a unit that
+ * does not answer with <tt>0x0B</tt> (gateway target failed to respond).
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusGateway
+    implements RequestHandler, Runnable {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusGateway.class);
+
+  //instance attributes
+  private SerialConnection m_SerialCon;
+  private ModbusTCPListener m_Listener;
+  private InetAddress m_Address;
+  private int m_Port = Modbus.DEFAULT_PORT;
+  private int m_PoolSize = 8;
+  private int m_QueueCapacity = 32;
+  private int m_Timeout = 10000;
+  private int m_Retries = Modbus.DEFAULT_RETRIES;
+  private int m_TransDelayMS = 0;
+  private boolean m_Coalescing = true;
+
+  //queues, guarded by this instance
+  private final ArrayDeque<Job>[] m_Queues;
+  private final Map<Long, Job> m_InFlight = new HashMap<Long, Job>();
+  private int m_LastUnit;
+  private int m_Queued;
+  private long m_Executed;
+  private long m_Coalesced;
+  private long m_Rejected;
+  private boolean m_Active;
+  private Thread m_Worker;
+
+    /**
+     * Constructs a new <tt>ModbusGateway</tt> instance
+     * forwarding to the serial line with the given parameters.
+     *
+     * @param params the <tt>SerialParameters</tt> of the serial line.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ModbusGateway(SerialParameters params) {
+    m_SerialCon = new SerialConnection(params);
+    m_Queues = new ArrayDeque[256];
+  }//constructor
+
+    /**
+     * Sets the address of the interface the TCP side
+     * listens to.
+     *
+     * @param addr an <tt>InetAddress</tt> instance.
+     */
+    public void setAddress(InetAddress addr) {
+    m_Address = addr;
+  }//setAddress
+
+    /**
+     * Sets the port the TCP side listens to.
+     *
+     * @param port the number of the IP port as <tt>int</tt>.
+     */
+    public void setPort(int port) {
+    m_Port = port;
+  }//setPort
+
+    /**
+     * Sets the number of TCP connections served at the same time.
+     *
+     * @param size the size of the thread pool as <tt>int</tt>.
+     */
+    public void setPoolSize(int size) {
+    m_PoolSize = Math.max(1, size);
+  }//setPoolSize
+
+    /**
+     * Sets the number of requests that may be queued for
+     * a single unit, before further requests are rejected.
+     *
+     * @param capacity the capacity per unit as <tt>int</tt>.
+     */
+    public void setQueueCapacity(int capacity) {
+    m_QueueCapacity = Math.max(1, capacity);
+  }//setQueueCapacity
+
+    /**
+     * Sets the time a TCP request waits at most for its serial
+     * transaction, including the time it is queued.
+     *
+     * @param timeout the timeout in milliseconds as <tt>int</tt>.
+     */
+    public void setTimeout(int timeout) {
+    m_Timeout = Math.max(1, timeout);
+  }//setTimeout
+
+    /**
+     * Sets the number of tries of a serial transaction.
+     *
+     * @param retries the number of retries as <tt>int</tt>.
+     */
+    public void setRetries(int retries) {
+    m_Retries = retries;
+  }//setRetries
+
+    /**
+     * Sets the delay before every serial transaction.
+     *
+     * @param delay the delay in milliseconds as <tt>int</tt>.
+     */
+    public void setTransDelayMS(int delay) {
+    m_TransDelayMS = delay;
+  }//setTransDelayMS
+
+    /**
+     * Sets the flag that controls whether identical reads
+     * are answered from one serial transaction.
+     *
+     * @param b true if coalescing reads, false otherwise.
+     */
+    public void setCoalescing(boolean b) {
+    m_Coalescing = b;
+  }//setCoalescing
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> of both sides of
+     * this gateway. It has to be set before the gateway is started.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_SerialCon.setCoupler(coupler);
+  }//setCoupler
+
+    /**
+     * Starts this <tt>ModbusGateway</tt>, opening the serial
+     * line and listening for TCP connections.
+     *
+     * @throws Exception if the serial line cannot be opened.
+     */
+    public void start() throws Exception {
+    m_SerialCon.open();
+    synchronized (this) {
+      m_Active = true;
+    }
+    m_Worker = new Thread(this, "Modbus gateway " + m_SerialCon.getSerialPort().getName());
+    m_Worker.setDaemon(true);
+    m_Worker.start();
+
+    m_Listener = (m_Address == null)
+        ? new ModbusTCPListener(m_PoolSize)
+        : new ModbusTCPListener(m_PoolSize, m_Address);
+    m_Listener.setPort(m_Port);
+    m_Listener.setCoupler(m_SerialCon.getCoupler());
+    m_Listener.setRequestHandler(this);
+    m_Listener.start();
+  }//start
+
+    /**
+     * Stops this <tt>ModbusGateway</tt>. Queued requests are
+     * answered with exception <tt>0x0A</tt> (gateway path unavailable).
+     */
+    public void stop() {
+    if (m_Listener != null) {
+      m_Listener.stop();
+    }
+    synchronized (this) {
+      m_Active = false;
+      notifyAll();
+    }
+    if (m_Worker != null) {
+      try {
+        m_Worker.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      for (int i = 0; i < m_Queues.length; i++) {
+        if (m_Queues[i] != null) {
+          for (Job job : m_Queues[i]) {
+            job.fail(Modbus.GATEWAY_PATH_UNAVAILABLE_EXCEPTION);
+          }
+          m_Queues[i].clear();
+        }
+      }
+      m_InFlight.clear();
+      m_Queued = 0;
+    }
+    m_SerialCon.close();
+  }//stop
+
+    /**
+     * Returns the number of requests waiting for the serial line.
+     *
+     * @return the number of queued requests as <tt>int</tt>.
+     */
+    public synchronized int getQueuedCount() {
+    return m_Queued;
+  }//getQueuedCount
+
+    /**
+     * Returns the number of serial transactions executed.
+     *
+     * @return the number of transactions as <tt>long</tt>.
+     */
+    public synchronized long getExecutedCount() {
+    return m_Executed;
+  }//getExecutedCount
+
+    /**
+     * Returns the number of reads answered from the serial
+     * transaction of an identical read.
+     *
+     * @return the number of coalesced reads as <tt>long</tt>.
+     */
+    public synchronized long getCoalescedCount() {
+    return m_Coalesced;
+  }//getCoalescedCount
+
+    /**
+     * Returns the number of requests rejected because the
+     * queue of their unit was full.
+     *
+     * @return the number of rejected requests as <tt>long</tt>.
+     */
+    public synchronized long getRejectedCount() {
+    return m_Rejected;
+  }//getRejectedCount
+
+  public ModbusResponse handleRequest(ModbusRequest request) {
+    if (request instanceof IllegalFunctionRequest) {
+      return request.createResponse();
+    }
+    int unitid = request.getUnitID() & 0xff;
+    int fc = request.getFunctionCode();
+    byte[] data;
+    try {
+      BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+      request.writeData(out);
+      data = out.toByteArray();
+    } catch (IOException ex) {
+      return request.createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
+    }
+    long key = (m_Coalescing && isRead(fc) && data.length == 4) ? toKey(unitid, fc, data) : -1;
+
+    Job job = null;
+    synchronized (this) {
+      if (!m_Active) {
+        return request.createExceptionResponse(Modbus.GATEWAY_PATH_UNAVAILABLE_EXCEPTION);
+      }
+      if (key != -1) {
+        job = m_InFlight.get(key);
+      }
+      if (job != null) {
+        job.m_Waiters++;
+        m_Coalesced++;
+      } else {
+        ArrayDeque<Job> queue = m_Queues[unitid];
+        if (queue == null) {
+          queue = new ArrayDeque<Job>();
+          m_Queues[unitid] = queue;
+        }
+        if (queue.size() >= m_QueueCapacity) {
+          m_Rejected++;
+          return request.createExceptionResponse(Modbus.GATEWAY_PATH_UNAVAILABLE_EXCEPTION);
+        }
+        job = new Job(unitid, fc, data, key);
+        queue.addLast(job);
+        m_Queued++;
+        if (key != -1) {
+          m_InFlight.put(key, job);
+        }
+        notifyAll();
+      }
+    }
+
+    if (!job.await(m_Timeout)) {
+      //the last request giving up withdraws the job, so it is not
+      //executed after all clients were told it failed
+      synchronized (this) {
+        if (--job.m_Waiters == 0) {
+          ArrayDeque<Job> queue = m_Queues[unitid];
+          if (queue != null && queue.remove(job)) {
+            m_Queued--;
+          }
+          if (key != -1 && m_InFlight.get(key) == job) {
+            m_InFlight.remove(key);
+          }
+          job.cancel();
+        }
+      }
+      if (!job.isDone()) {
+        return request.createExceptionResponse(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+      }
+    }
+    if (job.m_ExceptionCode != -1) {
+      return request.createExceptionResponse(job.m_ExceptionCode);
+    }
+    //every request gets its own response, as coalesced reads share the result;
+    //it is read with the header of the request, which also sets the function code
+    try {
+      byte[] result = job.m_Result;
+      BytesOutputStream out = new BytesOutputStream(result.length + 8);
+      out.writeShort(request.getTransactionID());
+      out.writeShort(request.getProtocolID());
+      out.writeShort(result.length + 2);
+      out.writeByte(request.getUnitID());
+      out.writeByte(fc);
+      out.write(result);
+      ModbusResponse response = ModbusResponse.createModbusResponse(fc);
+      response.setCoupler(request.getCoupler());
+      response.readFrom(new BytesInputStream(out.toByteArray()));
+      return response;
+    } catch (IOException ex) {
+      c_Log.debug("Failed to decode response.", ex);
+      return request.createExceptionResponse(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+    }
+  }//handleRequest
+
+  /**
+   * Executes the queued requests on the serial line.
+   */
+  public void run() {
+    ModbusSerialTransaction transaction = new ModbusSerialTransaction(m_SerialCon);
+    transaction.setRetries(m_Retries);
+    transaction.setTransDelayMS(m_TransDelayMS);
+    do {
+      Job job;
+      synchronized (this) {
+        job = nextJob();
+        while (m_Active && job == null) {
+          try {
+            wait();
+          } catch (InterruptedException ex) {
+            return;
+          }
+          job = nextJob();
+        }
+        if (!m_Active) {
+          if (job != null) {
+            job.fail(Modbus.GATEWAY_PATH_UNAVAILABLE_EXCEPTION);
+          }
+          return;
+        }
+      }
+      if (job.isCancelled()) {
+        continue;
+      }
+      execute(transaction, job);
+      synchronized (this) {
+        m_Executed++;
+        if (job.m_Key != -1 && m_InFlight.get(job.m_Key) == job) {
+          m_InFlight.remove(job.m_Key);
+        }
+      }
+    } while (true);
+  }//run
+
+  /**
+   * Executes a single job on the serial line and completes it.
+   *
+   * @param transaction the <tt>ModbusSerialTransaction</tt> to be used.
+   * @param job         the job to be executed.
+   */
+  private void execute(ModbusSerialTransaction transaction, Job job) {
+    try {
+      //the serial request is headless, and must not touch the pooled TCP request
+      ModbusRequest request = ModbusRequest.createModbusRequest(job.m_FunctionCode);
+      request.setHeadless();
+      request.setUnitID(job.m_UnitID);
+      request.readData(new BytesInputStream(job.m_Data));
+      transaction.setRequest(request);
+      transaction.execute();
+
+      BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+      transaction.getResponse().writeData(out);
+      job.complete(out.toByteArray());
+    } catch (ModbusSlaveException ex) {
+      job.fail(ex.getType());
+    } catch (ModbusException ex) {
+      c_Log.debug("Unit {} failed to respond: {}", job.m_UnitID, ex.getMessage());
+      job.fail(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+    } catch (Exception ex) {
+      c_Log.warn("Failed to forward request.", ex);
+      job.fail(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+    }
+  }//execute
+
+  /**
+   * Takes the next job, serving the units in turn.
+   * Must be called holding the lock of this instance.
+   *
+   * @return the next job, or null if there is none.
+   */
+  private Job nextJob() {
+    if (m_Queued == 0) {
+      return null;
+    }
+    for (int i = 1; i <= m_Queues.length; i++) {
+      int unit = (m_LastUnit + i) & 0xff;
+      ArrayDeque<Job> queue = m_Queues[unit];
+      if (queue != null && !queue.isEmpty()) {
+        m_LastUnit = unit;
+        m_Queued--;
+        return queue.pollFirst();
+      }
+    }
+    return null;
+  }//nextJob
+
+  private static boolean isRead(int fc) {
+    return fc == Modbus.READ_COILS
+        || fc == Modbus.READ_INPUT_DISCRETES
+        || fc == Modbus.READ_MULTIPLE_REGISTERS
+        || fc == Modbus.READ_INPUT_REGISTERS;
+  }//isRead
+
+  /**
+   * Returns the key identifying a read by unit, function code,
+   * reference and count.
+   */
+  private static long toKey(int unitid, int fc, byte[] data) {
+    long refcount = ((data[0] & 0xffL) << 24) | ((data[1] & 0xff) << 16)
+        | ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+    return ((long) unitid << 40) | ((long) fc << 32) | refcount;
+  }//toKey
+
+  /**
+   * A request waiting for, or being executed on, the serial line.
+   */
+  private static final class Job {
+
+    private final int m_UnitID;
+    private final int m_FunctionCode;
+    private final byte[] m_Data;
+    private final long m_Key;
+
+    //requests waiting for this job, guarded by the gateway
+    private int m_Waiters = 1;
+
+    //result, guarded by this instance
+    private boolean m_Done;
+    private boolean m_Cancelled;
+    private byte[] m_Result;
+    private int m_ExceptionCode = -1;
+
+    Job(int unitid, int fc, byte[] data, long key) {
+      m_UnitID = unitid;
+      m_FunctionCode = fc;
+      m_Data = data;
+      m_Key = key;
+    }//constructor
+
+    synchronized void complete(byte[] result) {
+      if (m_Done) {
+        return;
+      }
+      m_Result = result;
+      m_Done = true;
+      notifyAll();
+    }//complete
+
+    synchronized void fail(int code) {
+      if (m_Done) {
+        return;
+      }
+      m_ExceptionCode = code;
+      m_Done = true;
+      notifyAll();
+    }//fail
+
+    /**
+     * Cancels this job unless it is done already; called when
+     * the last request waiting for it has timed out.
+     */
+    synchronized void cancel() {
+      if (!m_Done) {
+        m_Cancelled = true;
+        fail(Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+      }
+    }//cancel
+
+    synchronized boolean isCancelled() {
+      return m_Cancelled;
+    }//isCancelled
+
+    synchronized boolean isDone() {
+      return m_Done;
+    }//isDone
+
+    synchronized boolean await(long timeout) {
+      long deadline = System.currentTimeMillis() + timeout;
+      long wait = timeout;
+      while (!m_Done && wait > 0) {
+        try {
+          wait(wait);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+        wait = deadline - System.currentTimeMillis();
+      }
+      return m_Done;
+    }//await
+
+  }//class Job
+
+}//class ModbusGateway
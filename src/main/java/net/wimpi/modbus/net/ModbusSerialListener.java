@@ -20,9 +20,13 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.util.SerialParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Class that implements a ModbusTCPListener.<br>
@@ -34,9 +38,13 @@ import net.wimpi.modbus.util.SerialParameters;
  */
 public class ModbusSerialListener {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusSerialListener.class);
+
   //Members
   private boolean m_Listening;               	//Flag for toggling listening/!listening
   private SerialConnection m_SerialCon;
+  private String m_Encoding;
+  private String m_Peer;
   private static int c_RequestCounter = 0;          //counter for amount of requests
 
     /**
@@ -45,7 +53,21 @@ public class ModbusSerialListener {
      * @param params a <tt>SerialParameters</tt> instance.
      */
     public ModbusSerialListener(SerialParameters params) {
+    this(params, null);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>ModbusSerialListener</tt> instance
+     * serving the process image(s) of the given <tt>ModbusCoupler</tt>.
+     *
+     * @param params  a <tt>SerialParameters</tt> instance.
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public ModbusSerialListener(SerialParameters params, ModbusCoupler coupler) {
     m_SerialCon = new SerialConnection(params);
+    m_SerialCon.setCoupler(coupler);
+    m_Encoding = params.getEncoding();
+    m_Peer = "serial:" + params.getPortName();
     //System.out.println("Created connection.");
     listen();
   }//constructor
@@ -59,6 +81,7 @@ public class ModbusSerialListener {
       m_SerialCon.open();
       //System.out.println("Opened Serial connection.");
       ModbusTransport transport = m_SerialCon.getModbusTransport();
+      ModbusCoupler coupler = m_SerialCon.getCoupler();
       do {
         if (m_Listening) {
           try {
@@ -66,24 +89,31 @@ public class ModbusSerialListener {
             ModbusRequest request = transport.readRequest();
             ModbusResponse response = null;
 
+            long start = System.nanoTime();
+            EventRecorder recorder = coupler.getEventRecorder();
+            Object event = recorder.beginSlaveRequest();
             //test if Process image exists
-            if (ModbusCoupler.getReference().getProcessImage() == null) {
+            if (coupler.getProcessImage(request.getUnitID()) == null) {
               response =
                   request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
             } else {
               response = request.createResponse();
             }
+            boolean exception = response instanceof ExceptionResponse;
+            recorder.endSlaveRequest(event, m_Encoding, request.getUnitID(), request.getFunctionCode(), exception);
 
-            if (Modbus.debug)
-              System.out.println("Request:" + request.getHexMessage());
-            if (Modbus.debug)
-              System.out.println("Response:" + response.getHexMessage());
+            if (c_Log.isTraceEnabled()) {
+              c_Log.trace("Request: {}", request.getHexMessage());
+              c_Log.trace("Response: {}", response.getHexMessage());
+            }
 
             transport.writeMessage(response);
+            coupler.getSlaveMetrics().recordRequest(
+                m_Peer, request, exception, System.nanoTime() - start);
 
             count();
           } catch (ModbusIOException ex) {
-            ex.printStackTrace();
+            c_Log.warn("Failed to serve request: {}", ex.getMessage());
             continue;
           }
         }
@@ -93,7 +123,7 @@ public class ModbusSerialListener {
 
     } catch (Exception e) {
       //FIXME: this is a major failure, how do we handle this
-      e.printStackTrace();
+      c_Log.error("Listener failed.", e);
     }
   }//listen
 
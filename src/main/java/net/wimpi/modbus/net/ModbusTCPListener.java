@@ -17,7 +17,10 @@
 package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.util.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -37,6 +40,8 @@ import java.net.UnknownHostException;
 public class ModbusTCPListener
     implements Runnable {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusTCPListener.class);
+
   private static int c_RequestCounter = 0;
 
   private ServerSocket m_ServerSocket = null;
@@ -46,6 +51,8 @@ public class ModbusTCPListener
   private int m_FloodProtection = 5;
   private boolean m_Listening;
   private InetAddress m_Address;
+  private ModbusCoupler m_Coupler;
+  private RequestHandler m_RequestHandler;
 
     /**
      * Constructs a ModbusTCPListener instance.<br>
@@ -91,6 +98,39 @@ public class ModbusTCPListener
     m_Address = addr;
   }//setAddress
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> providing the
+     * process image(s) served by this <tt>ModbusTCPListener</tt>.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> providing the
+     * process image(s) served by this <tt>ModbusTCPListener</tt>.
+     * It has to be set before the listener is started.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
+    /**
+     * Sets the <tt>RequestHandler</tt> answering the requests
+     * received by this <tt>ModbusTCPListener</tt>, instead of the
+     * process image(s) of the coupler.
+     * It has to be set before the listener is started.
+     *
+     * @param handler a <tt>RequestHandler</tt>, or null.
+     */
+    public void setRequestHandler(RequestHandler handler) {
+    m_RequestHandler = handler;
+  }//setRequestHandler
+
     /**
      * Starts this <tt>ModbusTCPListener</tt>.
      */
@@ -126,19 +166,18 @@ public class ModbusTCPListener
           program logins can probably be prevented.
       */
       m_ServerSocket = new ServerSocket(m_Port, m_FloodProtection, m_Address);
-      if(Modbus.debug) System.out.println("Listenening to " + m_ServerSocket.toString() + "(Port " + m_Port + ")");
+      c_Log.debug("Listening to {} (Port {})", m_ServerSocket, m_Port);
 
       //Infinite loop, taking care of resources in case of a lot of parallel logins
       do {
         Socket incoming = m_ServerSocket.accept();
-        if (Modbus.debug) System.out.println("Making new connection " + incoming.toString());
+        c_Log.debug("Making new connection {}", incoming);
         if (m_Listening) {
           //FIXME: Replace with object pool due to resource issues
-          m_ThreadPool.execute(
-              new TCPConnectionHandler(
-                  new TCPSlaveConnection(incoming)
-              )
-          );
+          TCPConnectionHandler handler =
+              new TCPConnectionHandler(new TCPSlaveConnection(incoming), m_Coupler);
+          handler.setRequestHandler(m_RequestHandler);
+          m_ThreadPool.execute(handler);
           count();
         } else {
           //just close the socket
@@ -149,7 +188,7 @@ public class ModbusTCPListener
       if (!m_Listening) {
         return;
       } else {
-        iex.printStackTrace();
+        c_Log.warn("Failed to accept connection.", iex);
       }
     } catch (IOException e) {
       //FIXME: this is a major failure, how do we handle this
@@ -20,25 +20,48 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.io.ModbusUDPTransport;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusRequestPool;
 import net.wimpi.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
 
 /**
  * Class that implements a ModbusUDPListener.<br>
+ * <p>
+ * Requests are served by a number of worker threads (by
+ * default one per processor) sharing a single non-blocking
+ * <tt>DatagramChannel</tt>, whose socket buffers are sized to
+ * absorb bursts of requests (see {@link #setReceiveBufferSize(int)}). Each
+ * worker receives a request, handles it and answers the master
+ * that sent it, so requests of concurrent masters are handled
+ * in parallel, regardless of their transaction identifiers.
  *
  * @author Dieter Wimberger
  * @version 1.2
  */
 public class ModbusUDPListener {
 
-  private UDPSlaveTerminal m_Terminal;
-  private ModbusUDPHandler m_Handler;
-  private Thread m_HandlerThread;
+  private static final Logger c_Log = LoggerFactory.getLogger(ModbusUDPListener.class);
+
+  private DatagramChannel m_Channel;
+  private UDPSlaveTerminal[] m_Terminals;
+  private ModbusUDPHandler[] m_Handlers;
+  private Thread[] m_HandlerThreads;
+  private int m_Workers = Runtime.getRuntime().availableProcessors();
   private int m_Port = Modbus.DEFAULT_PORT;
+  private int m_ReceiveBufferSize = Modbus.DEFAULT_UDP_BUFFER_SIZE;
+  private int m_SendBufferSize = Modbus.DEFAULT_UDP_BUFFER_SIZE;
   private boolean m_Listening;
   private InetAddress m_Interface;
+  private ModbusCoupler m_Coupler;
 
     /**
      * Constructs a new ModbusUDPListener instance.
@@ -56,6 +79,78 @@ public class ModbusUDPListener {
     m_Interface = ifc;
   }//ModbusUDPListener
 
+    /**
+     * Create a new <tt>ModbusUDPListener</tt> instance
+     * listening to the given interface address, serving
+     * requests with the given number of worker threads.
+     *
+     * @param ifc     an <tt>InetAddress</tt> instance.
+     * @param workers the number of worker threads.
+     */
+    public ModbusUDPListener(InetAddress ifc, int workers) {
+    m_Interface = ifc;
+    setWorkers(workers);
+  }//ModbusUDPListener
+
+    /**
+     * Returns the number of worker threads serving requests.
+     *
+     * @return the number of workers as <tt>int</tt>.
+     */
+    public int getWorkers() {
+    return m_Workers;
+  }//getWorkers
+
+    /**
+     * Sets the number of worker threads serving requests.
+     * Takes effect on the next start.
+     *
+     * @param workers the number of workers as <tt>int</tt>.
+     */
+    public void setWorkers(int workers) {
+    m_Workers = Math.max(1, workers);
+  }//setWorkers
+
+    /**
+     * Returns the size requested for the receive buffer of the socket.
+     *
+     * @return the size in bytes as <tt>int</tt>.
+     */
+    public int getReceiveBufferSize() {
+    return m_ReceiveBufferSize;
+  }//getReceiveBufferSize
+
+    /**
+     * Sets the size requested for the receive buffer of the socket,
+     * which holds the requests arriving while all workers are busy.
+     * The operating system may limit the size (e.g. to
+     * <tt>net.core.rmem_max</tt> on Linux). Takes effect on the next start.
+     *
+     * @param size the size in bytes as <tt>int</tt>.
+     */
+    public void setReceiveBufferSize(int size) {
+    m_ReceiveBufferSize = Math.max(Modbus.MAX_MESSAGE_LENGTH, size);
+  }//setReceiveBufferSize
+
+    /**
+     * Returns the size requested for the send buffer of the socket.
+     *
+     * @return the size in bytes as <tt>int</tt>.
+     */
+    public int getSendBufferSize() {
+    return m_SendBufferSize;
+  }//getSendBufferSize
+
+    /**
+     * Sets the size requested for the send buffer of the socket.
+     * Takes effect on the next start.
+     *
+     * @param size the size in bytes as <tt>int</tt>.
+     */
+    public void setSendBufferSize(int size) {
+    m_SendBufferSize = Math.max(Modbus.MAX_MESSAGE_LENGTH, size);
+  }//setSendBufferSize
+
     /**
      * Returns the number of the port this <tt>ModbusUDPListener</tt>
      * is listening to.
@@ -76,26 +171,59 @@ public class ModbusUDPListener {
     m_Port = ((port>0)? port : Modbus.DEFAULT_PORT);
   }//setPort
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> providing the
+     * process image(s) served by this <tt>ModbusUDPListener</tt>.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> providing the
+     * process image(s) served by this <tt>ModbusUDPListener</tt>.
+     * It has to be set before the listener is started.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
     /**
      * Starts this <tt>ModbusUDPListener</tt>.
      */
     public void start() {
     //start listening
     try {
-      if(m_Interface == null) {
-        m_Terminal = new UDPSlaveTerminal(InetAddress.getLocalHost());
-      } else {
-        m_Terminal = new UDPSlaveTerminal(m_Interface);
+      m_Channel = DatagramChannel.open();
+      m_Channel.setOption(StandardSocketOptions.SO_RCVBUF, m_ReceiveBufferSize);
+      m_Channel.setOption(StandardSocketOptions.SO_SNDBUF, m_SendBufferSize);
+      m_Channel.bind(new InetSocketAddress(
+          (m_Interface == null) ? InetAddress.getLocalHost() : m_Interface, m_Port));
+      if (c_Log.isDebugEnabled()) {
+        c_Log.debug("Listening to {} with {} workers, rcvbuf={}, sndbuf={}", new Object[]{
+            m_Channel.getLocalAddress(), m_Workers,
+            m_Channel.getOption(StandardSocketOptions.SO_RCVBUF),
+            m_Channel.getOption(StandardSocketOptions.SO_SNDBUF)});
       }
-      m_Terminal.setLocalPort(m_Port);
-      m_Terminal.activate();
-
-      m_Handler = new ModbusUDPHandler(m_Terminal.getModbusTransport());
-      m_HandlerThread = new Thread(m_Handler);
-      m_HandlerThread.start();
 
+      m_Terminals = new UDPSlaveTerminal[m_Workers];
+      m_Handlers = new ModbusUDPHandler[m_Workers];
+      m_HandlerThreads = new Thread[m_Workers];
+      for (int i = 0; i < m_Workers; i++) {
+        m_Terminals[i] = new UDPSlaveTerminal(m_Channel);
+        m_Terminals[i].activate();
+        m_Terminals[i].getModbusTransport().setCoupler(m_Coupler);
+        m_Handlers[i] = new ModbusUDPHandler(m_Terminals[i]);
+        m_HandlerThreads[i] = new Thread(m_Handlers[i], "Modbus UDP worker " + i);
+        m_HandlerThreads[i].start();
+      }
     } catch (Exception e) {
       //FIXME: this is a major failure, how do we handle this
+      c_Log.error("Failed to start listener.", e);
     }
     m_Listening = true;
   }//start
@@ -104,9 +232,27 @@ public class ModbusUDPListener {
      * Stops this <tt>ModbusUDPListener</tt>.
      */
     public void stop() {
-    //stop listening
-    m_Terminal.deactivate();
-    m_Handler.stop();
+    if (m_Channel == null) {
+      m_Listening = false;
+      return;
+    }
+    //stop listening, deactivating the terminals releases the workers
+    for (int i = 0; i < m_Handlers.length; i++) {
+      m_Handlers[i].stop();
+      m_Terminals[i].deactivate();
+    }
+    try {
+      m_Channel.close();
+    } catch (Exception ex) {
+      c_Log.debug("Failed to close channel.", ex);
+    }
+    for (int i = 0; i < m_HandlerThreads.length; i++) {
+      try {
+        m_HandlerThreads[i].join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
     m_Listening = false;
   }//stop
 
@@ -126,54 +272,96 @@ public class ModbusUDPListener {
     class ModbusUDPHandler
       implements Runnable {
 
+    private UDPSlaveTerminal m_Terminal;
     private ModbusUDPTransport m_Transport;
-    private boolean m_Continue = true;
+    private volatile boolean m_Continue = true;
+    private InetAddress m_LastAddress;
+    private String m_LastPeer;
 
         /**
          * Instantiates a new Modbus udp handler.
          *
-         * @param transport the transport
+         * @param terminal the terminal of this worker
          */
-        public ModbusUDPHandler(ModbusUDPTransport transport) {
-      m_Transport = transport;
+        public ModbusUDPHandler(UDPSlaveTerminal terminal) {
+      m_Terminal = terminal;
+      m_Transport = terminal.getModbusTransport();
+      //each worker handles one request at a time, so messages can be recycled
+      m_Transport.setRequestPool(new ModbusRequestPool());
     }//constructor
 
     public void run() {
       try {
         do {
-          //1. read the request
-          ModbusRequest request = m_Transport.readRequest();
-          //System.out.println("Request:" + request.getHexMessage());
-          ModbusResponse response = null;
-
-          //test if Process image exists
-          if (ModbusCoupler.getReference().getProcessImage() == null) {
-            response =
-                request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
-          } else {
-            response = request.createResponse();
+          try {
+            handleRequest();
+          } catch (ModbusIOException ex) {
+            if (m_Continue && !ex.isEOF()) {
+              //other troubles, output for debug
+              c_Log.warn("Failed to serve request.", ex);
+            }
           }
-          /*DEBUG*/
-          if (Modbus.debug) System.out.println("Request:" + request.getHexMessage());
-          if (Modbus.debug) System.out.println("Response:" + response.getHexMessage());
-
-          //System.out.println("Response:" + response.getHexMessage());
-          m_Transport.writeMessage(response);
         } while (m_Continue);
-      } catch (ModbusIOException ex) {
-        if (!ex.isEOF()) {
-          //other troubles, output for debug
-          ex.printStackTrace();
-        }
       } finally {
-        try {
-          m_Terminal.deactivate();
-        } catch (Exception ex) {
-          //ignore
-        }
+        m_Terminal.deactivate();
       }
     }//run
 
+    /**
+     * Receives, handles and answers a single request.
+     *
+     * @throws ModbusIOException if receiving or answering fails.
+     */
+    private void handleRequest() throws ModbusIOException {
+      //1. read the request
+      ModbusRequest request = m_Transport.readRequest();
+      ModbusResponse response = null;
+
+      long start = System.nanoTime();
+      ModbusCoupler coupler = m_Transport.getCoupler();
+      EventRecorder recorder = coupler.getEventRecorder();
+      Object event = recorder.beginSlaveRequest();
+      //test if the unit is served
+      if (coupler.getProcessImage(request.getUnitID()) == null) {
+        response = request.createExceptionResponse(
+            (coupler.getProcessImageDispatcher() == null)
+                ? Modbus.ILLEGAL_FUNCTION_EXCEPTION
+                : Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
+      } else {
+        response = request.createResponse();
+      }
+      boolean exception = response instanceof ExceptionResponse;
+      recorder.endSlaveRequest(event, "udp", request.getUnitID(), request.getFunctionCode(), exception);
+      if (c_Log.isTraceEnabled()) {
+        c_Log.trace("Request: {}", request.getHexMessage());
+        c_Log.trace("Response: {}", response.getHexMessage());
+      }
+
+      String peer = toPeer(m_Terminal.getRequestAddress());
+      m_Transport.writeMessage(response);
+      coupler.getSlaveMetrics().recordRequest(
+          peer, request, exception, System.nanoTime() - start);
+    }//handleRequest
+
+    /**
+     * Returns the peer name of the given master address,
+     * reusing the last one for consecutive requests of
+     * the same master.
+     *
+     * @param addr the address of the master.
+     * @return the peer as <tt>String</tt>.
+     */
+    private String toPeer(InetAddress addr) {
+      if (addr == null) {
+        return "udp://unknown";
+      }
+      if (!addr.equals(m_LastAddress)) {
+        m_LastPeer = "udp://" + addr.getHostAddress();
+        m_LastAddress = addr;
+      }
+      return m_LastPeer;
+    }//toPeer
+
         /**
          * Stop.
          */
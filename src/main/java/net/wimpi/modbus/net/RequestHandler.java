@@ -0,0 +1,48 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Interface defining a handler that answers the requests
+ * received by a slave listener, instead of the process
+ * image of the <tt>ModbusCoupler</tt>.
+ * <p>
+ * A handler is called concurrently from all connections
+ * of the listener, and may block until the response is
+ * available (for instance while forwarding the request to
+ * a serial line, see {@link ModbusGateway}).
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public interface RequestHandler {
+
+    /**
+     * Returns the response to the given request.
+     * The response has to carry the transaction identifier,
+     * protocol identifier and unit identifier of the request.
+     *
+     * @param request the <tt>ModbusRequest</tt> received.
+     * @return the <tt>ModbusResponse</tt> to be sent, possibly an
+     *         <tt>ExceptionResponse</tt>.
+     */
+    public ModbusResponse handleRequest(ModbusRequest request);
+
+}//interface RequestHandler
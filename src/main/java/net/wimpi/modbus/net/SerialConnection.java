@@ -17,12 +17,14 @@
 package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.io.ModbusASCIITransport;
 import net.wimpi.modbus.io.ModbusBINTransport;
 import net.wimpi.modbus.io.ModbusRTUTransport;
 import net.wimpi.modbus.io.ModbusSerialTransport;
 import net.wimpi.modbus.io.ModbusTransport;
 import net.wimpi.modbus.util.SerialParameters;
+import net.wimpi.modbus.util.TransactionIDAllocator;
 import com.sparetimelabs.serial.CommPortIdentifier;
 import com.sparetimelabs.serial.NoSuchPortException;
 import com.sparetimelabs.serial.PortInUseException;
@@ -30,6 +32,8 @@ import com.sparetimelabs.serial.SerialPort;
 import com.sparetimelabs.serial.SerialPortEvent;
 import com.sparetimelabs.serial.SerialPortEventListener;
 import com.sparetimelabs.serial.UnsupportedCommOperationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -46,12 +50,16 @@ import java.util.TooManyListenersException;
  */
 public class SerialConnection implements SerialPortEventListener {
 
+	private static final Logger c_Log = LoggerFactory.getLogger(SerialConnection.class);
+
 	private SerialParameters m_Parameters;
 	private ModbusSerialTransport m_Transport;
 	private CommPortIdentifier m_PortIdentifyer;
 	private SerialPort m_SerialPort;
 	private boolean m_Open;
 	private InputStream m_SerialIn;
+	private TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
+	private ModbusCoupler m_Coupler;
 
     /**
      * Creates a SerialConnection object and initilizes variables passed in as
@@ -83,6 +91,39 @@ public class SerialConnection implements SerialPortEventListener {
 		return m_Transport;
 	}// getModbusTransport
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>SerialConnection</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+		return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+	}// getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>SerialConnection</tt>
+     * is used in. It is handed to the transport of the connection.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+		m_Coupler = coupler;
+		if (m_Transport != null) {
+			m_Transport.setCoupler(coupler);
+		}
+	}// setCoupler
+
+    /**
+     * Returns the allocator for the transaction identifiers
+     * used on this <tt>SerialConnection</tt>.
+     *
+     * @return a <tt>TransactionIDAllocator</tt> instance.
+     */
+    public TransactionIDAllocator getTransactionIDAllocator() {
+		return m_TransactionIDs;
+	}// getTransactionIDAllocator
+
     /**
      * Opens the communication port.
      *
@@ -94,8 +135,7 @@ public class SerialConnection implements SerialPortEventListener {
 		try {
 			m_PortIdentifyer = CommPortIdentifier.getPortIdentifier(m_Parameters.getPortName());
 		} catch (NoSuchPortException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 			throw new Exception(e.getMessage());
 		}
 		// System.out.println("Got Port Identifier");
@@ -104,8 +144,7 @@ public class SerialConnection implements SerialPortEventListener {
 		try {
 			m_SerialPort = (SerialPort) m_PortIdentifyer.open("Modbus Serial Master", 30000);
 		} catch (PortInUseException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 
 			throw new Exception(e.getMessage());
 		}
@@ -117,8 +156,7 @@ public class SerialConnection implements SerialPortEventListener {
 		} catch (Exception e) {
 			// ensure it is closed
 			m_SerialPort.close();
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 			throw e;
 		}
 
@@ -133,6 +171,7 @@ public class SerialConnection implements SerialPortEventListener {
 			m_Transport = new ModbusBINTransport();
 		}
 		m_Transport.setEcho(m_Parameters.isEcho());
+		m_Transport.setCoupler(m_Coupler);
 
 		// Open the input and output streams for the connection. If they won't
 		// open, close the port before throwing an exception.
@@ -143,8 +182,7 @@ public class SerialConnection implements SerialPortEventListener {
 			// m_SerialPort.getOutputStream());
 		} catch (IOException e) {
 			m_SerialPort.close();
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 
 			throw new Exception("Error opening i/o streams");
 		}
@@ -155,8 +193,7 @@ public class SerialConnection implements SerialPortEventListener {
 			m_SerialPort.addEventListener(this);
 		} catch (TooManyListenersException e) {
 			m_SerialPort.close();
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 			throw new Exception("too many listeners added");
 		}
 
@@ -177,8 +214,7 @@ public class SerialConnection implements SerialPortEventListener {
 		try {
 			m_SerialPort.enableReceiveTimeout(ms);
 		} catch (UnsupportedCommOperationException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 		}
 	}// setReceiveTimeout
 
@@ -209,8 +245,7 @@ public class SerialConnection implements SerialPortEventListener {
 			m_Parameters.setDatabits(oldDatabits);
 			m_Parameters.setStopbits(oldStopbits);
 			m_Parameters.setParity(oldParity);
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 
 			throw new Exception("Unsupported parameter");
 		}
@@ -219,8 +254,7 @@ public class SerialConnection implements SerialPortEventListener {
 		try {
 			m_SerialPort.setFlowControlMode(m_Parameters.getFlowControlIn() | m_Parameters.getFlowControlOut());
 		} catch (UnsupportedCommOperationException e) {
-			if (Modbus.debug)
-				System.out.println(e.getMessage());
+			c_Log.debug(e.getMessage());
 
 			throw new Exception("Unsupported flow control");
 		}
@@ -241,7 +275,7 @@ public class SerialConnection implements SerialPortEventListener {
 				m_Transport.close();
 				m_SerialIn.close();
 			} catch (IOException e) {
-				System.err.println(e);
+				c_Log.warn("Failed to close streams.", e);
 			}
 			// Close the port.
 			m_SerialPort.close();
@@ -278,12 +312,10 @@ public class SerialConnection implements SerialPortEventListener {
 			 */
 			break;
 		case SerialPortEvent.BI:
-			if (Modbus.debug)
-				System.out.println("Serial port break detected");
+			c_Log.debug("Serial port break detected");
 			break;
 		default:
-			if (Modbus.debug)
-				System.out.println("Serial port event: " + e.getEventType());
+			c_Log.debug("Serial port event: {}", e.getEventType());
 		}
 	}// serialEvent
 
@@ -0,0 +1,312 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.io.ModbusASCIITransport;
+import net.wimpi.modbus.io.ModbusRTUTransport;
+import net.wimpi.modbus.io.ModbusSerialTransport;
+import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Class that implements a master connection to a serial
+ * line behind a transparent serial device server.
+ * <p>
+ * The device server passes the serial frames unchanged
+ * over a TCP connection, so the frames are RTU (or ASCII)
+ * encoded, with their CRC (or LRC), instead of carrying
+ * a Modbus/TCP header. As on the serial line, only one
+ * transaction can be outstanding at a time.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class SerialOverTCPConnection {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(SerialOverTCPConnection.class);
+
+  //instance attributes
+  private Socket m_Socket;
+  private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+  private int m_ConnectTimeout = Modbus.DEFAULT_CONNECT_TIMEOUT;
+  private boolean m_Connected;
+
+  private InetAddress m_Address;
+  private int m_Port = Modbus.DEFAULT_PORT;
+  private String m_Encoding = Modbus.SERIAL_ENCODING_RTU;
+
+  private ModbusSerialTransport m_ModbusTransport;
+  private TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
+  private final Object m_TransactionLock = new Object();
+  private ModbusCoupler m_Coupler;
+
+    /**
+     * Constructs a <tt>SerialOverTCPConnection</tt> instance
+     * with a given destination address.
+     *
+     * @param adr the destination <tt>InetAddress</tt>.
+     */
+    public SerialOverTCPConnection(InetAddress adr) {
+    m_Address = adr;
+  }//constructor
+
+    /**
+     * Opens this <tt>SerialOverTCPConnection</tt>.
+     * <p>
+     * Establishing the connection will not take longer
+     * than the configured connect timeout.
+     *
+     * @throws Exception if there is a network failure.
+     */
+    public synchronized void connect()
+      throws Exception {
+    if (!m_Connected) {
+      c_Log.debug("Connecting to {}:{} ({})", m_Address, m_Port, m_Encoding);
+      Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(m_Address, m_Port), m_ConnectTimeout);
+        //frames are small and written in one piece
+        socket.setTcpNoDelay(true);
+      } catch (IOException ex) {
+        try {
+          socket.close();
+        } catch (IOException cex) {
+          //ignore
+        }
+        throw ex;
+      }
+      m_Socket = socket;
+      setTimeout(m_Timeout);
+      prepareTransport();
+      m_Connected = true;
+    }
+  }//connect
+
+    /**
+     * Closes this <tt>SerialOverTCPConnection</tt>.
+     */
+    public synchronized void close() {
+    if (m_Connected) {
+      try {
+        m_ModbusTransport.close();
+      } catch (IOException ex) {
+        c_Log.debug("Failed to close transport.", ex);
+      }
+      try {
+        m_Socket.close();
+      } catch (IOException ex) {
+        c_Log.debug("Failed to close socket.", ex);
+      }
+      m_Connected = false;
+    }
+  }//close
+
+    /**
+     * Returns the <tt>ModbusTransport</tt> associated with this
+     * <tt>SerialOverTCPConnection</tt>.
+     *
+     * @return the connection's <tt>ModbusTransport</tt>.
+     */
+    public ModbusTransport getModbusTransport() {
+    return m_ModbusTransport;
+  }//getModbusTransport
+
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>SerialOverTCPConnection</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>SerialOverTCPConnection</tt>
+     * is used in. It is handed to the transport of the connection.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+    if (m_ModbusTransport != null) {
+      m_ModbusTransport.setCoupler(coupler);
+    }
+  }//setCoupler
+
+    /**
+     * Returns the allocator for the transaction identifiers
+     * used on this <tt>SerialOverTCPConnection</tt>.
+     * The identifiers are not sent, they only tag the transactions.
+     *
+     * @return a <tt>TransactionIDAllocator</tt> instance.
+     */
+    public TransactionIDAllocator getTransactionIDAllocator() {
+    return m_TransactionIDs;
+  }//getTransactionIDAllocator
+
+    /**
+     * Returns the lock transactions hold while exchanging
+     * messages over this <tt>SerialOverTCPConnection</tt>.
+     * The frames carry no transaction identifier, so a response
+     * can only be matched to its request if no other transaction
+     * writes or reads in between.
+     *
+     * @return the lock as <tt>Object</tt>.
+     */
+    public Object getTransactionLock() {
+    return m_TransactionLock;
+  }//getTransactionLock
+
+  /**
+   * Prepares a serial transport of the configured encoding
+   * on the streams of the socket.
+   *
+   * @throws IOException if an I/O related error occurs.
+   */
+  private void prepareTransport() throws IOException {
+    if (Modbus.SERIAL_ENCODING_ASCII.equals(m_Encoding)) {
+      m_ModbusTransport = new ModbusASCIITransport();
+    } else {
+      m_ModbusTransport = new ModbusRTUTransport();
+    }
+    m_ModbusTransport.setCoupler(m_Coupler);
+    m_ModbusTransport.prepareStreams(m_Socket.getInputStream(), m_Socket.getOutputStream());
+  }//prepareTransport
+
+    /**
+     * Returns the encoding of the frames.
+     *
+     * @return <tt>Modbus.SERIAL_ENCODING_RTU</tt> or <tt>Modbus.SERIAL_ENCODING_ASCII</tt>.
+     */
+    public String getEncoding() {
+    return m_Encoding;
+  }//getEncoding
+
+    /**
+     * Sets the encoding of the frames. It takes effect
+     * with the next connect.
+     * The default is <tt>Modbus.SERIAL_ENCODING_RTU</tt>.
+     *
+     * @param enc <tt>Modbus.SERIAL_ENCODING_RTU</tt> or <tt>Modbus.SERIAL_ENCODING_ASCII</tt>.
+     * @throws IllegalArgumentException if the encoding is not supported.
+     */
+    public void setEncoding(String enc) {
+    if (!Modbus.SERIAL_ENCODING_RTU.equals(enc) && !Modbus.SERIAL_ENCODING_ASCII.equals(enc)) {
+      throw new IllegalArgumentException("Unsupported encoding: " + enc);
+    }
+    m_Encoding = enc;
+  }//setEncoding
+
+    /**
+     * Returns the timeout for this <tt>SerialOverTCPConnection</tt>.
+     *
+     * @return the timeout as <tt>int</tt>.
+     */
+    public int getTimeout() {
+    return m_Timeout;
+  }//getTimeout
+
+    /**
+     * Sets the timeout for this <tt>SerialOverTCPConnection</tt>.
+     * It bounds the wait for a response, and for each of its parts.
+     *
+     * @param timeout the timeout as <tt>int</tt>.
+     */
+    public void setTimeout(int timeout) {
+    m_Timeout = timeout;
+    if (m_Socket != null) {
+      try {
+        m_Socket.setSoTimeout(m_Timeout);
+      } catch (IOException ex) {
+        c_Log.debug("Failed to set timeout.", ex);
+      }
+    }
+  }//setTimeout
+
+    /**
+     * Returns the timeout for establishing this
+     * <tt>SerialOverTCPConnection</tt>.
+     *
+     * @return the connect timeout in milliseconds as <tt>int</tt>.
+     */
+    public int getConnectTimeout() {
+    return m_ConnectTimeout;
+  }//getConnectTimeout
+
+    /**
+     * Sets the timeout for establishing this
+     * <tt>SerialOverTCPConnection</tt>.
+     * The default is defined as <tt>Modbus.DEFAULT_CONNECT_TIMEOUT</tt>,
+     * a value of zero waits until the operating system gives up.
+     *
+     * @param timeout the connect timeout in milliseconds as <tt>int</tt>.
+     */
+    public void setConnectTimeout(int timeout) {
+    m_ConnectTimeout = timeout;
+  }//setConnectTimeout
+
+    /**
+     * Returns the destination port of this
+     * <tt>SerialOverTCPConnection</tt>.
+     *
+     * @return the port number as <tt>int</tt>.
+     */
+    public int getPort() {
+    return m_Port;
+  }//getPort
+
+    /**
+     * Sets the destination port of this
+     * <tt>SerialOverTCPConnection</tt>.
+     * The default is defined as <tt>Modbus.DEFAULT_PORT</tt>.
+     *
+     * @param port the port number as <tt>int</tt>.
+     */
+    public void setPort(int port) {
+    m_Port = port;
+  }//setPort
+
+    /**
+     * Returns the destination <tt>InetAddress</tt> of this
+     * <tt>SerialOverTCPConnection</tt>.
+     *
+     * @return the destination address as <tt>InetAddress</tt>.
+     */
+    public InetAddress getAddress() {
+    return m_Address;
+  }//getAddress
+
+    /**
+     * Tests if this <tt>SerialOverTCPConnection</tt> is connected.
+     *
+     * @return <tt>true</tt> if connected, <tt>false</tt> otherwise.
+     */
+    public boolean isConnected() {
+    return m_Connected;
+  }//isConnected
+
+}//class SerialOverTCPConnection
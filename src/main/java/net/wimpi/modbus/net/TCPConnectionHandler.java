@@ -19,9 +19,15 @@ package net.wimpi.modbus.net;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.io.ModbusTCPTransport;
 import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.metrics.EventRecorder;
+import net.wimpi.modbus.msg.ExceptionResponse;
 import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusRequestPool;
 import net.wimpi.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
@@ -31,8 +37,13 @@ import net.wimpi.modbus.msg.ModbusResponse;
  */
 public class TCPConnectionHandler implements Runnable {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(TCPConnectionHandler.class);
+
   private TCPSlaveConnection m_Connection;
   private ModbusTransport m_Transport;
+  private String m_Peer;
+  private ModbusCoupler m_Coupler;
+  private RequestHandler m_RequestHandler;
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -43,6 +54,18 @@ public class TCPConnectionHandler implements Runnable {
     setConnection(con);
   }//constructor
 
+    /**
+     * Constructs a new <tt>TCPConnectionHandler</tt> instance
+     * serving the process image(s) of the given <tt>ModbusCoupler</tt>.
+     *
+     * @param con     an incoming connection.
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public TCPConnectionHandler(TCPSlaveConnection con, ModbusCoupler coupler) {
+    m_Coupler = coupler;
+    setConnection(con);
+  }//constructor
+
     /**
      * Sets a connection to be handled by this <tt>
      * TCPConnectionHandler</tt>.
@@ -52,9 +75,27 @@ public class TCPConnectionHandler implements Runnable {
     public void setConnection(TCPSlaveConnection con) {
     m_Connection = con;
     m_Transport = m_Connection.getModbusTransport();
+    m_Transport.setCoupler(m_Coupler);
+    m_Peer = "tcp://" + con.getRemoteAddress().getHostAddress();
+    if (m_Transport instanceof ModbusTCPTransport) {
+      //the connection is served by a single thread, so messages can be recycled
+      ((ModbusTCPTransport) m_Transport).setRequestPool(new ModbusRequestPool());
+    }
   }//setConnection
 
+    /**
+     * Sets the <tt>RequestHandler</tt> answering the requests
+     * received on the connection. If not set, requests are
+     * answered from the process image(s) of the coupler.
+     *
+     * @param handler a <tt>RequestHandler</tt>, or null.
+     */
+    public void setRequestHandler(RequestHandler handler) {
+    m_RequestHandler = handler;
+  }//setRequestHandler
+
   public void run() {
+    ModbusCoupler coupler = m_Transport.getCoupler();
     try {
       do {
         //1. read the request
@@ -62,24 +103,36 @@ public class TCPConnectionHandler implements Runnable {
         //System.out.println("Request:" + request.getHexMessage());
         ModbusResponse response = null;
 
-        //test if Process image exists
-        if (ModbusCoupler.getReference().getProcessImage() == null) {
-          response =
-              request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+        long start = System.nanoTime();
+        EventRecorder recorder = coupler.getEventRecorder();
+        Object event = recorder.beginSlaveRequest();
+        if (m_RequestHandler != null) {
+          response = m_RequestHandler.handleRequest(request);
+        } else if (coupler.getProcessImage(request.getUnitID()) == null) {
+          //the unit is not served
+          response = request.createExceptionResponse(
+              (coupler.getProcessImageDispatcher() == null)
+                  ? Modbus.ILLEGAL_FUNCTION_EXCEPTION
+                  : Modbus.GATEWAY_TARGET_NO_RESPONSE_EXCEPTION);
         } else {
           response = request.createResponse();
         }
-        /*DEBUG*/
-        if (Modbus.debug) System.out.println("Request:" + request.getHexMessage());
-        if (Modbus.debug) System.out.println("Response:" + response.getHexMessage());
+        boolean exception = response instanceof ExceptionResponse;
+        recorder.endSlaveRequest(event, "tcp", request.getUnitID(), request.getFunctionCode(), exception);
+        if (c_Log.isTraceEnabled()) {
+          c_Log.trace("Request: {}", request.getHexMessage());
+          c_Log.trace("Response: {}", response.getHexMessage());
+        }
 
         //System.out.println("Response:" + response.getHexMessage());
         m_Transport.writeMessage(response);
+        coupler.getSlaveMetrics().recordRequest(
+            m_Peer, request, exception, System.nanoTime() - start);
       } while (true);
     } catch (ModbusIOException ex) {
       if (!ex.isEOF()) {
         //other troubles, output for debug
-        ex.printStackTrace();
+        c_Log.warn("Failed to serve request.", ex);
       }
     } finally {
       try {
@@ -0,0 +1,316 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.Random;
+
+/**
+ * Class that keeps a <tt>TCPMasterConnection</tt> connected.
+ * <p>
+ * If the connection cannot be established or is reported
+ * broken, a background thread repeats the connect with an
+ * exponentially growing, randomly shortened (jittered) delay.
+ * While the slave is unreachable, {@link #getConnection()}
+ * fails immediately instead of blocking the calling thread.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class TCPConnectionManager
+    implements Runnable {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(TCPConnectionManager.class);
+
+  //instance attributes
+  private TCPMasterConnection m_Connection;
+  private int m_ReconnectDelay = Modbus.DEFAULT_RECONNECT_DELAY;
+  private int m_MaxReconnectDelay = Modbus.DEFAULT_MAX_RECONNECT_DELAY;
+  private double m_Jitter = 0.5;
+  private Random m_Random = new Random();
+
+  private boolean m_Active;
+  private int m_Failures;
+  private long m_NextAttempt;
+  private Thread m_Reconnector;
+
+    /**
+     * Constructs a new <tt>TCPConnectionManager</tt> instance
+     * managing the given connection.
+     *
+     * @param con the <tt>TCPMasterConnection</tt> to be kept connected.
+     */
+    public TCPConnectionManager(TCPMasterConnection con) {
+    m_Connection = con;
+  }//constructor
+
+    /**
+     * Starts this <tt>TCPConnectionManager</tt>.
+     * <p>
+     * A first connect is attempted on the calling thread
+     * (bounded by the connect timeout of the connection); if it
+     * fails, reconnecting continues in the background.
+     *
+     * @return true if the connection is established, false otherwise.
+     */
+    public boolean start() {
+    synchronized (this) {
+      if (m_Active) {
+        return m_Connection.isConnected();
+      }
+      m_Active = true;
+      m_Failures = 0;
+    }
+    if (attemptConnect()) {
+      return true;
+    }
+    synchronized (this) {
+      scheduleReconnect();
+    }
+    return false;
+  }//start
+
+    /**
+     * Stops this <tt>TCPConnectionManager</tt>, terminating
+     * the reconnecting thread and closing the connection.
+     */
+    public void stop() {
+    Thread reconnector;
+    synchronized (this) {
+      m_Active = false;
+      reconnector = m_Reconnector;
+      notifyAll();
+    }
+    if (reconnector != null) {
+      try {
+        reconnector.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    m_Connection.close();
+  }//stop
+
+    /**
+     * Returns the managed connection if it is established.
+     * <p>
+     * This method never blocks on the network. If the connection
+     * is down, a reconnect is scheduled (unless one is already
+     * pending) and a <tt>ModbusIOException</tt> is thrown.
+     *
+     * @return the connected <tt>TCPMasterConnection</tt>.
+     * @throws ModbusIOException if the connection is not established.
+     */
+    public TCPMasterConnection getConnection()
+      throws ModbusIOException {
+    if (m_Connection.isConnected()) {
+      return m_Connection;
+    }
+    synchronized (this) {
+      if (!m_Active) {
+        throw new ModbusIOException("Connection manager not active.");
+      }
+      scheduleReconnect();
+      long wait = Math.max(0, m_NextAttempt - System.currentTimeMillis());
+      throw new ModbusIOException("Not connected (next attempt in " + wait + " ms).");
+    }
+  }//getConnection
+
+    /**
+     * Reports that the managed connection is broken.
+     * The connection will be closed and reestablished
+     * in the background.
+     */
+    public void connectionFailed() {
+    m_Connection.close();
+    synchronized (this) {
+      if (m_Active) {
+        scheduleReconnect();
+      }
+    }
+  }//connectionFailed
+
+    /**
+     * Tests if the managed connection is established.
+     *
+     * @return true if connected, false otherwise.
+     */
+    public boolean isConnected() {
+    return m_Connection.isConnected();
+  }//isConnected
+
+    /**
+     * Returns the address of the slave the managed
+     * connection is made to.
+     *
+     * @return the address as <tt>InetAddress</tt>.
+     */
+    public InetAddress getAddress() {
+    return m_Connection.getAddress();
+  }//getAddress
+
+    /**
+     * Returns the port of the slave the managed
+     * connection is made to.
+     *
+     * @return the port number as <tt>int</tt>.
+     */
+    public int getPort() {
+    return m_Connection.getPort();
+  }//getPort
+
+    /**
+     * Returns the number of consecutive failed connect attempts.
+     *
+     * @return the number of failures as <tt>int</tt>.
+     */
+    public synchronized int getFailureCount() {
+    return m_Failures;
+  }//getFailureCount
+
+    /**
+     * Returns the initial delay before a failed connect
+     * is attempted again.
+     *
+     * @return the delay in milliseconds as <tt>int</tt>.
+     */
+    public int getReconnectDelay() {
+    return m_ReconnectDelay;
+  }//getReconnectDelay
+
+    /**
+     * Sets the initial delay before a failed connect
+     * is attempted again. The delay doubles with every
+     * consecutive failure.
+     *
+     * @param delay the delay in milliseconds as <tt>int</tt>.
+     */
+    public void setReconnectDelay(int delay) {
+    m_ReconnectDelay = Math.max(1, delay);
+  }//setReconnectDelay
+
+    /**
+     * Returns the upper bound for the delay between two
+     * connect attempts.
+     *
+     * @return the maximum delay in milliseconds as <tt>int</tt>.
+     */
+    public int getMaxReconnectDelay() {
+    return m_MaxReconnectDelay;
+  }//getMaxReconnectDelay
+
+    /**
+     * Sets the upper bound for the delay between two
+     * connect attempts.
+     *
+     * @param delay the maximum delay in milliseconds as <tt>int</tt>.
+     */
+    public void setMaxReconnectDelay(int delay) {
+    m_MaxReconnectDelay = Math.max(1, delay);
+  }//setMaxReconnectDelay
+
+    /**
+     * Sets the fraction (0.0 to 1.0) by which each delay is
+     * randomly shortened, so that many masters do not hit a
+     * recovering slave at the same instant.
+     *
+     * @param jitter the jitter fraction as <tt>double</tt>.
+     */
+    public void setJitter(double jitter) {
+    m_Jitter = Math.min(1.0, Math.max(0.0, jitter));
+  }//setJitter
+
+  public void run() {
+    do {
+      synchronized (this) {
+        long wait = m_NextAttempt - System.currentTimeMillis();
+        while (m_Active && wait > 0) {
+          try {
+            wait(wait);
+          } catch (InterruptedException ex) {
+            m_Active = false;
+          }
+          wait = m_NextAttempt - System.currentTimeMillis();
+        }
+        if (!m_Active) {
+          m_Reconnector = null;
+          return;
+        }
+      }
+      if (attemptConnect()) {
+        synchronized (this) {
+          m_Reconnector = null;
+          return;
+        }
+      }
+    } while (true);
+  }//run
+
+  /**
+   * Tries to connect once, updating the failure count and
+   * the time of the next attempt.
+   *
+   * @return true if connected, false otherwise.
+   */
+  private boolean attemptConnect() {
+    try {
+      m_Connection.connect();
+      synchronized (this) {
+        m_Failures = 0;
+      }
+      return true;
+    } catch (Exception ex) {
+      synchronized (this) {
+        m_Failures++;
+        m_NextAttempt = System.currentTimeMillis() + nextDelay();
+        c_Log.debug("Connect failed ({}): {}", m_Failures, ex.getMessage());
+      }
+      return false;
+    }
+  }//attemptConnect
+
+  /**
+   * Starts the reconnecting thread unless one is running.
+   * Must be called holding the lock of this instance.
+   */
+  private void scheduleReconnect() {
+    if (m_Reconnector == null) {
+      m_Reconnector = new Thread(this, "Modbus TCP reconnect " + m_Connection.getAddress());
+      m_Reconnector.setDaemon(true);
+      m_Reconnector.start();
+    }
+  }//scheduleReconnect
+
+  /**
+   * Returns the jittered exponential delay for the actual
+   * number of failures. Must be called holding the lock
+   * of this instance.
+   *
+   * @return the delay in milliseconds.
+   */
+  private long nextDelay() {
+    int shift = Math.min(m_Failures - 1, 20);
+    long delay = Math.min((long) m_MaxReconnectDelay, ((long) m_ReconnectDelay) << shift);
+    return delay - (long) (delay * m_Jitter * m_Random.nextDouble());
+  }//nextDelay
+
+}//class TCPConnectionManager
@@ -17,11 +17,16 @@
 package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.io.ModbusTCPTransport;
 import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
 /**
@@ -32,9 +37,12 @@ import java.net.Socket;
  */
 public class TCPMasterConnection {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(TCPMasterConnection.class);
+
   //instance attributes
   private Socket m_Socket;
   private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+  private int m_ConnectTimeout = Modbus.DEFAULT_CONNECT_TIMEOUT;
   private boolean m_Connected;
 
   private InetAddress m_Address;
@@ -42,6 +50,8 @@ public class TCPMasterConnection {
 
   //private int m_Retries = Modbus.DEFAULT_RETRIES;
   private ModbusTCPTransport m_ModbusTransport;
+  private TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
+  private ModbusCoupler m_Coupler;
 
     /**
      * Constructs a <tt>TCPMasterConnection</tt> instance
@@ -55,14 +65,28 @@ public class TCPMasterConnection {
 
     /**
      * Opens this <tt>TCPMasterConnection</tt>.
+     * <p>
+     * Establishing the connection will not take longer
+     * than the configured connect timeout.
      *
      * @throws Exception if there is a network failure.
      */
     public synchronized void connect()
       throws Exception {
     if(!m_Connected) {
-      if(Modbus.debug) System.out.println("connect()");
-      m_Socket = new Socket(m_Address, m_Port);
+      c_Log.debug("Connecting to {}:{}", m_Address, m_Port);
+      Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(m_Address, m_Port), m_ConnectTimeout);
+      } catch (IOException ex) {
+        try {
+          socket.close();
+        } catch (IOException cex) {
+          //ignore
+        }
+        throw ex;
+      }
+      m_Socket = socket;
       setTimeout(m_Timeout);
       prepareTransport();
       m_Connected = true;
@@ -77,7 +101,7 @@ public class TCPMasterConnection {
       try {
         m_ModbusTransport.close();
       } catch (IOException ex) {
-        if(Modbus.debug) System.out.println("close()");
+        c_Log.debug("Failed to close transport.", ex);
       }
       m_Connected = false;
     }
@@ -93,6 +117,39 @@ public class TCPMasterConnection {
     return m_ModbusTransport;
   }//getModbusTransport
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>TCPMasterConnection</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>TCPMasterConnection</tt>
+     * is used in. It is handed to the transport of the connection.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+    if (m_ModbusTransport != null) {
+      m_ModbusTransport.setCoupler(coupler);
+    }
+  }//setCoupler
+
+    /**
+     * Returns the allocator for the transaction identifiers
+     * used on this <tt>TCPMasterConnection</tt>.
+     *
+     * @return a <tt>TransactionIDAllocator</tt> instance.
+     */
+    public TransactionIDAllocator getTransactionIDAllocator() {
+    return m_TransactionIDs;
+  }//getTransactionIDAllocator
+
   /**
    * Prepares the associated <tt>ModbusTransport</tt> of this
    * <tt>TCPMasterConnection</tt> for use.
@@ -102,6 +159,7 @@ public class TCPMasterConnection {
   private void prepareTransport() throws IOException {
     if (m_ModbusTransport == null) {
       m_ModbusTransport = new ModbusTCPTransport(m_Socket);
+      m_ModbusTransport.setCoupler(m_Coupler);
     } else {
       m_ModbusTransport.setSocket(m_Socket);
     }
@@ -132,6 +190,28 @@ public class TCPMasterConnection {
     }
   }//setReceiveTimeout
 
+    /**
+     * Returns the timeout for establishing this
+     * <tt>TCPMasterConnection</tt>.
+     *
+     * @return the connect timeout in milliseconds as <tt>int</tt>.
+     */
+    public int getConnectTimeout() {
+    return m_ConnectTimeout;
+  }//getConnectTimeout
+
+    /**
+     * Sets the timeout for establishing this
+     * <tt>TCPMasterConnection</tt>.
+     * The default is defined as <tt>Modbus.DEFAULT_CONNECT_TIMEOUT</tt>,
+     * a value of zero waits until the operating system gives up.
+     *
+     * @param timeout the connect timeout in milliseconds as <tt>int</tt>.
+     */
+    public void setConnectTimeout(int timeout) {
+    m_ConnectTimeout = timeout;
+  }//setConnectTimeout
+
     /**
      * Returns the destination port of this
      * <tt>TCPMasterConnection</tt>.
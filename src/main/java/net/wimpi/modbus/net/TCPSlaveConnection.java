@@ -19,6 +19,8 @@ package net.wimpi.modbus.net;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusTCPTransport;
 import net.wimpi.modbus.io.ModbusTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -32,6 +34,8 @@ import java.net.Socket;
  */
 public class TCPSlaveConnection {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(TCPSlaveConnection.class);
+
   //instance attributes
   private Socket m_Socket;
   private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
@@ -48,7 +52,7 @@ public class TCPSlaveConnection {
     try {
       setSocket(socket);
     } catch (IOException ex) {
-       if(Modbus.debug) System.out.println("TCPSlaveConnection::Socket invalid.");
+      c_Log.debug("Socket invalid.", ex);
       //@commentstart@
       throw new IllegalStateException("Socket invalid.");
       //@commentend@
@@ -64,7 +68,7 @@ public class TCPSlaveConnection {
         m_ModbusTransport.close();
         m_Socket.close();
       } catch (IOException ex) {
-        if(Modbus.debug) ex.printStackTrace();
+        c_Log.debug("Failed to close connection.", ex);
       }
       m_Connected = false;
     }
@@ -140,6 +144,16 @@ public class TCPSlaveConnection {
     return m_Socket.getLocalAddress();
   }//getAddress
 
+    /**
+     * Returns the <tt>InetAddress</tt> of the master
+     * this <tt>TCPSlaveConnection</tt> is connected to.
+     *
+     * @return the remote address as <tt>InetAddress</tt>.
+     */
+    public InetAddress getRemoteAddress() {
+    return m_Socket.getInetAddress();
+  }//getRemoteAddress
+
     /**
      * Tests if this <tt>TCPMasterConnection</tt> is connected.
      *
@@ -17,7 +17,11 @@
 package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.io.ModbusTransport;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 
@@ -29,8 +33,12 @@ import java.net.InetAddress;
  */
 public class UDPMasterConnection {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(UDPMasterConnection.class);
+
   //instance attributes
   private UDPMasterTerminal m_Terminal;
+  private TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
+  private ModbusCoupler m_Coupler;
   private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
   private boolean m_Connected;
 
@@ -57,11 +65,14 @@ public class UDPMasterConnection {
     if (!m_Connected) {
       m_Terminal = new UDPMasterTerminal();
       m_Terminal.setLocalAddress(InetAddress.getLocalHost());
-      m_Terminal.setLocalPort(5000);
+      //ephemeral port, so that several masters can coexist
+      m_Terminal.setLocalPort(0);
       m_Terminal.setRemoteAddress(m_Address);
       m_Terminal.setRemotePort(m_Port);
       m_Terminal.setTimeout(m_Timeout);
+      m_Terminal.setTransactionIDAllocator(m_TransactionIDs);
       m_Terminal.activate();
+      m_Terminal.getModbusTransport().setCoupler(m_Coupler);
       m_Connected = true;
     }
   }//connect
@@ -74,7 +85,7 @@ public class UDPMasterConnection {
       try {
         m_Terminal.deactivate();
       } catch (Exception ex) {
-        if (Modbus.debug) ex.printStackTrace();
+        c_Log.debug("Failed to deactivate terminal.", ex);
       }
       m_Connected = false;
     }
@@ -90,6 +101,39 @@ public class UDPMasterConnection {
     return m_Terminal.getModbusTransport();
   }//getModbusTransport
 
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this <tt>UDPMasterConnection</tt>
+     * is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this <tt>UDPMasterConnection</tt>
+     * is used in. It is handed to the transport of the connection.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+    if (m_Terminal != null && m_Terminal.getModbusTransport() != null) {
+      m_Terminal.getModbusTransport().setCoupler(coupler);
+    }
+  }//setCoupler
+
+    /**
+     * Returns the allocator for the transaction identifiers
+     * used on this <tt>UDPMasterConnection</tt>.
+     *
+     * @return a <tt>TransactionIDAllocator</tt> instance.
+     */
+    public TransactionIDAllocator getTransactionIDAllocator() {
+    return m_TransactionIDs;
+  }//getTransactionIDAllocator
+
     /**
      * Returns the terminal used for handling the package traffic.
      *
@@ -0,0 +1,627 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.io.BytesInputStream;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.io.FrameTrace;
+import net.wimpi.modbus.metrics.TransactionMetrics;
+import net.wimpi.modbus.msg.ExceptionResponse;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutput;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class implementing a UDP master that keeps many requests
+ * outstanding on a single <tt>DatagramSocket</tt>.
+ * <p>
+ * Requests may be sent from any number of threads. Each
+ * request gets a transaction identifier that is unique among
+ * the requests in flight; a receiver thread matches incoming
+ * datagrams by transaction identifier, source address and port
+ * and function code, and drops datagrams that match no pending
+ * request (e.g. late replies to requests that already timed
+ * out). A request that is not answered within the timeout is
+ * sent again with the same transaction identifier, up to the
+ * configured number of retries, so a late reply to an earlier
+ * copy still completes it.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class UDPMasterMultiplexer
+    implements Runnable {
+
+  private static final Logger c_Log = LoggerFactory.getLogger(UDPMasterMultiplexer.class);
+
+  //instance attributes
+  private InetAddress m_Address;
+  private int m_Port = Modbus.DEFAULT_PORT;
+  private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+  private int m_Retries = Modbus.DEFAULT_RETRIES;
+  private TransactionMetrics m_Metrics;
+  private ModbusCoupler m_Coupler;
+
+  private DatagramSocket m_Socket;
+  private Thread m_Receiver;
+  private volatile boolean m_Open;
+  private final TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
+  private final ConcurrentHashMap<Integer, Pending> m_Pending =
+      new ConcurrentHashMap<Integer, Pending>();
+  private final AtomicLong m_Retransmits = new AtomicLong();
+  private final AtomicLong m_Stale = new AtomicLong();
+
+  private static final ThreadLocal<BytesOutputStream> c_ByteOut =
+      new ThreadLocal<BytesOutputStream>() {
+        protected BytesOutputStream initialValue() {
+          return new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        }//initialValue
+      };
+
+    /**
+     * Constructs a new <tt>UDPMasterMultiplexer</tt> instance
+     * sending to the given slave on the default port.
+     *
+     * @param addr the address of the slave.
+     */
+    public UDPMasterMultiplexer(InetAddress addr) {
+    m_Address = addr;
+  }//constructor
+
+    /**
+     * Constructs a new <tt>UDPMasterMultiplexer</tt> instance
+     * sending to the given slave.
+     *
+     * @param addr the address of the slave.
+     * @param port the port of the slave.
+     */
+    public UDPMasterMultiplexer(InetAddress addr, int port) {
+    m_Address = addr;
+    m_Port = port;
+  }//constructor
+
+    /**
+     * Opens the socket and starts the receiver thread.
+     *
+     * @throws Exception if the socket cannot be opened.
+     */
+    public synchronized void open() throws Exception {
+    if (m_Open) {
+      return;
+    }
+    m_Socket = new DatagramSocket();
+    m_Socket.setReceiveBufferSize(1 << 16);
+    m_Socket.setSoTimeout(getTick());
+    m_Open = true;
+    m_Receiver = new Thread(this, "Modbus UDP multiplexer " + m_Address);
+    m_Receiver.setDaemon(true);
+    m_Receiver.start();
+  }//open
+
+    /**
+     * Closes the socket, stops the receiver thread and
+     * fails all requests in flight.
+     */
+    public void close() {
+    Thread receiver;
+    synchronized (this) {
+      if (!m_Open) {
+        return;
+      }
+      m_Open = false;
+      receiver = m_Receiver;
+      m_Receiver = null;
+      m_Socket.close();
+    }
+    try {
+      receiver.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    for (Iterator<Pending> iter = m_Pending.values().iterator(); iter.hasNext(); ) {
+      Pending p = iter.next();
+      if (m_Pending.remove(p.m_TransactionID, p)) {
+        complete(p, null, new ModbusIOException("Multiplexer closed."));
+      }
+    }
+  }//close
+
+    /**
+     * Tests if this <tt>UDPMasterMultiplexer</tt> is open.
+     *
+     * @return true if open, false otherwise.
+     */
+    public boolean isOpen() {
+    return m_Open;
+  }//isOpen
+
+    /**
+     * Returns the timeout after which an unanswered request
+     * is sent again.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getTimeout() {
+    return m_Timeout;
+  }//getTimeout
+
+    /**
+     * Sets the timeout after which an unanswered request
+     * is sent again.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public synchronized void setTimeout(int timeout) {
+    m_Timeout = Math.max(1, timeout);
+    if (m_Open) {
+      try {
+        m_Socket.setSoTimeout(getTick());
+      } catch (Exception ex) {
+        c_Log.debug("Failed to set socket timeout.", ex);
+      }
+    }
+  }//setTimeout
+
+    /**
+     * Returns the number of times an unanswered request
+     * is sent again.
+     *
+     * @return the number of retries.
+     */
+    public int getRetries() {
+    return m_Retries;
+  }//getRetries
+
+    /**
+     * Sets the number of times an unanswered request
+     * is sent again before it fails.
+     *
+     * @param retries the number of retries.
+     */
+    public void setRetries(int retries) {
+    m_Retries = Math.max(0, retries);
+  }//setRetries
+
+    /**
+     * Returns the <tt>ModbusCoupler</tt> this multiplexer is used in.
+     *
+     * @return the <tt>ModbusCoupler</tt> set, or the default one.
+     */
+    public ModbusCoupler getCoupler() {
+    return (m_Coupler != null) ? m_Coupler : ModbusCoupler.getReference();
+  }//getCoupler
+
+    /**
+     * Sets the <tt>ModbusCoupler</tt> this multiplexer is used in.
+     * It provides the process image factory for the responses
+     * and the metrics and tracing hooks.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt>, or null for the default one.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+    m_Coupler = coupler;
+  }//setCoupler
+
+    /**
+     * Sets the <tt>TransactionMetrics</tt> this multiplexer
+     * reports to. If not set, the metrics of the
+     * <tt>ModbusCoupler</tt> are used.
+     *
+     * @param metrics a <tt>TransactionMetrics</tt> instance.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+    m_Metrics = metrics;
+  }//setMetrics
+
+    /**
+     * Returns the <tt>TransactionMetrics</tt> this multiplexer
+     * reports to.
+     *
+     * @return a <tt>TransactionMetrics</tt> instance.
+     */
+    public TransactionMetrics getMetrics() {
+    return (m_Metrics != null) ? m_Metrics : getCoupler().getTransactionMetrics();
+  }//getMetrics
+
+    /**
+     * Returns the number of requests in flight.
+     *
+     * @return the number as <tt>int</tt>.
+     */
+    public int getPendingCount() {
+    return m_Pending.size();
+  }//getPendingCount
+
+    /**
+     * Returns the number of requests sent again because
+     * they were not answered in time.
+     *
+     * @return the number as <tt>long</tt>.
+     */
+    public long getRetransmitCount() {
+    return m_Retransmits.get();
+  }//getRetransmitCount
+
+    /**
+     * Returns the number of datagrams dropped because they
+     * did not match a request in flight.
+     *
+     * @return the number as <tt>long</tt>.
+     */
+    public long getStaleCount() {
+    return m_Stale.get();
+  }//getStaleCount
+
+    /**
+     * Sends the given request to the slave of this
+     * multiplexer without waiting for the response.
+     * <p>
+     * The transaction identifier of the request is overwritten,
+     * and the request must not be modified or sent again until
+     * the returned <tt>Pending</tt> is done.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be sent.
+     * @return the <tt>Pending</tt> request.
+     * @throws ModbusIOException if the request cannot be sent.
+     */
+    public Pending send(ModbusRequest request) throws ModbusIOException {
+    return send(m_Address, m_Port, request);
+  }//send
+
+    /**
+     * Sends the given request to the given slave without
+     * waiting for the response.
+     *
+     * @param addr    the address of the slave.
+     * @param port    the port of the slave.
+     * @param request the <tt>ModbusRequest</tt> to be sent.
+     * @return the <tt>Pending</tt> request.
+     * @throws ModbusIOException if the request cannot be sent.
+     */
+    public Pending send(InetAddress addr, int port, ModbusRequest request)
+      throws ModbusIOException {
+    if (!m_Open) {
+      throw new ModbusIOException("Multiplexer not open.");
+    }
+    int tid;
+    try {
+      tid = m_TransactionIDs.allocate();
+    } catch (IllegalStateException ex) {
+      throw new ModbusIOException(ex.getMessage());
+    }
+    request.setTransactionID(tid);
+    BytesOutputStream out = c_ByteOut.get();
+    out.reset();
+    try {
+      request.writeTo((DataOutput) out);
+    } catch (Exception ex) {
+      m_TransactionIDs.release(tid);
+      throw new ModbusIOException("Failed to encode request.");
+    }
+    Pending p = new Pending(tid, addr, port, request, out.toByteArray(),
+        System.nanoTime(), toEndpoint(addr, port));
+    p.m_Deadline = System.currentTimeMillis() + m_Timeout;
+    m_Pending.put(tid, p);
+    try {
+      transmit(p);
+    } catch (Exception ex) {
+      if (m_Pending.remove(tid, p)) {
+        complete(p, null, new ModbusIOException("I/O exception - failed to write."));
+      }
+      throw new ModbusIOException("I/O exception - failed to write.");
+    }
+    getMetrics().recordBytes(p.m_Endpoint, request.getUnitID(), p.m_Frame.length, 0);
+    return p;
+  }//send
+
+    /**
+     * Sends the given request to the slave of this multiplexer
+     * and waits for the response.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be sent.
+     * @return the <tt>ModbusResponse</tt>.
+     * @throws ModbusIOException    if the request could not be sent or was not answered.
+     * @throws ModbusSlaveException if the slave answered with an exception.
+     */
+    public ModbusResponse execute(ModbusRequest request)
+      throws ModbusIOException, ModbusSlaveException {
+    ModbusResponse res = send(request).getResponse();
+    if (res instanceof ExceptionResponse) {
+      throw new ModbusSlaveException(((ExceptionResponse) res).getExceptionCode());
+    }
+    return res;
+  }//execute
+
+  public void run() {
+    byte[] buffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    BytesInputStream in = new BytesInputStream(buffer);
+    long next = System.currentTimeMillis() + getTick();
+    while (m_Open) {
+      try {
+        packet.setLength(buffer.length);
+        m_Socket.receive(packet);
+        dispatch(packet, in);
+      } catch (SocketTimeoutException ex) {
+        //check the timers
+      } catch (Exception ex) {
+        if (m_Open) {
+          c_Log.warn("Failed to receive datagram.", ex);
+        }
+      }
+      long now = System.currentTimeMillis();
+      if (now >= next) {
+        checkTimers(now);
+        next = now + getTick();
+      }
+    }
+  }//run
+
+  /**
+   * Matches a received datagram to the request in flight
+   * and completes it, or drops the datagram.
+   *
+   * @param packet the received <tt>DatagramPacket</tt>.
+   * @param in     the <tt>BytesInputStream</tt> wrapping the packet buffer.
+   */
+  private void dispatch(DatagramPacket packet, BytesInputStream in) {
+    byte[] data = packet.getData();
+    int length = packet.getLength();
+    if (length < 8) {
+      m_Stale.incrementAndGet();
+      return;
+    }
+    int tid = ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+    int fc = data[7] & 0x7f;
+    Pending p = m_Pending.get(tid);
+    if (p == null
+        || p.m_Port != packet.getPort()
+        || !p.m_Address.equals(packet.getAddress())
+        || p.m_Request.getFunctionCode() != fc) {
+      //late reply to a request that is done, or not ours
+      m_Stale.incrementAndGet();
+      c_Log.trace("Dropped datagram with transaction id {}", tid);
+      return;
+    }
+    traceFrame(false, data, length);
+    ModbusResponse res;
+    try {
+      in.reset(data, length);
+      res = ModbusResponse.createModbusResponse(data[7] & 0xff);
+      res.setCoupler(m_Coupler);
+      res.readFrom(in);
+    } catch (Exception ex) {
+      c_Log.debug("Failed to decode response.", ex);
+      m_Stale.incrementAndGet();
+      return;
+    }
+    if (m_Pending.remove(tid, p)) {
+      getMetrics().recordBytes(p.m_Endpoint, p.m_Request.getUnitID(), 0, length);
+      complete(p, res, null);
+    }
+  }//dispatch
+
+  /**
+   * Sends requests again whose timer expired, and fails
+   * those that ran out of retries.
+   *
+   * @param now the actual time in milliseconds.
+   */
+  private void checkTimers(long now) {
+    TransactionMetrics metrics = getMetrics();
+    for (Iterator<Pending> iter = m_Pending.values().iterator(); iter.hasNext(); ) {
+      Pending p = iter.next();
+      if (now < p.m_Deadline) {
+        continue;
+      }
+      int unitid = p.m_Request.getUnitID();
+      int fc = p.m_Request.getFunctionCode();
+      metrics.recordTimeout(p.m_Endpoint, unitid, fc);
+      if (p.m_Attempts.get() > m_Retries) {
+        if (m_Pending.remove(p.m_TransactionID, p)) {
+          ModbusIOException ex = new ModbusIOException(
+              "Executing transaction failed (tried " + m_Retries + " times)");
+          ex.setTimeout(true);
+          complete(p, null, ex);
+        }
+        continue;
+      }
+      p.m_Deadline = now + m_Timeout;
+      try {
+        transmit(p);
+        m_Retransmits.incrementAndGet();
+        metrics.recordRetry(p.m_Endpoint, unitid, fc);
+      } catch (Exception ex) {
+        c_Log.debug("Failed to retransmit request.", ex);
+      }
+    }
+  }//checkTimers
+
+  /**
+   * Sends the frame of the given request.
+   *
+   * @param p the <tt>Pending</tt> request.
+   * @throws Exception if sending fails.
+   */
+  private void transmit(Pending p) throws Exception {
+    p.m_Attempts.incrementAndGet();
+    traceFrame(true, p.m_Frame, p.m_Frame.length);
+    m_Socket.send(new DatagramPacket(p.m_Frame, p.m_Frame.length, p.m_Address, p.m_Port));
+  }//transmit
+
+  /**
+   * Completes the given request, which must have been
+   * removed from the requests in flight.
+   *
+   * @param p   the <tt>Pending</tt> request.
+   * @param res the response, or null if failed.
+   * @param ex  the failure, or null if answered.
+   */
+  private void complete(Pending p, ModbusResponse res, ModbusIOException ex) {
+    m_TransactionIDs.release(p.m_TransactionID);
+    getMetrics().recordTransaction(p.m_Endpoint, p.m_Request.getUnitID(),
+        p.m_Request.getFunctionCode(), System.nanoTime() - p.m_Start, res != null);
+    if (res instanceof ExceptionResponse) {
+      getMetrics().recordExceptionResponse(p.m_Endpoint, p.m_Request.getUnitID(),
+          p.m_Request.getFunctionCode(), ((ExceptionResponse) res).getExceptionCode());
+    }
+    p.m_Response = res;
+    p.m_Failure = ex;
+    p.m_Done.countDown();
+  }//complete
+
+  /**
+   * Returns the interval in which the timers are checked.
+   *
+   * @return the interval in milliseconds.
+   */
+  private int getTick() {
+    return Math.max(1, Math.min(50, m_Timeout / 4));
+  }//getTick
+
+  /**
+   * Records a frame to the <tt>FrameTrace</tt>, if enabled.
+   *
+   * @param outgoing true if the frame is sent, false if received.
+   * @param buffer   the buffer holding the frame.
+   * @param length   the length of the frame.
+   */
+  private void traceFrame(boolean outgoing, byte[] buffer, int length) {
+    FrameTrace trace = getCoupler().getFrameTrace();
+    if (trace != null) {
+      trace.record("udp", outgoing, buffer, 0, length);
+    }
+  }//traceFrame
+
+  /**
+   * Returns the endpoint name used for tagging metrics.
+   *
+   * @param addr the address of the slave.
+   * @param port the port of the slave.
+   * @return the endpoint as <tt>String</tt>.
+   */
+  private static String toEndpoint(InetAddress addr, int port) {
+    return "udp://" + ((addr == null) ? "unknown" : addr.getHostAddress()) + ":" + port;
+  }//toEndpoint
+
+  /**
+   * Class representing a request in flight.
+   */
+  public static final class Pending {
+
+    private final int m_TransactionID;
+    private final InetAddress m_Address;
+    private final int m_Port;
+    private final ModbusRequest m_Request;
+    private final byte[] m_Frame;
+    private final long m_Start;
+    private final String m_Endpoint;
+    private final CountDownLatch m_Done = new CountDownLatch(1);
+    private volatile long m_Deadline;
+    private final AtomicInteger m_Attempts = new AtomicInteger();
+    private volatile ModbusResponse m_Response;
+    private volatile ModbusIOException m_Failure;
+
+    Pending(int tid, InetAddress addr, int port, ModbusRequest request,
+            byte[] frame, long start, String endpoint) {
+      m_TransactionID = tid;
+      m_Address = addr;
+      m_Port = port;
+      m_Request = request;
+      m_Frame = frame;
+      m_Start = start;
+      m_Endpoint = endpoint;
+    }//constructor
+
+        /**
+         * Returns the transaction identifier of the request.
+         *
+         * @return the identifier as <tt>int</tt>.
+         */
+        public int getTransactionID() {
+      return m_TransactionID;
+    }//getTransactionID
+
+        /**
+         * Returns the request.
+         *
+         * @return the <tt>ModbusRequest</tt>.
+         */
+        public ModbusRequest getRequest() {
+      return m_Request;
+    }//getRequest
+
+        /**
+         * Returns the number of times the request was sent.
+         *
+         * @return the number as <tt>int</tt>.
+         */
+        public int getAttempts() {
+      return m_Attempts.get();
+    }//getAttempts
+
+        /**
+         * Tests if the request was answered or failed.
+         *
+         * @return true if done, false otherwise.
+         */
+        public boolean isDone() {
+      return m_Done.getCount() == 0;
+    }//isDone
+
+        /**
+         * Waits until the request is answered or failed and
+         * returns the response, which may be an
+         * <tt>ExceptionResponse</tt>.
+         *
+         * @return the <tt>ModbusResponse</tt>.
+         * @throws ModbusIOException if the request failed or
+         *                           the thread was interrupted.
+         */
+        public ModbusResponse getResponse() throws ModbusIOException {
+      try {
+        m_Done.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new ModbusIOException("Interrupted while waiting for the response.");
+      }
+      if (m_Failure != null) {
+        throw m_Failure;
+      }
+      return m_Response;
+    }//getResponse
+
+  }//class Pending
+
+}//class UDPMasterMultiplexer
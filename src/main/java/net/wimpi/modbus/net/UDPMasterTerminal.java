@@ -18,6 +18,9 @@ package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusUDPTransport;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -32,9 +35,12 @@ import java.net.InetAddress;
 class UDPMasterTerminal
     implements UDPTerminal {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(UDPMasterTerminal.class);
+
   private DatagramSocket m_Socket;
   private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
   private boolean m_Active;
+  private TransactionIDAllocator m_TransactionIDs = new TransactionIDAllocator();
     /**
      * The M local address.
      */
@@ -149,7 +155,7 @@ class UDPMasterTerminal
   public synchronized void activate()
       throws Exception {
     if (!isActive()) {
-      if (Modbus.debug) System.out.println("UDPMasterTerminal::activate()::laddr=:" + m_LocalAddress.toString() + ":lport=" + m_LocalPort);
+      c_Log.debug("Activating, laddr={}, lport={}", m_LocalAddress, m_LocalPort);
       if (m_Socket == null) {
         if (m_LocalAddress != null && m_LocalPort != -1) {
           m_Socket = new DatagramSocket(m_LocalPort, m_LocalAddress);
@@ -159,9 +165,10 @@ class UDPMasterTerminal
           m_LocalAddress = m_Socket.getLocalAddress();
         }
       }
-      if (Modbus.debug) System.out.println("UDPMasterTerminal::haveSocket():" + m_Socket.toString());
-      if (Modbus.debug) System.out.println("UDPMasterTerminal::laddr=:" + m_LocalAddress.toString() + ":lport=" + m_LocalPort);
-      if (Modbus.debug) System.out.println("UDPMasterTerminal::raddr=:" + m_RemoteAddress.toString() + ":rport=" + m_RemotePort);
+      if (c_Log.isDebugEnabled()) {
+        c_Log.debug("Have socket {}, laddr={}, lport={}, raddr={}, rport={}",
+            new Object[]{m_Socket, m_LocalAddress, m_LocalPort, m_RemoteAddress, m_RemotePort});
+      }
 
       m_Socket.setReceiveBufferSize(1024);
       m_Socket.setSendBufferSize(1024);
@@ -169,7 +176,7 @@ class UDPMasterTerminal
       m_ModbusTransport = new ModbusUDPTransport(this);
       m_Active = true;
     }
-    if (Modbus.debug) System.out.println("UDPMasterTerminal::activated");
+    c_Log.debug("Activated");
   }//activate
 
   /**
@@ -177,13 +184,13 @@ class UDPMasterTerminal
    */
   public void deactivate() {
     try {
-      if (Modbus.debug) System.out.println("UDPMasterTerminal::deactivate()");
+      c_Log.debug("Deactivating");
       //close socket
       m_Socket.close();
       m_ModbusTransport = null;
       m_Active = false;
     } catch (Exception ex) {
-      ex.printStackTrace();
+      c_Log.warn("Failed to deactivate.", ex);
     }
   }//deactivate
 
@@ -197,6 +204,26 @@ class UDPMasterTerminal
     return m_ModbusTransport;
   }//getModbusTransport
 
+  /**
+   * Returns the allocator for the transaction identifiers
+   * used on this <tt>UDPMasterTerminal</tt>.
+   *
+   * @return a <tt>TransactionIDAllocator</tt> instance.
+   */
+  public TransactionIDAllocator getTransactionIDAllocator() {
+    return m_TransactionIDs;
+  }//getTransactionIDAllocator
+
+  /**
+   * Sets the allocator for the transaction identifiers, so
+   * that a connection keeps its id space across reconnects.
+   *
+   * @param ids a <tt>TransactionIDAllocator</tt> instance.
+   */
+  void setTransactionIDAllocator(TransactionIDAllocator ids) {
+    m_TransactionIDs = ids;
+  }//setTransactionIDAllocator
+
     /**
      * Returns the timeout for this <tt>UDPMasterTerminal</tt>.
      *
@@ -18,27 +18,46 @@ package net.wimpi.modbus.net;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusUDPTransport;
-import net.wimpi.modbus.util.LinkedQueue;
-import net.wimpi.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.net.DatagramPacket;
+import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.util.Hashtable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 
 /**
  * Class implementing a <tt>UDPSlaveTerminal</tt>.
+ * <p>
+ * A terminal serves one request at a time: it receives a
+ * datagram and keeps the address of the sender until the
+ * response is sent back to it. Several terminals may share a
+ * non-blocking <tt>DatagramChannel</tt>, each one used by its
+ * own thread, so that requests are received and handled
+ * concurrently. A terminal receives datagrams as long as
+ * there are any queued on the channel, and only waits on its
+ * <tt>Selector</tt> once the channel is drained. Datagrams are
+ * received into and sent from direct buffers owned by the
+ * terminal.
  *
  * @author Dieter Wimberger
  * @version 1.2
  */
 class UDPSlaveTerminal implements UDPTerminal {
 
+	private static final Logger c_Log = LoggerFactory.getLogger(UDPSlaveTerminal.class);
+
 	// instance attributes
-	private DatagramSocket m_Socket;
-	@SuppressWarnings("unused")
-	private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
-	private boolean m_Active;
+	private DatagramChannel m_Channel;
+	private boolean m_SharedChannel;
+	private Selector m_Selector;
+	private volatile boolean m_Active;
     /**
      * The M local address.
      */
@@ -48,29 +67,16 @@ class UDPSlaveTerminal implements UDPTerminal {
      * The M modbus transport.
      */
     protected ModbusUDPTransport m_ModbusTransport;
-	@SuppressWarnings("unused")
-	private int m_Retries = Modbus.DEFAULT_RETRIES;
-
-	private LinkedQueue m_SendQueue;
-	private LinkedQueue m_ReceiveQueue;
-	private PacketSender m_PacketSender;
-	private PacketReceiver m_PacketReceiver;
-	private Thread m_Receiver;
-	private Thread m_Sender;
 
-    /**
-     * The M requests.
-     */
-    protected Hashtable<Integer, DatagramPacket> m_Requests;
+	private byte[] m_Buffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
+	private ByteBuffer m_In;
+	private ByteBuffer m_Out;
+	private SocketAddress m_Sender;
 
     /**
      * Instantiates a new Udp slave terminal.
      */
     protected UDPSlaveTerminal() {
-		m_SendQueue = new LinkedQueue();
-		m_ReceiveQueue = new LinkedQueue();
-		// m_Requests = new Hashtable(342,0.75F);
-		m_Requests = new Hashtable<>(342);
 	}// constructor
 
     /**
@@ -80,10 +86,20 @@ class UDPSlaveTerminal implements UDPTerminal {
      */
     protected UDPSlaveTerminal(InetAddress localaddress) {
 		m_LocalAddress = localaddress;
-		m_SendQueue = new LinkedQueue();
-		m_ReceiveQueue = new LinkedQueue();
-		// m_Requests = new Hashtable(342, 0.75F);
-		m_Requests = new Hashtable<>(342);
+	}// constructor
+
+    /**
+     * Instantiates a new Udp slave terminal sharing the given
+     * bound channel, which is switched to non-blocking mode.
+     * The channel is not closed on deactivation.
+     *
+     * @param channel the bound <tt>DatagramChannel</tt>.
+     */
+    protected UDPSlaveTerminal(DatagramChannel channel) {
+		m_Channel = channel;
+		m_SharedChannel = true;
+		m_LocalAddress = channel.socket().getLocalAddress();
+		m_LocalPort = channel.socket().getLocalPort();
 	}// constructor
 
 	public InetAddress getLocalAddress() {
@@ -120,62 +136,47 @@ class UDPSlaveTerminal implements UDPTerminal {
 	 */
 	public synchronized void activate() throws Exception {
 		if (!isActive()) {
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::activate()");
-			if (m_Socket == null) {
+			c_Log.debug("Activating");
+			if (m_Channel == null) {
+				m_Channel = DatagramChannel.open();
+				m_Channel.setOption(StandardSocketOptions.SO_RCVBUF, Modbus.DEFAULT_UDP_BUFFER_SIZE);
+				m_Channel.setOption(StandardSocketOptions.SO_SNDBUF, Modbus.DEFAULT_UDP_BUFFER_SIZE);
 				if (m_LocalAddress != null && m_LocalPort != -1) {
-					m_Socket = new DatagramSocket(m_LocalPort, m_LocalAddress);
+					m_Channel.bind(new InetSocketAddress(m_LocalAddress, m_LocalPort));
 				} else {
-					m_Socket = new DatagramSocket();
-					m_LocalPort = m_Socket.getLocalPort();
-					m_LocalAddress = m_Socket.getLocalAddress();
+					m_Channel.bind(null);
+					m_LocalPort = m_Channel.socket().getLocalPort();
+					m_LocalAddress = m_Channel.socket().getLocalAddress();
 				}
 			}
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::haveSocket():" + m_Socket.toString());
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::addr=:" + m_LocalAddress.toString() + ":port=" + m_LocalPort);
-
-			m_Socket.setReceiveBufferSize(1024);
-			m_Socket.setSendBufferSize(1024);
-			m_PacketReceiver = new PacketReceiver();
-			m_Receiver = new Thread(m_PacketReceiver);
-			m_Receiver.start();
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::receiver started()");
-			m_PacketSender = new PacketSender();
-			m_Sender = new Thread(m_PacketSender);
-			m_Sender.start();
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::sender started()");
+			c_Log.debug("Have channel {}, addr={}, port={}", m_Channel, m_LocalAddress, m_LocalPort);
+			m_Channel.configureBlocking(false);
+			m_Selector = Selector.open();
+			m_Channel.register(m_Selector, SelectionKey.OP_READ);
+			m_In = ByteBuffer.allocateDirect(m_Buffer.length);
+			m_Out = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH);
 			m_ModbusTransport = new ModbusUDPTransport(this);
-			if (Modbus.debug)
-				System.out.println("UDPSlaveTerminal::transport created");
 			m_Active = true;
 		}
-		if (Modbus.debug)
-			System.out.println("UDPSlaveTerminal::activated");
+		c_Log.debug("Activated");
 	}// activate
 
 	/**
-	 * Deactivates this <tt>UDPSlaveTerminal</tt>.
+	 * Deactivates this <tt>UDPSlaveTerminal</tt>, releasing a
+	 * pending receive. A shared channel is left open.
 	 */
 	public void deactivate() {
 		try {
 			if (m_Active) {
-				// 1. stop receiver
-				m_PacketReceiver.stop();
-				m_Receiver.join();
-				// 2. stop sender gracefully
-				m_PacketSender.stop();
-				m_Sender.join();
-				// 3. close socket
-				m_Socket.close();
-				m_ModbusTransport = null;
 				m_Active = false;
+				// closing the selector releases a pending receive
+				m_Selector.close();
+				if (!m_SharedChannel) {
+					m_Channel.close();
+				}
 			}
 		} catch (Exception ex) {
-			ex.printStackTrace();
+			c_Log.warn("Failed to deactivate.", ex);
 		}
 	}// deactivate
 
@@ -189,141 +190,70 @@ class UDPSlaveTerminal implements UDPTerminal {
 		return m_ModbusTransport;
 	}// getModbusTransport
 
-    /**
-     * Has response boolean.
-     *
-     * @return the boolean
-     */
-    protected boolean hasResponse() {
-		return !m_ReceiveQueue.isEmpty();
-	}// hasResponse
-
-	/**
-	 * Returns the timeout for this <tt>UDPSlaveTerminal</tt>.
-	 *
-	 * @return the timeout as <tt>int</tt>.
-	 *
-	 *         public int getReceiveTimeout() { return m_Timeout;
-	 *         }//getReceiveTimeout
-	 * 
-	 *         /** Sets the timeout for this <tt>UDPSlaveTerminal</tt>.
-	 *
-	 * @param timeout
-	 *            the timeout as <tt>int</tt>.
-	 *
-	 *            public void setReceiveTimeout(int timeout) { m_Timeout =
-	 *            timeout; try { m_Socket.setSoTimeout(m_Timeout); } catch
-	 *            (IOException ex) { ex.printStackTrace(); //handle? }
-	 *            }//setReceiveTimeout
-	 */
     /**
      * Returns the socket of this <tt>UDPSlaveTerminal</tt>.
      *
      * @return the socket as <tt>DatagramSocket</tt>.
      */
     public DatagramSocket getSocket() {
-		return m_Socket;
+		return (m_Channel == null) ? null : m_Channel.socket();
 	}// getSocket
 
-    /**
-     * Sets the socket of this <tt>UDPTerminal</tt>.
-     *
-     * @param sock the <tt>DatagramSocket</tt> for this terminal.
-     */
-    protected void setSocket(DatagramSocket sock) {
-		m_Socket = sock;
-	}// setSocket
-
+	/**
+	 * Sends the given message to the master of the
+	 * request received last.
+	 *
+	 * @param msg the message as <tt>byte[]</tt>.
+	 * @throws Exception if sending the message fails.
+	 */
 	public void sendMessage(byte[] msg) throws Exception {
-		m_SendQueue.put(msg);
+		m_Out.clear();
+		m_Out.put(msg);
+		m_Out.flip();
+		if (m_Channel.send(m_Out, m_Sender) == 0) {
+			// like a datagram lost on the way, the master will retry
+			c_Log.debug("Send buffer full, dropped response to {}", m_Sender);
+		} else {
+			c_Log.trace("Sent package.");
+		}
 	}// sendPackage
 
+	/**
+	 * Receives the next request, waiting only if no
+	 * datagram is queued on the channel. The returned
+	 * buffer is reused by the next call.
+	 *
+	 * @return the message as <tt>byte[]</tt>.
+	 * @throws Exception if receiving fails.
+	 */
 	public byte[] receiveMessage() throws Exception {
-		return (byte[]) m_ReceiveQueue.take();
+		for (;;) {
+			m_In.clear();
+			SocketAddress sender = m_Channel.receive(m_In);
+			if (sender != null) {
+				m_Sender = sender;
+				m_In.flip();
+				m_In.get(m_Buffer, 0, m_In.remaining());
+				c_Log.trace("Received package.");
+				return m_Buffer;
+			}
+			// drained, wait for the next datagram
+			if (!m_Active) {
+				throw new IOException("Terminal deactivated.");
+			}
+			m_Selector.select();
+			m_Selector.selectedKeys().clear();
+		}
 	}// receiveMessage
 
     /**
-     * The type Packet sender.
-     */
-    class PacketSender implements Runnable {
-
-		private boolean m_Continue;
-
-        /**
-         * Instantiates a new Packet sender.
-         */
-        public PacketSender() {
-			m_Continue = true;
-		}// constructor
-
-		public void run() {
-			do {
-				try {
-					// 1. pickup the message and corresponding request
-					byte[] message = (byte[]) m_SendQueue.take();
-					DatagramPacket req = (DatagramPacket) m_Requests
-							.remove(new Integer(ModbusUtil.registersToInt(message)));
-					// 2. create new Package with corresponding address and port
-					DatagramPacket res = new DatagramPacket(message, message.length, req.getAddress(), req.getPort());
-					m_Socket.send(res);
-					if (Modbus.debug)
-						System.out.println("Sent package from queue.");
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			} while (m_Continue || !m_SendQueue.isEmpty());
-		}// run
-
-        /**
-         * Stop.
-         */
-        public void stop() {
-			m_Continue = false;
-		}// stop
-
-	}// PacketSender
-
-    /**
-     * The type Packet receiver.
+     * Returns the address of the master that sent the
+     * request received last.
+     *
+     * @return the <tt>InetAddress</tt>, or null if nothing was received yet.
      */
-    class PacketReceiver implements Runnable {
-
-		private boolean m_Continue;
-
-        /**
-         * Instantiates a new Packet receiver.
-         */
-        public PacketReceiver() {
-			m_Continue = true;
-		}// constructor
-
-		public void run() {
-			do {
-				try {
-					// 1. Prepare buffer and receive package
-					byte[] buffer = new byte[256];// max size
-					DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-					m_Socket.receive(packet);
-					// 2. Extract TID and remember request
-					Integer tid = new Integer(ModbusUtil.registersToInt(buffer));
-					m_Requests.put(tid, packet);
-					// 3. place the data buffer in the queue
-					m_ReceiveQueue.put(buffer);
-					if (Modbus.debug)
-						System.out.println("Received package to queue.");
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			} while (m_Continue);
-		}// run
-
-        /**
-         * Stop.
-         */
-        public void stop() {
-			m_Continue = false;
-		}// stop
-
-	}// PacketReceiver
+    public InetAddress getRequestAddress() {
+		return (m_Sender == null) ? null : ((InetSocketAddress) m_Sender).getAddress();
+	}// getRequestAddress
 
-}// class UDPTerminal
+}// class UDPSlaveTerminal
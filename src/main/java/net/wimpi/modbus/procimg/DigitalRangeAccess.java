@@ -0,0 +1,76 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Interface defining bulk access to the digital outs
+ * (coils) and digital ins (discrete inputs) of a
+ * <tt>ProcessImage</tt>.
+ * <p>
+ * A process image implementing this interface lets the
+ * request handlers transfer a whole range of bits at once,
+ * instead of one <tt>DigitalOut</tt> or <tt>DigitalIn</tt>
+ * instance at a time.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see PackedProcessImage
+ */
+public interface DigitalRangeAccess {
+
+    /**
+     * Copies the states of a range of digital outs into
+     * the bits <tt>0</tt> to <tt>count - 1</tt> of the given
+     * <tt>BitVector</tt>.
+     *
+     * @param offset the start offset.
+     * @param count  the number of digital outs.
+     * @param bits   the <tt>BitVector</tt> receiving the states.
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    public void readDigitalOuts(int offset, int count, BitVector bits)
+      throws IllegalAddressException;
+
+    /**
+     * Sets the states of a range of digital outs from
+     * the bits <tt>0</tt> to <tt>count - 1</tt> of the given
+     * <tt>BitVector</tt>.
+     *
+     * @param offset the start offset.
+     * @param count  the number of digital outs.
+     * @param bits   the <tt>BitVector</tt> holding the states.
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    public void writeDigitalOuts(int offset, int count, BitVector bits)
+      throws IllegalAddressException;
+
+    /**
+     * Copies the states of a range of digital ins into
+     * the bits <tt>0</tt> to <tt>count - 1</tt> of the given
+     * <tt>BitVector</tt>.
+     *
+     * @param offset the start offset.
+     * @param count  the number of digital ins.
+     * @param bits   the <tt>BitVector</tt> receiving the states.
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    public void readDigitalIns(int offset, int count, BitVector bits)
+      throws IllegalAddressException;
+
+}//interface DigitalRangeAccess
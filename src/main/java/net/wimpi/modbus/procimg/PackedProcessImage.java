@@ -0,0 +1,344 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import net.wimpi.modbus.util.BitVector;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a process image that stores its
+ * digital outs (coils) and digital ins (discrete inputs)
+ * packed into words of 64 bits, so that ranges of them
+ * are transferred a word at a time (see {@link DigitalRangeAccess}).
+ * <p>
+ * The number of digital outs and ins is fixed on construction;
+ * the <tt>DigitalOut</tt> and <tt>DigitalIn</tt> instances
+ * returned are views of the packed bits. Registers and input
+ * registers are kept in a <tt>SimpleProcessImage</tt> and
+ * can be added, removed or replaced as there.
+ * Bits are updated atomically, a word of 64 bits at a time.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class PackedProcessImage
+    implements ProcessImage, DigitalRangeAccess {
+
+  //instance attributes
+  private final AtomicLongArray m_Coils;
+  private final AtomicLongArray m_Discretes;
+  private final DigitalOut[] m_DigitalOuts;
+  private final DigitalIn[] m_DigitalIns;
+  private final SimpleProcessImage m_RegisterImage = new SimpleProcessImage();
+
+    /**
+     * Constructs a new <tt>PackedProcessImage</tt> instance
+     * with the given number of digital outs and ins, all
+     * of them reset.
+     *
+     * @param coils     the number of digital outs.
+     * @param discretes the number of digital ins.
+     */
+    public PackedProcessImage(int coils, int discretes) {
+    m_Coils = new AtomicLongArray((coils + 63) >>> 6);
+    m_Discretes = new AtomicLongArray((discretes + 63) >>> 6);
+    m_DigitalOuts = new DigitalOut[coils];
+    for (int i = 0; i < coils; i++) {
+      m_DigitalOuts[i] = new PackedDigitalOut(m_Coils, i);
+    }
+    m_DigitalIns = new DigitalIn[discretes];
+    for (int i = 0; i < discretes; i++) {
+      m_DigitalIns[i] = new PackedDigitalIn(m_Discretes, i);
+    }
+  }//constructor
+
+  public DigitalOut[] getDigitalOutRange(int offset, int count)
+      throws IllegalAddressException {
+    checkRange(offset, count, m_DigitalOuts.length);
+    return Arrays.copyOfRange(m_DigitalOuts, offset, offset + count);
+  }//getDigitalOutRange
+
+  public DigitalOut getDigitalOut(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalOuts.length);
+    return m_DigitalOuts[ref];
+  }//getDigitalOut
+
+  public int getDigitalOutCount() {
+    return m_DigitalOuts.length;
+  }//getDigitalOutCount
+
+  public DigitalIn[] getDigitalInRange(int offset, int count)
+      throws IllegalAddressException {
+    checkRange(offset, count, m_DigitalIns.length);
+    return Arrays.copyOfRange(m_DigitalIns, offset, offset + count);
+  }//getDigitalInRange
+
+  public DigitalIn getDigitalIn(int ref)
+      throws IllegalAddressException {
+    checkRange(ref, 1, m_DigitalIns.length);
+    return m_DigitalIns[ref];
+  }//getDigitalIn
+
+  public int getDigitalInCount() {
+    return m_DigitalIns.length;
+  }//getDigitalInCount
+
+  public InputRegister[] getInputRegisterRange(int offset, int count)
+      throws IllegalAddressException {
+    return m_RegisterImage.getInputRegisterRange(offset, count);
+  }//getInputRegisterRange
+
+  public InputRegister getInputRegister(int ref)
+      throws IllegalAddressException {
+    return m_RegisterImage.getInputRegister(ref);
+  }//getInputRegister
+
+  public int getInputRegisterCount() {
+    return m_RegisterImage.getInputRegisterCount();
+  }//getInputRegisterCount
+
+  public Register[] getRegisterRange(int offset, int count)
+      throws IllegalAddressException {
+    return m_RegisterImage.getRegisterRange(offset, count);
+  }//getRegisterRange
+
+  public Register getRegister(int ref)
+      throws IllegalAddressException {
+    return m_RegisterImage.getRegister(ref);
+  }//getRegister
+
+  public int getRegisterCount() {
+    return m_RegisterImage.getRegisterCount();
+  }//getRegisterCount
+
+    /**
+     * Adds a new <tt>InputRegister</tt> instance.
+     *
+     * @param reg the <tt>InputRegister</tt> instance to be added.
+     */
+    public void addInputRegister(InputRegister reg) {
+    m_RegisterImage.addInputRegister(reg);
+  }//addInputRegister
+
+    /**
+     * Removes a given <tt>InputRegister</tt> instance.
+     *
+     * @param reg the <tt>InputRegister</tt> instance to be removed.
+     */
+    public void removeInputRegister(InputRegister reg) {
+    m_RegisterImage.removeInputRegister(reg);
+  }//removeInputRegister
+
+    /**
+     * Sets a new <tt>InputRegister</tt> instance at the
+     * given reference.
+     *
+     * @param ref the reference.
+     * @param reg the <tt>InputRegister</tt> instance to be set.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setInputRegister(int ref, InputRegister reg)
+      throws IllegalAddressException {
+    m_RegisterImage.setInputRegister(ref, reg);
+  }//setInputRegister
+
+    /**
+     * Adds a new <tt>Register</tt> instance.
+     *
+     * @param reg the <tt>Register</tt> instance to be added.
+     */
+    public void addRegister(Register reg) {
+    m_RegisterImage.addRegister(reg);
+  }//addRegister
+
+    /**
+     * Removes a given <tt>Register</tt> instance.
+     *
+     * @param reg the <tt>Register</tt> instance to be removed.
+     */
+    public void removeRegister(Register reg) {
+    m_RegisterImage.removeRegister(reg);
+  }//removeRegister
+
+    /**
+     * Sets a new <tt>Register</tt> instance at the
+     * given reference.
+     *
+     * @param ref the reference.
+     * @param reg the <tt>Register</tt> instance to be set.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setRegister(int ref, Register reg)
+      throws IllegalAddressException {
+    m_RegisterImage.setRegister(ref, reg);
+  }//setRegister
+
+    /**
+     * Sets the state of the digital in at the given reference.
+     * This method should only be used from master/device side.
+     *
+     * @param ref the reference.
+     * @param b   true if to be set, false otherwise.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setDiscreteInput(int ref, boolean b)
+      throws IllegalAddressException {
+    checkRange(ref, 1, getDigitalInCount());
+    setBit(m_Discretes, ref, b);
+  }//setDiscreteInput
+
+    /**
+     * Sets the states of a range of digital ins from the bits
+     * <tt>0</tt> to <tt>count - 1</tt> of the given <tt>BitVector</tt>.
+     * This method should only be used from master/device side.
+     *
+     * @param offset the start offset.
+     * @param count  the number of digital ins.
+     * @param bits   the <tt>BitVector</tt> holding the states.
+     * @throws IllegalAddressException if the range is non existant.
+     */
+    public void writeDigitalIns(int offset, int count, BitVector bits)
+      throws IllegalAddressException {
+    checkRange(offset, count, getDigitalInCount());
+    write(m_Discretes, offset, count, bits);
+  }//writeDigitalIns
+
+  public void readDigitalOuts(int offset, int count, BitVector bits)
+      throws IllegalAddressException {
+    checkRange(offset, count, getDigitalOutCount());
+    read(m_Coils, offset, count, bits);
+  }//readDigitalOuts
+
+  public void writeDigitalOuts(int offset, int count, BitVector bits)
+      throws IllegalAddressException {
+    checkRange(offset, count, getDigitalOutCount());
+    write(m_Coils, offset, count, bits);
+  }//writeDigitalOuts
+
+  public void readDigitalIns(int offset, int count, BitVector bits)
+      throws IllegalAddressException {
+    checkRange(offset, count, getDigitalInCount());
+    read(m_Discretes, offset, count, bits);
+  }//readDigitalIns
+
+  private static void checkRange(int offset, int count, int size)
+      throws IllegalAddressException {
+    if (offset < 0 || count < 0 || offset + count > size) {
+      throw new IllegalAddressException();
+    }
+  }//checkRange
+
+  /**
+   * Copies a range of packed bits into a <tt>BitVector</tt>,
+   * a word at a time.
+   */
+  private static void read(AtomicLongArray words, int offset, int count, BitVector bits) {
+    for (int k = 0; k < count; ) {
+      int pos = offset + k;
+      int shift = pos & 63;
+      int take = Math.min(64 - shift, count - k);
+      bits.setBits(k, take, words.get(pos >>> 6) >>> shift);
+      k += take;
+    }
+  }//read
+
+  /**
+   * Copies the bits of a <tt>BitVector</tt> into a range of
+   * packed bits, updating each word atomically.
+   */
+  private static void write(AtomicLongArray words, int offset, int count, BitVector bits) {
+    for (int k = 0; k < count; ) {
+      int pos = offset + k;
+      int shift = pos & 63;
+      int take = Math.min(64 - shift, count - k);
+      long mask = ((take == 64) ? -1L : ((1L << take) - 1)) << shift;
+      long value = (bits.getBits(k, take) << shift) & mask;
+      int word = pos >>> 6;
+      for (; ; ) {
+        long old = words.get(word);
+        if (words.compareAndSet(word, old, (old & ~mask) | value)) {
+          break;
+        }
+      }
+      k += take;
+    }
+  }//write
+
+  private static boolean getBit(AtomicLongArray words, int index) {
+    return ((words.get(index >>> 6) >>> (index & 63)) & 1) != 0;
+  }//getBit
+
+  private static void setBit(AtomicLongArray words, int index, boolean b) {
+    int word = index >>> 6;
+    long bit = 1L << (index & 63);
+    for (; ; ) {
+      long old = words.get(word);
+      long value = b ? (old | bit) : (old & ~bit);
+      if (old == value || words.compareAndSet(word, old, value)) {
+        return;
+      }
+    }
+  }//setBit
+
+  /**
+   * Class implementing a <tt>DigitalOut</tt> view of a packed bit.
+   */
+  private static final class PackedDigitalOut
+      implements DigitalOut {
+
+    private final AtomicLongArray m_Words;
+    private final int m_Index;
+
+    PackedDigitalOut(AtomicLongArray words, int index) {
+      m_Words = words;
+      m_Index = index;
+    }//constructor
+
+    public boolean isSet() {
+      return getBit(m_Words, m_Index);
+    }//isSet
+
+    public void set(boolean b) {
+      setBit(m_Words, m_Index, b);
+    }//set
+
+  }//class PackedDigitalOut
+
+  /**
+   * Class implementing a <tt>DigitalIn</tt> view of a packed bit.
+   */
+  private static final class PackedDigitalIn
+      implements DigitalIn {
+
+    private final AtomicLongArray m_Words;
+    private final int m_Index;
+
+    PackedDigitalIn(AtomicLongArray words, int index) {
+      m_Words = words;
+      m_Index = index;
+    }//constructor
+
+    public boolean isSet() {
+      return getBit(m_Words, m_Index);
+    }//isSet
+
+  }//class PackedDigitalIn
+
+}//class PackedProcessImage
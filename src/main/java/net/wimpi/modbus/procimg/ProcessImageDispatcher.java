@@ -0,0 +1,138 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+/**
+ * Class mapping unit identifiers to independent
+ * <tt>ProcessImage</tt> instances, so that a single
+ * slave (listener) can serve many units.
+ * <p>
+ * The lookup is a plain array access and does not lock;
+ * adding or removing units copies the table, which is
+ * expected to happen rarely compared to serving requests.
+ * Requests for units that are not mapped are served from
+ * the default process image, if one is set.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ * @see net.wimpi.modbus.ModbusCoupler#setProcessImageDispatcher(ProcessImageDispatcher)
+ */
+public class ProcessImageDispatcher {
+
+  /**
+   * The number of unit identifiers (<tt>0</tt> to <tt>255</tt>).
+   */
+  public static final int UNIT_COUNT = 256;
+
+  //instance attributes
+  private volatile ProcessImage[] m_Images = new ProcessImage[UNIT_COUNT];
+  private volatile ProcessImage m_Default;
+
+    /**
+     * Constructs a new <tt>ProcessImageDispatcher</tt>
+     * instance without any units.
+     */
+    public ProcessImageDispatcher() {
+  }//constructor
+
+    /**
+     * Returns the <tt>ProcessImage</tt> serving the given unit.
+     *
+     * @param unitid the unit identifier.
+     * @return the <tt>ProcessImage</tt> of the unit, the default
+     *         process image if the unit is not mapped, or null if
+     *         there is none.
+     */
+    public ProcessImage getProcessImage(int unitid) {
+    ProcessImage procimg = m_Images[unitid & 0xff];
+    return (procimg != null) ? procimg : m_Default;
+  }//getProcessImage
+
+    /**
+     * Maps the given unit to a <tt>ProcessImage</tt>.
+     *
+     * @param unitid  the unit identifier (<tt>0</tt> to <tt>255</tt>).
+     * @param procimg the <tt>ProcessImage</tt> serving the unit,
+     *                or null to remove the unit.
+     * @throws IllegalArgumentException if the unit identifier is out of range.
+     */
+    public synchronized void setProcessImage(int unitid, ProcessImage procimg) {
+    if (unitid < 0 || unitid >= UNIT_COUNT) {
+      throw new IllegalArgumentException("Invalid unit identifier " + unitid);
+    }
+    ProcessImage[] images = m_Images.clone();
+    images[unitid] = procimg;
+    m_Images = images;
+  }//setProcessImage
+
+    /**
+     * Removes the given unit.
+     *
+     * @param unitid the unit identifier (<tt>0</tt> to <tt>255</tt>).
+     */
+    public void removeProcessImage(int unitid) {
+    setProcessImage(unitid, null);
+  }//removeProcessImage
+
+    /**
+     * Returns the <tt>ProcessImage</tt> serving the units
+     * that are not mapped.
+     *
+     * @return the default <tt>ProcessImage</tt>, or null if there is none.
+     */
+    public ProcessImage getDefaultProcessImage() {
+    return m_Default;
+  }//getDefaultProcessImage
+
+    /**
+     * Sets the <tt>ProcessImage</tt> serving the units
+     * that are not mapped.
+     *
+     * @param procimg the default <tt>ProcessImage</tt>, or null
+     *                if only mapped units should be served.
+     */
+    public void setDefaultProcessImage(ProcessImage procimg) {
+    m_Default = procimg;
+  }//setDefaultProcessImage
+
+    /**
+     * Tests if the given unit is served, i.e. if it is
+     * mapped or a default process image is set.
+     *
+     * @param unitid the unit identifier.
+     * @return true if served, false otherwise.
+     */
+    public boolean isServing(int unitid) {
+    return getProcessImage(unitid) != null;
+  }//isServing
+
+    /**
+     * Returns the number of mapped units.
+     *
+     * @return the number of units as <tt>int</tt>.
+     */
+    public int getUnitCount() {
+    int count = 0;
+    for (ProcessImage procimg : m_Images) {
+      if (procimg != null) {
+        count++;
+      }
+    }
+    return count;
+  }//getUnitCount
+
+}//class ProcessImageDispatcher
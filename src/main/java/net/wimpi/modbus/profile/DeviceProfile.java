@@ -0,0 +1,423 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.profile;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.util.RegisterSchema;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class holding the register map of a device model.
+ * <p>
+ * A register map is a text file with one point per line, as
+ * exported from a spreadsheet (columns separated by <tt>,</tt>
+ * or <tt>;</tt>; empty lines, lines starting with <tt>#</tt> and a
+ * header line starting with <tt>name</tt> are skipped):
+ * <pre>
+ * # name,     table,    address, type,     order, scale, offset, unit, min, max, deadband
+ * voltage,    input,    0,       float32,  CDAB,  ,      ,       V,    0,   400, 0.5
+ * current,    input,    2,       int16,    ,      0.01
+ * energy,     holding,  100,     uint32,   ABCD,  0.1,   0,      kWh
+ * serial,     holding,  200,     string8
+ * running,    coil,     0,       bool
+ * </pre>
+ * <ul>
+ *   <li>The table is one of <tt>coil</tt>, <tt>discrete</tt>,
+ *       <tt>holding</tt> and <tt>input</tt>.</li>
+ *   <li>The address is the zero based reference of the
+ *       first register or bit.</li>
+ *   <li>The type is one of <tt>int16</tt>, <tt>uint16</tt>,
+ *       <tt>int32</tt>, <tt>uint32</tt>, <tt>int64</tt>,
+ *       <tt>float32</tt>, <tt>float64</tt>, <tt>string</tt><i>n</i>
+ *       (<i>n</i> registers) or, for coils and discrete
+ *       inputs, <tt>bool</tt>.</li>
+ *   <li>The byte order is <tt>ABCD</tt> (default, most significant
+ *       byte first), <tt>CDAB</tt> (words swapped), <tt>BADC</tt>
+ *       (bytes swapped) or <tt>DCBA</tt> (both).</li>
+ *   <li>Numeric values are reported as raw value times the scale
+ *       (default 1) plus the offset (default 0), clamped to the
+ *       optional limits; a change within the optional deadband
+ *       is not flagged (see {@link ValueProcessor}).</li>
+ * </ul>
+ * The {@link ReadPlan} of a profile is compiled once and
+ * shared, and {@link #getProfile(File)} caches the profiles
+ * by file, so all devices of a model use the same plan.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class DeviceProfile {
+
+  /**
+   * Defines the default gap (in registers) between two
+   * points up to which they are read with one request.
+   */
+  public static final int DEFAULT_MAX_GAP = 16;
+
+  /**
+   * Defines the type of points in the coil and
+   * discrete input tables.
+   */
+  static final int BOOL = 0;
+
+  private static final ConcurrentHashMap<String, DeviceProfile> c_Profiles =
+      new ConcurrentHashMap<String, DeviceProfile>();
+
+  private final String m_Model;
+  private final long m_LastModified;
+  private final String[] m_Names;
+  private final int[] m_Tables;
+  private final int[] m_References;
+  private final int[] m_Types;
+  private final int[] m_Words;
+  private final double[] m_Scales;
+  private final double[] m_Offsets;
+  private final String[] m_Units;
+  private final double[] m_Min;
+  private final double[] m_Max;
+  private final double[] m_Deadbands;
+  private final Map<String, Integer> m_Index;
+  private volatile ReadPlan m_ReadPlan;
+
+  private DeviceProfile(String model, long modified, List<String[]> points, List<Integer> lines)
+      throws IOException {
+    int n = points.size();
+    m_Model = model;
+    m_LastModified = modified;
+    m_Names = new String[n];
+    m_Tables = new int[n];
+    m_References = new int[n];
+    m_Types = new int[n];
+    m_Words = new int[n];
+    m_Scales = new double[n];
+    m_Offsets = new double[n];
+    m_Units = new String[n];
+    m_Min = new double[n];
+    m_Max = new double[n];
+    m_Deadbands = new double[n];
+    m_Index = new HashMap<String, Integer>(n * 2);
+    for (int i = 0; i < n; i++) {
+      try {
+        parsePoint(i, points.get(i));
+      } catch (IllegalArgumentException ex) {
+        throw new IOException(model + ", line " + lines.get(i) + ": " + ex.getMessage());
+      }
+    }
+  }//constructor
+
+  /**
+   * Parses the cells of a point into the arrays.
+   */
+  private void parsePoint(int i, String[] cells) {
+    if (cells.length < 4) {
+      throw new IllegalArgumentException("name, table, address and type are required");
+    }
+    String name = cells[0];
+    if (name.length() == 0 || m_Index.containsKey(name)) {
+      throw new IllegalArgumentException("missing or duplicate name " + name);
+    }
+    m_Names[i] = name;
+    m_Index.put(name, i);
+    m_Tables[i] = parseTable(cells[1]);
+    m_References[i] = Integer.parseInt(cells[2]);
+    if (m_References[i] < 0 || m_References[i] > 0xffff) {
+      throw new IllegalArgumentException("address out of range");
+    }
+    String type = cells[3].toLowerCase(Locale.ROOT);
+    boolean bits = m_Tables[i] == Modbus.READ_COILS || m_Tables[i] == Modbus.READ_INPUT_DISCRETES;
+    if (bits != (type.equals("bool"))) {
+      throw new IllegalArgumentException("type " + type + " does not match the table");
+    }
+    if (bits) {
+      m_Types[i] = BOOL;
+      m_Words[i] = 1;
+    } else {
+      m_Types[i] = parseType(type) | parseOrder(cell(cells, 4));
+      if (type.startsWith("string")) {
+        m_Words[i] = Integer.parseInt(type.substring(6));
+        if (m_Words[i] < 1 || m_Words[i] > Modbus.MAX_REGISTERS) {
+          throw new IllegalArgumentException("invalid string length");
+        }
+      } else {
+        //let the schema tell the number of registers
+        RegisterSchema schema = new RegisterSchema();
+        schema.addField(m_Types[i]);
+        m_Words[i] = schema.getWordCount();
+      }
+    }
+    if (m_References[i] + m_Words[i] > 0x10000) {
+      throw new IllegalArgumentException("point exceeds the address range");
+    }
+    String scale = cell(cells, 5);
+    String offset = cell(cells, 6);
+    m_Scales[i] = parseDouble(scale, 1);
+    m_Offsets[i] = parseDouble(offset, 0);
+    m_Units[i] = cell(cells, 7);
+    m_Min[i] = parseDouble(cell(cells, 8), Double.NEGATIVE_INFINITY);
+    m_Max[i] = parseDouble(cell(cells, 9), Double.POSITIVE_INFINITY);
+    m_Deadbands[i] = parseDouble(cell(cells, 10), 0);
+    if (m_Min[i] > m_Max[i]) {
+      throw new IllegalArgumentException("min exceeds max");
+    }
+  }//parsePoint
+
+  private static String cell(String[] cells, int idx) {
+    return (idx < cells.length) ? cells[idx] : "";
+  }//cell
+
+  private static double parseDouble(String cell, double def) {
+    return (cell.length() == 0) ? def : Double.parseDouble(cell);
+  }//parseDouble
+
+  private static int parseTable(String table) {
+    String t = table.toLowerCase(Locale.ROOT);
+    if (t.equals("coil")) {
+      return Modbus.READ_COILS;
+    } else if (t.equals("discrete")) {
+      return Modbus.READ_INPUT_DISCRETES;
+    } else if (t.equals("holding")) {
+      return Modbus.READ_MULTIPLE_REGISTERS;
+    } else if (t.equals("input")) {
+      return Modbus.READ_INPUT_REGISTERS;
+    }
+    throw new IllegalArgumentException("unknown table " + table);
+  }//parseTable
+
+  private static int parseType(String type) {
+    if (type.equals("int16")) {
+      return RegisterSchema.INT16;
+    } else if (type.equals("uint16")) {
+      return RegisterSchema.UINT16;
+    } else if (type.equals("int32")) {
+      return RegisterSchema.INT32;
+    } else if (type.equals("uint32")) {
+      return RegisterSchema.UINT32;
+    } else if (type.equals("int64")) {
+      return RegisterSchema.INT64;
+    } else if (type.equals("float32")) {
+      return RegisterSchema.FLOAT32;
+    } else if (type.equals("float64")) {
+      return RegisterSchema.FLOAT64;
+    } else if (type.startsWith("string")) {
+      return RegisterSchema.STRING;
+    }
+    throw new IllegalArgumentException("unknown type " + type);
+  }//parseType
+
+  private static int parseOrder(String order) {
+    String o = order.toUpperCase(Locale.ROOT);
+    if (o.length() == 0 || o.equals("ABCD") || o.equals("AB")) {
+      return 0;
+    } else if (o.equals("CDAB")) {
+      return RegisterSchema.WORD_SWAP;
+    } else if (o.equals("BADC") || o.equals("BA")) {
+      return RegisterSchema.BYTE_SWAP;
+    } else if (o.equals("DCBA")) {
+      return RegisterSchema.WORD_SWAP | RegisterSchema.BYTE_SWAP;
+    }
+    throw new IllegalArgumentException("unknown byte order " + order);
+  }//parseOrder
+
+    /**
+     * Loads the profile of a device model from a register map.
+     *
+     * @param in    the <tt>InputStream</tt> to read the register map from.
+     * @param model the name of the device model.
+     * @return the loaded <tt>DeviceProfile</tt>.
+     * @throws IOException if the register map cannot be read or is not valid.
+     */
+    public static DeviceProfile load(InputStream in, String model)
+      throws IOException {
+    return load(in, model, 0);
+  }//load
+
+  private static DeviceProfile load(InputStream in, String model, long modified)
+      throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    List<String[]> points = new ArrayList<String[]>();
+    List<Integer> lines = new ArrayList<Integer>();
+    int lineno = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineno++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] cells = line.split("[,;]");
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] = cells[i].trim();
+      }
+      if (points.isEmpty() && cells[0].equalsIgnoreCase("name")) {
+        continue;
+      }
+      points.add(cells);
+      lines.add(lineno);
+    }
+    return new DeviceProfile(model, modified, points, lines);
+  }//load
+
+    /**
+     * Returns the profile of the register map in the given file.
+     * The model is the file name without extension.
+     * <p>
+     * Profiles are cached by file, and loaded again if the
+     * file has been modified since.
+     *
+     * @param file the register map file.
+     * @return the <tt>DeviceProfile</tt>.
+     * @throws IOException if the register map cannot be read or is not valid.
+     */
+    public static DeviceProfile getProfile(File file)
+      throws IOException {
+    String key = file.getCanonicalPath();
+    long modified = file.lastModified();
+    DeviceProfile profile = c_Profiles.get(key);
+    if (profile == null || profile.m_LastModified != modified) {
+      String model = file.getName();
+      int dot = model.lastIndexOf('.');
+      if (dot > 0) {
+        model = model.substring(0, dot);
+      }
+      InputStream in = new FileInputStream(file);
+      try {
+        profile = load(in, model, modified);
+      } finally {
+        in.close();
+      }
+      c_Profiles.put(key, profile);
+    }
+    return profile;
+  }//getProfile
+
+    /**
+     * Returns the name of the device model.
+     *
+     * @return the model as <tt>String</tt>.
+     */
+    public String getModel() {
+    return m_Model;
+  }//getModel
+
+    /**
+     * Returns the number of points of this profile.
+     *
+     * @return the number of points as <tt>int</tt>.
+     */
+    public int getPointCount() {
+    return m_Names.length;
+  }//getPointCount
+
+    /**
+     * Returns the index of the named point.
+     *
+     * @param name the name of the point.
+     * @return the index of the point, or -1 if there is no such point.
+     */
+    public int getIndex(String name) {
+    Integer idx = m_Index.get(name);
+    return (idx == null) ? -1 : idx.intValue();
+  }//getIndex
+
+    /**
+     * Returns the name of a point.
+     *
+     * @param point the index of the point.
+     * @return the name as <tt>String</tt>.
+     */
+    public String getName(int point) {
+    return m_Names[point];
+  }//getName
+
+    /**
+     * Returns the unit of a point.
+     *
+     * @param point the index of the point.
+     * @return the unit as <tt>String</tt>, empty if not given.
+     */
+    public String getUnit(int point) {
+    return m_Units[point];
+  }//getUnit
+
+    /**
+     * Tests if a point is a string point.
+     *
+     * @param point the index of the point.
+     * @return true if the point holds a string, false otherwise.
+     */
+    public boolean isString(int point) {
+    return (m_Types[point] & 0xff) == RegisterSchema.STRING;
+  }//isString
+
+    /**
+     * Returns the read plan of this profile, compiled
+     * with the default gap on first use.
+     *
+     * @return the <tt>ReadPlan</tt>.
+     */
+    public ReadPlan getReadPlan() {
+    ReadPlan plan = m_ReadPlan;
+    if (plan == null) {
+      plan = compile(DEFAULT_MAX_GAP);
+      m_ReadPlan = plan;
+    }
+    return plan;
+  }//getReadPlan
+
+    /**
+     * Compiles a read plan for this profile. Points of one
+     * table are read with one request as long as the unused
+     * registers between them do not exceed the given gap
+     * (coils and discrete inputs: 16 bits per register), and
+     * the request stays within the protocol limits.
+     *
+     * @param maxgap the maximum gap in registers.
+     * @return the <tt>ReadPlan</tt>.
+     */
+    public ReadPlan compile(int maxgap) {
+    return new ReadPlan(this, maxgap, m_Tables, m_References, m_Types, m_Words);
+  }//compile
+
+    /**
+     * Creates a <tt>ValueProcessor</tt> with the scaling, limits
+     * and deadbands of the points of this profile.
+     *
+     * @return a new <tt>ValueProcessor</tt> instance.
+     */
+    public ValueProcessor createProcessor() {
+    ValueProcessor proc = new ValueProcessor(m_Names.length);
+    for (int i = 0; i < m_Names.length; i++) {
+      proc.setScaling(i, m_Scales[i], m_Offsets[i]);
+      proc.setLimits(i, m_Min[i], m_Max[i]);
+      proc.setDeadband(i, m_Deadbands[i]);
+    }
+    return proc;
+  }//createProcessor
+
+}//class DeviceProfile
@@ -0,0 +1,211 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.profile;
+
+import java.util.Arrays;
+
+/**
+ * Class holding the decoded values of the points
+ * of one device, indexed like the points of its
+ * {@link DeviceProfile}.
+ * <p>
+ * Values are decoded in place by each read and then run
+ * through the {@link ValueProcessor} of the device in one pass,
+ * so polling does not allocate per point (except for string
+ * points). Points not read yet are <tt>NaN</tt> and flagged
+ * {@link ValueProcessor#BAD}. String points have no numeric
+ * value; they are flagged <tt>BAD</tt> until read, and
+ * <tt>CHANGED</tt> when their text differs from the last read.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class PointValues {
+
+  private final DeviceProfile m_Profile;
+  private final ValueProcessor m_Processor;
+  final double[] m_Input;
+  private final double[] m_Values;
+  private final byte[] m_Flags;
+  final String[] m_Strings;
+  final double[] m_Raw;
+  final String[] m_RawStrings;
+  private final int[] m_StringPoints;
+  private final String[] m_LastStrings;
+  private long m_Time;
+
+  PointValues(DeviceProfile profile, int maxfields) {
+    m_Profile = profile;
+    m_Processor = profile.createProcessor();
+    m_Input = new double[profile.getPointCount()];
+    m_Values = new double[profile.getPointCount()];
+    m_Flags = new byte[profile.getPointCount()];
+    m_Strings = new String[profile.getPointCount()];
+    m_Raw = new double[maxfields];
+    m_RawStrings = new String[maxfields];
+    Arrays.fill(m_Input, Double.NaN);
+    Arrays.fill(m_Values, Double.NaN);
+    Arrays.fill(m_Flags, ValueProcessor.BAD);
+    int n = 0;
+    int[] points = new int[profile.getPointCount()];
+    for (int i = 0; i < points.length; i++) {
+      if (profile.isString(i)) {
+        points[n++] = i;
+      }
+    }
+    m_StringPoints = Arrays.copyOf(points, n);
+    m_LastStrings = new String[n];
+  }//constructor
+
+    /**
+     * Returns the profile of the device.
+     *
+     * @return the <tt>DeviceProfile</tt>.
+     */
+    public DeviceProfile getProfile() {
+    return m_Profile;
+  }//getProfile
+
+    /**
+     * Returns the value of a point.
+     *
+     * @param point the index of the point.
+     * @return the scaled value as <tt>double</tt>.
+     */
+    public double getValue(int point) {
+    return m_Values[point];
+  }//getValue
+
+    /**
+     * Returns the value of the named point.
+     *
+     * @param name the name of the point.
+     * @return the scaled value as <tt>double</tt>.
+     * @throws IllegalArgumentException if there is no such point.
+     */
+    public double getValue(String name) {
+    return m_Values[indexOf(name)];
+  }//getValue
+
+    /**
+     * Returns the values of all points. The returned array is
+     * a reference to the values held by this instance.
+     *
+     * @return the processed values as <tt>double[]</tt>.
+     */
+    public double[] getValues() {
+    return m_Values;
+  }//getValues
+
+    /**
+     * Returns the quality flags of a point.
+     *
+     * @param point the index of the point.
+     * @return the flags as defined by <tt>ValueProcessor</tt>.
+     */
+    public int getFlags(int point) {
+    return m_Flags[point];
+  }//getFlags
+
+    /**
+     * Returns the quality flags of all points. The returned
+     * array is a reference to the flags held by this instance.
+     *
+     * @return the flags as <tt>byte[]</tt>.
+     */
+    public byte[] getFlags() {
+    return m_Flags;
+  }//getFlags
+
+    /**
+     * Returns the <tt>ValueProcessor</tt> of this device,
+     * for adjusting scaling, limits or deadbands.
+     *
+     * @return the <tt>ValueProcessor</tt>.
+     */
+    public ValueProcessor getProcessor() {
+    return m_Processor;
+  }//getProcessor
+
+    /**
+     * Returns the value of a string point.
+     *
+     * @param point the index of the point.
+     * @return the value as <tt>String</tt>.
+     */
+    public String getString(int point) {
+    return m_Strings[point];
+  }//getString
+
+    /**
+     * Returns the value of the named string point.
+     *
+     * @param name the name of the point.
+     * @return the value as <tt>String</tt>.
+     * @throws IllegalArgumentException if there is no such point.
+     */
+    public String getString(String name) {
+    return m_Strings[indexOf(name)];
+  }//getString
+
+    /**
+     * Returns the time the last complete read of the
+     * device finished.
+     *
+     * @return the time in milliseconds since the epoch, 0 if never read.
+     */
+    public long getTime() {
+    return m_Time;
+  }//getTime
+
+    /**
+     * Processes the values decoded since the last update,
+     * and sets the time of the read. This is done by the
+     * <tt>read</tt> methods of <tt>ReadPlan</tt>.
+     *
+     * @param time the time of the read in milliseconds since the epoch.
+     * @return the number of points flagged as changed.
+     */
+    public int update(long time) {
+    m_Time = time;
+    int changed = m_Processor.process(m_Input, m_Values, m_Flags);
+    //string points are not numeric, so their flags are set here
+    for (int i = 0; i < m_StringPoints.length; i++) {
+      int p = m_StringPoints[i];
+      String s = m_Strings[p];
+      if (s == null) {
+        m_Flags[p] = ValueProcessor.BAD;
+      } else if (!s.equals(m_LastStrings[i])) {
+        m_LastStrings[i] = s;
+        m_Flags[p] = ValueProcessor.CHANGED;
+        changed++;
+      } else {
+        m_Flags[p] = 0;
+      }
+    }
+    return changed;
+  }//update
+
+  private int indexOf(String name) {
+    int idx = m_Profile.getIndex(name);
+    if (idx < 0) {
+      throw new IllegalArgumentException("No point " + name + " in " + m_Profile.getModel());
+    }
+    return idx;
+  }//indexOf
+
+}//class PointValues
@@ -0,0 +1,336 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.profile;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.facade.ModbusSerialMaster;
+import net.wimpi.modbus.facade.ModbusTCPMaster;
+import net.wimpi.modbus.facade.ModbusUDPMaster;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.RegisterSchema;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing the compiled read plan of a
+ * {@link DeviceProfile}.
+ * <p>
+ * The points of the profile are sorted by table and address
+ * and merged into as few read requests as the gap setting and
+ * the protocol limits allow. Each register request has a
+ * {@link RegisterSchema} decoding all its points in one pass.
+ * <p>
+ * A plan is immutable and can be shared by any number of
+ * devices and threads; the decoded values are kept in a
+ * {@link PointValues} instance per device.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class ReadPlan {
+
+  private final DeviceProfile m_Profile;
+  private int m_RangeCount;
+  private int[] m_FunctionCodes = new int[8];
+  private int[] m_References = new int[8];
+  private int[] m_Counts = new int[8];
+  private RegisterSchema[] m_Schemas = new RegisterSchema[8];
+  private int[][] m_Points = new int[8][];
+  private int[][] m_BitOffsets = new int[8][];
+  private int m_MaxFields;
+
+  /**
+   * Compiles the plan for the given points.
+   */
+  ReadPlan(DeviceProfile profile, int maxgap, int[] tables, int[] refs, int[] types, int[] words) {
+    m_Profile = profile;
+    int n = tables.length;
+    //sort by table, address and index in one primitive key
+    long[] keys = new long[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = ((long) tables[i] << 48) | ((long) refs[i] << 24) | i;
+    }
+    Arrays.sort(keys);
+    int[] points = new int[n];
+    int first = 0;
+    while (first < n) {
+      int p = (int) (keys[first] & 0xffffff);
+      int table = tables[p];
+      boolean bits = (types[p] == DeviceProfile.BOOL);
+      int limit = bits ? Modbus.MAX_BITS : Modbus.MAX_REGISTERS;
+      int gap = bits ? maxgap * 16 : maxgap;
+      int start = refs[p];
+      int end = start + words[p];
+      int last = first + 1;
+      while (last < n) {
+        int q = (int) (keys[last] & 0xffffff);
+        int qend = Math.max(end, refs[q] + words[q]);
+        if (tables[q] != table || refs[q] - end > gap || qend - start > limit) {
+          break;
+        }
+        end = qend;
+        last++;
+      }
+      int count = last - first;
+      for (int i = 0; i < count; i++) {
+        points[i] = (int) (keys[first + i] & 0xffffff);
+      }
+      addRange(table, start, end - start, Arrays.copyOf(points, count), bits, refs, types, words);
+      first = last;
+    }
+  }//constructor
+
+  private void addRange(int fc, int start, int count, int[] points, boolean bits,
+                        int[] refs, int[] types, int[] words) {
+    if (m_RangeCount == m_FunctionCodes.length) {
+      int size = m_RangeCount * 2;
+      m_FunctionCodes = Arrays.copyOf(m_FunctionCodes, size);
+      m_References = Arrays.copyOf(m_References, size);
+      m_Counts = Arrays.copyOf(m_Counts, size);
+      m_Schemas = Arrays.copyOf(m_Schemas, size);
+      m_Points = Arrays.copyOf(m_Points, size);
+      m_BitOffsets = Arrays.copyOf(m_BitOffsets, size);
+    }
+    if (bits) {
+      int[] offsets = new int[points.length];
+      for (int i = 0; i < points.length; i++) {
+        offsets[i] = refs[points[i]] - start;
+      }
+      m_BitOffsets[m_RangeCount] = offsets;
+    } else {
+      RegisterSchema schema = new RegisterSchema();
+      for (int i = 0; i < points.length; i++) {
+        int p = points[i];
+        schema.addField(types[p], refs[p] - start, words[p]);
+      }
+      m_Schemas[m_RangeCount] = schema;
+    }
+    m_FunctionCodes[m_RangeCount] = fc;
+    m_References[m_RangeCount] = start;
+    m_Counts[m_RangeCount] = count;
+    m_Points[m_RangeCount] = points;
+    m_MaxFields = Math.max(m_MaxFields, points.length);
+    m_RangeCount++;
+  }//addRange
+
+    /**
+     * Returns the profile this plan was compiled from.
+     *
+     * @return the <tt>DeviceProfile</tt>.
+     */
+    public DeviceProfile getProfile() {
+    return m_Profile;
+  }//getProfile
+
+    /**
+     * Returns the number of read requests of this plan.
+     *
+     * @return the number of requests as <tt>int</tt>.
+     */
+    public int getRangeCount() {
+    return m_RangeCount;
+  }//getRangeCount
+
+    /**
+     * Returns the function code of a read request.
+     *
+     * @param range the index of the request.
+     * @return the function code (1 to 4).
+     */
+    public int getFunctionCode(int range) {
+    return m_FunctionCodes[range];
+  }//getFunctionCode
+
+    /**
+     * Returns the reference of the first register or
+     * bit of a read request.
+     *
+     * @param range the index of the request.
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getReference(int range) {
+    return m_References[range];
+  }//getReference
+
+    /**
+     * Returns the number of registers or bits of a
+     * read request.
+     *
+     * @param range the index of the request.
+     * @return the count as <tt>int</tt>.
+     */
+    public int getCount(int range) {
+    return m_Counts[range];
+  }//getCount
+
+    /**
+     * Creates a <tt>PointValues</tt> instance for
+     * a device read with this plan.
+     *
+     * @return a new <tt>PointValues</tt> instance.
+     */
+    public PointValues createValues() {
+    return new PointValues(m_Profile, m_MaxFields);
+  }//createValues
+
+    /**
+     * Decodes the registers read with a request of this
+     * plan into the values of its points. The values are
+     * processed with {@link PointValues#update(long)}.
+     *
+     * @param range  the index of the request.
+     * @param regs   the registers read.
+     * @param values the <tt>PointValues</tt> to be updated.
+     * @throws IllegalArgumentException if the request reads bits.
+     */
+    public void decode(int range, InputRegister[] regs, PointValues values) {
+    RegisterSchema schema = m_Schemas[range];
+    if (schema == null) {
+      throw new IllegalArgumentException("Range " + range + " reads bits");
+    }
+    double[] raw = values.m_Raw;
+    String[] strings = values.m_RawStrings;
+    schema.decode(regs, 0, raw, strings);
+    int[] points = m_Points[range];
+    for (int i = 0; i < points.length; i++) {
+      int p = points[i];
+      if (m_Profile.isString(p)) {
+        values.m_Strings[p] = strings[i];
+      } else {
+        values.m_Input[p] = raw[i];
+      }
+    }
+  }//decode
+
+    /**
+     * Decodes the bits read with a request of this
+     * plan into the values (0 or 1) of its points. The values
+     * are processed with {@link PointValues#update(long)}.
+     *
+     * @param range  the index of the request.
+     * @param bits   the bits read.
+     * @param values the <tt>PointValues</tt> to be updated.
+     * @throws IllegalArgumentException if the request reads registers.
+     */
+    public void decode(int range, BitVector bits, PointValues values) {
+    int[] offsets = m_BitOffsets[range];
+    if (offsets == null) {
+      throw new IllegalArgumentException("Range " + range + " reads registers");
+    }
+    int[] points = m_Points[range];
+    for (int i = 0; i < points.length; i++) {
+      values.m_Input[points[i]] = bits.getBit(offsets[i]) ? 1 : 0;
+    }
+  }//decode
+
+    /**
+     * Reads all points of a device with the given master,
+     * and processes the values.
+     *
+     * @param master the <tt>ModbusTCPMaster</tt> connected to the device.
+     * @param values the <tt>PointValues</tt> to be updated.
+     * @return the number of points flagged as changed.
+     * @throws ModbusException if a read fails.
+     */
+    public int read(ModbusTCPMaster master, PointValues values)
+      throws ModbusException {
+    for (int r = 0; r < m_RangeCount; r++) {
+      int ref = m_References[r];
+      int count = m_Counts[r];
+      switch (m_FunctionCodes[r]) {
+        case Modbus.READ_COILS:
+          decode(r, master.readCoils(ref, count), values);
+          break;
+        case Modbus.READ_INPUT_DISCRETES:
+          decode(r, master.readInputDiscretes(ref, count), values);
+          break;
+        case Modbus.READ_MULTIPLE_REGISTERS:
+          decode(r, master.readMultipleRegisters(ref, count), values);
+          break;
+        default:
+          decode(r, master.readInputRegisters(ref, count), values);
+      }
+    }
+    return values.update(System.currentTimeMillis());
+  }//read
+
+    /**
+     * Reads all points of a device with the given master,
+     * and processes the values.
+     *
+     * @param master the <tt>ModbusUDPMaster</tt> connected to the device.
+     * @param values the <tt>PointValues</tt> to be updated.
+     * @return the number of points flagged as changed.
+     * @throws ModbusException if a read fails.
+     */
+    public int read(ModbusUDPMaster master, PointValues values)
+      throws ModbusException {
+    for (int r = 0; r < m_RangeCount; r++) {
+      int ref = m_References[r];
+      int count = m_Counts[r];
+      switch (m_FunctionCodes[r]) {
+        case Modbus.READ_COILS:
+          decode(r, master.readCoils(ref, count), values);
+          break;
+        case Modbus.READ_INPUT_DISCRETES:
+          decode(r, master.readInputDiscretes(ref, count), values);
+          break;
+        case Modbus.READ_MULTIPLE_REGISTERS:
+          decode(r, master.readMultipleRegisters(ref, count), values);
+          break;
+        default:
+          decode(r, master.readInputRegisters(ref, count), values);
+      }
+    }
+    return values.update(System.currentTimeMillis());
+  }//read
+
+    /**
+     * Reads all points of a device with the given master,
+     * and processes the values.
+     *
+     * @param master the <tt>ModbusSerialMaster</tt> of the line.
+     * @param unitid the unit identifier of the device.
+     * @param values the <tt>PointValues</tt> to be updated.
+     * @return the number of points flagged as changed.
+     * @throws ModbusException if a read fails.
+     */
+    public int read(ModbusSerialMaster master, int unitid, PointValues values)
+      throws ModbusException {
+    for (int r = 0; r < m_RangeCount; r++) {
+      int ref = m_References[r];
+      int count = m_Counts[r];
+      switch (m_FunctionCodes[r]) {
+        case Modbus.READ_COILS:
+          decode(r, master.readCoils(unitid, ref, count), values);
+          break;
+        case Modbus.READ_INPUT_DISCRETES:
+          decode(r, master.readInputDiscretes(unitid, ref, count), values);
+          break;
+        case Modbus.READ_MULTIPLE_REGISTERS:
+          decode(r, master.readMultipleRegisters(unitid, ref, count), values);
+          break;
+        default:
+          decode(r, master.readInputRegisters(unitid, ref, count), values);
+      }
+    }
+    return values.update(System.currentTimeMillis());
+  }//read
+
+}//class ReadPlan
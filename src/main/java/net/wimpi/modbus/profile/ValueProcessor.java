@@ -0,0 +1,196 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.profile;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing the processing of decoded values
+ * between the reads of a master and their consumers.
+ * <p>
+ * For each point, the decoded value is scaled linearly
+ * (<tt>raw * scale + offset</tt>), clamped to its limits and
+ * checked against a deadband around the value last reported
+ * as changed. Each point gets quality flags:
+ * <ul>
+ *   <li>{@link #BAD} if there is no valid value (<tt>NaN</tt>),</li>
+ *   <li>{@link #CLAMPED} if the value was out of its limits,</li>
+ *   <li>{@link #CHANGED} if the value moved by more than the
+ *       deadband since it was last reported as changed, or if
+ *       the point went bad or recovered.</li>
+ * </ul>
+ * All state is held in primitive arrays indexed by point, and
+ * each step is a separate loop over all points, which the JIT
+ * compiles to straight (and where possible vectorised) code.
+ * <p>
+ * A processor keeps the last reported values, so each device
+ * needs its own instance.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class ValueProcessor {
+
+  /**
+   * Flags a point without a valid value.
+   */
+  public static final byte BAD = 0x01;
+
+  /**
+   * Flags a point whose value was clamped to its limits.
+   */
+  public static final byte CLAMPED = 0x02;
+
+  /**
+   * Flags a point whose value moved by more than its
+   * deadband since it was last reported as changed, or
+   * whose quality changed between good and {@link #BAD}.
+   */
+  public static final byte CHANGED = 0x04;
+
+  private final int m_Size;
+  private final double[] m_Scales;
+  private final double[] m_Offsets;
+  private final double[] m_Min;
+  private final double[] m_Max;
+  private final double[] m_Deadbands;
+  private final double[] m_Reported;
+  private final double[] m_Scaled;
+
+    /**
+     * Constructs a new <tt>ValueProcessor</tt> for the
+     * given number of points, with a scale of 1, no offset,
+     * no limits and no deadband.
+     *
+     * @param size the number of points.
+     */
+    public ValueProcessor(int size) {
+    m_Size = size;
+    m_Scales = new double[size];
+    m_Offsets = new double[size];
+    m_Min = new double[size];
+    m_Max = new double[size];
+    m_Deadbands = new double[size];
+    m_Reported = new double[size];
+    m_Scaled = new double[size];
+    Arrays.fill(m_Scales, 1);
+    Arrays.fill(m_Min, Double.NEGATIVE_INFINITY);
+    Arrays.fill(m_Max, Double.POSITIVE_INFINITY);
+    Arrays.fill(m_Reported, Double.NaN);
+  }//constructor
+
+    /**
+     * Returns the number of points of this processor.
+     *
+     * @return the number of points as <tt>int</tt>.
+     */
+    public int getSize() {
+    return m_Size;
+  }//getSize
+
+    /**
+     * Sets the linear scaling of a point.
+     *
+     * @param point  the index of the point.
+     * @param scale  the factor the decoded value is multiplied with.
+     * @param offset the offset added to the multiplied value.
+     */
+    public void setScaling(int point, double scale, double offset) {
+    m_Scales[point] = scale;
+    m_Offsets[point] = offset;
+  }//setScaling
+
+    /**
+     * Sets the limits of the scaled value of a point.
+     *
+     * @param point the index of the point.
+     * @param min   the lower limit, <tt>Double.NEGATIVE_INFINITY</tt> for none.
+     * @param max   the upper limit, <tt>Double.POSITIVE_INFINITY</tt> for none.
+     * @throws IllegalArgumentException if the lower limit exceeds the upper limit.
+     */
+    public void setLimits(int point, double min, double max) {
+    if (min > max) {
+      throw new IllegalArgumentException("min > max");
+    }
+    m_Min[point] = min;
+    m_Max[point] = max;
+  }//setLimits
+
+    /**
+     * Sets the deadband of a point. With a deadband of 0
+     * (the default), every change is reported.
+     *
+     * @param point    the index of the point.
+     * @param deadband the deadband in units of the scaled value.
+     */
+    public void setDeadband(int point, double deadband) {
+    m_Deadbands[point] = Math.abs(deadband);
+  }//setDeadband
+
+    /**
+     * Processes the decoded values of all points.
+     *
+     * @param in    the decoded values, <tt>NaN</tt> for points without value.
+     * @param out   receives the scaled and clamped values; may be <tt>in</tt>.
+     * @param flags receives the quality flags.
+     * @return the number of points flagged as changed.
+     * @throws IndexOutOfBoundsException if an array is too short.
+     */
+    public int process(double[] in, double[] out, byte[] flags) {
+    int n = m_Size;
+    if (in.length < n || out.length < n || flags.length < n) {
+      throw new IndexOutOfBoundsException();
+    }
+    double[] scaled = m_Scaled;
+    //1. linear scaling
+    for (int i = 0; i < n; i++) {
+      scaled[i] = in[i] * m_Scales[i] + m_Offsets[i];
+    }
+    //2. clamping (NaN stays NaN)
+    for (int i = 0; i < n; i++) {
+      out[i] = Math.min(Math.max(scaled[i], m_Min[i]), m_Max[i]);
+    }
+    //3. quality, and deadband against the last reported value;
+    //   a bad point is reported as NaN, so going bad is a change
+    int changed = 0;
+    for (int i = 0; i < n; i++) {
+      double v = out[i];
+      double last = m_Reported[i];
+      boolean bad = (v != v);
+      boolean moved = bad
+          ? last == last
+          : (last != last || Math.abs(v - last) > m_Deadbands[i]);
+      int f = (bad ? BAD : 0) | ((!bad && v != scaled[i]) ? CLAMPED : 0);
+      if (moved) {
+        m_Reported[i] = v;
+        f |= CHANGED;
+        changed++;
+      }
+      flags[i] = (byte) f;
+    }
+    return changed;
+  }//process
+
+    /**
+     * Forgets the values last reported, so the next
+     * processing reports all valid values as changed.
+     */
+    public void reset() {
+    Arrays.fill(m_Reported, Double.NaN);
+  }//reset
+
+}//class ValueProcessor
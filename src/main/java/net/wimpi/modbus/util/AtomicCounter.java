@@ -18,21 +18,26 @@ package net.wimpi.modbus.util;
 
 import net.wimpi.modbus.Modbus;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Provides an atomic integer.
+ * Provides an atomic integer, wrapping around
+ * at {@link Modbus#MAX_TRANSACTION_ID}.
+ * <p>
+ * For transaction identifiers, see {@link TransactionIDAllocator}.
  *
  * @author Dieter Wimberger (wimpi)
  * @version 1.2
  */
 public class AtomicCounter {
 
-  private int m_Value;
+  private final AtomicInteger m_Value;
 
     /**
      * Constructs a new <tt>AtomicInteger</tt>.
      */
     public AtomicCounter() {
-    m_Value = 0;
+    m_Value = new AtomicInteger();
   }//constructor
 
     /**
@@ -42,7 +47,7 @@ public class AtomicCounter {
      * @param value the initial value.
      */
     public AtomicCounter(int value) {
-    m_Value = value;
+    m_Value = new AtomicInteger(value);
   }//constructor
 
     /**
@@ -50,11 +55,14 @@ public class AtomicCounter {
      *
      * @return the resulting value.
      */
-    public synchronized int increment() {
-    if (m_Value == Modbus.MAX_TRANSACTION_ID) {
-      m_Value = 0;
+    public int increment() {
+    for (; ; ) {
+      int value = m_Value.get();
+      int next = (value == Modbus.MAX_TRANSACTION_ID) ? 1 : value + 1;
+      if (m_Value.compareAndSet(value, next)) {
+        return next;
+      }
     }
-    return ++m_Value;
   }//increment
 
     /**
@@ -62,8 +70,8 @@ public class AtomicCounter {
      *
      * @return the actual value.
      */
-    public synchronized int get() {
-    return m_Value;
+    public int get() {
+    return m_Value.get();
   }//get
 
 }//class AtomicCounter
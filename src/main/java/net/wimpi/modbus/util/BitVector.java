@@ -199,6 +199,228 @@ public final class BitVector {
     return m_Data.length;
   }//byteSize
 
+    /**
+     * Returns up to 64 bits of this <tt>BitVector</tt>, starting
+     * at the given index. Bit <tt>i</tt> of the result holds the
+     * state of the bit at <tt>index + i</tt>.
+     *
+     * @param index the index of the first bit.
+     * @param count the number of bits (0 to 64).
+     * @return the bits as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public final long getBits(int index, int count)
+      throws IndexOutOfBoundsException {
+    checkRange(index, count);
+    if (count > 64) {
+      throw new IllegalArgumentException("Count exceeds 64 bits.");
+    }
+    if (m_MSBAccess) {
+      long value = 0;
+      for (int i = 0; i < count; i++) {
+        if (getBit(index + i)) {
+          value |= 1L << i;
+        }
+      }
+      return value;
+    }
+    return readBits(index, count);
+  }//getBits
+
+    /**
+     * Sets up to 64 bits of this <tt>BitVector</tt>, starting
+     * at the given index. The bit at <tt>index + i</tt> is set
+     * to the state of bit <tt>i</tt> of the given value.
+     *
+     * @param index the index of the first bit.
+     * @param count the number of bits (0 to 64).
+     * @param bits  the bits as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public final void setBits(int index, int count, long bits)
+      throws IndexOutOfBoundsException {
+    checkRange(index, count);
+    if (count > 64) {
+      throw new IllegalArgumentException("Count exceeds 64 bits.");
+    }
+    if (m_MSBAccess) {
+      for (int i = 0; i < count; i++) {
+        setBit(index + i, ((bits >>> i) & 1) != 0);
+      }
+    } else {
+      writeBits(index, count, bits);
+    }
+  }//setBits
+
+    /**
+     * Copies a range of bits of this <tt>BitVector</tt> into
+     * the given bit set, laid out like <tt>java.util.BitSet.toLongArray()</tt>
+     * (bit <tt>n</tt> is bit <tt>n % 64</tt> of word <tt>n / 64</tt>).
+     *
+     * @param index     the index of the first bit to be copied.
+     * @param dest      the destination bit set.
+     * @param destindex the index of the first bit in the destination.
+     * @param count     the number of bits to be copied.
+     * @throws IndexOutOfBoundsException if a range is out of bounds.
+     */
+    public final void copyTo(int index, long[] dest, int destindex, int count)
+      throws IndexOutOfBoundsException {
+    checkRange(index, count);
+    if (destindex < 0 || (long) destindex + count > (long) dest.length * 64) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int k = 0; k < count; ) {
+      int pos = destindex + k;
+      int shift = pos & 63;
+      int take = Math.min(64 - shift, count - k);
+      long mask = ((take == 64) ? -1L : ((1L << take) - 1)) << shift;
+      long bits = getBits(index + k, take);
+      dest[pos >>> 6] = (dest[pos >>> 6] & ~mask) | ((bits << shift) & mask);
+      k += take;
+    }
+  }//copyTo
+
+    /**
+     * Copies a range of bits from the given bit set, laid out like
+     * <tt>java.util.BitSet.toLongArray()</tt>, into this <tt>BitVector</tt>.
+     *
+     * @param src      the source bit set.
+     * @param srcindex the index of the first bit in the source.
+     * @param index    the index of the first bit to be set.
+     * @param count    the number of bits to be copied.
+     * @throws IndexOutOfBoundsException if a range is out of bounds.
+     */
+    public final void copyFrom(long[] src, int srcindex, int index, int count)
+      throws IndexOutOfBoundsException {
+    checkRange(index, count);
+    if (srcindex < 0 || (long) srcindex + count > (long) src.length * 64) {
+      throw new IndexOutOfBoundsException();
+    }
+    for (int k = 0; k < count; ) {
+      int pos = srcindex + k;
+      int shift = pos & 63;
+      int take = Math.min(64 - shift, count - k);
+      setBits(index + k, take, src[pos >>> 6] >>> shift);
+      k += take;
+    }
+  }//copyFrom
+
+    /**
+     * Copies a range of bits from the given <tt>BitVector</tt>
+     * into this one, shifting them from the source to the
+     * destination index. Source and destination may be the
+     * same <tt>BitVector</tt>, with overlapping ranges.
+     *
+     * @param src      the source <tt>BitVector</tt>.
+     * @param srcindex the index of the first bit in the source.
+     * @param index    the index of the first bit to be set.
+     * @param count    the number of bits to be copied.
+     * @throws IndexOutOfBoundsException if a range is out of bounds.
+     */
+    public final void copyFrom(BitVector src, int srcindex, int index, int count)
+      throws IndexOutOfBoundsException {
+    src.checkRange(srcindex, count);
+    checkRange(index, count);
+    if (src == this && index > srcindex && index < srcindex + count) {
+      //overlapping towards higher indices, copy from the end
+      for (int k = count; k > 0; ) {
+        int take = Math.min(64, k);
+        k -= take;
+        setBits(index + k, take, src.getBits(srcindex + k, take));
+      }
+    } else {
+      for (int k = 0; k < count; ) {
+        int take = Math.min(64, count - k);
+        setBits(index + k, take, src.getBits(srcindex + k, take));
+        k += take;
+      }
+    }
+  }//copyFrom
+
+    /**
+     * Returns the number of set bits in this <tt>BitVector</tt>.
+     *
+     * @return the number of set bits as <tt>int</tt>.
+     */
+    public final int cardinality() {
+    //whole bytes hold the same bits in either access mode
+    int full = m_Size >>> 3;
+    int count = 0;
+    for (int i = 0; i < full; i++) {
+      count += Integer.bitCount(m_Data[i] & 0xff);
+    }
+    for (int i = full << 3; i < m_Size; i++) {
+      if (getBit(i)) {
+        count++;
+      }
+    }
+    return count;
+  }//cardinality
+
+    /**
+     * Returns the index of the first set bit at or after
+     * the given index.
+     *
+     * @param from the index to start searching from.
+     * @return the index of the set bit, or -1 if there is none.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public final int nextSetBit(int from)
+      throws IndexOutOfBoundsException {
+    if (from < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (from >= m_Size) {
+      return -1;
+    }
+    if (m_MSBAccess) {
+      for (int i = from; i < m_Size; i++) {
+        if (getBit(i)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int b = from >>> 3;
+    int value = (m_Data[b] & 0xff) & (0xff << (from & 7));
+    for (; ; ) {
+      if (value != 0) {
+        int idx = (b << 3) + Integer.numberOfTrailingZeros(value);
+        return (idx < m_Size) ? idx : -1;
+      }
+      if (++b >= m_Data.length) {
+        return -1;
+      }
+      value = m_Data[b] & 0xff;
+    }
+  }//nextSetBit
+
+    /**
+     * Sets each bit of this <tt>BitVector</tt> to the exclusive or
+     * of itself and the corresponding bit of the given one, so that
+     * afterwards exactly the bits that differed are set (see
+     * {@link #nextSetBit(int)} and {@link #cardinality()}).
+     * Only the first <tt>min(size(), other.size())</tt> bits are affected.
+     *
+     * @param other the <tt>BitVector</tt> to compare to.
+     */
+    public final void xor(BitVector other) {
+    int size = Math.min(m_Size, other.m_Size);
+    int start = 0;
+    if (m_MSBAccess == other.m_MSBAccess) {
+      //same layout, whole bytes at once
+      start = (size >>> 3) << 3;
+      for (int i = 0; i < (size >>> 3); i++) {
+        m_Data[i] ^= other.m_Data[i];
+      }
+    }
+    for (int i = start; i < size; i++) {
+      if (other.getBit(i)) {
+        setBit(i, !getBit(i));
+      }
+    }
+  }//xor
+
   /**
    * Returns a <tt>String</tt> representing the
    * contents of the bit collection in a way that
@@ -270,6 +492,51 @@ public final class BitVector {
     }
   }//bitIndex
 
+  /**
+   * Checks that the given range lies within this <tt>BitVector</tt>.
+   *
+   * @param index the index of the first bit.
+   * @param count the number of bits.
+   * @throws IndexOutOfBoundsException if the range is out of bounds.
+   */
+  private void checkRange(int index, int count)
+      throws IndexOutOfBoundsException {
+    if (index < 0 || count < 0 || index + count > m_Size || index + count < 0) {
+      throw new IndexOutOfBoundsException();
+    }
+  }//checkRange
+
+  /**
+   * Reads up to 64 bits with LSB access, a byte at a time.
+   */
+  private long readBits(int index, int count) {
+    long value = 0;
+    for (int k = 0; k < count; ) {
+      int pos = index + k;
+      int shift = pos & 7;
+      int take = Math.min(8 - shift, count - k);
+      long bits = ((m_Data[pos >>> 3] & 0xff) >>> shift) & ((1 << take) - 1);
+      value |= bits << k;
+      k += take;
+    }
+    return value;
+  }//readBits
+
+  /**
+   * Writes up to 64 bits with LSB access, a byte at a time.
+   */
+  private void writeBits(int index, int count, long bits) {
+    for (int k = 0; k < count; ) {
+      int pos = index + k;
+      int shift = pos & 7;
+      int take = Math.min(8 - shift, count - k);
+      int mask = ((1 << take) - 1) << shift;
+      int value = ((int) (bits >>> k) << shift) & mask;
+      m_Data[pos >>> 3] = (byte) ((m_Data[pos >>> 3] & ~mask) | value);
+      k += take;
+    }
+  }//writeBits
+
   private final int translateIndex(int idx) {
     if (m_MSBAccess) {
       int mod4 = idx % 4;
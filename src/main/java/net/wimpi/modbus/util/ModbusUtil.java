@@ -31,8 +31,7 @@ import java.io.IOException;
  */
 public final class ModbusUtil {
 
-  private static BytesOutputStream m_ByteOut =
-      new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+  private static final char[] c_HexDigits = "0123456789abcdef".toCharArray();
 
     /**
      * Converts a <tt>ModbusMessage</tt> instance into
@@ -44,11 +43,9 @@ public final class ModbusUtil {
     public static final String toHex(ModbusMessage msg) {
     String ret = "-1";
     try {
-      synchronized (m_ByteOut) {
-        msg.writeTo(m_ByteOut);
-        ret = toHex(m_ByteOut.getBuffer(), 0, m_ByteOut.size());
-        m_ByteOut.reset();
-      }
+      BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+      msg.writeTo(out);
+      ret = toHex(out.getBuffer(), 0, out.size());
     } catch (IOException ex) {
     }
     return ret;
@@ -77,21 +74,59 @@ public final class ModbusUtil {
      * @return the generated hexadecimal representation as <code>String</code>.
      */
     public static final String toHex(byte[] data, int off, int length) {
-    //double size, two bytes (hex range) for one byte
-    StringBuffer buf = new StringBuffer(data.length * 2);
-    for (int i = off; i < length; i++) {
-      //don't forget the second hex digit
-      if (((int) data[i] & 0xff) < 0x10) {
-        buf.append("0");
-      }
-      buf.append(Long.toString((int) data[i] & 0xff, 16));
-      if (i < data.length - 1) {
-        buf.append(" ");
+    if (length <= 0) {
+      return "";
+    }
+    //two hex digits and a separator for each byte
+    char[] buf = new char[length * 3 - 1];
+    for (int i = 0, j = 0; i < length; i++) {
+      int b = data[off + i] & 0xff;
+      if (i > 0) {
+        buf[j++] = ' ';
       }
+      buf[j++] = c_HexDigits[b >>> 4];
+      buf[j++] = c_HexDigits[b & 0x0f];
     }
-    return buf.toString();
+    return new String(buf);
   }//toHex
 
+    /**
+     * Returns an object whose <tt>toString()</tt> method returns
+     * the given bytes hex encoded, as {@link #toHex(byte[], int, int)}.
+     * <p>
+     * This allows to pass frames as logging arguments, which are
+     * only encoded if the message is actually logged. The bytes
+     * are not copied, so the object must not be kept beyond the
+     * logging call if the buffer is reused.
+     *
+     * @param data   the array of bytes to be converted into a hex-string.
+     * @param off    the offset to start converting from.
+     * @param length the number of bytes to be converted.
+     * @return an <tt>Object</tt> formatting the bytes on demand.
+     */
+    public static final Object hexOf(final byte[] data, final int off, final int length) {
+    return new Object() {
+      public String toString() {
+        return toHex(data, off, length);
+      }//toString
+    };
+  }//hexOf
+
+    /**
+     * Returns an object whose <tt>toString()</tt> method returns
+     * the given message hex encoded, as {@link #toHex(ModbusMessage)}.
+     *
+     * @param msg the message to be converted.
+     * @return an <tt>Object</tt> formatting the message on demand.
+     */
+    public static final Object hexOf(final ModbusMessage msg) {
+    return new Object() {
+      public String toString() {
+        return toHex(msg);
+      }//toString
+    };
+  }//hexOf
+
     /**
      * Returns a <tt>byte[]</tt> containing the given
      * byte as unsigned hexadecimal number digits.
@@ -0,0 +1,487 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.Register;
+
+import java.util.Arrays;
+
+/**
+ * Class describing the typed fields of a block of
+ * registers, for decoding and encoding all fields in
+ * one pass.
+ * <p>
+ * Fields are added with a type, optionally combined with
+ * {@link #WORD_SWAP} (least significant word first) and
+ * {@link #BYTE_SWAP} (low byte first within each word), and
+ * an offset in words relative to the start of the block:
+ * <pre>
+ * RegisterSchema schema = new RegisterSchema();
+ * int voltage = schema.addField(RegisterSchema.FLOAT32 | RegisterSchema.WORD_SWAP);
+ * int status = schema.addField(RegisterSchema.UINT16, 10);
+ * int name = schema.addString(8);
+ * ...
+ * InputRegister[] regs = master.readMultipleRegisters(ref, schema.getWordCount());
+ * schema.decode(regs, 0, values, strings);
+ * double v = values[voltage];
+ * </pre>
+ * Numeric fields are decoded into a <tt>double[]</tt>
+ * indexed by field, without allocating objects; 64 bit
+ * integers beyond 2<sup>53</sup> lose precision. String fields
+ * hold two 8 bit characters per register, are terminated by
+ * the first zero character and decode into a <tt>String[]</tt>.
+ * <p>
+ * A schema is not modified by decoding or encoding,
+ * so it can be shared once all fields are added.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public final class RegisterSchema {
+
+  /**
+   * Defines a signed 16 bit field.
+   */
+  public static final int INT16 = 1;
+
+  /**
+   * Defines an unsigned 16 bit field.
+   */
+  public static final int UINT16 = 2;
+
+  /**
+   * Defines a signed 32 bit field (two registers).
+   */
+  public static final int INT32 = 3;
+
+  /**
+   * Defines an unsigned 32 bit field (two registers).
+   */
+  public static final int UINT32 = 4;
+
+  /**
+   * Defines a signed 64 bit field (four registers).
+   */
+  public static final int INT64 = 5;
+
+  /**
+   * Defines an IEEE 754 single precision field (two registers).
+   */
+  public static final int FLOAT32 = 6;
+
+  /**
+   * Defines an IEEE 754 double precision field (four registers).
+   */
+  public static final int FLOAT64 = 7;
+
+  /**
+   * Defines a string field of a given number of registers.
+   */
+  public static final int STRING = 8;
+
+  /**
+   * Flag for fields spanning several registers that
+   * start with the least significant register.
+   */
+  public static final int WORD_SWAP = 0x100;
+
+  /**
+   * Flag for fields with the low byte of each
+   * register first.
+   */
+  public static final int BYTE_SWAP = 0x200;
+
+  private static final int TYPE_MASK = 0xff;
+  private static final long BYTE_MASK = 0x00ff00ff00ff00ffL;
+
+  private int[] m_Types = new int[8];
+  private int[] m_Offsets = new int[8];
+  private int[] m_Words = new int[8];
+  private int m_FieldCount;
+  private int m_WordCount;
+
+    /**
+     * Constructs a new, empty <tt>RegisterSchema</tt>.
+     */
+    public RegisterSchema() {
+  }//constructor
+
+    /**
+     * Adds a numeric field directly after the
+     * last register used by the fields added so far.
+     *
+     * @param type the type of the field, optionally combined with
+     *             <tt>WORD_SWAP</tt> and <tt>BYTE_SWAP</tt>.
+     * @return the index of the field.
+     * @throws IllegalArgumentException if the type is not numeric.
+     */
+    public int addField(int type) {
+    return addField(type, m_WordCount);
+  }//addField
+
+    /**
+     * Adds a numeric field at the given offset.
+     *
+     * @param type   the type of the field, optionally combined with
+     *               <tt>WORD_SWAP</tt> and <tt>BYTE_SWAP</tt>.
+     * @param offset the offset of the field in registers.
+     * @return the index of the field.
+     * @throws IllegalArgumentException if the type is not numeric.
+     */
+    public int addField(int type, int offset) {
+    if ((type & TYPE_MASK) == STRING) {
+      throw new IllegalArgumentException("String fields need a length");
+    }
+    return addField(type, offset, 0);
+  }//addField
+
+    /**
+     * Adds a string field of the given number of registers
+     * directly after the last register used by the fields
+     * added so far.
+     *
+     * @param words the length of the field in registers.
+     * @return the index of the field.
+     */
+    public int addString(int words) {
+    return addField(STRING, m_WordCount, words);
+  }//addString
+
+    /**
+     * Adds a field at the given offset.
+     *
+     * @param type   the type of the field, optionally combined with
+     *               <tt>WORD_SWAP</tt> and <tt>BYTE_SWAP</tt>.
+     * @param offset the offset of the field in registers.
+     * @param words  the length of a string field in registers;
+     *               ignored for numeric fields.
+     * @return the index of the field.
+     * @throws IllegalArgumentException if the type, offset or
+     *                                  length is not valid.
+     */
+    public int addField(int type, int offset, int words) {
+    int base = type & TYPE_MASK;
+    if (base < INT16 || base > STRING || (type & ~(TYPE_MASK | WORD_SWAP | BYTE_SWAP)) != 0) {
+      throw new IllegalArgumentException("Invalid field type " + type);
+    }
+    if (base != STRING) {
+      words = wordsOf(base);
+    }
+    if (offset < 0 || words < 1) {
+      throw new IllegalArgumentException("Invalid field offset or length");
+    }
+    if (m_FieldCount == m_Types.length) {
+      int size = m_FieldCount * 2;
+      m_Types = Arrays.copyOf(m_Types, size);
+      m_Offsets = Arrays.copyOf(m_Offsets, size);
+      m_Words = Arrays.copyOf(m_Words, size);
+    }
+    m_Types[m_FieldCount] = type;
+    m_Offsets[m_FieldCount] = offset;
+    m_Words[m_FieldCount] = words;
+    m_WordCount = Math.max(m_WordCount, offset + words);
+    return m_FieldCount++;
+  }//addField
+
+    /**
+     * Returns the number of fields of this schema.
+     *
+     * @return the number of fields as <tt>int</tt>.
+     */
+    public int getFieldCount() {
+    return m_FieldCount;
+  }//getFieldCount
+
+    /**
+     * Returns the number of registers spanned by the
+     * fields of this schema, i.e. the number of registers
+     * to read or write.
+     *
+     * @return the number of registers as <tt>int</tt>.
+     */
+    public int getWordCount() {
+    return m_WordCount;
+  }//getWordCount
+
+    /**
+     * Returns the offset of a field.
+     *
+     * @param field the index of the field.
+     * @return the offset in registers.
+     */
+    public int getOffset(int field) {
+    return m_Offsets[field];
+  }//getOffset
+
+    /**
+     * Returns the type of a field, including its flags.
+     *
+     * @param field the index of the field.
+     * @return the type as <tt>int</tt>.
+     */
+    public int getType(int field) {
+    return m_Types[field];
+  }//getType
+
+    /**
+     * Decodes all fields from the given registers.
+     *
+     * @param regs    the registers.
+     * @param off     the index of the register the block starts at.
+     * @param values  receives the numeric fields by field index; string
+     *                fields are set to <tt>NaN</tt>.
+     * @param strings receives the string fields by field index; may be
+     *                null if the strings are not needed.
+     * @throws IndexOutOfBoundsException if the registers or arrays
+     *                                   are too short.
+     */
+    public void decode(InputRegister[] regs, int off, double[] values, String[] strings) {
+    checkBounds(regs.length, off, values.length);
+    for (int i = 0; i < m_FieldCount; i++) {
+      int type = m_Types[i];
+      int base = off + m_Offsets[i];
+      int words = m_Words[i];
+      boolean wordswap = (type & WORD_SWAP) != 0;
+      long raw = 0;
+      for (int k = 0; k < words && words <= 4; k++) {
+        raw = (raw << 16) | regs[base + (wordswap ? words - 1 - k : k)].toUnsignedShort();
+      }
+      if ((type & TYPE_MASK) == STRING) {
+        values[i] = Double.NaN;
+        if (strings != null) {
+          char[] chars = new char[words * 2];
+          for (int k = 0; k < words; k++) {
+            setChars(chars, k, regs[base + k].toUnsignedShort(), type);
+          }
+          strings[i] = toString(chars);
+        }
+      } else {
+        values[i] = toDouble(type, raw);
+      }
+    }
+  }//decode
+
+    /**
+     * Decodes all fields from the given register values
+     * (16 bit words).
+     *
+     * @param words   the register values.
+     * @param off     the index of the value the block starts at.
+     * @param values  receives the numeric fields by field index; string
+     *                fields are set to <tt>NaN</tt>.
+     * @param strings receives the string fields by field index; may be
+     *                null if the strings are not needed.
+     * @throws IndexOutOfBoundsException if the words or arrays
+     *                                   are too short.
+     */
+    public void decode(int[] words, int off, double[] values, String[] strings) {
+    checkBounds(words.length, off, values.length);
+    for (int i = 0; i < m_FieldCount; i++) {
+      int type = m_Types[i];
+      int base = off + m_Offsets[i];
+      int len = m_Words[i];
+      boolean wordswap = (type & WORD_SWAP) != 0;
+      long raw = 0;
+      for (int k = 0; k < len && len <= 4; k++) {
+        raw = (raw << 16) | (words[base + (wordswap ? len - 1 - k : k)] & 0xffff);
+      }
+      if ((type & TYPE_MASK) == STRING) {
+        values[i] = Double.NaN;
+        if (strings != null) {
+          char[] chars = new char[len * 2];
+          for (int k = 0; k < len; k++) {
+            setChars(chars, k, words[base + k] & 0xffff, type);
+          }
+          strings[i] = toString(chars);
+        }
+      } else {
+        values[i] = toDouble(type, raw);
+      }
+    }
+  }//decode
+
+    /**
+     * Encodes all fields into the given registers, for
+     * writing them. Integer fields are rounded to the
+     * nearest integer.
+     *
+     * @param values  the numeric fields by field index.
+     * @param strings the string fields by field index; may be null if the
+     *                schema has no string fields. A string is cut or
+     *                padded with zero characters to the field length.
+     * @param regs    the registers to be set.
+     * @param off     the index of the register the block starts at.
+     * @throws IndexOutOfBoundsException if the registers or arrays
+     *                                   are too short.
+     */
+    public void encode(double[] values, String[] strings, Register[] regs, int off) {
+    checkBounds(regs.length, off, values.length);
+    for (int i = 0; i < m_FieldCount; i++) {
+      int type = m_Types[i];
+      int base = off + m_Offsets[i];
+      int words = m_Words[i];
+      if ((type & TYPE_MASK) == STRING) {
+        String s = (strings == null) ? null : strings[i];
+        for (int k = 0; k < words; k++) {
+          regs[base + k].setValue(getChars(s, k, type));
+        }
+      } else {
+        boolean wordswap = (type & WORD_SWAP) != 0;
+        long raw = toRaw(type, values[i]);
+        for (int k = words - 1; k >= 0; k--) {
+          regs[base + (wordswap ? words - 1 - k : k)].setValue((int) raw & 0xffff);
+          raw >>>= 16;
+        }
+      }
+    }
+  }//encode
+
+    /**
+     * Encodes all fields into the given register values
+     * (16 bit words), for writing them. Integer fields are
+     * rounded to the nearest integer.
+     *
+     * @param values  the numeric fields by field index.
+     * @param strings the string fields by field index; may be null if the
+     *                schema has no string fields. A string is cut or
+     *                padded with zero characters to the field length.
+     * @param words   the register values to be set.
+     * @param off     the index of the value the block starts at.
+     * @throws IndexOutOfBoundsException if the words or arrays
+     *                                   are too short.
+     */
+    public void encode(double[] values, String[] strings, int[] words, int off) {
+    checkBounds(words.length, off, values.length);
+    for (int i = 0; i < m_FieldCount; i++) {
+      int type = m_Types[i];
+      int base = off + m_Offsets[i];
+      int len = m_Words[i];
+      if ((type & TYPE_MASK) == STRING) {
+        String s = (strings == null) ? null : strings[i];
+        for (int k = 0; k < len; k++) {
+          words[base + k] = getChars(s, k, type);
+        }
+      } else {
+        boolean wordswap = (type & WORD_SWAP) != 0;
+        long raw = toRaw(type, values[i]);
+        for (int k = len - 1; k >= 0; k--) {
+          words[base + (wordswap ? len - 1 - k : k)] = (int) raw & 0xffff;
+          raw >>>= 16;
+        }
+      }
+    }
+  }//encode
+
+  private void checkBounds(int length, int off, int fields) {
+    if (off < 0 || off + m_WordCount > length || fields < m_FieldCount) {
+      throw new IndexOutOfBoundsException();
+    }
+  }//checkBounds
+
+  private static int wordsOf(int base) {
+    switch (base) {
+      case INT16:
+      case UINT16:
+        return 1;
+      case INT32:
+      case UINT32:
+      case FLOAT32:
+        return 2;
+      default:
+        return 4;
+    }
+  }//wordsOf
+
+  /**
+   * Converts the registers of a numeric field, most
+   * significant register first, into its value.
+   */
+  private static double toDouble(int type, long raw) {
+    if ((type & BYTE_SWAP) != 0) {
+      raw = ((raw & BYTE_MASK) << 8) | ((raw >>> 8) & BYTE_MASK);
+    }
+    switch (type & TYPE_MASK) {
+      case INT16:
+        return (short) raw;
+      case UINT16:
+        return raw;
+      case INT32:
+        return (int) raw;
+      case UINT32:
+        return raw;
+      case INT64:
+        return raw;
+      case FLOAT32:
+        return Float.intBitsToFloat((int) raw);
+      default:
+        return Double.longBitsToDouble(raw);
+    }
+  }//toDouble
+
+  /**
+   * Converts the value of a numeric field into its
+   * registers, most significant register first.
+   */
+  private static long toRaw(int type, double value) {
+    long raw;
+    switch (type & TYPE_MASK) {
+      case FLOAT32:
+        raw = Float.floatToIntBits((float) value) & 0xffffffffL;
+        break;
+      case FLOAT64:
+        raw = Double.doubleToLongBits(value);
+        break;
+      default:
+        //integer types keep the low order bits
+        raw = Math.round(value);
+    }
+    if ((type & BYTE_SWAP) != 0) {
+      raw = ((raw & BYTE_MASK) << 8) | ((raw >>> 8) & BYTE_MASK);
+    }
+    return raw;
+  }//toRaw
+
+  private static void setChars(char[] chars, int k, int word, int type) {
+    if ((type & BYTE_SWAP) != 0) {
+      chars[k * 2] = (char) (word & 0xff);
+      chars[k * 2 + 1] = (char) (word >>> 8);
+    } else {
+      chars[k * 2] = (char) (word >>> 8);
+      chars[k * 2 + 1] = (char) (word & 0xff);
+    }
+  }//setChars
+
+  private static int getChars(String s, int k, int type) {
+    int hi = charAt(s, k * 2);
+    int lo = charAt(s, k * 2 + 1);
+    return ((type & BYTE_SWAP) != 0) ? (lo << 8) | hi : (hi << 8) | lo;
+  }//getChars
+
+  private static int charAt(String s, int idx) {
+    return (s == null || idx >= s.length()) ? 0 : s.charAt(idx) & 0xff;
+  }//charAt
+
+  private static String toString(char[] chars) {
+    int len = 0;
+    while (len < chars.length && chars[len] != 0) {
+      len++;
+    }
+    return new String(chars, 0, len);
+  }//toString
+
+}//class RegisterSchema
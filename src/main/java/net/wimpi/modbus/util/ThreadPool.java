@@ -16,6 +16,9 @@
 
 package net.wimpi.modbus.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Class implementing a simple thread pool.
  *
@@ -24,6 +27,8 @@ package net.wimpi.modbus.util;
  */
 public class ThreadPool {
 
+  private static final Logger c_Log = LoggerFactory.getLogger(ThreadPool.class);
+
   //instance attributes and associations
   private LinkedQueue m_TaskPool;
   private int m_Size = 1;
@@ -86,7 +91,7 @@ public class ThreadPool {
           ((Runnable) m_TaskPool.take()).run();
         } catch (Exception ex) {
           //FIXME: Handle somehow!?
-          ex.printStackTrace();
+          c_Log.warn("Task failed.", ex);
         }
       } while (true);
     }
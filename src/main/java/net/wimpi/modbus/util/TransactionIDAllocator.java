@@ -0,0 +1,173 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import net.wimpi.modbus.Modbus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class implementing a lock-free allocator for transaction
+ * identifiers.
+ * <p>
+ * Each connection owns an allocator, so that identifiers
+ * are unique per connection rather than per JVM. Identifiers
+ * run from 1 to {@link Modbus#MAX_TRANSACTION_ID} and wrap
+ * around; identifiers that are still in flight (allocated
+ * and not yet released) are skipped, which allows to match
+ * responses to pipelined requests.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class TransactionIDAllocator {
+
+  //instance attributes
+  private final AtomicInteger m_Last;
+  private final AtomicInteger m_InFlight = new AtomicInteger();
+  private final AtomicLongArray m_Used =
+      new AtomicLongArray((Modbus.MAX_TRANSACTION_ID >> 6) + 1);
+
+    /**
+     * Constructs a new <tt>TransactionIDAllocator</tt>.
+     */
+    public TransactionIDAllocator() {
+    this(Modbus.DEFAULT_TRANSACTION_ID);
+  }//constructor
+
+    /**
+     * Constructs a new <tt>TransactionIDAllocator</tt>
+     * continuing after the given identifier.
+     *
+     * @param last the identifier allocated last.
+     */
+    public TransactionIDAllocator(int last) {
+    m_Last = new AtomicInteger(last);
+  }//constructor
+
+    /**
+     * Allocates the next free identifier and marks it
+     * as in flight until it is released.
+     *
+     * @return the identifier as <tt>int</tt>.
+     * @throws IllegalStateException if all identifiers are in flight.
+     */
+    public int allocate() {
+    for (int n = 0; n < Modbus.MAX_TRANSACTION_ID; n++) {
+      int id = next();
+      if (mark(id)) {
+        m_InFlight.incrementAndGet();
+        return id;
+      }
+    }
+    throw new IllegalStateException("All transaction identifiers in flight.");
+  }//allocate
+
+    /**
+     * Returns the next identifier without marking it
+     * as in flight.
+     *
+     * @return the identifier as <tt>int</tt>.
+     */
+    public int next() {
+    for (; ; ) {
+      int last = m_Last.get();
+      int id = (last >= Modbus.MAX_TRANSACTION_ID) ? 1 : last + 1;
+      if (m_Last.compareAndSet(last, id)) {
+        return id;
+      }
+    }
+  }//next
+
+    /**
+     * Releases the given identifier, so that it can be
+     * allocated again.
+     *
+     * @param id the identifier to be released.
+     * @return true if the identifier was in flight, false otherwise.
+     */
+    public boolean release(int id) {
+    if (id < 0 || id > Modbus.MAX_TRANSACTION_ID) {
+      return false;
+    }
+    int word = id >> 6;
+    long bit = 1L << (id & 63);
+    for (; ; ) {
+      long used = m_Used.get(word);
+      if ((used & bit) == 0) {
+        return false;
+      }
+      if (m_Used.compareAndSet(word, used, used & ~bit)) {
+        m_InFlight.decrementAndGet();
+        return true;
+      }
+    }
+  }//release
+
+    /**
+     * Tests if the given identifier is in flight.
+     *
+     * @param id the identifier to be tested.
+     * @return true if allocated and not yet released, false otherwise.
+     */
+    public boolean isInFlight(int id) {
+    if (id < 0 || id > Modbus.MAX_TRANSACTION_ID) {
+      return false;
+    }
+    return (m_Used.get(id >> 6) & (1L << (id & 63))) != 0;
+  }//isInFlight
+
+    /**
+     * Returns the number of identifiers in flight.
+     *
+     * @return the number as <tt>int</tt>.
+     */
+    public int getInFlightCount() {
+    return m_InFlight.get();
+  }//getInFlightCount
+
+    /**
+     * Returns the identifier handed out last.
+     *
+     * @return the identifier as <tt>int</tt>.
+     */
+    public int get() {
+    return m_Last.get();
+  }//get
+
+  /**
+   * Marks the given identifier as in flight.
+   *
+   * @param id the identifier.
+   * @return true if marked, false if it was already in flight.
+   */
+  private boolean mark(int id) {
+    int word = id >> 6;
+    long bit = 1L << (id & 63);
+    for (; ; ) {
+      long used = m_Used.get(word);
+      if ((used & bit) != 0) {
+        return false;
+      }
+      if (m_Used.compareAndSet(word, used, used | bit)) {
+        return true;
+      }
+    }
+  }//mark
+
+}//class TransactionIDAllocator
@@ -0,0 +1,211 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the bit streams and the block compression
+ * of the historian.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class BlockEncoderTest {
+
+  @Test
+  public void bitStreamRoundTrip() {
+    Random rnd = new Random(3);
+    int n = 5000;
+    long[] values = new long[n];
+    int[] counts = new int[n];
+    BitOutput out = new BitOutput(16);
+    int bits = 0;
+    for (int i = 0; i < n; i++) {
+      counts[i] = 1 + rnd.nextInt(64);
+      values[i] = rnd.nextLong();
+      out.writeBits(values[i], counts[i]);
+      bits += counts[i];
+    }
+    assertEquals((bits + 7) / 8, out.getByteLength());
+
+    BitInput in = new BitInput(out.getBuffer(), 0);
+    for (int i = 0; i < n; i++) {
+      long mask = (counts[i] == 64) ? -1L : (1L << counts[i]) - 1;
+      assertEquals("value " + i, values[i] & mask, in.readBits(counts[i]));
+    }
+  }//bitStreamRoundTrip
+
+  @Test
+  public void bitStreamOffsetAndReset() {
+    BitOutput out = new BitOutput(1);
+    out.writeBit(true);
+    out.writeBits(0x5, 3);
+    out.writeBits(-1L, 64);
+    byte[] data = new byte[3 + out.getByteLength()];
+    System.arraycopy(out.getBuffer(), 0, data, 3, out.getByteLength());
+    BitInput in = new BitInput(data, 3);
+    assertEquals(true, in.readBit());
+    assertEquals(0x5, in.readBits(3));
+    assertEquals(-1L, in.readBits(64));
+
+    out.reset();
+    assertEquals(0, out.getByteLength());
+    out.writeBits(0x2, 2);
+    assertEquals((byte) 0x80, out.getBuffer()[0]);
+  }//bitStreamOffsetAndReset
+
+  @Test
+  public void allDeltaOfDeltaRanges() {
+    //delta of deltas at the edges of each code length,
+    //the 64 bit escape, and equal times
+    long[] dods = {0, 0, 64, -63, 65, -64, 256, -255, 257, -256,
+        2048, -2047, 2049, -2048, 1000000000000L, -1000000000000L, -5006, 0, 1000};
+    long[] times = new long[dods.length + 2];
+    times[0] = 1500000000000L;
+    long delta = 5000;
+    times[1] = times[0] + delta;
+    for (int i = 0; i < dods.length; i++) {
+      delta += dods[i];
+      times[i + 2] = times[i + 1] + delta;
+    }
+    double[] values = new double[times.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    assertRoundTrip(times, values);
+  }//allDeltaOfDeltaRanges
+
+  @Test
+  public void specialValues() {
+    double[] values = {0.0, -0.0, -0.0, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1.0,
+        Double.longBitsToDouble(Double.doubleToLongBits(1.0) | 1), 1.0, -1.0, 42, 42, 42, 0};
+    long[] times = new long[values.length];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = i * 1000L;
+    }
+    assertRoundTrip(times, values);
+  }//specialValues
+
+  @Test
+  public void randomBlocks() {
+    Random rnd = new Random(7);
+    for (int run = 0; run < 50; run++) {
+      int n = 1 + rnd.nextInt(2000);
+      long[] times = new long[n];
+      double[] values = new double[n];
+      times[0] = rnd.nextLong() >> 8;
+      values[0] = rnd.nextDouble();
+      for (int i = 1; i < n; i++) {
+        int jitter = 1 << (1 + rnd.nextInt(20));
+        times[i] = times[i - 1] + 1000 + rnd.nextInt(jitter);
+        switch (rnd.nextInt(4)) {
+          case 0:
+            values[i] = values[i - 1];
+            break;
+          case 1:
+            values[i] = values[i - 1] + rnd.nextInt(3);
+            break;
+          case 2:
+            values[i] = Math.round(rnd.nextGaussian() * 100) / 10.0;
+            break;
+          default:
+            values[i] = Double.longBitsToDouble(rnd.nextLong());
+        }
+      }
+      assertRoundTrip(times, values);
+    }
+  }//randomBlocks
+
+  @Test
+  public void rangeFilter() {
+    int n = 100;
+    long[] times = new long[n];
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      //pairs of equal times
+      times[i] = 10000 + (i / 2) * 100;
+      values[i] = i;
+    }
+    BlockEncoder enc = encode(times, values);
+    assertRange(enc, times, values, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertRange(enc, times, values, 10000, 10000);
+    assertRange(enc, times, values, 10050, 12000);
+    assertRange(enc, times, values, 12000, 12099);
+    assertRange(enc, times, values, 14900, 20000);
+    assertRange(enc, times, values, 0, 9999);
+    assertRange(enc, times, values, 20000, 30000);
+  }//rangeFilter
+
+  private static BlockEncoder encode(long[] times, double[] values) {
+    BlockEncoder enc = new BlockEncoder();
+    for (int i = 0; i < times.length; i++) {
+      enc.append(times[i], values[i]);
+    }
+    assertEquals(times.length, enc.getCount());
+    assertEquals(times[0], enc.getFirstTime());
+    assertEquals(times[times.length - 1], enc.getLastTime());
+    return enc;
+  }//encode
+
+  private static void assertRoundTrip(long[] times, double[] values) {
+    BlockEncoder enc = encode(times, values);
+    TimeSeries series = new TimeSeries();
+    int n = BlockEncoder.decode(enc.getTimes(), 0, enc.getValues(), 0,
+        enc.getFirstTime(), enc.getCount(), Long.MIN_VALUE, Long.MAX_VALUE, series);
+    assertEquals(times.length, n);
+    assertEquals(times.length, series.getSize());
+    for (int i = 0; i < times.length; i++) {
+      assertEquals("time " + i, times[i], series.getTime(i));
+      assertEquals("value " + i, Double.doubleToRawLongBits(values[i]),
+          Double.doubleToRawLongBits(series.getValue(i)));
+    }
+
+    //decoding again after a reset and reuse
+    enc.reset();
+    assertEquals(0, enc.getCount());
+    enc.append(times[0], values[0]);
+    series = new TimeSeries();
+    BlockEncoder.decode(enc.getTimes(), 0, enc.getValues(), 0,
+        enc.getFirstTime(), enc.getCount(), Long.MIN_VALUE, Long.MAX_VALUE, series);
+    assertEquals(1, series.getSize());
+    assertEquals(times[0], series.getTime(0));
+  }//assertRoundTrip
+
+  private static void assertRange(BlockEncoder enc, long[] times, double[] values,
+                                  long from, long to) {
+    TimeSeries series = new TimeSeries();
+    int n = BlockEncoder.decode(enc.getTimes(), 0, enc.getValues(), 0,
+        enc.getFirstTime(), enc.getCount(), from, to, series);
+    int k = 0;
+    for (int i = 0; i < times.length; i++) {
+      if (times[i] >= from && times[i] <= to) {
+        assertEquals(times[i], series.getTime(k));
+        assertEquals(values[i], series.getValue(k), 0);
+        k++;
+      }
+    }
+    assertEquals(k, n);
+    assertEquals(k, series.getSize());
+  }//assertRange
+
+}//class BlockEncoderTest
@@ -0,0 +1,205 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.historian;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests recording, querying and reopening a
+ * <tt>Historian</tt>, including segments with a
+ * record cut short by a crash.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class HistorianTest {
+
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  @Test
+  public void recordAndQuery() throws IOException {
+    Historian h = new Historian(m_Folder.getRoot());
+    h.setBlockSize(10);
+    record(h, "a", 0, 105);
+    record(h, "b", 0, 3);
+    //10 sealed blocks and an open one
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, 105);
+    assertSeries(h.query("a", 15000, 34000), 15, 35);
+    assertSeries(h.query("a", 19500, 20000), 20, 21);
+    assertSeries(h.query("a", 99000, 200000), 99, 105);
+    assertEquals(0, h.query("a", 200000, 300000).getSize());
+    assertEquals(0, h.query("a", 5000, 4000).getSize());
+    assertEquals(0, h.query("c", 0, 1000).getSize());
+    assertSeries(h.query("b", 0, 1000), 0, 2);
+    assertEquals("[a, b]", h.getPointNames().toString());
+    h.close();
+  }//recordAndQuery
+
+  @Test
+  public void reopen() throws IOException {
+    Historian h = new Historian(m_Folder.getRoot());
+    h.setBlockSize(16);
+    record(h, "a", 0, 50);
+    h.close();
+
+    h = new Historian(m_Folder.getRoot());
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, 50);
+    try {
+      h.record("a", 10000, 1);
+      fail("Recorded a sample before the last one");
+    } catch (IllegalArgumentException ex) {
+      //expected
+    }
+    record(h, "a", 50, 80);
+    h.close();
+
+    h = new Historian(m_Folder.getRoot());
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, 80);
+    h.close();
+  }//reopen
+
+  @Test
+  public void reopenAfterUncommittedRecord() throws IOException {
+    assertCrashRecovery(2, 0);
+  }//reopenAfterUncommittedRecord
+
+  @Test
+  public void reopenAfterCorruptRecordLength() throws IOException {
+    assertCrashRecovery(2, Integer.MAX_VALUE);
+    assertCrashRecovery(2, 60);
+  }//reopenAfterCorruptRecordLength
+
+  @Test
+  public void reopenAfterUncommittedRecordWithDataBehind() throws IOException {
+    //the shorter block appended after reopening leaves bytes
+    //of the lost records behind it
+    assertCrashRecovery(1, 0);
+  }//reopenAfterUncommittedRecordWithDataBehind
+
+  @Test
+  public void segmentRollover() throws IOException {
+    Random rnd = new Random(13);
+    File dir = m_Folder.getRoot();
+    Historian h = new Historian(dir);
+    h.setSegmentSize(64 * 1024);
+    h.setBlockSize(500);
+    int n = 10000;
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = rnd.nextDouble();
+      h.record("p" + (i % 3), i, values[i]);
+    }
+    h.close();
+    assertTrue(dir.list().length > 1);
+
+    h = new Historian(dir);
+    for (int p = 0; p < 3; p++) {
+      TimeSeries series = h.query("p" + p, Long.MIN_VALUE, Long.MAX_VALUE);
+      assertEquals((n - p + 2) / 3, series.getSize());
+      for (int i = 0; i < series.getSize(); i++) {
+        int idx = i * 3 + p;
+        assertEquals(idx, series.getTime(i));
+        assertEquals(values[idx], series.getValue(i), 0);
+      }
+    }
+    h.close();
+  }//segmentRollover
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outOfOrder() throws IOException {
+    Historian h = new Historian(m_Folder.getRoot());
+    try {
+      h.record("a", 2000, 1);
+      h.record("a", 2000, 2);
+      h.record("a", 1999, 3);
+    } finally {
+      h.close();
+    }
+  }//outOfOrder
+
+  /**
+   * Writes three blocks, replaces the length of the given record
+   * with the given one, as left by a crash, and checks that
+   * reopening keeps the blocks before it and recording continues.
+   */
+  private void assertCrashRecovery(int record, int length) throws IOException {
+    File dir = m_Folder.newFolder();
+    Historian h = new Historian(dir);
+    h.setBlockSize(10);
+    record(h, "a", 0, 30);
+    h.close();
+
+    RandomAccessFile raf = new RandomAccessFile(new File(dir, Segment.toFileName(0)), "rw");
+    try {
+      int pos = Segment.HEADER_LENGTH;
+      for (int i = 0; i < record; i++) {
+        raf.seek(pos);
+        pos += raf.readInt();
+      }
+      raf.seek(pos);
+      assertTrue(raf.readInt() > 0);
+      raf.seek(pos);
+      raf.writeInt(length);
+    } finally {
+      raf.close();
+    }
+
+    int kept = record * 10;
+    h = new Historian(dir);
+    h.setBlockSize(10);
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, kept);
+    record(h, "a", kept, kept + 5);
+    h.close();
+
+    h = new Historian(dir);
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, kept + 5);
+    record(h, "a", kept + 5, kept + 25);
+    h.close();
+
+    h = new Historian(dir);
+    assertSeries(h.query("a", Long.MIN_VALUE, Long.MAX_VALUE), 0, kept + 25);
+    h.close();
+  }//assertCrashRecovery
+
+  private static void record(Historian h, String point, int from, int to)
+      throws IOException {
+    for (int i = from; i < to; i++) {
+      h.record(point, i * 1000L, i * 0.5);
+    }
+  }//record
+
+  private static void assertSeries(TimeSeries series, int from, int to) {
+    assertEquals(to - from, series.getSize());
+    for (int i = 0; i < series.getSize(); i++) {
+      assertEquals((from + i) * 1000L, series.getTime(i));
+      assertEquals((from + i) * 0.5, series.getValue(i), 0);
+    }
+  }//assertSeries
+
+}//class HistorianTest
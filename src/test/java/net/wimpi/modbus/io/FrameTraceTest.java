@@ -0,0 +1,122 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests following a <tt>FrameTrace</tt> while frames
+ * are recorded and overwritten.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class FrameTraceTest {
+
+  @Test
+  public void keepsTheLatestFrames() {
+    FrameTrace trace = new FrameTrace(4, 3);
+    for (int i = 0; i < 6; i++) {
+      trace.record("tcp", i % 2 == 0, new byte[]{(byte) i, 1, 2, 3}, 0, 1 + i % 4);
+    }
+    List<FrameTrace.Frame> frames = trace.getFrames();
+    assertEquals(4, frames.size());
+    for (int i = 0; i < 4; i++) {
+      FrameTrace.Frame f = frames.get(i);
+      assertEquals(i + 2, f.getSequence());
+      assertEquals(i + 2, f.getData()[0]);
+      assertEquals(1 + (i + 2) % 4, f.getLength());
+      //truncated to the slot size
+      assertEquals(Math.min(3, f.getLength()), f.getData().length);
+    }
+    assertEquals(6, trace.getCount());
+    trace.clear();
+    assertEquals(0, trace.getFrames().size());
+  }//keepsTheLatestFrames
+
+  @Test
+  public void followsTheTrace() {
+    FrameTrace trace = new FrameTrace(4);
+    List<FrameTrace.Frame> frames = new ArrayList<FrameTrace.Frame>();
+    assertEquals(0, trace.getFrames(0, frames));
+    trace.record("rtu", true, new byte[1], 0, 1);
+    trace.record("rtu", false, new byte[1], 0, 1);
+    long next = trace.getFrames(0, frames);
+    assertEquals(2, next);
+    assertEquals(2, frames.size());
+
+    //the frames 2 and 3 are overwritten before they are read
+    frames.clear();
+    for (int i = 0; i < 6; i++) {
+      trace.record("rtu", true, new byte[1], 0, 1);
+    }
+    assertEquals(8, trace.getFrames(next, frames));
+    assertEquals(4, frames.size());
+    assertEquals(4, frames.get(0).getSequence());
+  }//followsTheTrace
+
+  @Test
+  public void concurrentRecordersLoseNothing() throws Exception {
+    final int threads = 4;
+    final int perthread = 20000;
+    final FrameTrace trace = new FrameTrace(threads * perthread);
+    Thread[] recorders = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final byte id = (byte) t;
+      recorders[t] = new Thread() {
+        public void run() {
+          byte[] frame = {id, 0, 0, 0, 0, 0, 0, 0};
+          for (int i = 0; i < perthread; i++) {
+            trace.record("tcp", true, frame, 0, frame.length);
+          }
+        }
+      };
+      recorders[t].start();
+    }
+    //follow the trace like a traffic recorder does
+    boolean[] seen = new boolean[threads * perthread];
+    List<FrameTrace.Frame> frames = new ArrayList<FrameTrace.Frame>();
+    long next = 0;
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (int t = 0; t < threads; t++) {
+        running |= recorders[t].isAlive();
+      }
+      frames.clear();
+      long n = trace.getFrames(next, frames);
+      assertEquals(n - next, frames.size());
+      for (int i = 0; i < frames.size(); i++) {
+        int seq = (int) frames.get(i).getSequence();
+        assertFalse(seen[seq]);
+        assertEquals(next + i, seq);
+        seen[seq] = true;
+      }
+      next = n;
+    }
+    frames.clear();
+    next = trace.getFrames(next, frames);
+    assertEquals(seen.length, next);
+  }//concurrentRecordersLoseNothing
+
+}//class FrameTraceTest
@@ -0,0 +1,134 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersResponse;
+import net.wimpi.modbus.net.SerialOverTCPConnection;
+import net.wimpi.modbus.util.ModbusUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests transactions sharing a <tt>SerialOverTCPConnection</tt>
+ * against a device server answering RTU frames.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusSerialOverTCPTransactionTest {
+
+  private ServerSocket m_Server;
+  private Thread m_Device;
+
+  @Before
+  public void setUp() throws IOException {
+    m_Server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    m_Device = new Thread() {
+      public void run() {
+        try {
+          Socket s = m_Server.accept();
+          s.setTcpNoDelay(true);
+          serve(new DataInputStream(s.getInputStream()), s.getOutputStream());
+        } catch (IOException ex) {
+          //closed
+        }
+      }
+    };
+    m_Device.start();
+  }//setUp
+
+  @After
+  public void tearDown() throws Exception {
+    m_Server.close();
+    m_Device.join(5000);
+  }//tearDown
+
+  @Test
+  public void sharedConnectionMatchesResponses() throws Exception {
+    final SerialOverTCPConnection con =
+        new SerialOverTCPConnection(InetAddress.getLoopbackAddress());
+    con.setPort(m_Server.getLocalPort());
+    con.connect();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] masters = new Thread[4];
+    for (int t = 0; t < masters.length; t++) {
+      final int ref = 100 * (t + 1);
+      masters[t] = new Thread() {
+        public void run() {
+          ModbusSerialOverTCPTransaction trans = new ModbusSerialOverTCPTransaction(con);
+          try {
+            for (int i = 0; i < 100; i++) {
+              trans.setRequest(new ReadMultipleRegistersRequest(ref + i, 1));
+              trans.execute();
+              ReadMultipleRegistersResponse res =
+                  (ReadMultipleRegistersResponse) trans.getResponse();
+              assertEquals(ref + i, res.getRegisterValue(0));
+            }
+          } catch (Throwable ex) {
+            failure.compareAndSet(null, ex);
+          }
+        }
+      };
+      masters[t].start();
+    }
+    for (int t = 0; t < masters.length; t++) {
+      masters[t].join();
+    }
+    con.close();
+    assertNull(String.valueOf(failure.get()), failure.get());
+  }//sharedConnectionMatchesResponses
+
+  /**
+   * Answers read holding register requests with the
+   * reference of the first register as its value.
+   */
+  private static void serve(DataInputStream in, OutputStream out) throws IOException {
+    byte[] req = new byte[8];
+    byte[] res = new byte[7];
+    while (true) {
+      in.readFully(req);
+      res[0] = req[0];
+      res[1] = req[1];
+      res[2] = 2;
+      res[3] = req[2];
+      res[4] = req[3];
+      int[] crc = ModbusUtil.calculateCRC(res, 0, 5);
+      res[5] = (byte) crc[0];
+      res[6] = (byte) crc[1];
+      //the reply is written in pieces, like a device server may deliver it
+      out.write(res, 0, 3);
+      out.flush();
+      Thread.yield();
+      out.write(res, 3, 4);
+      out.flush();
+    }
+  }//serve
+
+}//class ModbusSerialOverTCPTransactionTest
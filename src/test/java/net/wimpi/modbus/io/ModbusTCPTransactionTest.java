@@ -0,0 +1,69 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.net.TCPMasterConnection;
+import net.wimpi.modbus.util.TransactionIDAllocator;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the handling of transaction identifiers
+ * by <tt>ModbusTCPTransaction</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusTCPTransactionTest {
+
+  @Test
+  public void allIdentifiersInFlight() throws Exception {
+    ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    TCPMasterConnection con = new TCPMasterConnection(InetAddress.getLoopbackAddress());
+    try {
+      con.setPort(server.getLocalPort());
+      con.connect();
+      TransactionIDAllocator ids = con.getTransactionIDAllocator();
+      for (int i = 0; i < Modbus.MAX_TRANSACTION_ID; i++) {
+        ids.allocate();
+      }
+      ModbusTCPTransaction trans = new ModbusTCPTransaction(con);
+      trans.setRequest(new ReadMultipleRegistersRequest(0, 1));
+      try {
+        trans.execute();
+        fail("executed with all identifiers in flight");
+      } catch (ModbusIOException ex) {
+        //expected
+      }
+      //nothing was released that was not allocated by the transaction
+      assertEquals(Modbus.MAX_TRANSACTION_ID, ids.getInFlightCount());
+    } finally {
+      con.close();
+      server.close();
+    }
+  }//allIdentifiersInFlight
+
+}//class ModbusTCPTransactionTest
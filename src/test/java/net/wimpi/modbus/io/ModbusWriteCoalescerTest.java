@@ -0,0 +1,229 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.msg.WriteCoilRequest;
+import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteSingleRegisterRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests how <tt>ModbusWriteCoalescer</tt> merges queued
+ * writes into requests, and how it reports failures.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ModbusWriteCoalescerTest {
+
+  private RecordingTransaction m_Transaction;
+  private ModbusWriteCoalescer m_Coalescer;
+
+  @Before
+  public void setUp() {
+    m_Transaction = new RecordingTransaction();
+    m_Coalescer = new ModbusWriteCoalescer(m_Transaction, null, 200);
+    m_Coalescer.start();
+  }//setUp
+
+  @After
+  public void tearDown() {
+    m_Coalescer.stop();
+  }//tearDown
+
+  @Test
+  public void mergesAscendingRuns() throws Exception {
+    m_Coalescer.writeRegister(1, 10, 1);
+    m_Coalescer.writeRegister(1, 11, 2);
+    m_Coalescer.writeRegister(1, 12, 3);
+    await(m_Coalescer.writeRegister(1, 20, 4));
+    assertRequests("1 fc16 @10 [1, 2, 3]", "1 fc6 @20 [4]");
+  }//mergesAscendingRuns
+
+  @Test
+  public void keepsArrivalOrder() throws Exception {
+    //a setpoint, then a command at a lower reference
+    m_Coalescer.writeRegister(1, 100, 7);
+    m_Coalescer.writeRegister(1, 50, 1);
+    m_Coalescer.writeRegister(1, 51, 2);
+    m_Coalescer.writeRegister(1, 5, 1);
+    m_Coalescer.writeRegister(1, 5, 2);
+    m_Coalescer.writeRegister(1, 6, 3);
+    await(m_Coalescer.writeRegister(1, 5, 4));
+    assertRequests("1 fc6 @100 [7]", "1 fc16 @50 [1, 2]", "1 fc6 @5 [1]",
+        "1 fc16 @5 [2, 3]", "1 fc6 @5 [4]");
+  }//keepsArrivalOrder
+
+  @Test
+  public void splitsByKindAndUnit() throws Exception {
+    m_Coalescer.writeCoil(1, 0, true);
+    m_Coalescer.writeCoil(1, 1, false);
+    m_Coalescer.writeCoil(1, 2, true);
+    m_Coalescer.writeRegister(1, 3, 9);
+    m_Coalescer.writeCoil(2, 4, true);
+    await(m_Coalescer.writeCoil(2, 5, true));
+    assertRequests("1 fc15 @0 [1, 0, 1]", "1 fc6 @3 [9]", "2 fc15 @4 [1, 1]");
+  }//splitsByKindAndUnit
+
+  @Test
+  public void splitsLongRuns() throws Exception {
+    Future<Void> last = null;
+    for (int i = 0; i < 130; i++) {
+      last = m_Coalescer.writeRegister(1, i, i);
+    }
+    await(last);
+    assertEquals(2, m_Transaction.m_Requests.size());
+    assertTrue(m_Transaction.m_Requests.get(0).startsWith("1 fc16 @0 [0, 1,"));
+    assertTrue(m_Transaction.m_Requests.get(1).startsWith("1 fc16 @123 [123,"));
+  }//splitsLongRuns
+
+  @Test
+  public void failuresCompleteFutures() throws Exception {
+    m_Transaction.m_Failure = new IllegalStateException("broken");
+    Future<Void> f1 = m_Coalescer.writeRegister(1, 1, 1);
+    Future<Void> f2 = m_Coalescer.writeRegister(1, 2, 2);
+    assertFails(f1);
+    assertFails(f2);
+
+    //the worker is still running
+    m_Transaction.m_Failure = null;
+    await(m_Coalescer.writeRegister(1, 3, 3));
+    assertEquals("1 fc6 @3 [3]", m_Transaction.m_Requests.get(1));
+  }//failuresCompleteFutures
+
+  @Test
+  public void stopFailsPendingWrites() throws Exception {
+    m_Transaction.m_Failure = new Error("worker dies");
+    Future<Void> f = m_Coalescer.writeRegister(1, 1, 1);
+    assertFails(f);
+    //writes queued after the worker died do not hang
+    assertFails(m_Coalescer.writeRegister(1, 2, 2));
+    m_Coalescer.stop();
+    assertFails(m_Coalescer.writeRegister(1, 3, 3));
+  }//stopFailsPendingWrites
+
+  private static void await(Future<Void> f) throws Exception {
+    f.get(5, TimeUnit.SECONDS);
+  }//await
+
+  private static void assertFails(Future<Void> f) throws Exception {
+    try {
+      f.get(5, TimeUnit.SECONDS);
+      fail("Write did not fail");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof ModbusException);
+    }
+  }//assertFails
+
+  private void assertRequests(String... expected) {
+    assertEquals(Arrays.asList(expected), m_Transaction.m_Requests);
+  }//assertRequests
+
+  /**
+   * Transaction recording the requests executed as text.
+   */
+  private static final class RecordingTransaction
+      implements ModbusTransaction {
+
+    final List<String> m_Requests = new ArrayList<String>();
+    volatile Throwable m_Failure;
+    private ModbusRequest m_Request;
+
+    public void setRequest(ModbusRequest req) {
+      m_Request = req;
+    }//setRequest
+
+    public ModbusRequest getRequest() {
+      return m_Request;
+    }//getRequest
+
+    public ModbusResponse getResponse() {
+      return null;
+    }//getResponse
+
+    public int getTransactionID() {
+      return 0;
+    }//getTransactionID
+
+    public void setRetries(int retries) {
+    }//setRetries
+
+    public int getRetries() {
+      return 0;
+    }//getRetries
+
+    public void setCheckingValidity(boolean b) {
+    }//setCheckingValidity
+
+    public boolean isCheckingValidity() {
+      return false;
+    }//isCheckingValidity
+
+    public void execute() throws ModbusException {
+      List<Integer> values = new ArrayList<Integer>();
+      int ref;
+      if (m_Request instanceof WriteSingleRegisterRequest) {
+        WriteSingleRegisterRequest req = (WriteSingleRegisterRequest) m_Request;
+        ref = req.getReference();
+        values.add(req.getRegister().getValue());
+      } else if (m_Request instanceof WriteMultipleRegistersRequest) {
+        WriteMultipleRegistersRequest req = (WriteMultipleRegistersRequest) m_Request;
+        ref = req.getReference();
+        for (int i = 0; i < req.getWordCount(); i++) {
+          values.add(req.getRegisterValue(i));
+        }
+      } else if (m_Request instanceof WriteCoilRequest) {
+        WriteCoilRequest req = (WriteCoilRequest) m_Request;
+        ref = req.getReference();
+        values.add(req.getCoil() ? 1 : 0);
+      } else {
+        WriteMultipleCoilsRequest req = (WriteMultipleCoilsRequest) m_Request;
+        ref = req.getReference();
+        for (int i = 0; i < req.getBitCount(); i++) {
+          values.add(req.getCoilStatus(i) ? 1 : 0);
+        }
+      }
+      m_Requests.add(m_Request.getUnitID() + " fc" + m_Request.getFunctionCode()
+          + " @" + ref + " " + values);
+      Throwable t = m_Failure;
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      }
+    }//execute
+
+  }//class RecordingTransaction
+
+}//class ModbusWriteCoalescerTest
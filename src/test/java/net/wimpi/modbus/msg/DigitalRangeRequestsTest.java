@@ -0,0 +1,159 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.PackedProcessImage;
+import net.wimpi.modbus.procimg.SimpleDigitalIn;
+import net.wimpi.modbus.procimg.SimpleDigitalOut;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.util.BitVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the coil and discrete input requests answer
+ * the same from a <tt>PackedProcessImage</tt>, transferring
+ * bits word-wise, as from a <tt>SimpleProcessImage</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class DigitalRangeRequestsTest {
+
+  private static final int SIZE = 300;
+  private static final int[] BOUNDARIES = {0, 1, 62, 63, 64, 65, 127, 128, 129, 191, 192};
+
+  private SimpleProcessImage m_Simple;
+  private PackedProcessImage m_Packed;
+  private ModbusCoupler m_SimpleCoupler;
+  private ModbusCoupler m_PackedCoupler;
+
+  @Before
+  public void setUp() {
+    Random rnd = new Random(37);
+    m_Simple = new SimpleProcessImage();
+    m_Packed = new PackedProcessImage(SIZE, SIZE);
+    for (int i = 0; i < SIZE; i++) {
+      boolean coil = rnd.nextBoolean();
+      boolean discrete = rnd.nextBoolean();
+      m_Simple.addDigitalOut(new SimpleDigitalOut(coil));
+      m_Simple.addDigitalIn(new SimpleDigitalIn(discrete));
+      m_Packed.getDigitalOut(i).set(coil);
+      m_Packed.setDiscreteInput(i, discrete);
+    }
+    m_SimpleCoupler = new ModbusCoupler(m_Simple);
+    m_PackedCoupler = new ModbusCoupler(m_Packed);
+  }//setUp
+
+  @Test
+  public void readCoils() throws IOException {
+    for (int ref : BOUNDARIES) {
+      for (int count : new int[]{1, 2, 63, 64, 65, 100}) {
+        ReadCoilsRequest req = new ReadCoilsRequest(ref, count);
+        ModbusResponse simple = respond(req, m_SimpleCoupler);
+        ModbusResponse packed = respond(req, m_PackedCoupler);
+        assertTrue(packed instanceof ReadCoilsResponse);
+        ReadCoilsResponse res = (ReadCoilsResponse) packed;
+        for (int i = 0; i < count; i++) {
+          assertEquals(m_Simple.getDigitalOut(ref + i).isSet(), res.getCoilStatus(i));
+        }
+        assertArrayEquals("ref " + ref + " count " + count, encode(simple), encode(packed));
+      }
+    }
+  }//readCoils
+
+  @Test
+  public void readInputDiscretes() throws IOException {
+    for (int ref : BOUNDARIES) {
+      for (int count : new int[]{1, 7, 63, 64, 65, 100}) {
+        ReadInputDiscretesRequest req = new ReadInputDiscretesRequest(ref, count);
+        ModbusResponse simple = respond(req, m_SimpleCoupler);
+        ModbusResponse packed = respond(req, m_PackedCoupler);
+        assertTrue(packed instanceof ReadInputDiscretesResponse);
+        ReadInputDiscretesResponse res = (ReadInputDiscretesResponse) packed;
+        for (int i = 0; i < count; i++) {
+          assertEquals(m_Simple.getDigitalIn(ref + i).isSet(), res.getDiscreteStatus(i));
+        }
+        assertArrayEquals("ref " + ref + " count " + count, encode(simple), encode(packed));
+      }
+    }
+  }//readInputDiscretes
+
+  @Test
+  public void writeMultipleCoils() throws IOException {
+    Random rnd = new Random(41);
+    for (int ref : BOUNDARIES) {
+      for (int count : new int[]{1, 9, 63, 64, 65, 100}) {
+        BitVector bits = new BitVector(count);
+        for (int i = 0; i < count; i++) {
+          bits.setBit(i, rnd.nextBoolean());
+        }
+        WriteMultipleCoilsRequest req = new WriteMultipleCoilsRequest(ref, bits);
+        assertArrayEquals(encode(respond(req, m_SimpleCoupler)),
+            encode(respond(req, m_PackedCoupler)));
+        for (int i = 0; i < SIZE; i++) {
+          assertEquals("ref " + ref + " count " + count + " coil " + i,
+              m_Simple.getDigitalOut(i).isSet(), m_Packed.getDigitalOut(i).isSet());
+        }
+      }
+    }
+  }//writeMultipleCoils
+
+  @Test
+  public void illegalRanges() {
+    ModbusRequest[] requests = {
+        new ReadCoilsRequest(SIZE - 10, 11),
+        new ReadInputDiscretesRequest(SIZE, 1),
+        new WriteMultipleCoilsRequest(SIZE - 1, new BitVector(2))
+    };
+    for (ModbusRequest req : requests) {
+      assertIllegalAddress(respond(req, m_SimpleCoupler));
+      assertIllegalAddress(respond(req, m_PackedCoupler));
+    }
+    //nothing was written by the failing request
+    assertEquals(m_Simple.getDigitalOut(SIZE - 1).isSet(),
+        m_Packed.getDigitalOut(SIZE - 1).isSet());
+  }//illegalRanges
+
+  private static ModbusResponse respond(ModbusRequest req, ModbusCoupler coupler) {
+    req.setCoupler(coupler);
+    return req.createResponse();
+  }//respond
+
+  private static byte[] encode(ModbusResponse res) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    res.writeData(new DataOutputStream(bout));
+    return bout.toByteArray();
+  }//encode
+
+  private static void assertIllegalAddress(ModbusResponse res) {
+    assertTrue(res instanceof ExceptionResponse);
+    assertEquals(Modbus.ILLEGAL_ADDRESS_EXCEPTION, ((ExceptionResponse) res).getExceptionCode());
+  }//assertIllegalAddress
+
+}//class DigitalRangeRequestsTest
@@ -0,0 +1,135 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the codec and the slave side handling of
+ * <tt>MaskWriteRegisterRequest</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class MaskWriteRegisterRequestTest {
+
+  private SimpleProcessImage m_ProcessImage;
+  private ModbusCoupler m_Coupler;
+
+  @Before
+  public void setUp() {
+    m_ProcessImage = new SimpleProcessImage();
+    for (int i = 0; i < 5; i++) {
+      m_ProcessImage.addRegister(new SimpleRegister(0));
+    }
+    m_Coupler = new ModbusCoupler(m_ProcessImage);
+  }//setUp
+
+  @Test
+  public void roundTrip() throws IOException {
+    //example of the specification: reference 4, and 0x00F2, or 0x0025
+    MaskWriteRegisterRequest req = new MaskWriteRegisterRequest(4, 0x00f2, 0x0025);
+    assertEquals(Modbus.MASK_WRITE_REGISTER, req.getFunctionCode());
+    byte[] data = encode(req);
+    assertArrayEquals(new byte[]{0x00, 0x04, 0x00, (byte) 0xf2, 0x00, 0x25}, data);
+    //the data length includes the unit id and function code
+    assertEquals(data.length + 2, req.getDataLength());
+    MaskWriteRegisterRequest copy = decode(data);
+    assertEquals(4, copy.getReference());
+    assertEquals(0x00f2, copy.getAndMask());
+    assertEquals(0x0025, copy.getOrMask());
+
+    MaskWriteRegisterResponse res = new MaskWriteRegisterResponse(0xfffe, 0xff00, 0x8001);
+    assertEquals(Modbus.MASK_WRITE_REGISTER, res.getFunctionCode());
+    data = encode(res);
+    assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xfe, (byte) 0xff, 0x00, (byte) 0x80, 0x01}, data);
+    assertEquals(data.length + 2, res.getDataLength());
+    MaskWriteRegisterResponse rcopy = new MaskWriteRegisterResponse();
+    rcopy.readData(new DataInputStream(new ByteArrayInputStream(data)));
+    assertEquals(0xfffe, rcopy.getReference());
+    assertEquals(0xff00, rcopy.getAndMask());
+    assertEquals(0x8001, rcopy.getOrMask());
+  }//roundTrip
+
+  @Test
+  public void appliesMasks() throws IOException {
+    //example of the specification: 0x12 becomes 0x17
+    m_ProcessImage.getRegister(4).setValue(0x12);
+    ModbusResponse res = decode(encode(new MaskWriteRegisterRequest(4, 0x00f2, 0x0025))).createResponse();
+    assertTrue(res instanceof MaskWriteRegisterResponse);
+    MaskWriteRegisterResponse mwr = (MaskWriteRegisterResponse) res;
+    assertEquals(4, mwr.getReference());
+    assertEquals(0x00f2, mwr.getAndMask());
+    assertEquals(0x0025, mwr.getOrMask());
+    assertEquals(0x17, m_ProcessImage.getRegister(4).getValue());
+
+    Random rnd = new Random(22);
+    for (int run = 0; run < 1000; run++) {
+      int cur = rnd.nextInt(0x10000);
+      int and = rnd.nextInt(0x10000);
+      int or = rnd.nextInt(0x10000);
+      m_ProcessImage.getRegister(1).setValue(cur);
+      decode(encode(new MaskWriteRegisterRequest(1, and, or))).createResponse();
+      assertEquals("cur " + cur + " and " + and + " or " + or,
+          ((cur & and) | (or & ~and)) & 0xffff, m_ProcessImage.getRegister(1).getValue());
+    }
+    //and all ones keeps the register, and all zeros sets it to or
+    m_ProcessImage.getRegister(0).setValue(0xabcd);
+    decode(encode(new MaskWriteRegisterRequest(0, 0xffff, 0x1234))).createResponse();
+    assertEquals(0xabcd, m_ProcessImage.getRegister(0).getValue());
+    decode(encode(new MaskWriteRegisterRequest(0, 0x0000, 0x1234))).createResponse();
+    assertEquals(0x1234, m_ProcessImage.getRegister(0).getValue());
+  }//appliesMasks
+
+  @Test
+  public void illegalAddress() throws IOException {
+    ModbusResponse res = decode(encode(new MaskWriteRegisterRequest(5, 0, 0xffff))).createResponse();
+    assertTrue(res instanceof ExceptionResponse);
+    assertEquals(Modbus.ILLEGAL_ADDRESS_EXCEPTION, ((ExceptionResponse) res).getExceptionCode());
+  }//illegalAddress
+
+  private static byte[] encode(ModbusMessageImpl msg) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    msg.writeData(new DataOutputStream(bout));
+    return bout.toByteArray();
+  }//encode
+
+  private MaskWriteRegisterRequest decode(byte[] data) throws IOException {
+    MaskWriteRegisterRequest req = new MaskWriteRegisterRequest();
+    req.setCoupler(m_Coupler);
+    req.readData(new DataInputStream(new ByteArrayInputStream(data)));
+    return req;
+  }//decode
+
+}//class MaskWriteRegisterRequestTest
@@ -0,0 +1,139 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleProcessImage;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the codec and the slave side handling of
+ * <tt>ReadWriteMultipleRequest</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ReadWriteMultipleRequestTest {
+
+  private SimpleProcessImage m_ProcessImage;
+  private ModbusCoupler m_Coupler;
+
+  @Before
+  public void setUp() {
+    m_ProcessImage = new SimpleProcessImage();
+    for (int i = 0; i < 10; i++) {
+      m_ProcessImage.addRegister(new SimpleRegister(i));
+    }
+    m_Coupler = new ModbusCoupler(m_ProcessImage);
+  }//setUp
+
+  @Test
+  public void roundTrip() throws IOException {
+    ReadWriteMultipleRequest req = new ReadWriteMultipleRequest(1, 3, 2,
+        new Register[]{new SimpleRegister(0x1234), new SimpleRegister(0xabcd)});
+    ReadWriteMultipleRequest copy = decode(encode(req));
+    assertEquals(1, copy.getReadReference());
+    assertEquals(3, copy.getReadWordCount());
+    assertEquals(2, copy.getWriteReference());
+    assertEquals(2, copy.getWriteWordCount());
+    assertEquals(0xabcd, copy.getRegisters()[1].toUnsignedShort());
+    assertEquals(req.getDataLength(), copy.getDataLength());
+  }//roundTrip
+
+  @Test
+  public void writesBeforeReading() throws IOException {
+    ReadWriteMultipleRequest req = decode(encode(new ReadWriteMultipleRequest(1, 3, 2,
+        new Register[]{new SimpleRegister(100), new SimpleRegister(200)})));
+    ModbusResponse res = req.createResponse();
+    assertTrue(res instanceof ReadWriteMultipleResponse);
+    ReadWriteMultipleResponse rwr = (ReadWriteMultipleResponse) res;
+    assertEquals(3, rwr.getWordCount());
+    assertEquals(1, rwr.getRegisterValue(0));
+    assertEquals(100, rwr.getRegisterValue(1));
+    assertEquals(200, rwr.getRegisterValue(2));
+  }//writesBeforeReading
+
+  @Test
+  public void illegalReadRangeWritesNothing() throws IOException {
+    ReadWriteMultipleRequest req = decode(encode(new ReadWriteMultipleRequest(8, 5, 0,
+        new Register[]{new SimpleRegister(100)})));
+    assertException(Modbus.ILLEGAL_ADDRESS_EXCEPTION, req.createResponse());
+    assertEquals(0, m_ProcessImage.getRegister(0).getValue());
+  }//illegalReadRangeWritesNothing
+
+  @Test
+  public void illegalQuantities() throws IOException {
+    assertException(Modbus.ILLEGAL_VALUE_EXCEPTION, decode(frame(0, 1, 1)).createResponse());
+    assertException(Modbus.ILLEGAL_VALUE_EXCEPTION, decode(frame(126, 1, 2)).createResponse());
+    assertException(Modbus.ILLEGAL_VALUE_EXCEPTION, decode(frame(1, 0, 0)).createResponse());
+    assertException(Modbus.ILLEGAL_VALUE_EXCEPTION, decode(frame(1, 122, 244)).createResponse());
+    assertException(Modbus.ILLEGAL_VALUE_EXCEPTION, decode(frame(1, 2, 3)).createResponse());
+    assertEquals(0, m_ProcessImage.getRegister(0).getValue());
+    //the limits themselves are legal
+    assertException(Modbus.ILLEGAL_ADDRESS_EXCEPTION, decode(frame(125, 121, 242)).createResponse());
+  }//illegalQuantities
+
+  private static byte[] encode(ReadWriteMultipleRequest req) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    req.writeData(new DataOutputStream(bout));
+    return bout.toByteArray();
+  }//encode
+
+  /**
+   * Returns the data of a request with the given counts,
+   * and registers as given by the write count.
+   */
+  private static byte[] frame(int readcount, int writecount, int bytecount) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream dout = new DataOutputStream(bout);
+    dout.writeShort(0);
+    dout.writeShort(readcount);
+    dout.writeShort(0);
+    dout.writeShort(writecount);
+    dout.writeByte(bytecount);
+    for (int i = 0; i < writecount; i++) {
+      dout.writeShort(0x5555);
+    }
+    return bout.toByteArray();
+  }//frame
+
+  private ReadWriteMultipleRequest decode(byte[] data) throws IOException {
+    ReadWriteMultipleRequest req = new ReadWriteMultipleRequest();
+    req.setCoupler(m_Coupler);
+    req.readData(new DataInputStream(new ByteArrayInputStream(data)));
+    return req;
+  }//decode
+
+  private static void assertException(int code, ModbusResponse res) {
+    assertTrue(res instanceof ExceptionResponse);
+    assertEquals(code, ((ExceptionResponse) res).getExceptionCode());
+  }//assertException
+
+}//class ReadWriteMultipleRequestTest
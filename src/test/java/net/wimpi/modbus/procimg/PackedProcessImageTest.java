@@ -0,0 +1,213 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import net.wimpi.modbus.util.BitVector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the packed bits of <tt>PackedProcessImage</tt>
+ * against a bit by bit model.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class PackedProcessImageTest {
+
+  private static final int COILS = 200;
+  private static final int DISCRETES = 130;
+
+  @Test
+  public void rangesAcrossWords() {
+    Random rnd = new Random(31);
+    PackedProcessImage pi = new PackedProcessImage(COILS, DISCRETES);
+    boolean[] coils = new boolean[COILS];
+    boolean[] discretes = new boolean[DISCRETES];
+    for (int run = 0; run < 1000; run++) {
+      int count = rnd.nextInt(COILS + 1);
+      int offset = rnd.nextInt(COILS - count + 1);
+      BitVector bits = randomBits(rnd, count);
+      pi.writeDigitalOuts(offset, count, bits);
+      for (int i = 0; i < count; i++) {
+        coils[offset + i] = bits.getBit(i);
+      }
+
+      count = rnd.nextInt(DISCRETES + 1);
+      offset = rnd.nextInt(DISCRETES - count + 1);
+      bits = randomBits(rnd, count);
+      pi.writeDigitalIns(offset, count, bits);
+      for (int i = 0; i < count; i++) {
+        discretes[offset + i] = bits.getBit(i);
+      }
+      assertImage("run " + run, pi, coils, discretes);
+    }
+  }//rangesAcrossWords
+
+  @Test
+  public void readsIntoVectorOffsetZero() {
+    PackedProcessImage pi = new PackedProcessImage(COILS, DISCRETES);
+    for (int i = 0; i < COILS; i++) {
+      pi.getDigitalOut(i).set(i % 3 == 0);
+    }
+    //a range from the middle of the first word to the middle of the fourth
+    BitVector bits = new BitVector(150);
+    pi.readDigitalOuts(40, 150, bits);
+    for (int i = 0; i < 150; i++) {
+      assertEquals("bit " + i, (40 + i) % 3 == 0, bits.getBit(i));
+    }
+  }//readsIntoVectorOffsetZero
+
+  @Test
+  public void singleBitsAndViews() {
+    PackedProcessImage pi = new PackedProcessImage(COILS, DISCRETES);
+    assertEquals(COILS, pi.getDigitalOutCount());
+    assertEquals(DISCRETES, pi.getDigitalInCount());
+    pi.setDiscreteInput(64, true);
+    pi.getDigitalOut(63).set(true);
+    assertEquals(true, pi.getDigitalIn(64).isSet());
+    assertEquals(false, pi.getDigitalIn(63).isSet());
+    assertEquals(true, pi.getDigitalOut(63).isSet());
+    DigitalOut[] douts = pi.getDigitalOutRange(62, 3);
+    assertSame(pi.getDigitalOut(63), douts[1]);
+    douts[2].set(true);
+    BitVector bits = new BitVector(3);
+    pi.readDigitalOuts(62, 3, bits);
+    assertEquals(false, bits.getBit(0));
+    assertEquals(true, bits.getBit(1));
+    assertEquals(true, bits.getBit(2));
+    douts[1].set(false);
+    assertEquals(false, pi.getDigitalOut(63).isSet());
+    assertEquals(true, pi.getDigitalInRange(64, 1)[0].isSet());
+  }//singleBitsAndViews
+
+  @Test
+  public void illegalAddresses() {
+    final PackedProcessImage pi = new PackedProcessImage(COILS, DISCRETES);
+    final BitVector bits = new BitVector(COILS + 1);
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.readDigitalOuts(COILS - 10, 11, bits);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.writeDigitalOuts(-1, 2, bits);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.readDigitalIns(0, DISCRETES + 1, bits);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.writeDigitalIns(DISCRETES, 1, bits);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.setDiscreteInput(DISCRETES, true);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.getDigitalOut(COILS);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.getDigitalIn(-1);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.getDigitalOutRange(1, COILS);
+      }
+    });
+    assertIllegal(new Runnable() {
+      public void run() {
+        pi.getRegister(0);
+      }
+    });
+    //empty ranges at the end are legal
+    pi.readDigitalOuts(COILS, 0, bits);
+    pi.readDigitalIns(DISCRETES, 0, bits);
+  }//illegalAddresses
+
+  @Test
+  public void registers() {
+    PackedProcessImage pi = new PackedProcessImage(0, 0);
+    SimpleRegister r0 = new SimpleRegister(1);
+    SimpleRegister r1 = new SimpleRegister(2);
+    pi.addRegister(r0);
+    pi.addRegister(r1);
+    pi.addInputRegister(new SimpleInputRegister(3));
+    assertEquals(2, pi.getRegisterCount());
+    assertEquals(1, pi.getInputRegisterCount());
+    assertSame(r1, pi.getRegisterRange(0, 2)[1]);
+    SimpleRegister r2 = new SimpleRegister(4);
+    pi.setRegister(1, r2);
+    assertSame(r2, pi.getRegister(1));
+    pi.removeRegister(r0);
+    assertSame(r2, pi.getRegister(0));
+    assertEquals(3, pi.getInputRegister(0).getValue());
+  }//registers
+
+  private static BitVector randomBits(Random rnd, int count) {
+    BitVector bits = new BitVector(count);
+    for (int i = 0; i < count; i++) {
+      bits.setBit(i, rnd.nextBoolean());
+    }
+    return bits;
+  }//randomBits
+
+  private static void assertImage(String msg, PackedProcessImage pi,
+                                  boolean[] coils, boolean[] discretes) {
+    for (int i = 0; i < coils.length; i++) {
+      assertEquals(msg + " coil " + i, coils[i], pi.getDigitalOut(i).isSet());
+    }
+    for (int i = 0; i < discretes.length; i++) {
+      assertEquals(msg + " discrete " + i, discretes[i], pi.getDigitalIn(i).isSet());
+    }
+    BitVector bits = new BitVector(COILS);
+    pi.readDigitalOuts(0, coils.length, bits);
+    for (int i = 0; i < coils.length; i++) {
+      assertEquals(msg + " read coil " + i, coils[i], bits.getBit(i));
+    }
+    bits = new BitVector(DISCRETES);
+    pi.readDigitalIns(0, discretes.length, bits);
+    for (int i = 0; i < discretes.length; i++) {
+      assertEquals(msg + " read discrete " + i, discretes[i], bits.getBit(i));
+    }
+  }//assertImage
+
+  private static void assertIllegal(Runnable r) {
+    try {
+      r.run();
+      fail("No IllegalAddressException");
+    } catch (IllegalAddressException ex) {
+      //expected
+    }
+  }//assertIllegal
+
+}//class PackedProcessImageTest
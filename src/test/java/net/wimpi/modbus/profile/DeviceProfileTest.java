@@ -0,0 +1,190 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the parsing and validation of register maps
+ * by <tt>DeviceProfile</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class DeviceProfileTest {
+
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  @Test
+  public void separatorsAndComments() throws IOException {
+    DeviceProfile profile = load(
+        "",
+        "# exported register map",
+        "Name;Table;Address;Type;Order;Scale;Offset;Unit",
+        "voltage; input; 0; float32; CDAB; ; ; V",
+        "  ",
+        "current,input,2,int16,,0.01,,A",
+        "serial, holding, 200, String8",
+        "running;COIL;0;bool");
+    assertEquals("m", profile.getModel());
+    assertEquals(4, profile.getPointCount());
+    assertEquals(0, profile.getIndex("voltage"));
+    assertEquals(3, profile.getIndex("running"));
+    assertEquals(-1, profile.getIndex("Name"));
+    assertEquals("current", profile.getName(1));
+    assertEquals("V", profile.getUnit(0));
+    assertEquals("A", profile.getUnit(1));
+    assertEquals("", profile.getUnit(2));
+    assertTrue(profile.isString(2));
+    assertFalse(profile.isString(0));
+  }//separatorsAndComments
+
+  @Test
+  public void headerOnlyFirst() throws IOException {
+    //a point named like the header is only skipped before the first point
+    DeviceProfile profile = load("a,input,0,int16", "name,input,1,int16");
+    assertEquals(2, profile.getPointCount());
+    assertEquals(1, profile.getIndex("name"));
+  }//headerOnlyFirst
+
+  @Test
+  public void errorsNameTheLine() throws IOException {
+    assertError("m, line 2: name, table, address and type are required",
+        "a,input,0,int16", "b,input,1");
+    assertError("m, line 3: missing or duplicate name a",
+        "a,input,0,int16", "# comment", "a,input,1,int16");
+    assertError("m, line 1: missing or duplicate name ",
+        ",input,0,int16");
+    assertError("m, line 1: unknown table register",
+        "a,register,0,int16");
+    assertError("m, line 1: address out of range",
+        "a,input,-1,int16");
+    assertError("m, line 1: address out of range",
+        "a,input,65536,int16");
+    assertError("m, line 1: type bool does not match the table",
+        "a,input,0,bool");
+    assertError("m, line 1: type int16 does not match the table",
+        "a,coil,0,int16");
+    assertError("m, line 1: unknown type int8",
+        "a,input,0,int8");
+    assertError("m, line 1: unknown byte order ACBD",
+        "a,input,0,int32,ACBD");
+    assertError("m, line 1: invalid string length",
+        "a,input,0,string0");
+    assertError("m, line 1: invalid string length",
+        "a,input,0,string126");
+    assertError("m, line 1: min exceeds max",
+        "a,input,0,int16,,,,,10,0");
+  }//errorsNameTheLine
+
+  @Test
+  public void endOfAddressRange() throws IOException {
+    DeviceProfile profile = load(
+        "a,input,65535,uint16",
+        "b,holding,65534,float32",
+        "c,holding,65532,int64",
+        "d,input,65528,string8",
+        "e,coil,65535,bool");
+    assertEquals(5, profile.getPointCount());
+    //the input and holding points each merge into one range ending at 65535
+    ReadPlan plan = profile.compile(DeviceProfile.DEFAULT_MAX_GAP);
+    assertEquals(3, plan.getRangeCount());
+    for (int r = 0; r < plan.getRangeCount(); r++) {
+      assertEquals(0x10000, plan.getReference(r) + plan.getCount(r));
+    }
+    assertError("m, line 2: point exceeds the address range",
+        "a,input,0,int16", "b,input,65535,float32");
+    assertError("m, line 1: point exceeds the address range",
+        "c,holding,65533,int64");
+    assertError("m, line 1: point exceeds the address range",
+        "d,input,65529,string8");
+  }//endOfAddressRange
+
+  @Test
+  public void processorFromProfile() throws IOException {
+    DeviceProfile profile = load("t,input,0,int16,,0.1,-40,C,-20,50,0.5");
+    ValueProcessor proc = profile.createProcessor();
+    double[] out = new double[1];
+    byte[] flags = new byte[1];
+    assertEquals(1, proc.process(new double[]{500}, out, flags));
+    assertEquals(10, out[0], 1e-9);
+    //within the deadband
+    assertEquals(0, proc.process(new double[]{504}, out, flags));
+    assertEquals(0, flags[0]);
+    //clamped to the upper limit
+    assertEquals(1, proc.process(new double[]{1000}, out, flags));
+    assertEquals(50, out[0], 0);
+    assertEquals(ValueProcessor.CHANGED | ValueProcessor.CLAMPED, flags[0]);
+  }//processorFromProfile
+
+  @Test
+  public void profilesAreCached() throws IOException {
+    File file = m_Folder.newFile("meter.csv");
+    write(file, "a,input,0,int16\n");
+    DeviceProfile profile = DeviceProfile.getProfile(file);
+    assertEquals("meter", profile.getModel());
+    assertSame(profile, DeviceProfile.getProfile(file));
+    assertSame(profile.getReadPlan(), DeviceProfile.getProfile(file).getReadPlan());
+    write(file, "a,input,0,int16\nb,input,1,int16\n");
+    assertTrue(file.setLastModified(file.lastModified() + 2000));
+    DeviceProfile reloaded = DeviceProfile.getProfile(file);
+    assertEquals(2, reloaded.getPointCount());
+  }//profilesAreCached
+
+  private static DeviceProfile load(String... lines) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines.length; i++) {
+      sb.append(lines[i]).append('\n');
+    }
+    return DeviceProfile.load(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")), "m");
+  }//load
+
+  private static void assertError(String msg, String... lines) {
+    try {
+      load(lines);
+      fail("expected: " + msg);
+    } catch (IOException ex) {
+      assertEquals(msg, ex.getMessage());
+    }
+  }//assertError
+
+  private static void write(File file, String text) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }//write
+
+}//class DeviceProfileTest
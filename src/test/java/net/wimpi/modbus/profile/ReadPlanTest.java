@@ -0,0 +1,199 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.BitVector;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests how <tt>ReadPlan</tt> merges the points of a profile
+ * into read requests, and decodes the values read.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ReadPlanTest {
+
+  @Test
+  public void registerGap() throws IOException {
+    //16 unused registers between the points are merged, 17 are not
+    ReadPlan plan = compile(16, "a,holding,0,int16", "b,holding,17,int16");
+    assertRanges(plan, new int[]{Modbus.READ_MULTIPLE_REGISTERS, 0, 18});
+    plan = compile(16, "a,holding,0,int16", "b,holding,18,int16");
+    assertRanges(plan,
+        new int[]{Modbus.READ_MULTIPLE_REGISTERS, 0, 1},
+        new int[]{Modbus.READ_MULTIPLE_REGISTERS, 18, 1});
+    //a gap of 0 merges adjacent points only
+    plan = compile(0, "a,holding,0,int32", "b,holding,2,int16", "c,holding,4,int16");
+    assertRanges(plan,
+        new int[]{Modbus.READ_MULTIPLE_REGISTERS, 0, 3},
+        new int[]{Modbus.READ_MULTIPLE_REGISTERS, 4, 1});
+  }//registerGap
+
+  @Test
+  public void tablesAreSeparate() throws IOException {
+    ReadPlan plan = compile(16,
+        "a,input,1,int16",
+        "b,holding,0,int16",
+        "c,discrete,2,bool",
+        "d,coil,3,bool",
+        "e,holding,2,int16",
+        "f,input,0,int16");
+    assertRanges(plan,
+        new int[]{Modbus.READ_COILS, 3, 1},
+        new int[]{Modbus.READ_INPUT_DISCRETES, 2, 1},
+        new int[]{Modbus.READ_MULTIPLE_REGISTERS, 0, 3},
+        new int[]{Modbus.READ_INPUT_REGISTERS, 0, 2});
+  }//tablesAreSeparate
+
+  @Test
+  public void registerLimit() throws IOException {
+    ReadPlan plan = compile(1000, "a,input,0,int16", "b,input,121,float64");
+    assertRanges(plan, new int[]{Modbus.READ_INPUT_REGISTERS, 0, Modbus.MAX_REGISTERS});
+    plan = compile(1000, "a,input,0,int16", "b,input,122,float64");
+    assertRanges(plan,
+        new int[]{Modbus.READ_INPUT_REGISTERS, 0, 1},
+        new int[]{Modbus.READ_INPUT_REGISTERS, 122, 4});
+    //a string of the maximum length is a range of its own
+    plan = compile(1000, "a,input,0,int16", "b,input,1,string125");
+    assertRanges(plan,
+        new int[]{Modbus.READ_INPUT_REGISTERS, 0, 1},
+        new int[]{Modbus.READ_INPUT_REGISTERS, 1, Modbus.MAX_REGISTERS});
+  }//registerLimit
+
+  @Test
+  public void bitGapAndLimit() throws IOException {
+    //the gap counts 16 bits per register
+    ReadPlan plan = compile(16, "a,coil,0,bool", "b,coil,257,bool");
+    assertRanges(plan, new int[]{Modbus.READ_COILS, 0, 258});
+    plan = compile(16, "a,coil,0,bool", "b,coil,258,bool");
+    assertRanges(plan,
+        new int[]{Modbus.READ_COILS, 0, 1},
+        new int[]{Modbus.READ_COILS, 258, 1});
+    plan = compile(1000, "a,discrete,0,bool", "b,discrete,1999,bool");
+    assertRanges(plan, new int[]{Modbus.READ_INPUT_DISCRETES, 0, Modbus.MAX_BITS});
+    plan = compile(1000, "a,discrete,0,bool", "b,discrete,2000,bool");
+    assertRanges(plan,
+        new int[]{Modbus.READ_INPUT_DISCRETES, 0, 1},
+        new int[]{Modbus.READ_INPUT_DISCRETES, 2000, 1});
+  }//bitGapAndLimit
+
+  @Test
+  public void overlappingPoints() throws IOException {
+    //the same registers read as one 32 bit value and as two 16 bit halves
+    ReadPlan plan = compile(0,
+        "low,holding,11,uint16",
+        "both,holding,10,uint32",
+        "high,holding,10,uint16",
+        "inner,holding,10,uint16");
+    assertRanges(plan, new int[]{Modbus.READ_MULTIPLE_REGISTERS, 10, 2});
+    PointValues values = plan.createValues();
+    plan.decode(0, registers(0x1234, 0x5678), values);
+    assertEquals(4, values.update(1));
+    DeviceProfile profile = plan.getProfile();
+    assertEquals(0x12345678, values.getValue("both"), 0);
+    assertEquals(0x1234, values.getValue("high"), 0);
+    assertEquals(0x5678, values.getValue("low"), 0);
+    assertEquals(0x1234, values.getValue(profile.getIndex("inner")), 0);
+    //a point ending within an earlier one does not shrink the range
+    plan = compile(0, "a,holding,0,int64", "b,holding,1,int16", "c,holding,4,int16");
+    assertRanges(plan, new int[]{Modbus.READ_MULTIPLE_REGISTERS, 0, 5});
+  }//overlappingPoints
+
+  @Test
+  public void decodeRegisters() throws IOException {
+    ReadPlan plan = compile(16,
+        "current,input,0,int16,,0.01",
+        "energy,input,1,uint32,CDAB,0.1,0",
+        "serial,input,3,string2",
+        "voltage,input,5,float32,,,,V,0,400");
+    assertEquals(1, plan.getRangeCount());
+    PointValues values = plan.createValues();
+    assertEquals(ValueProcessor.BAD, values.getFlags(0));
+    plan.decode(0, registers(0xff9c, 0x5678, 0x1234, 0x4142, 0x4300, 0x43fa, 0x0000), values);
+    assertEquals(4, values.update(1000));
+    assertEquals(1000, values.getTime());
+    assertEquals(-1.0, values.getValue("current"), 1e-9);
+    assertEquals(0x12345678 * 0.1, values.getValue("energy"), 1e-6);
+    assertEquals("ABC", values.getString("serial"));
+    //500 is clamped to the limit
+    assertEquals(400, values.getValue("voltage"), 0);
+    assertEquals(ValueProcessor.CHANGED | ValueProcessor.CLAMPED, values.getFlags(3));
+  }//decodeRegisters
+
+  @Test
+  public void decodeBits() throws IOException {
+    ReadPlan plan = compile(16, "a,coil,5,bool", "b,coil,7,bool", "c,coil,100,bool");
+    assertRanges(plan, new int[]{Modbus.READ_COILS, 5, 96});
+    BitVector bits = new BitVector(96);
+    bits.setBit(2, true);
+    bits.setBit(95, true);
+    PointValues values = plan.createValues();
+    plan.decode(0, bits, values);
+    values.update(1);
+    assertEquals(0, values.getValue("a"), 0);
+    assertEquals(1, values.getValue("b"), 0);
+    assertEquals(1, values.getValue("c"), 0);
+  }//decodeBits
+
+  @Test(expected = IllegalArgumentException.class)
+  public void decodeBitsAsRegisters() throws IOException {
+    ReadPlan plan = compile(16, "a,coil,0,bool");
+    plan.decode(0, registers(0), plan.createValues());
+  }//decodeBitsAsRegisters
+
+  private static ReadPlan compile(int maxgap, String... lines) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines.length; i++) {
+      sb.append(lines[i]).append('\n');
+    }
+    DeviceProfile profile = DeviceProfile.load(
+        new ByteArrayInputStream(sb.toString().getBytes("UTF-8")), "test");
+    return profile.compile(maxgap);
+  }//compile
+
+  private static InputRegister[] registers(int... words) {
+    InputRegister[] regs = new InputRegister[words.length];
+    for (int i = 0; i < words.length; i++) {
+      regs[i] = new SimpleRegister(words[i]);
+    }
+    return regs;
+  }//registers
+
+  /**
+   * Asserts the ranges of a plan, each given as
+   * function code, reference and count.
+   */
+  private static void assertRanges(ReadPlan plan, int[]... ranges) {
+    assertEquals("ranges", ranges.length, plan.getRangeCount());
+    for (int r = 0; r < ranges.length; r++) {
+      assertEquals("function code of range " + r, ranges[r][0], plan.getFunctionCode(r));
+      assertEquals("reference of range " + r, ranges[r][1], plan.getReference(r));
+      assertEquals("count of range " + r, ranges[r][2], plan.getCount(r));
+    }
+  }//assertRanges
+
+}//class ReadPlanTest
@@ -0,0 +1,183 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.profile;
+
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the scaling, clamping, deadband and quality flags
+ * of <tt>ValueProcessor</tt>, and the flags of string points
+ * set by <tt>PointValues</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class ValueProcessorTest {
+
+  private static final double NaN = Double.NaN;
+  private static final int BAD = ValueProcessor.BAD;
+  private static final int CLAMPED = ValueProcessor.CLAMPED;
+  private static final int CHANGED = ValueProcessor.CHANGED;
+
+  @Test
+  public void scaling() {
+    ValueProcessor proc = new ValueProcessor(3);
+    proc.setScaling(1, 0.1, 0);
+    proc.setScaling(2, -2, 100);
+    double[] in = {7, 1234, 30};
+    double[] out = new double[3];
+    byte[] flags = new byte[3];
+    assertEquals(3, proc.process(in, out, flags));
+    assertEquals(7, out[0], 0);
+    assertEquals(123.4, out[1], 1e-9);
+    assertEquals(40, out[2], 0);
+    assertFlags(flags, CHANGED, CHANGED, CHANGED);
+    //the input is not modified unless it is the output
+    assertEquals(1234, in[1], 0);
+    assertEquals(3, new ValueProcessor(3).process(in, in, flags));
+  }//scaling
+
+  @Test
+  public void clamping() {
+    ValueProcessor proc = new ValueProcessor(3);
+    proc.setScaling(0, 10, 0);
+    proc.setLimits(0, 0, 100);
+    proc.setLimits(1, -5, Double.POSITIVE_INFINITY);
+    proc.setLimits(2, 0, 0);
+    double[] out = new double[3];
+    byte[] flags = new byte[3];
+    proc.process(new double[]{11, -6, 0}, out, flags);
+    assertEquals(100, out[0], 0);
+    assertEquals(-5, out[1], 0);
+    assertEquals(0, out[2], 0);
+    assertFlags(flags, CLAMPED | CHANGED, CLAMPED | CHANGED, CHANGED);
+    //at the limits is not clamped
+    proc.process(new double[]{10, -5, 0}, out, flags);
+    assertFlags(flags, 0, 0, 0);
+    //NaN is bad, not clamped
+    proc.reset();
+    proc.process(new double[]{NaN, NaN, 1}, out, flags);
+    assertTrue(Double.isNaN(out[0]));
+    assertFlags(flags, BAD, BAD, CLAMPED | CHANGED);
+  }//clamping
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidLimits() {
+    new ValueProcessor(1).setLimits(0, 1, 0);
+  }//invalidLimits
+
+  @Test
+  public void deadband() {
+    ValueProcessor proc = new ValueProcessor(1);
+    proc.setDeadband(0, -0.5);
+    double[] out = new double[1];
+    byte[] flags = new byte[1];
+    assertEquals(1, proc.process(new double[]{10}, out, flags));
+    //moves within the deadband of the last reported value are not changes,
+    //even if they add up
+    assertEquals(0, proc.process(new double[]{10.4}, out, flags));
+    assertEquals(0, proc.process(new double[]{9.6}, out, flags));
+    assertEquals(0, proc.process(new double[]{10.5}, out, flags));
+    assertFlags(flags, 0);
+    assertEquals(10.5, out[0], 0);
+    assertEquals(1, proc.process(new double[]{10.6}, out, flags));
+    assertFlags(flags, CHANGED);
+    assertEquals(0, proc.process(new double[]{10.2}, out, flags));
+    assertEquals(1, proc.process(new double[]{10.0}, out, flags));
+    //reset reports the next value as changed
+    proc.reset();
+    assertEquals(1, proc.process(new double[]{10.0}, out, flags));
+  }//deadband
+
+  @Test
+  public void qualityChanges() {
+    ValueProcessor proc = new ValueProcessor(2);
+    proc.setDeadband(0, 100);
+    double[] out = new double[2];
+    byte[] flags = new byte[2];
+    //a point bad from the start is not a change
+    assertEquals(0, proc.process(new double[]{NaN, NaN}, out, flags));
+    assertFlags(flags, BAD, BAD);
+    assertEquals(1, proc.process(new double[]{5, NaN}, out, flags));
+    assertFlags(flags, CHANGED, BAD);
+    //going bad is a change, staying bad is not
+    assertEquals(1, proc.process(new double[]{NaN, NaN}, out, flags));
+    assertFlags(flags, BAD | CHANGED, BAD);
+    assertEquals(0, proc.process(new double[]{NaN, NaN}, out, flags));
+    assertFlags(flags, BAD, BAD);
+    //recovering is a change, even within the deadband
+    assertEquals(1, proc.process(new double[]{5, NaN}, out, flags));
+    assertFlags(flags, CHANGED, BAD);
+    assertEquals(0, proc.process(new double[]{6, NaN}, out, flags));
+    assertFlags(flags, 0, BAD);
+  }//qualityChanges
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void shortArrays() {
+    new ValueProcessor(2).process(new double[2], new double[2], new byte[1]);
+  }//shortArrays
+
+  @Test
+  public void stringPoints() throws IOException {
+    DeviceProfile profile = DeviceProfile.load(new ByteArrayInputStream(
+        "level,input,0,uint16\nserial,input,1,string2\n".getBytes("UTF-8")), "m");
+    ReadPlan plan = profile.getReadPlan();
+    PointValues values = plan.createValues();
+    int serial = profile.getIndex("serial");
+    //not read yet
+    assertEquals(BAD, values.getFlags(serial));
+    assertEquals(0, values.update(1));
+    assertEquals(BAD, values.getFlags(serial));
+    plan.decode(0, registers(1, 0x4142, 0x4300), values);
+    assertEquals(2, values.update(2));
+    assertEquals(CHANGED, values.getFlags(serial));
+    assertEquals("ABC", values.getString(serial));
+    //same text
+    plan.decode(0, registers(2, 0x4142, 0x4300), values);
+    assertEquals(1, values.update(3));
+    assertEquals(0, values.getFlags(serial));
+    //other text
+    plan.decode(0, registers(2, 0x4142, 0x4400), values);
+    assertEquals(1, values.update(4));
+    assertEquals(CHANGED, values.getFlags(serial));
+    assertEquals("ABD", values.getString("serial"));
+  }//stringPoints
+
+  private static InputRegister[] registers(int... words) {
+    InputRegister[] regs = new InputRegister[words.length];
+    for (int i = 0; i < words.length; i++) {
+      regs[i] = new SimpleRegister(words[i]);
+    }
+    return regs;
+  }//registers
+
+  private static void assertFlags(byte[] flags, int... expected) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("flags of point " + i, expected[i], flags[i]);
+    }
+  }//assertFlags
+
+}//class ValueProcessorTest
@@ -0,0 +1,170 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the bulk operations of <tt>BitVector</tt> against
+ * a bit by bit model, in both access modes.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class BitVectorTest {
+
+  private static final int SIZE = 301;
+
+  @Test
+  public void copyFromOverlapping() {
+    for (int mode = 0; mode < 2; mode++) {
+      Random rnd = new Random(17 + mode);
+      for (int run = 0; run < 500; run++) {
+        BitVector bv = createRandom(rnd, SIZE, mode == 1);
+        boolean[] model = toModel(bv);
+        int count = rnd.nextInt(SIZE);
+        int src = rnd.nextInt(SIZE - count + 1);
+        int dst = rnd.nextInt(SIZE - count + 1);
+        bv.copyFrom(bv, src, dst, count);
+        System.arraycopy(model, src, model, dst, count);
+        assertModel("run " + run + " src " + src + " dst " + dst + " count " + count, model, bv);
+      }
+    }
+  }//copyFromOverlapping
+
+  @Test
+  public void copyFromOtherVector() {
+    Random rnd = new Random(5);
+    for (int run = 0; run < 200; run++) {
+      BitVector src = createRandom(rnd, SIZE, rnd.nextBoolean());
+      BitVector dst = createRandom(rnd, SIZE, rnd.nextBoolean());
+      boolean[] model = toModel(dst);
+      int count = rnd.nextInt(SIZE);
+      int si = rnd.nextInt(SIZE - count + 1);
+      int di = rnd.nextInt(SIZE - count + 1);
+      dst.copyFrom(src, si, di, count);
+      System.arraycopy(toModel(src), si, model, di, count);
+      assertModel("run " + run, model, dst);
+    }
+  }//copyFromOtherVector
+
+  @Test
+  public void copyToAndFromLongs() {
+    Random rnd = new Random(11);
+    for (int run = 0; run < 200; run++) {
+      BitVector bv = createRandom(rnd, SIZE, rnd.nextBoolean());
+      long[] words = new long[8];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = rnd.nextLong();
+      }
+      BitSet expected = BitSet.valueOf(words);
+      int count = rnd.nextInt(SIZE);
+      int index = rnd.nextInt(SIZE - count + 1);
+      int destindex = rnd.nextInt(words.length * 64 - count + 1);
+      bv.copyTo(index, words, destindex, count);
+      for (int i = 0; i < count; i++) {
+        expected.set(destindex + i, bv.getBit(index + i));
+      }
+      assertEquals("run " + run, expected, BitSet.valueOf(words));
+
+      //and back into a cleared vector
+      BitVector back = new BitVector(SIZE);
+      if (rnd.nextBoolean()) {
+        back.toggleAccess(true);
+      }
+      back.copyFrom(words, destindex, index, count);
+      for (int i = 0; i < SIZE; i++) {
+        boolean inside = i >= index && i < index + count;
+        assertEquals("run " + run + " bit " + i, inside && bv.getBit(i), back.getBit(i));
+      }
+    }
+  }//copyToAndFromLongs
+
+  @Test
+  public void xorMarksDifferences() {
+    Random rnd = new Random(23);
+    for (int run = 0; run < 100; run++) {
+      BitVector a = createRandom(rnd, SIZE, rnd.nextBoolean());
+      BitVector b = createRandom(rnd, SIZE - rnd.nextInt(20), rnd.nextBoolean());
+      boolean[] ma = toModel(a);
+      boolean[] mb = toModel(b);
+      a.xor(b);
+      for (int i = 0; i < SIZE; i++) {
+        boolean expected = (i < b.size()) ? ma[i] ^ mb[i] : ma[i];
+        assertEquals("run " + run + " bit " + i, expected, a.getBit(i));
+      }
+    }
+  }//xorMarksDifferences
+
+  @Test
+  public void nextSetBit() {
+    Random rnd = new Random(29);
+    for (int run = 0; run < 100; run++) {
+      int size = 1 + rnd.nextInt(SIZE);
+      BitVector bv = createRandom(rnd, size, rnd.nextBoolean());
+      for (int i = 0; i < size; i++) {
+        bv.setBit(i, bv.getBit(i) && rnd.nextInt(3) == 0);
+      }
+      int found = 0;
+      for (int from = 0; from <= size; from++) {
+        int expected = -1;
+        for (int i = from; i < size; i++) {
+          if (bv.getBit(i)) {
+            expected = i;
+            break;
+          }
+        }
+        assertEquals("run " + run + " from " + from, expected, bv.nextSetBit(from));
+      }
+      for (int i = bv.nextSetBit(0); i >= 0; i = bv.nextSetBit(i + 1)) {
+        found++;
+      }
+      assertEquals(bv.cardinality(), found);
+    }
+  }//nextSetBit
+
+  private static BitVector createRandom(Random rnd, int size, boolean msb) {
+    BitVector bv = new BitVector(size);
+    if (msb) {
+      bv.toggleAccess(true);
+    }
+    for (int i = 0; i < size; i++) {
+      bv.setBit(i, rnd.nextBoolean());
+    }
+    return bv;
+  }//createRandom
+
+  private static boolean[] toModel(BitVector bv) {
+    boolean[] model = new boolean[bv.size()];
+    for (int i = 0; i < model.length; i++) {
+      model[i] = bv.getBit(i);
+    }
+    return model;
+  }//toModel
+
+  private static void assertModel(String msg, boolean[] model, BitVector bv) {
+    for (int i = 0; i < model.length; i++) {
+      assertEquals(msg + " bit " + i, model[i], bv.getBit(i));
+    }
+  }//assertModel
+
+}//class BitVectorTest
@@ -0,0 +1,190 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the word layout and round trips of
+ * <tt>RegisterSchema</tt> fields.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class RegisterSchemaTest {
+
+  private static final int CDAB = RegisterSchema.WORD_SWAP;
+  private static final int BADC = RegisterSchema.BYTE_SWAP;
+  private static final int DCBA = RegisterSchema.WORD_SWAP | RegisterSchema.BYTE_SWAP;
+
+  @Test
+  public void int16Negative() {
+    assertLayout(RegisterSchema.INT16, -2, new int[]{0xfffe});
+    assertLayout(RegisterSchema.INT16 | BADC, -2, new int[]{0xfeff});
+    assertLayout(RegisterSchema.INT16, -32768, new int[]{0x8000});
+    assertLayout(RegisterSchema.UINT16, 65535, new int[]{0xffff});
+  }//int16Negative
+
+  @Test
+  public void int32Orders() {
+    assertLayout(RegisterSchema.INT32, 0x12345678, new int[]{0x1234, 0x5678});
+    assertLayout(RegisterSchema.INT32 | CDAB, 0x12345678, new int[]{0x5678, 0x1234});
+    assertLayout(RegisterSchema.INT32 | BADC, 0x12345678, new int[]{0x3412, 0x7856});
+    assertLayout(RegisterSchema.INT32 | DCBA, 0x12345678, new int[]{0x7856, 0x3412});
+    assertLayout(RegisterSchema.INT32 | CDAB, -100000, new int[]{0x7960, 0xfffe});
+    assertLayout(RegisterSchema.UINT32 | DCBA, 4000000000L, new int[]{0x0028, 0x6bee});
+  }//int32Orders
+
+  @Test
+  public void float32Orders() {
+    //-2.5f is 0xC0200000
+    assertLayout(RegisterSchema.FLOAT32, -2.5, new int[]{0xc020, 0x0000});
+    assertLayout(RegisterSchema.FLOAT32 | CDAB, -2.5, new int[]{0x0000, 0xc020});
+    assertLayout(RegisterSchema.FLOAT32 | BADC, -2.5, new int[]{0x20c0, 0x0000});
+    assertLayout(RegisterSchema.FLOAT32 | DCBA, -2.5, new int[]{0x0000, 0x20c0});
+    //0.1 is not exact in single precision
+    double[] out = roundTrip(RegisterSchema.FLOAT32 | DCBA, 0.1);
+    assertEquals((float) 0.1, (float) out[0], 0);
+  }//float32Orders
+
+  @Test
+  public void sixtyFourBit() {
+    assertLayout(RegisterSchema.INT64, -2, new int[]{0xffff, 0xffff, 0xffff, 0xfffe});
+    //exact in a double, which holds 53 bits
+    assertLayout(RegisterSchema.INT64 | DCBA, 0x0001020304050607L,
+        new int[]{0x0706, 0x0504, 0x0302, 0x0100});
+    //1.0 is 0x3FF0000000000000
+    assertLayout(RegisterSchema.FLOAT64 | CDAB, 1.0, new int[]{0, 0, 0, 0x3ff0});
+    assertEquals(Math.PI, roundTrip(RegisterSchema.FLOAT64 | BADC, Math.PI)[0], 0);
+  }//sixtyFourBit
+
+  @Test
+  public void strings() {
+    RegisterSchema schema = new RegisterSchema();
+    schema.addString(3);
+    schema.addField(RegisterSchema.STRING | BADC, 3, 2);
+    int[] words = new int[5];
+    schema.encode(new double[2], new String[]{"ABC", "WXYZ!"}, words, 0);
+    assertArrayEquals(new int[]{0x4142, 0x4300, 0x0000, 0x5857, 0x5a59}, words);
+
+    double[] values = new double[2];
+    String[] strings = new String[2];
+    schema.decode(words, 0, values, strings);
+    assertEquals("ABC", strings[0]);
+    assertEquals("WXYZ", strings[1]);
+    assertTrue(Double.isNaN(values[0]));
+    assertTrue(Double.isNaN(values[1]));
+
+    schema.encode(new double[2], null, words, 0);
+    schema.decode(words, 0, values, strings);
+    assertEquals("", strings[0]);
+    assertEquals("", strings[1]);
+  }//strings
+
+  @Test
+  public void registersAndWordsAgree() {
+    RegisterSchema schema = new RegisterSchema();
+    schema.addField(RegisterSchema.INT16);
+    schema.addField(RegisterSchema.FLOAT32 | CDAB);
+    schema.addString(2);
+    schema.addField(RegisterSchema.INT64 | DCBA, 6);
+    assertEquals(10, schema.getWordCount());
+    assertEquals(6, schema.getOffset(3));
+
+    double[] values = {-7, 1.5, 0, -123456789};
+    String[] strings = {null, null, "ok", null};
+    int[] words = new int[12];
+    Register[] regs = new Register[12];
+    for (int i = 0; i < regs.length; i++) {
+      regs[i] = new SimpleRegister(0);
+    }
+    schema.encode(values, strings, words, 2);
+    schema.encode(values, strings, regs, 2);
+    for (int i = 0; i < words.length; i++) {
+      assertEquals("word " + i, words[i], regs[i].toUnsignedShort());
+    }
+
+    double[] fromwords = new double[4];
+    double[] fromregs = new double[4];
+    String[] s1 = new String[4];
+    String[] s2 = new String[4];
+    schema.decode(words, 2, fromwords, s1);
+    schema.decode(regs, 2, fromregs, s2);
+    assertEquals(-7, fromwords[0], 0);
+    assertEquals(1.5, fromwords[1], 0);
+    assertEquals(-123456789, fromwords[3], 0);
+    assertEquals("ok", s1[2]);
+    assertArrayEquals(fromwords, fromregs, 0);
+    assertArrayEquals(s1, s2);
+  }//registersAndWordsAgree
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void decodeTooShort() {
+    RegisterSchema schema = new RegisterSchema();
+    schema.addField(RegisterSchema.INT32);
+    schema.decode(new int[2], 1, new double[1], null);
+  }//decodeTooShort
+
+  @Test(expected = IllegalArgumentException.class)
+  public void stringNeedsLength() {
+    new RegisterSchema().addField(RegisterSchema.STRING);
+  }//stringNeedsLength
+
+  /**
+   * Checks that a single field encodes to the expected words,
+   * for both encode variants, and decodes back to its value.
+   */
+  private static void assertLayout(int type, double value, int[] expected) {
+    RegisterSchema schema = new RegisterSchema();
+    schema.addField(type);
+    int[] words = new int[expected.length];
+    schema.encode(new double[]{value}, null, words, 0);
+    assertArrayEquals("words of " + value, expected, words);
+
+    Register[] regs = new Register[expected.length];
+    for (int i = 0; i < regs.length; i++) {
+      regs[i] = new SimpleRegister(0);
+    }
+    schema.encode(new double[]{value}, null, regs, 0);
+    for (int i = 0; i < regs.length; i++) {
+      assertEquals("register " + i + " of " + value, expected[i], regs[i].toUnsignedShort());
+    }
+
+    double[] out = new double[1];
+    schema.decode(words, 0, out, null);
+    assertEquals(value, out[0], 0);
+    schema.decode(regs, 0, out, null);
+    assertEquals(value, out[0], 0);
+  }//assertLayout
+
+  private static double[] roundTrip(int type, double value) {
+    RegisterSchema schema = new RegisterSchema();
+    schema.addField(type);
+    int[] words = new int[schema.getWordCount()];
+    schema.encode(new double[]{value}, null, words, 0);
+    double[] out = new double[1];
+    schema.decode(words, 0, out, null);
+    return out;
+  }//roundTrip
+
+}//class RegisterSchemaTest
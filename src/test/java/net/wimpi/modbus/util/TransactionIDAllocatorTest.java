@@ -0,0 +1,162 @@
+/***
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+
+package net.wimpi.modbus.util;
+
+import net.wimpi.modbus.Modbus;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the allocation, release and wrap around of
+ * identifiers by <tt>TransactionIDAllocator</tt>.
+ *
+ * @author Dieter Wimberger
+ * @version 1.2
+ */
+public class TransactionIDAllocatorTest {
+
+  private static final int MAX = Modbus.MAX_TRANSACTION_ID;
+
+  @Test
+  public void allocateAndRelease() {
+    TransactionIDAllocator ids = new TransactionIDAllocator();
+    assertEquals(1, ids.allocate());
+    assertEquals(2, ids.allocate());
+    assertEquals(2, ids.get());
+    assertEquals(2, ids.getInFlightCount());
+    assertTrue(ids.isInFlight(1));
+    assertTrue(ids.release(1));
+    assertFalse(ids.isInFlight(1));
+    //released twice or never allocated
+    assertFalse(ids.release(1));
+    assertFalse(ids.release(3));
+    assertFalse(ids.release(-1));
+    assertFalse(ids.release(MAX + 1));
+    assertFalse(ids.isInFlight(MAX + 1));
+    assertEquals(1, ids.getInFlightCount());
+    //next does not mark the identifier
+    assertEquals(3, ids.next());
+    assertFalse(ids.isInFlight(3));
+    assertEquals(4, ids.allocate());
+  }//allocateAndRelease
+
+  @Test
+  public void wrapAround() {
+    TransactionIDAllocator ids = new TransactionIDAllocator(MAX - 1);
+    assertEquals(MAX, ids.allocate());
+    assertEquals(1, ids.allocate());
+    assertEquals(MAX, new TransactionIDAllocator(MAX - 1).next());
+    assertEquals(1, new TransactionIDAllocator(MAX).next());
+  }//wrapAround
+
+  @Test
+  public void skipsInFlight() {
+    TransactionIDAllocator ids = new TransactionIDAllocator(MAX - 2);
+    int a = ids.allocate();
+    int b = ids.allocate();
+    int c = ids.allocate();
+    int d = ids.allocate();
+    assertEquals(MAX - 1, a);
+    assertEquals(MAX, b);
+    assertEquals(1, c);
+    assertEquals(2, d);
+    ids.release(b);
+    ids.release(d);
+    //run once around the id space, keeping a and c in flight
+    for (int i = 3; i <= MAX; i++) {
+      if (i == MAX - 1) {
+        continue;
+      }
+      int id = ids.allocate();
+      assertEquals(i, id);
+      assertTrue(ids.release(id));
+    }
+    //the ids still in flight are skipped when wrapping
+    assertEquals(2, ids.allocate());
+    assertEquals(3, ids.allocate());
+    assertEquals(4, ids.getInFlightCount());
+  }//skipsInFlight
+
+  @Test
+  public void allInFlight() {
+    TransactionIDAllocator ids = new TransactionIDAllocator();
+    for (int i = 1; i <= MAX; i++) {
+      assertEquals(i, ids.allocate());
+    }
+    assertEquals(MAX, ids.getInFlightCount());
+    try {
+      ids.allocate();
+      fail("allocated with all identifiers in flight");
+    } catch (IllegalStateException ex) {
+      //expected
+    }
+    assertEquals(MAX, ids.getInFlightCount());
+    //a released id is reused
+    assertTrue(ids.release(12345));
+    assertEquals(12345, ids.allocate());
+    try {
+      ids.allocate();
+      fail("allocated with all identifiers in flight");
+    } catch (IllegalStateException ex) {
+      //expected
+    }
+  }//allInFlight
+
+  @Test
+  public void concurrentAllocation() throws InterruptedException {
+    final TransactionIDAllocator ids = new TransactionIDAllocator(MAX - 1000);
+    final boolean[] held = new boolean[MAX + 1];
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 50000 && failure.get() == null; i++) {
+            int id = ids.allocate();
+            synchronized (held) {
+              if (id < 1 || id > MAX || held[id]) {
+                failure.compareAndSet(null, "id " + id + " handed out twice");
+              }
+              held[id] = true;
+            }
+            synchronized (held) {
+              held[id] = false;
+            }
+            if (!ids.release(id)) {
+              failure.compareAndSet(null, "id " + id + " not in flight");
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+    }
+    assertNull(failure.get());
+    assertEquals(0, ids.getInFlightCount());
+  }//concurrentAllocation
+
+}//class TransactionIDAllocatorTest